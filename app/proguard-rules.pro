@@ -15,3 +15,8 @@
 #-keepclassmembers class fqcn.of.javascript.interface.for.webview {
 #   public *;
 #}
+
+# ListenerBus finds the overridden callbacks by name
+-keepclassmembers class * extends org.proninyaroslav.libretorrent.core.model.TorrentEngineListener {
+    public void on*(...);
+}
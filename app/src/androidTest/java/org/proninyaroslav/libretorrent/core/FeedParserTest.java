@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.proninyaroslav.libretorrent.core.exception.FetchLinkException;
+import org.proninyaroslav.libretorrent.core.model.data.entity.FeedChannel;
+import org.proninyaroslav.libretorrent.core.model.data.entity.FeedItem;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class FeedParserTest
+{
+    private static final String feedUrl = "https://example.org/feed";
+    private static final String etag = "\"v1\"";
+    private static final String lastModified = "Sat, 17 Oct 2026 10:00:00 GMT";
+    private static final String rss = "<?xml version=\"1.0\"?>" +
+            "<rss version=\"2.0\"><channel><title>Example</title>" +
+            "<item><title>Item 2</title><link>https://example.org/2.torrent</link>" +
+            "<pubDate>Sat, 17 Oct 2026 09:00:00 GMT</pubDate></item>" +
+            "<item><title>Item 1</title><link>https://example.org/1.torrent</link>" +
+            "<pubDate>Fri, 16 Oct 2026 09:00:00 GMT</pubDate></item>" +
+            "</channel></rss>";
+
+    @Test
+    public void testUnconditionalRequest()
+    {
+        FeedParser parser = new FeedParser(new FeedChannel(feedUrl), null, 0);
+        FakeConnection conn = makeConnection();
+
+        parser.prepareRequest(conn);
+        assertNull(conn.getRequestProperty("If-None-Match"));
+        assertNull(conn.getRequestProperty("If-Modified-Since"));
+    }
+
+    @Test
+    public void testConditionalRequest()
+    {
+        FeedChannel channel = new FeedChannel(feedUrl);
+        channel.etag = etag;
+        channel.lastModified = lastModified;
+        FeedParser parser = new FeedParser(channel, null, 0);
+        FakeConnection conn = makeConnection();
+
+        parser.prepareRequest(conn);
+        assertEquals(etag, conn.getRequestProperty("If-None-Match"));
+        assertEquals(lastModified, conn.getRequestProperty("If-Modified-Since"));
+    }
+
+    @Test
+    public void testNotModified() throws Exception
+    {
+        FeedChannel channel = new FeedChannel(feedUrl);
+        channel.etag = etag;
+        FeedParser parser = new FeedParser(channel, null, 0);
+        FakeConnection conn = makeConnection();
+
+        parser.handleResponse(conn, HttpURLConnection.HTTP_NOT_MODIFIED);
+        assertTrue(parser.isNotModified());
+        assertFalse(conn.bodyRead);
+        assertNull(parser.getTitle());
+        assertTrue(parser.getItems().isEmpty());
+        /* The saved validators are kept */
+        assertNull(parser.getETag());
+    }
+
+    @Test
+    public void testModified() throws Exception
+    {
+        FeedChannel channel = new FeedChannel(feedUrl);
+        channel.etag = "\"v0\"";
+        FeedParser parser = new FeedParser(channel, null, 0);
+        FakeConnection conn = makeConnection();
+        conn.headers.put("ETag", etag);
+        conn.headers.put("Last-Modified", lastModified);
+
+        parser.handleResponse(conn, HttpURLConnection.HTTP_OK);
+        assertFalse(parser.isNotModified());
+        assertEquals(etag, parser.getETag());
+        assertEquals(lastModified, parser.getLastModified());
+        assertEquals("Example", parser.getTitle());
+        assertEquals(2, parser.getItems().size());
+        assertEquals("Item 2", parser.getItems().get(0).title);
+        assertEquals("https://example.org/2.torrent", parser.getItems().get(0).downloadUrl);
+    }
+
+    @Test(expected = FetchLinkException.class)
+    public void testErrorCode() throws Exception
+    {
+        FeedParser parser = new FeedParser(new FeedChannel(feedUrl), null, 0);
+
+        parser.handleResponse(makeConnection(), HttpURLConnection.HTTP_INTERNAL_ERROR);
+    }
+
+    @Test
+    public void testStopAfterKnownItems() throws Exception
+    {
+        /* Newest first */
+        String feed = makeRss(6, 5, 4, 3, 2, 1);
+        FeedParser parser = new FeedParser(new FeedChannel(feedUrl),
+                new HashSet<>(Arrays.asList("0_Item 5", "0_Item 4", "0_Item 3")), 0);
+
+        parser.handleResponse(makeConnection(feed), HttpURLConnection.HTTP_OK);
+        /* The items after the known ones aren't parsed */
+        assertEquals(Collections.singletonList("Item 6"), getTitles(parser));
+        assertEquals("Example", parser.getTitle());
+    }
+
+    @Test
+    public void testKnownItemsNotInRow() throws Exception
+    {
+        String feed = makeRss(6, 5, 4, 3, 2, 1);
+        FeedParser parser = new FeedParser(new FeedChannel(feedUrl),
+                new HashSet<>(Arrays.asList("0_Item 5", "0_Item 4", "0_Item 2")), 0);
+
+        parser.handleResponse(makeConnection(feed), HttpURLConnection.HTTP_OK);
+        assertEquals(Arrays.asList("Item 6", "Item 3", "Item 1"), getTitles(parser));
+    }
+
+    @Test
+    public void testOldestFirst() throws Exception
+    {
+        String feed = makeRss(1, 2, 3, 4, 5, 6);
+        FeedParser parser = new FeedParser(new FeedChannel(feedUrl),
+                new HashSet<>(Arrays.asList("0_Item 1", "0_Item 2", "0_Item 3")), 0);
+
+        parser.handleResponse(makeConnection(feed), HttpURLConnection.HTTP_OK);
+        assertEquals(Arrays.asList("Item 4", "Item 5", "Item 6"), getTitles(parser));
+    }
+
+    @Test
+    public void testPinnedOldItem() throws Exception
+    {
+        /* Old announcement at the top, then the newest items */
+        String feed = makeRss(1, 6, 5, 4, 3, 2);
+        FeedParser parser = new FeedParser(new FeedChannel(feedUrl),
+                new HashSet<>(Arrays.asList("0_Item 1", "0_Item 3", "0_Item 2")), 0);
+
+        parser.handleResponse(makeConnection(feed), HttpURLConnection.HTTP_OK);
+        assertEquals(Arrays.asList("Item 6", "Item 5", "Item 4"), getTitles(parser));
+    }
+
+    @Test
+    public void testAcceptMinDate() throws Exception
+    {
+        String feed = makeRss(6, 5, 4, 3, 2, 1);
+        FeedParser parser = new FeedParser(new FeedChannel(feedUrl), null, getPubDate(4));
+
+        parser.handleResponse(makeConnection(feed), HttpURLConnection.HTTP_OK);
+        assertEquals(Arrays.asList("Item 6", "Item 5"), getTitles(parser));
+    }
+
+    private static String makeRss(int... days)
+    {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\"?>" +
+                "<rss version=\"2.0\"><channel><title>Example</title>");
+        for (int day : days) {
+            sb.append("<item><title>Item ").append(day).append("</title>")
+                    .append("<link>https://example.org/").append(day).append(".torrent</link>")
+                    .append("<pubDate>").append(format.format(new Date(getPubDate(day)))).append("</pubDate>")
+                    .append("</item>");
+        }
+        sb.append("</channel></rss>");
+
+        return sb.toString();
+    }
+
+    private static long getPubDate(int day)
+    {
+        return day * 24 * 60 * 60 * 1000L;
+    }
+
+    private static List<String> getTitles(FeedParser parser)
+    {
+        List<String> titles = new ArrayList<>();
+        for (FeedItem item : parser.getItems())
+            titles.add(item.title);
+
+        return titles;
+    }
+
+    private FakeConnection makeConnection()
+    {
+        return makeConnection(rss);
+    }
+
+    private FakeConnection makeConnection(String body)
+    {
+        try {
+            return new FakeConnection(new URL(feedUrl), body.getBytes("UTF-8"));
+
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static final class FakeConnection extends HttpURLConnection
+    {
+        final HashMap<String, String> requestProperties = new HashMap<>();
+        final HashMap<String, String> headers = new HashMap<>();
+        final byte[] body;
+        boolean bodyRead;
+
+        FakeConnection(URL url, byte[] body)
+        {
+            super(url);
+            this.body = body;
+        }
+
+        @Override
+        public void setRequestProperty(String key, String value)
+        {
+            requestProperties.put(key, value);
+        }
+
+        @Override
+        public String getRequestProperty(String key)
+        {
+            return requestProperties.get(key);
+        }
+
+        @Override
+        public String getHeaderField(String name)
+        {
+            return headers.get(name);
+        }
+
+        @Override
+        public InputStream getInputStream()
+        {
+            bodyRead = true;
+
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void connect()
+        {
+            /* Nothing */
+        }
+
+        @Override
+        public void disconnect()
+        {
+            /* Nothing */
+        }
+
+        @Override
+        public boolean usingProxy()
+        {
+            return false;
+        }
+    }
+}
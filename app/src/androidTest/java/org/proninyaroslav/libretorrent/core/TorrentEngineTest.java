@@ -46,6 +46,7 @@ import java.io.File;
 import java.util.Collections;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.reactivex.Single;
 import io.reactivex.disposables.Disposable;
@@ -306,6 +307,56 @@ public class TorrentEngineTest extends AbstractTest
         }
     }
 
+    @Test
+    public void removeThenReAddTest()
+    {
+        CountDownLatch c = new CountDownLatch(1);
+        AtomicInteger addedCount = new AtomicInteger();
+
+        assertTrue(engine.isRunning());
+
+        engine.addListener(new TorrentEngineListener() {
+            @Override
+            public void onTorrentAdded(@NonNull String id)
+            {
+                if (!params.sha1hash.equals(id))
+                    return;
+
+                if (addedCount.incrementAndGet() == 1)
+                    engine.deleteTorrents(Collections.singletonList(id), false);
+                else
+                    c.countDown();
+            }
+
+            @Override
+            public void onTorrentRemoved(@NonNull String id)
+            {
+                if (!params.sha1hash.equals(id) || addedCount.get() != 1)
+                    return;
+
+                try {
+                    engine.addTorrentSync(params, true);
+
+                } catch (Exception e) {
+                    fail(Log.getStackTraceString(e));
+                }
+            }
+        });
+
+        try {
+            engine.addTorrentSync(params, false);
+            c.await();
+            /* The removal of the first task must not remove the new one */
+            Thread.sleep(1000);
+            assertNotNull(engine.getTorrentMetaInfo(params.sha1hash));
+
+        } catch (Exception e) {
+            fail(Log.getStackTraceString(e));
+        } finally {
+            engine.deleteTorrents(Collections.singletonList(params.sha1hash), true);
+        }
+    }
+
     private String downloadTorrent(String url)
     {
         File tmp = fs.makeTempFile(".torrent");
@@ -21,12 +21,14 @@ package org.proninyaroslav.libretorrent.core.storage;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
 import androidx.room.Room;
 import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -45,7 +47,9 @@ import org.proninyaroslav.libretorrent.core.utils.Utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -198,6 +202,73 @@ public class DatabaseMigrationTest
         assertFalse(channel.isRegexFilter);
     }
 
+    @Test
+    public void testMigration6to7() throws IOException
+    {
+        long currTime = System.currentTimeMillis();
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DATABASE_NAME, 6);
+
+        ContentValues feedValues = new ContentValues();
+        feedValues.put("url", feedUrl);
+        feedValues.put("name", feedName);
+        feedValues.put("lastUpdate", currTime);
+        feedValues.put("autoDownload", true);
+        feedValues.put("filter", feedFilter);
+        feedValues.put("isRegexFilter", false);
+        assertNotEquals(db.insert("FeedChannel", SQLiteDatabase.CONFLICT_REPLACE, feedValues), -1);
+
+        db.close();
+
+        helper.runMigrationsAndValidate(TEST_DATABASE_NAME, 7, true,
+                DatabaseMigration.MIGRATION_6_7);
+
+        AppDatabase roomDb = getMigratedRoomDatabase();
+
+        List<FeedChannel> channelList = roomDb.feedDao().getAllFeeds();
+        assertEquals(1, channelList.size());
+
+        FeedChannel channel = channelList.get(0);
+        assertEquals(feedUrl, channel.url);
+        assertEquals(feedName, channel.name);
+        assertEquals(currTime, channel.lastUpdate);
+        /* Not fetched yet */
+        assertNull(channel.etag);
+        assertNull(channel.lastModified);
+    }
+
+    @Test
+    public void testMigration7to8() throws IOException
+    {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DATABASE_NAME, 7);
+        assertTrue(getIndexes(db, "FeedItem").contains("index_FeedItem_feedId"));
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DATABASE_NAME, 8, true,
+                DatabaseMigration.MIGRATION_7_8);
+
+        Set<String> indexes = getIndexes(db, "FeedItem");
+        assertFalse(indexes.contains("index_FeedItem_feedId"));
+        assertTrue(indexes.contains("index_FeedItem_feedId_id"));
+        assertTrue(indexes.contains("index_FeedItem_title"));
+        assertTrue(indexes.contains("index_FeedItem_fetchDate"));
+    }
+
+    private Set<String> getIndexes(SupportSQLiteDatabase db, String table)
+    {
+        HashSet<String> indexes = new HashSet<>();
+        Cursor cursor = db.query("SELECT name FROM sqlite_master WHERE type = 'index' AND tbl_name = ?",
+                new Object[]{table});
+        try {
+            while (cursor.moveToNext())
+                indexes.add(cursor.getString(0));
+
+        } finally {
+            cursor.close();
+        }
+
+        return indexes;
+    }
+
     private void addTorrent(SQLiteDatabase sqliteDb, ContentValues values)
     {
         assertNotEquals(sqliteDb.replace("torrents", null, values), -1);
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.storage;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.proninyaroslav.libretorrent.AbstractTest;
+import org.proninyaroslav.libretorrent.core.filter.FeedFilter;
+import org.proninyaroslav.libretorrent.core.model.data.entity.FeedChannel;
+import org.proninyaroslav.libretorrent.core.model.data.entity.FeedItem;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class FeedRepositoryTest extends AbstractTest
+{
+    /* More than the SQLite variable limit (999) */
+    private static final int NUM_ITEMS = 2500;
+
+    private FeedChannel channel;
+
+    @Before
+    public void init()
+    {
+        super.init();
+
+        channel = new FeedChannel("https://example.org");
+        channel.id = feedRepo.addFeed(channel);
+    }
+
+    @Test
+    public void addItemsTest()
+    {
+        List<FeedItem> items = makeItems(NUM_ITEMS);
+        Set<String> readItemsId = new HashSet<>();
+        for (int i = 0; i < NUM_ITEMS; i += 2)
+            readItemsId.add(items.get(i).id);
+
+        feedRepo.addItems(items, new ArrayList<>(readItemsId));
+
+        List<FeedItem> storedItems = feedRepo.getItemsById(getIds(items));
+        assertEquals(NUM_ITEMS, storedItems.size());
+        for (FeedItem item : storedItems)
+            assertEquals(readItemsId.contains(item.id), item.read);
+    }
+
+    @Test
+    public void getItemsByIdTest()
+    {
+        List<FeedItem> items = makeItems(NUM_ITEMS);
+        feedRepo.addItems(items);
+
+        String[] ids = getIds(items);
+        String[] query = new String[ids.length + 1];
+        System.arraycopy(ids, 0, query, 0, ids.length);
+        query[ids.length] = "unknown";
+
+        List<FeedItem> storedItems = feedRepo.getItemsById(query);
+        assertEquals(NUM_ITEMS, storedItems.size());
+        assertEquals(new HashSet<>(items), new HashSet<>(storedItems));
+
+        assertEquals(1, feedRepo.getItemsById(ids[0]).size());
+    }
+
+    @Test
+    public void findItemsExistingTitlesTest()
+    {
+        List<FeedItem> items = makeItems(NUM_ITEMS);
+        feedRepo.addItems(items.subList(0, NUM_ITEMS / 2));
+
+        List<String> titles = new ArrayList<>();
+        for (FeedItem item : items)
+            titles.add(item.title);
+        /* Duplicates */
+        titles.addAll(titles.subList(0, 10));
+
+        Set<String> existingTitles = feedRepo.findItemsExistingTitles(titles);
+        assertEquals(NUM_ITEMS / 2, existingTitles.size());
+        for (int i = 0; i < NUM_ITEMS; i++)
+            assertEquals(i < NUM_ITEMS / 2, existingTitles.contains(items.get(i).title));
+    }
+
+    @Test
+    public void getItemsIdByFeedIdTest()
+    {
+        List<FeedItem> items = makeItems(10);
+        feedRepo.addItems(items);
+
+        FeedChannel otherChannel = new FeedChannel("https://example.com");
+        otherChannel.id = feedRepo.addFeed(otherChannel);
+        feedRepo.addItems(makeItems(otherChannel.id, 5));
+
+        Set<String> ids = feedRepo.getItemsIdByFeedId(channel.id);
+        assertEquals(10, ids.size());
+        for (FeedItem item : items)
+            assertTrue(ids.contains(item.id));
+    }
+
+    @Test
+    public void getFeedFilterTest()
+    {
+        channel.filter = "foo";
+        FeedFilter filter = feedRepo.getFeedFilter(channel);
+        assertTrue(filter.matches("Foo bar"));
+        assertSame(filter, feedRepo.getFeedFilter(channel));
+
+        channel.filter = "bar";
+        FeedFilter changedFilter = feedRepo.getFeedFilter(channel);
+        assertNotSame(filter, changedFilter);
+        assertFalse(changedFilter.matches("foo"));
+
+        feedRepo.deleteFeed(channel);
+        assertNotSame(changedFilter, feedRepo.getFeedFilter(channel));
+    }
+
+    private List<FeedItem> makeItems(int count)
+    {
+        return makeItems(channel.id, count);
+    }
+
+    private static List<FeedItem> makeItems(long feedId, int count)
+    {
+        List<FeedItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            items.add(new FeedItem(feedId, "https://example.org/" + i + ".torrent",
+                    null, "Item " + i, i));
+
+        return items;
+    }
+
+    private static String[] getIds(List<FeedItem> items)
+    {
+        String[] ids = new String[items.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = items.get(i).id;
+
+        return ids;
+    }
+}
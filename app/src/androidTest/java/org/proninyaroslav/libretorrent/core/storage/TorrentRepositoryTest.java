@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.storage;
+
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.proninyaroslav.libretorrent.AbstractTest;
+import org.proninyaroslav.libretorrent.core.model.data.entity.Torrent;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class TorrentRepositoryTest extends AbstractTest
+{
+    private static final String ID = "0000000000000000000000000000000000000000";
+
+    @Test
+    public void concurrentUpdateTest() throws InterruptedException
+    {
+        torrentRepo.addTorrent(makeTorrent("initial"));
+        /* Makes the cache authoritative */
+        torrentRepo.getAllTorrents();
+
+        int numThreads = 4;
+        int numUpdates = 200;
+        CountDownLatch start = new CountDownLatch(1);
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            int thread = i;
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < numUpdates; j++)
+                    torrentRepo.updateTorrent(makeTorrent(thread + "-" + j));
+            });
+            threads.add(t);
+            t.start();
+        }
+        start.countDown();
+        for (Thread t : threads)
+            t.join();
+
+        assertEquals(db.torrentDao().getTorrentById(ID).name,
+                torrentRepo.getTorrentById(ID).name);
+    }
+
+    @Test
+    public void concurrentDeleteTest() throws InterruptedException
+    {
+        torrentRepo.addTorrent(makeTorrent("initial"));
+        torrentRepo.getAllTorrents();
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread updater = new Thread(() -> {
+            try {
+                start.await();
+
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (int i = 0; i < 200; i++)
+                torrentRepo.updateTorrent(makeTorrent(String.valueOf(i)));
+        });
+        updater.start();
+        start.countDown();
+        torrentRepo.deleteTorrent(makeTorrent("deleted"));
+        updater.join();
+
+        /* An update after the delete doesn't bring the torrent back */
+        assertNull(db.torrentDao().getTorrentById(ID));
+        assertNull(torrentRepo.getTorrentById(ID));
+    }
+
+    @Test
+    public void storedCopyTest()
+    {
+        Torrent torrent = makeTorrent("name");
+        torrentRepo.addTorrent(torrent);
+
+        torrent.name = "changed";
+        assertEquals("name", torrentRepo.getTorrentById(ID).name);
+    }
+
+    private static Torrent makeTorrent(String name)
+    {
+        return new Torrent(ID, Uri.EMPTY, name, false, 0);
+    }
+}
@@ -14,4 +14,26 @@ public interface FeedParser {
 	 * @return Feed object containing parsed data
 	 */
 	Feed parse(InputStream inStream) throws FeedException;
+
+	/**
+	 * Parses the feed in streaming mode. Each item is passed to the listener
+	 * as soon as it is read and isn't kept in the feed, so memory usage
+	 * doesn't depend on the feed size.
+	 *
+	 * @param inStream InputStream for the web feed
+	 * @param listener receives feed items in document order
+	 * @return Feed object containing the feed data without items
+	 */
+	Feed parse(InputStream inStream, ItemListener listener) throws FeedException;
+
+	/**
+	 * Receives items in streaming mode.
+	 */
+	interface ItemListener {
+
+		/**
+		 * Returns false to stop parsing, the rest of the feed is skipped.
+		 */
+		boolean onItem(Item item);
+	}
 }
@@ -20,6 +20,15 @@ public class DefaultFeedParser implements FeedParser {
 
     @Override
     public Feed parse(InputStream inStream) throws FeedException {
+        return parse(inStream, new FeedHandler());
+    }
+
+    @Override
+    public Feed parse(InputStream inStream, ItemListener listener) throws FeedException {
+        return parse(inStream, new FeedHandler(listener));
+    }
+
+    private Feed parse(InputStream inStream, FeedHandler handler) throws FeedException {
         try {
             // Create SAX parser.
             SAXParserFactory factory = SAXParserFactory.newInstance();
@@ -30,12 +39,13 @@ public class DefaultFeedParser implements FeedParser {
             reader.setFeature("http://xml.org/sax/features/namespaces", true);
             reader.setFeature("http://xml.org/sax/features/namespace-prefixes", false);
             
-        	// Create SAX handler.
-        	FeedHandler handler = new FeedHandler();
-        	
             // Parse feed and return data.
-        	parser.parse(new XMLInputStream(inStream), handler);
-        	Feed feed = handler.getFeed();
+            try {
+                parser.parse(new XMLInputStream(inStream), handler);
+            } catch (FeedHandler.StopParsingException e) {
+                // Stopped by the item listener, the rest is skipped.
+            }
+            Feed feed = handler.getFeed();
             if (feed == null)
                 throw new FeedException("Invalid RSS/Atom feed");
             
@@ -8,6 +8,7 @@ import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import com.ernieyu.feedparser.Feed;
+import com.ernieyu.feedparser.FeedParser;
 import com.ernieyu.feedparser.FeedType;
 
 /**
@@ -24,7 +25,34 @@ class FeedHandler extends DefaultHandler {
     private Feed feed;
     private FeedType type;
     private StringBuilder buffer;
-    
+    private final FeedParser.ItemListener itemListener;
+
+    /**
+     * Thrown to stop parsing when the item listener asks for it.
+     */
+    static class StopParsingException extends SAXException {
+        StopParsingException() {
+            super("Parsing stopped");
+        }
+    }
+
+    /**
+     * Creates a handler that builds the whole feed tree.
+     */
+    public FeedHandler() {
+        this(null);
+    }
+
+    /**
+     * Creates a handler that passes items to the listener instead of adding
+     * them to the feed. Other elements are added to their parents as soon as
+     * they start, so the feed data that precedes items (e.g. the title) is
+     * available even if parsing is stopped.
+     */
+    public FeedHandler(FeedParser.ItemListener itemListener) {
+        this.itemListener = itemListener;
+    }
+
     /**
      * Returns the feed.
      */
@@ -100,6 +128,11 @@ class FeedHandler extends DefaultHandler {
             newElement = new BaseElement(uri, localName, attributes);
         }
 
+        // In streaming mode, add element to its parent right away.
+        if (itemListener != null && !(newElement instanceof BaseItem) && !elementStack.empty()) {
+            elementStack.peek().addElement(localName, newElement);
+        }
+
         elementStack.push(newElement);
         
         // Initialize content buffer.
@@ -120,8 +153,14 @@ class FeedHandler extends DefaultHandler {
         }
         currentElement.setContent(content);
         
-        // Add current element to its parent.
-        if (!elementStack.empty()) {
+        if (itemListener != null) {
+            // Pass item to the listener, other elements are already added.
+            if (currentElement instanceof BaseItem && !itemListener.onItem((BaseItem) currentElement)) {
+                throw new StopParsingException();
+            }
+
+        } else if (!elementStack.empty()) {
+            // Add current element to its parent.
             BaseElement parent = elementStack.peek();
             parent.addElement(localName, currentElement);
         }
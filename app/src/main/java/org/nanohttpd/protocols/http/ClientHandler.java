@@ -59,6 +59,10 @@ public class ClientHandler implements Runnable {
         this.acceptSocket = acceptSocket;
     }
 
+    public Socket getAcceptSocket() {
+        return this.acceptSocket;
+    }
+
     public void close() {
         NanoHTTPD.safeClose(this.inputStream);
         NanoHTTPD.safeClose(this.acceptSocket);
@@ -341,7 +341,7 @@ public class Response implements Closeable {
      * @throws IOException
      *             if something goes wrong while sending the data.
      */
-    private void sendBody(OutputStream outputStream, long pending) throws IOException {
+    protected void sendBody(OutputStream outputStream, long pending) throws IOException {
         long BUFFER_SIZE = 16 * 1024;
         byte[] buff = new byte[(int) BUFFER_SIZE];
         boolean sendEverything = pending == -1;
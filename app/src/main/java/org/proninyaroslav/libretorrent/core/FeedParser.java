@@ -23,6 +23,7 @@ import android.content.Context;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.ernieyu.feedparser.Enclosure;
 import com.ernieyu.feedparser.EzRssTorrentItem;
@@ -33,14 +34,18 @@ import com.ernieyu.feedparser.mediarss.Content;
 import com.ernieyu.feedparser.mediarss.Hash;
 import com.ernieyu.feedparser.mediarss.MediaRss;
 
+import org.proninyaroslav.libretorrent.core.exception.FetchLinkException;
 import org.proninyaroslav.libretorrent.core.model.data.entity.FeedChannel;
 import org.proninyaroslav.libretorrent.core.model.data.entity.FeedItem;
 import org.proninyaroslav.libretorrent.core.utils.Utils;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 /*
  * Parser RSS/Atom feeds.
@@ -56,65 +61,215 @@ import java.util.List;
 
 public class FeedParser
 {
+    /* Parsing stops after this number of known items in a row, see onItem() */
+    private static final int KNOWN_ITEMS_TO_STOP = 3;
+
     private FeedChannel feedChannel;
+    private Set<String> knownItemsId;
+    private long acceptMinDate;
     private Feed feed;
+    private ArrayList<FeedItem> items = new ArrayList<>();
+    private boolean notModified;
+    private String etag;
+    private String lastModified;
+    private int knownItemsRun;
+    private boolean sortedByDate = true;
+    private long prevPubDate;
+
+    /*
+     * Fetches and parses the channel. The request is conditional if the channel
+     * has validators (ETag, Last-Modified) saved from the previous fetch
+     */
 
     public FeedParser(@NonNull Context context, @NonNull FeedChannel feedChannel) throws Exception
     {
-        this.feedChannel = feedChannel;
-        ByteArrayInputStream bsStream = null;
-        try {
-            byte[] response = Utils.fetchHttpUrl(context, feedChannel.url);
-            if (response == null)
-                return;
-            bsStream = new ByteArrayInputStream(response);
-            feed = FeedParserFactory.newParser().parse(bsStream);
-
-        } finally {
-            if (bsStream != null) {
+        this(context, feedChannel, null, 0);
+    }
+
+    /*
+     * Items are converted as soon as they are parsed. Items that are already known
+     * or are not newer than acceptMinDate (if greater than zero) are skipped.
+     * Parsing can stop before the end of the feed, see onItem()
+     */
+
+    public FeedParser(@NonNull Context context,
+                      @NonNull FeedChannel feedChannel,
+                      @Nullable Set<String> knownItemsId,
+                      long acceptMinDate) throws Exception
+    {
+        this(feedChannel, knownItemsId, acceptMinDate);
+
+        if (!Utils.checkConnectivity(context))
+            throw new FetchLinkException("No network connection");
+
+        final ArrayList<Exception> errorArray = new ArrayList<>(1);
+        HttpConnection connection = new HttpConnection(feedChannel.url);
+        connection.setListener(new HttpConnection.Listener()
+        {
+            @Override
+            public void onConnectionCreated(HttpURLConnection conn)
+            {
+                prepareRequest(conn);
+            }
+
+            @Override
+            public void onResponseHandle(HttpURLConnection conn, int code, String message)
+            {
                 try {
-                    bsStream.close();
+                    handleResponse(conn, code);
+
                 } catch (Exception e) {
-                    /* Ignore */
+                    errorArray.add(e);
                 }
             }
+
+            @Override
+            public void onMovedPermanently(String newUrl)
+            {
+                /* Nothing */
+            }
+
+            @Override
+            public void onIOException(IOException e)
+            {
+                errorArray.add(e);
+            }
+
+            @Override
+            public void onTooManyRedirects()
+            {
+                errorArray.add(new FetchLinkException("Too many redirects"));
+            }
+        });
+        connection.run();
+
+        if (!errorArray.isEmpty())
+            throw errorArray.get(0);
+    }
+
+    /*
+     * Doesn't fetch anything, the connection is handled by the caller
+     */
+
+    FeedParser(@NonNull FeedChannel feedChannel,
+               @Nullable Set<String> knownItemsId,
+               long acceptMinDate)
+    {
+        this.feedChannel = feedChannel;
+        this.knownItemsId = knownItemsId;
+        this.acceptMinDate = acceptMinDate;
+    }
+
+    void prepareRequest(@NonNull HttpURLConnection conn)
+    {
+        if (!TextUtils.isEmpty(feedChannel.etag))
+            conn.setRequestProperty("If-None-Match", feedChannel.etag);
+        if (!TextUtils.isEmpty(feedChannel.lastModified))
+            conn.setRequestProperty("If-Modified-Since", feedChannel.lastModified);
+    }
+
+    void handleResponse(@NonNull HttpURLConnection conn, int code) throws Exception
+    {
+        if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            notModified = true;
+            return;
+
+        } else if (code != HttpURLConnection.HTTP_OK) {
+            throw new FetchLinkException("Failed to fetch link, response code: " + code, code);
         }
+
+        etag = conn.getHeaderField("ETag");
+        lastModified = conn.getHeaderField("Last-Modified");
+        /* Parse right from the connection, without buffering the whole body */
+        try (InputStream is = conn.getInputStream()) {
+            final long fetchDate = System.currentTimeMillis();
+            feed = FeedParserFactory.newParser().parse(is,
+                    (item) -> onItem(makeFeedItem(item, fetchDate)));
+        }
+    }
+
+    /*
+     * Returns false to stop parsing. If all items so far have dates and are
+     * listed newest first, the rest of the feed after a run of known items
+     * is older and has been seen before. Otherwise (e.g. oldest first,
+     * a pinned old item at the top) the whole feed is parsed
+     */
+
+    private boolean onItem(FeedItem feedItem)
+    {
+        if (feedItem.pubDate <= 0 || (prevPubDate > 0 && feedItem.pubDate > prevPubDate))
+            sortedByDate = false;
+        prevPubDate = feedItem.pubDate;
+
+        if (isKnownItem(feedItem)) {
+            knownItemsRun++;
+
+            return !sortedByDate || knownItemsRun < KNOWN_ITEMS_TO_STOP;
+        }
+        knownItemsRun = 0;
+        items.add(feedItem);
+
+        return true;
+    }
+
+    private boolean isKnownItem(FeedItem feedItem)
+    {
+        return (knownItemsId != null && knownItemsId.contains(feedItem.id)) ||
+                (acceptMinDate > 0 && feedItem.pubDate > 0 && feedItem.pubDate <= acceptMinDate);
+    }
+
+    /*
+     * Returns true if the server replied that the channel
+     * hasn't changed since the previous fetch
+     */
+
+    public boolean isNotModified()
+    {
+        return notModified;
+    }
+
+    public String getETag()
+    {
+        return etag;
+    }
+
+    public String getLastModified()
+    {
+        return lastModified;
     }
 
     public String getTitle()
     {
-        return feed.getTitle();
+        return (feed == null ? null : feed.getTitle());
     }
 
     public List<FeedItem> getItems()
     {
-        List<FeedItem> items = new ArrayList<>();
-        if (feed == null)
-            return items;
-
-        for (Item item : feed.getItemList()) {
-            List<String> links = item.getLinks();
-            String articleUrl = getFirstNotNullLink(links);
-            String downloadUrl = watchDownloadableLink(links);
-
-            /* Find url with torrent/magnet */
-            if (downloadUrl == null)
-                downloadUrl = findDownloadUrl(item);
-
-            Date pubDate = item.getPubDate();
-            long pubDateTime = 0;
-            if (pubDate != null)
-                pubDateTime = pubDate.getTime();
-
-            FeedItem feedItem = new FeedItem(feedChannel.id, downloadUrl,
-                    articleUrl, item.getTitle(), pubDateTime);
-            feedItem.fetchDate = System.currentTimeMillis();
-            items.add(feedItem);
-        }
-
         return items;
     }
 
+    private FeedItem makeFeedItem(Item item, long fetchDate)
+    {
+        List<String> links = item.getLinks();
+        String articleUrl = getFirstNotNullLink(links);
+        String downloadUrl = watchDownloadableLink(links);
+
+        /* Find url with torrent/magnet */
+        if (downloadUrl == null)
+            downloadUrl = findDownloadUrl(item);
+
+        Date pubDate = item.getPubDate();
+        long pubDateTime = 0;
+        if (pubDate != null)
+            pubDateTime = pubDate.getTime();
+
+        FeedItem feedItem = new FeedItem(feedChannel.id, downloadUrl,
+                articleUrl, item.getTitle(), pubDateTime);
+        feedItem.fetchDate = fetchDate;
+
+        return feedItem;
+    }
+
     private String getFirstNotNullLink(List<String> links)
     {
         for (String link : links) {
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core;
+
+import androidx.annotation.NonNull;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.concurrent.Semaphore;
+
+/*
+ * Limits the number of simultaneous requests to the same host,
+ * so that parallel fetching doesn't hammer a single server.
+ */
+
+public class HostLimiter
+{
+    private final int maxPerHost;
+    private final HashMap<String, Semaphore> hosts = new HashMap<>();
+
+    public HostLimiter(int maxPerHost)
+    {
+        if (maxPerHost <= 0)
+            throw new IllegalArgumentException("Limit must be greater than 0");
+
+        this.maxPerHost = maxPerHost;
+    }
+
+    /*
+     * Blocks until a request to the host of `url` is allowed
+     */
+
+    public void acquire(@NonNull String url) throws InterruptedException
+    {
+        getSemaphore(url).acquire();
+    }
+
+    public void release(@NonNull String url)
+    {
+        getSemaphore(url).release();
+    }
+
+    private synchronized Semaphore getSemaphore(String url)
+    {
+        String host = getHost(url);
+        Semaphore semaphore = hosts.get(host);
+        if (semaphore == null) {
+            semaphore = new Semaphore(maxPerHost, true);
+            hosts.put(host, semaphore);
+        }
+
+        return semaphore;
+    }
+
+    static String getHost(String url)
+    {
+        try {
+            String host = new URL(url).getHost();
+
+            return (host == null ? "" : host.toLowerCase());
+
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+}
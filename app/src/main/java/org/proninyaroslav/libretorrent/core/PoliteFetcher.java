@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core;
+
+import androidx.annotation.NonNull;
+
+import org.proninyaroslav.libretorrent.core.exception.FetchLinkException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+
+/*
+ * Fetches URLs within the per-host limit and retries transient failures
+ * (I/O errors, 5xx and 429 responses) with exponential backoff.
+ * The host limit isn't held while waiting, so other requests
+ * to the host can proceed.
+ */
+
+public class PoliteFetcher
+{
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    public interface Fetcher
+    {
+        byte[] fetch(@NonNull String url) throws FetchLinkException;
+    }
+
+    interface Sleeper
+    {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    private final HostLimiter hostLimiter;
+    private final int maxAttempts;
+    private final long retryTime;
+    private final Fetcher fetcher;
+    private final Sleeper sleeper;
+
+    /*
+     * `retryTime` is the delay before the first retry, it's doubled after each attempt
+     */
+
+    public PoliteFetcher(@NonNull HostLimiter hostLimiter,
+                         int maxAttempts,
+                         long retryTime,
+                         @NonNull Fetcher fetcher)
+    {
+        this(hostLimiter, maxAttempts, retryTime, fetcher, Thread::sleep);
+    }
+
+    PoliteFetcher(@NonNull HostLimiter hostLimiter,
+                  int maxAttempts,
+                  long retryTime,
+                  @NonNull Fetcher fetcher,
+                  @NonNull Sleeper sleeper)
+    {
+        if (maxAttempts <= 0)
+            throw new IllegalArgumentException("Attempts must be greater than 0");
+
+        this.hostLimiter = hostLimiter;
+        this.maxAttempts = maxAttempts;
+        this.retryTime = retryTime;
+        this.fetcher = fetcher;
+        this.sleeper = sleeper;
+    }
+
+    public byte[] fetch(@NonNull String url) throws FetchLinkException, InterruptedException
+    {
+        long delay = retryTime;
+        for (int attempt = 1; ; attempt++) {
+            hostLimiter.acquire(url);
+            try {
+                return fetcher.fetch(url);
+
+            } catch (FetchLinkException e) {
+                if (attempt >= maxAttempts || !isTransient(e))
+                    throw e;
+
+            } finally {
+                hostLimiter.release(url);
+            }
+
+            sleeper.sleep(delay);
+            delay *= 2;
+        }
+    }
+
+    /*
+     * Returns true if the same request may succeed later
+     */
+
+    static boolean isTransient(@NonNull FetchLinkException e)
+    {
+        int code = e.getResponseCode();
+        if (code != FetchLinkException.NO_RESPONSE_CODE)
+            return code >= HttpURLConnection.HTTP_INTERNAL_ERROR || code == HTTP_TOO_MANY_REQUESTS;
+
+        Throwable cause = e.getCause();
+
+        return cause instanceof IOException && !(cause instanceof MalformedURLException);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.collections;
+
+import androidx.annotation.NonNull;
+
+/*
+ * A ring buffer of primitive long values with a fixed capacity, e.g. for
+ * speed history samples. Unlike FixedRingBuffer it doesn't box values
+ * and allocates the whole array at once. Not thread-safe.
+ */
+
+public class FixedLongRingBuffer
+{
+    private final long[] elements;
+    /* Physical index of the first element */
+    private int head;
+    private int size;
+
+    public FixedLongRingBuffer(int capacity)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+
+        elements = new long[capacity];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int capacity()
+    {
+        return elements.length;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public boolean isFull()
+    {
+        return size == elements.length;
+    }
+
+    public void add(long value)
+    {
+        if (size == elements.length) {
+            elements[head] = value;
+            head = ++head == elements.length ? 0 : head;
+
+        } else {
+            elements[physIndex(size)] = value;
+            size++;
+        }
+    }
+
+    /*
+     * Adds `len` values of `src` starting at `from`.
+     * If there are more of them than the capacity, only the last ones are stored
+     */
+
+    public void addAll(@NonNull long[] src, int from, int len)
+    {
+        if (from < 0 || len < 0 || from + len > src.length)
+            throw new IndexOutOfBoundsException("from = " + from + ", len = " + len +
+                    ", length = " + src.length);
+        if (len == 0)
+            return;
+
+        int n = elements.length;
+        if (len > n) {
+            from += len - n;
+            len = n;
+        }
+
+        int start = physIndex(size);
+        int first = Math.min(len, n - start);
+        System.arraycopy(src, from, elements, start, first);
+        System.arraycopy(src, from + first, elements, 0, len - first);
+
+        int overflow = size + len - n;
+        if (overflow > 0) {
+            head = (head + overflow) % n;
+            size = n;
+
+        } else {
+            size += len;
+        }
+    }
+
+    public long get(int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("index = " + index + ", size = " + size);
+
+        return elements[physIndex(index)];
+    }
+
+    public long getLast()
+    {
+        return get(size - 1);
+    }
+
+    /*
+     * Copies `len` values starting at the logical index `from` to the beginning of `dest`
+     */
+
+    @NonNull
+    public long[] copyTo(@NonNull long[] dest, int from, int len)
+    {
+        if (from < 0 || len < 0 || from + len > size)
+            throw new IndexOutOfBoundsException("from = " + from + ", len = " + len +
+                    ", size = " + size);
+        if (len > dest.length)
+            throw new IndexOutOfBoundsException("len = " + len + ", dest length = " + dest.length);
+
+        int start = physIndex(from);
+        int first = Math.min(len, elements.length - start);
+        System.arraycopy(elements, start, dest, 0, first);
+        System.arraycopy(elements, 0, dest, first, len - first);
+
+        return dest;
+    }
+
+    @NonNull
+    public long[] toArray()
+    {
+        return copyTo(new long[size], 0, size);
+    }
+
+    public long max()
+    {
+        long max = Long.MIN_VALUE;
+        for (int i = 0, p = head; i < size; i++) {
+            if (elements[p] > max)
+                max = elements[p];
+            p = ++p == elements.length ? 0 : p;
+        }
+
+        return max;
+    }
+
+    public void clear()
+    {
+        head = 0;
+        size = 0;
+    }
+
+    private int physIndex(int index)
+    {
+        int p = head + index;
+
+        return p >= elements.length ? p - elements.length : p;
+    }
+}
@@ -29,18 +29,25 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /*
  * A ring buffer (circular buffer) with max and init capacity.
+ * The backing array grows up to `capacity`, after that the oldest
+ * elements are overwritten. Not thread-safe.
  */
 
 public class FixedRingBuffer<E> implements Iterable<E>
 {
     private E[] elements;
-    private int head = -1;
-    private int tail;
+    /* Physical index of the first element */
+    private int head;
+    private int size;
     private int capacity;
+    private int modCount;
 
     public FixedRingBuffer(int capacity)
     {
@@ -64,12 +71,12 @@ public class FixedRingBuffer<E> implements Iterable<E>
 
     public int size()
     {
-        if (head == -1)
-            return 0;
-        else if (tail <= head)
-            return (capacity - head) + tail;
-        else
-            return tail - head;
+        return size;
+    }
+
+    public int capacity()
+    {
+        return capacity;
     }
 
     public int getAllocatedSize()
@@ -85,15 +92,82 @@ public class FixedRingBuffer<E> implements Iterable<E>
 
     public void add(E element)
     {
-        tryGrow();
+        if (size == elements.length)
+            tryGrow(size + 1);
+
+        if (size == elements.length) {
+            /* Full, overwrite the oldest element */
+            elements[head] = element;
+            head = next(head);
+
+        } else {
+            elements[physIndex(size)] = element;
+            size++;
+        }
+        modCount++;
+    }
+
+    public void addAll(@NonNull Collection<? extends E> c)
+    {
+        E[] src = (E[])c.toArray();
+        addAll(src, 0, src.length);
+    }
+
+    /*
+     * Adds `len` elements of `src` starting at `from`.
+     * If there are more of them than the capacity, only the last ones are stored
+     */
+
+    public void addAll(@NonNull E[] src, int from, int len)
+    {
+        if (from < 0 || len < 0 || from + len > src.length)
+            throw new IndexOutOfBoundsException("from = " + from + ", len = " + len +
+                    ", length = " + src.length);
+        if (len == 0)
+            return;
+
+        if (len > capacity) {
+            from += len - capacity;
+            len = capacity;
+        }
+        tryGrow(size + len);
+
+        int n = elements.length;
+        int start = physIndex(size);
+        int first = Math.min(len, n - start);
+        System.arraycopy(src, from, elements, start, first);
+        System.arraycopy(src, from + first, elements, 0, len - first);
+
+        int overflow = size + len - n;
+        if (overflow > 0) {
+            head = (head + overflow) % n;
+            size = n;
 
-        if (head < 0)
-            head = 0;
-        else if (tail == head)
-            head = ++head % capacity;
+        } else {
+            size += len;
+        }
+        modCount++;
+    }
+
+    /*
+     * Copies `len` elements starting at the logical index `from` to the beginning of `dest`
+     */
 
-        elements[tail] = element;
-        tail = ++tail % capacity;
+    @NonNull
+    public E[] copyTo(@NonNull E[] dest, int from, int len)
+    {
+        if (from < 0 || len < 0 || from + len > size)
+            throw new IndexOutOfBoundsException("from = " + from + ", len = " + len +
+                    ", size = " + size);
+        if (len > dest.length)
+            throw new IndexOutOfBoundsException("len = " + len + ", dest length = " + dest.length);
+
+        int start = physIndex(from);
+        int first = Math.min(len, elements.length - start);
+        System.arraycopy(elements, start, dest, 0, first);
+        System.arraycopy(elements, 0, dest, first, len - first);
+
+        return dest;
     }
 
     @Nullable
@@ -114,94 +188,129 @@ public class FixedRingBuffer<E> implements Iterable<E>
         if (element == null)
             return -1;
 
-        for (int i = 0; i < size(); i++) {
-            if (element.equals(elements[(head + i) % capacity]))
+        int p = head;
+        for (int i = 0; i < size; i++) {
+            if (element.equals(elements[p]))
                 return i;
+            p = next(p);
         }
 
         return -1;
     }
 
+    /*
+     * Shifts the shorter side of the buffer
+     */
+
     public E removeAt(int index)
     {
-        int size = size();
         if (index < 0 || index >= size)
             throw new IndexOutOfBoundsException("index = " + index + ", size = " + size);
 
-        E res = elements[(head + index) % capacity];
-        for (int i = index; i < size - 1; i++)
-            elements[(head + i) % capacity] = elements[(head + i + 1) % capacity];
-
-        elements[(head + size - 1) % capacity] = null;
-
-        if (tail == 0)
-            tail = size - 1;
-        else
-            tail--;
-
-        if (tail == head) {
-            if (head >= 0)
-                head--;
+        int n = elements.length;
+        int p = physIndex(index);
+        E res = elements[p];
+
+        if (index < size >> 1) {
+            if (p >= head) {
+                System.arraycopy(elements, head, elements, head + 1, p - head);
+
+            } else {
+                System.arraycopy(elements, 0, elements, 1, p);
+                elements[0] = elements[n - 1];
+                System.arraycopy(elements, head, elements, head + 1, n - 1 - head);
+            }
+            elements[head] = null;
+            head = next(head);
+
+        } else {
+            int last = physIndex(size - 1);
+            if (p <= last) {
+                System.arraycopy(elements, p + 1, elements, p, last - p);
+
+            } else {
+                System.arraycopy(elements, p + 1, elements, p, n - 1 - p);
+                elements[n - 1] = elements[0];
+                System.arraycopy(elements, 1, elements, 0, last);
+            }
+            elements[last] = null;
         }
+        size--;
+        modCount++;
 
         return res;
     }
 
     public E get(int index)
     {
-        int size = size();
         if (index < 0 || index >= size)
             throw new IndexOutOfBoundsException("index = " + index + ", size = " + size);
 
-        return elements[(head + index) % capacity];
+        return elements[physIndex(index)];
     }
 
     public void clear()
     {
-        if (isEmpty())
-            return;
-
-        Arrays.fill(elements, 0, size() - 1, null);
-
-        resetHead();
+        Arrays.fill(elements, null);
+        head = 0;
+        size = 0;
+        modCount++;
     }
 
     public boolean isEmpty()
     {
-        return size() == 0;
+        return size == 0;
     }
 
     public boolean isFull()
     {
-        return size() == capacity;
+        return size == capacity;
     }
 
     public boolean contains(E element)
     {
-        for (int i = 0; i < size(); i++) {
-            E e = elements[(head + i) % capacity];
-            if ((element == null && e == null) || (element != null && element.equals(e)))
-                return true;
+        if (element == null) {
+            int p = head;
+            for (int i = 0; i < size; i++) {
+                if (elements[p] == null)
+                    return true;
+                p = next(p);
+            }
+
+            return false;
         }
 
-        return false;
+        return indexOf(element) != -1;
     }
 
-    private void resetHead()
+    private int physIndex(int index)
     {
-        head = -1;
-        tail = 0;
+        int p = head + index;
+
+        return p >= elements.length ? p - elements.length : p;
     }
 
-    private void tryGrow()
+    private int next(int p)
     {
-        if (size() < elements.length || elements.length == capacity)
+        return ++p == elements.length ? 0 : p;
+    }
+
+    private void tryGrow(int minSize)
+    {
+        if (minSize <= elements.length || elements.length == capacity)
             return;
 
-        int newSize = Math.min(elements.length * 2, capacity);
+        int newSize = elements.length;
+        do {
+            newSize = Math.min(Math.max(newSize * 2, 1), capacity);
+        } while (newSize < minSize && newSize < capacity);
+
         E[] newArray = (E[])new Object[newSize];
-        System.arraycopy(elements, 0, newArray, 0, elements.length);
+        int first = Math.min(size, elements.length - head);
+        System.arraycopy(elements, head, newArray, 0, first);
+        System.arraycopy(elements, 0, newArray, first, size - first);
         elements = newArray;
+        head = 0;
     }
 
     @NonNull
@@ -214,17 +323,23 @@ public class FixedRingBuffer<E> implements Iterable<E>
     private class FixedRingBufferIterator implements Iterator<E>
     {
         private int index;
+        private final int expectedModCount = modCount;
 
         @Override
         public boolean hasNext()
         {
-            return index < size();
+            return index < size;
         }
 
         @Override
         public E next()
         {
-            return get(index++);
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (index >= size)
+                throw new NoSuchElementException();
+
+            return elements[physIndex(index++)];
         }
     }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.collections;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * A lock-free ring buffer for multiple producers and a single reader side.
+ * Every offered element gets a monotonically increasing sequence number;
+ * producers never wait for readers, the oldest elements are overwritten
+ * when the buffer is full. Readers address elements by sequence and
+ * detect overwritten slots instead of taking a lock.
+ */
+
+public class MpscRingBuffer<E>
+{
+    private static final long WRITING = -1;
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    /* Sequence of the element stored in the slot, or WRITING */
+    private final AtomicLongArray published;
+    private final AtomicLong nextSeq = new AtomicLong();
+    /* All sequences below this are published (or already overwritten) */
+    private final AtomicLong publishedCursor = new AtomicLong();
+
+    public MpscRingBuffer(int capacity)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        if (size <= 0)
+            throw new IllegalArgumentException("Capacity is too large: " + capacity);
+
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            published.set(i, WRITING);
+    }
+
+    public int capacity()
+    {
+        return mask + 1;
+    }
+
+    /*
+     * Returns the sequence number of the element
+     */
+
+    public long offer(E element)
+    {
+        long seq = nextSeq.getAndIncrement();
+        int i = (int)(seq & mask);
+
+        published.set(i, WRITING);
+        elements.set(i, element);
+        published.set(i, seq);
+
+        return seq;
+    }
+
+    /*
+     * Returns the sequence following the last element that is visible
+     * to readers. Elements below it are either published or overwritten,
+     * an element still being written by a slow producer holds back
+     * the sequences after it
+     */
+
+    public long getPublishedSequence()
+    {
+        long cursor = publishedCursor.get();
+        long start = cursor;
+        long end = nextSeq.get();
+
+        while (cursor < end) {
+            /* Lapped by producers, skip the overwritten sequences */
+            if (end - cursor > capacity())
+                cursor = end - capacity();
+
+            long seq = published.get((int)(cursor & mask));
+            if (seq < cursor)
+                break;
+            cursor++;
+        }
+
+        while (cursor > start) {
+            if (publishedCursor.compareAndSet(start, cursor))
+                break;
+            start = publishedCursor.get();
+        }
+
+        return Math.max(cursor, start);
+    }
+
+    /*
+     * Returns null if the element isn't published yet or already overwritten
+     */
+
+    @Nullable
+    public E get(long seq)
+    {
+        if (seq < 0)
+            return null;
+
+        int i = (int)(seq & mask);
+        if (published.get(i) != seq)
+            return null;
+        E element = elements.get(i);
+
+        return published.get(i) == seq ? element : null;
+    }
+}
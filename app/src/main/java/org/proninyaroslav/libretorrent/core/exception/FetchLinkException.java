@@ -25,6 +25,10 @@ package org.proninyaroslav.libretorrent.core.exception;
 
 public class FetchLinkException extends Exception
 {
+    public static final int NO_RESPONSE_CODE = -1;
+
+    private int responseCode = NO_RESPONSE_CODE;
+
     public FetchLinkException() { }
 
     public FetchLinkException(String message)
@@ -36,4 +40,31 @@ public class FetchLinkException extends Exception
     {
         super(e);
     }
+
+    /*
+     * The server responded with the unexpected HTTP code
+     */
+
+    public FetchLinkException(String message, int responseCode)
+    {
+        super(message);
+
+        this.responseCode = responseCode;
+    }
+
+    public FetchLinkException(String message, Throwable cause, int responseCode)
+    {
+        super(message, cause);
+
+        this.responseCode = responseCode;
+    }
+
+    /*
+     * Returns NO_RESPONSE_CODE if the request failed before the response
+     */
+
+    public int getResponseCode()
+    {
+        return responseCode;
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.filter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.proninyaroslav.libretorrent.core.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/*
+ * Compiled feed channel filter, used to select items for auto-download.
+ * Filters are entered one per line. A keyword line contains words separated
+ * by the separator; it matches if the item title contains one of them, ignoring case.
+ * All keywords of all lines are merged into one automaton, so the title
+ * is scanned only once. In regex mode only the first non-empty line is used
+ * and must match the whole title; an invalid pattern matches everything.
+ */
+
+public class FeedFilter
+{
+    private final String source;
+    private final boolean isRegex;
+    private final String separator;
+    private boolean matchAll;
+    private KeywordMatcher keywords;
+    private Pattern pattern;
+    private String invalidPattern;
+
+    public FeedFilter(@Nullable String source, boolean isRegex, @NonNull String separator)
+    {
+        this.source = source;
+        this.isRegex = isRegex;
+        this.separator = separator;
+
+        compile();
+    }
+
+    private void compile()
+    {
+        if (source == null || source.isEmpty()) {
+            matchAll = true;
+            return;
+        }
+
+        ArrayList<String> words = new ArrayList<>();
+        for (String filter : source.split(Utils.NEWLINE_PATTERN)) {
+            if (filter.isEmpty())
+                continue;
+
+            if (isRegex) {
+                try {
+                    pattern = Pattern.compile(filter);
+
+                } catch (PatternSyntaxException e) {
+                    invalidPattern = filter;
+                    matchAll = true;
+                }
+                return;
+
+            } else {
+                for (String word : filter.split(separator))
+                    words.add(word.toLowerCase().trim());
+            }
+        }
+        keywords = new KeywordMatcher(words);
+    }
+
+    /*
+     * Returns true if the filter was compiled from these settings
+     */
+
+    public boolean isSame(@Nullable String source, boolean isRegex, @NonNull String separator)
+    {
+        return this.isRegex == isRegex &&
+                this.separator.equals(separator) &&
+                (this.source == null ? source == null : this.source.equals(source));
+    }
+
+    /*
+     * Returns the regex that failed to compile, or null
+     */
+
+    @Nullable
+    public String getInvalidPattern()
+    {
+        return invalidPattern;
+    }
+
+    public boolean matches(@NonNull String title)
+    {
+        if (matchAll)
+            return true;
+        if (pattern != null)
+            return pattern.matcher(title).matches();
+
+        return keywords.containsAny(title.toLowerCase());
+    }
+}
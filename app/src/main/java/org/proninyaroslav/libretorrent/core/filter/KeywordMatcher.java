@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.filter;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Aho-Corasick automaton that checks whether a text contains
+ * at least one of the keywords, in a single pass over the text.
+ * Immutable and thread-safe after construction.
+ */
+
+public class KeywordMatcher
+{
+    /* Transitions of node i are labels/targets[childStart[i] .. childStart[i + 1]), sorted by label */
+    private final int[] childStart;
+    private final char[] labels;
+    private final int[] targets;
+    private final int[] fail;
+    /* A keyword ends at this node or at one of its suffixes */
+    private final boolean[] output;
+    private final boolean matchEmpty;
+
+    public KeywordMatcher(@NonNull Collection<String> keywords)
+    {
+        ArrayList<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        ArrayList<Boolean> terminal = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminal.add(false);
+
+        boolean hasEmpty = false;
+        for (String keyword : keywords) {
+            if (keyword.isEmpty()) {
+                hasEmpty = true;
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = keyword.charAt(i);
+                Integer next = trie.get(node).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(node).put(c, next);
+                    trie.add(new TreeMap<>());
+                    terminal.add(false);
+                }
+                node = next;
+            }
+            terminal.set(node, true);
+        }
+        matchEmpty = hasEmpty;
+
+        int numNodes = trie.size();
+        childStart = new int[numNodes + 1];
+        labels = new char[numNodes - 1];
+        targets = new int[numNodes - 1];
+        int pos = 0;
+        for (int i = 0; i < numNodes; i++) {
+            childStart[i] = pos;
+            for (Map.Entry<Character, Integer> e : trie.get(i).entrySet()) {
+                labels[pos] = e.getKey();
+                targets[pos] = e.getValue();
+                pos++;
+            }
+        }
+        childStart[numNodes] = pos;
+
+        /* Breadth-first, so that the fail link of a node is ready before its children */
+        fail = new int[numNodes];
+        output = new boolean[numNodes];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int i = childStart[0]; i < childStart[1]; i++)
+            queue.add(targets[i]);
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            output[node] = terminal.get(node) || output[fail[node]];
+            for (int i = childStart[node]; i < childStart[node + 1]; i++) {
+                int child = targets[i];
+                int f = fail[node];
+                int next;
+                while ((next = step(f, labels[i])) < 0 && f != 0)
+                    f = fail[f];
+                fail[child] = (next < 0 ? 0 : next);
+                queue.add(child);
+            }
+        }
+    }
+
+    /*
+     * Returns true if the text contains any of the keywords
+     */
+
+    public boolean containsAny(@NonNull CharSequence text)
+    {
+        if (matchEmpty)
+            return true;
+
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = step(node, c)) < 0 && node != 0)
+                node = fail[node];
+            node = (next < 0 ? 0 : next);
+            if (output[node])
+                return true;
+        }
+
+        return false;
+    }
+
+    private int step(int node, char c)
+    {
+        int from = childStart[node];
+        int to = childStart[node + 1];
+        if (to - from == 1)
+            return (labels[from] == c ? targets[from] : -1);
+
+        int i = Arrays.binarySearch(labels, from, to, c);
+
+        return (i < 0 ? -1 : targets[i]);
+    }
+}
@@ -20,30 +20,112 @@
 package org.proninyaroslav.libretorrent.core.logger;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
 
+/*
+ * A compact log record. The message is kept as its raw parts (optional
+ * labels plus the text itself) and is only concatenated on the first
+ * access, so entries that are never displayed or written out don't pay
+ * for string building. Tags are interned into small ids, an entry keeps
+ * only the id; loggers can resolve their tags once with internTag().
+ */
+
 public class LogEntry
 {
     private static final String defaultTimeStampFormatter = "yyyy-MM-dd HH:mm:ss.SSS";
-
-    private int id;
+    private static final String[] NO_LABELS = new String[0];
+
+    /* SimpleDateFormat isn't thread-safe, so share one instance per thread */
+    private static final ThreadLocal<SimpleDateFormat> timeStampFormatter =
+            new ThreadLocal<SimpleDateFormat>()
+            {
+                @Override
+                protected SimpleDateFormat initialValue()
+                {
+                    return new SimpleDateFormat(defaultTimeStampFormatter, Locale.getDefault());
+                }
+            };
+
+    /* Tag id -> tag, copied on write so that reads don't need the lock */
+    private static volatile String[] tagNames = new String[0];
+    private static final HashMap<String, Integer> tagIds = new HashMap<>();
+
+    private final int id;
+    private final int tagId;
     @NonNull
-    private String tag;
+    private final String text;
     @NonNull
-    private String msg;
-    private long timeStamp;
-    private SimpleDateFormat timeStampFormatter;
+    private final String[] labels;
+    private final long timeStamp;
+    /* Lazily formatted from `labels` and `text` */
+    @Nullable
+    private volatile String msg;
+
+    public LogEntry(int id, @NonNull String tag, @NonNull String msg, long timeStamp)
+    {
+        this(id, internTag(tag), msg, timeStamp);
+    }
 
-    public LogEntry(int id, @NonNull String tag,@NonNull String msg, long timeStamp)
+    public LogEntry(int id, int tagId, @NonNull String msg, long timeStamp)
     {
         this.id = id;
-        this.tag = tag;
+        this.tagId = tagId;
+        this.text = msg;
+        this.labels = NO_LABELS;
+        this.timeStamp = timeStamp;
         this.msg = msg;
+    }
+
+    /*
+     * The message will be formatted as "[label1] [label2] ... msg" on demand
+     */
+
+    public LogEntry(int id, @NonNull String tag, @NonNull String msg,
+                    long timeStamp, @NonNull String... labels)
+    {
+        this(id, internTag(tag), msg, timeStamp, labels);
+    }
+
+    public LogEntry(int id, int tagId, @NonNull String msg,
+                    long timeStamp, @NonNull String... labels)
+    {
+        this.id = id;
+        this.tagId = tagId;
+        this.text = msg;
+        this.labels = labels;
         this.timeStamp = timeStamp;
-        this.timeStampFormatter = new SimpleDateFormat(defaultTimeStampFormatter,
-                Locale.getDefault());
+    }
+
+    /*
+     * Returns the id of the tag, the same tag always gets the same id
+     */
+
+    public static int internTag(@NonNull String tag)
+    {
+        synchronized (tagIds) {
+            Integer id = tagIds.get(tag);
+            if (id == null) {
+                id = tagNames.length;
+                String[] names = Arrays.copyOf(tagNames, id + 1);
+                names[id] = tag;
+                tagNames = names;
+                tagIds.put(tag, id);
+            }
+
+            return id;
+        }
+    }
+
+    @NonNull
+    public static String getTagName(int tagId)
+    {
+        return tagNames[tagId];
     }
 
     public int getId()
@@ -54,15 +136,58 @@ public class LogEntry
     @NonNull
     public String getTag()
     {
-        return tag;
+        return tagNames[tagId];
+    }
+
+    public int getTagId()
+    {
+        return tagId;
+    }
+
+    public boolean hasTag(@NonNull String tag)
+    {
+        return getTag().equals(tag);
     }
 
     @NonNull
     public String getMsg()
     {
+        String msg = this.msg;
+        if (msg == null) {
+            msg = formatMsg();
+            this.msg = msg;
+        }
+
         return msg;
     }
 
+    private String formatMsg()
+    {
+        if (labels.length == 0)
+            return text;
+
+        int len = text.length();
+        for (String label : labels)
+            len += label.length() + 3;
+
+        StringBuilder sb = new StringBuilder(len);
+        appendMsg(sb);
+
+        return sb.toString();
+    }
+
+    private void appendMsg(StringBuilder sb)
+    {
+        String msg = this.msg;
+        if (msg != null) {
+            sb.append(msg);
+            return;
+        }
+        for (String label : labels)
+            sb.append('[').append(label).append("] ");
+        sb.append(text);
+    }
+
     public long getTimeStamp()
     {
         return timeStamp;
@@ -70,7 +195,7 @@ public class LogEntry
 
     public String getTimeStampAsString()
     {
-        return timeStampFormatter.format(this.timeStamp);
+        return timeStampFormatter.get().format(new Date(timeStamp));
     }
 
     @Override
@@ -85,16 +210,16 @@ public class LogEntry
 
         return id == entry.id &&
                 timeStamp == entry.timeStamp &&
-                tag.equals(entry.tag) &&
-                msg.equals(entry.msg);
+                tagId == entry.tagId &&
+                getMsg().equals(entry.getMsg());
     }
 
     @Override
     public int hashCode()
     {
         int result = id;
-        result = 31 * result + tag.hashCode();
-        result = 31 * result + msg.hashCode();
+        result = 31 * result + tagId;
+        result = 31 * result + getMsg().hashCode();
         result = 31 * result + (int) (timeStamp ^ (timeStamp >>> 32));
 
         return result;
@@ -102,12 +227,25 @@ public class LogEntry
 
     public String toStringWithTimeStamp()
     {
-        return getTimeStampAsString() + " " + toString();
+        StringBuilder sb = new StringBuilder();
+        sb.append(getTimeStampAsString()).append(' ');
+        appendTo(sb);
+
+        return sb.toString();
     }
 
     @Override
     public String toString()
     {
-        return "[" + tag + "] " + msg;
+        StringBuilder sb = new StringBuilder();
+        appendTo(sb);
+
+        return sb.toString();
+    }
+
+    private void appendTo(StringBuilder sb)
+    {
+        sb.append('[').append(getTag()).append("] ");
+        appendMsg(sb);
     }
 }
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.logger;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * Append-only journal of log entries, stored in fixed-size memory-mapped
+ * segment files. At most `maxEntries` newest entries are kept; when the
+ * number of segments exceeds the limit or a segment has only evicted entries,
+ * the oldest segment is dropped. Only the entry offsets (4 bytes per entry)
+ * are kept on the heap, entries are decoded on demand.
+ *
+ * Record format (big-endian):
+ *   int   length of the rest of the record
+ *   int   entry id
+ *   long  timestamp
+ *   short interned tag id (see LogEntry.internTag())
+ *   byte[] UTF-8 message
+ *
+ * Tag ids are valid only within the process; the journal lives only as long as
+ * the logging session, the directory is cleaned on open and on close.
+ */
+
+class LogJournal implements LogStore
+{
+    private static final String TAG = LogJournal.class.getSimpleName();
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 18;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File dir;
+    private final int segmentSize;
+    private final int maxSegments;
+    private int maxEntries;
+    private final ArrayList<Segment> segments = new ArrayList<>();
+    private long endIndex;
+    private int nextSegmentNumber;
+
+    LogJournal(@NonNull File dir, int segmentSize, int maxSegments, int maxEntries)
+    {
+        if (segmentSize <= HEADER_SIZE)
+            throw new IllegalArgumentException("Segment size is too small: " + segmentSize);
+        if (maxSegments <= 0)
+            throw new IllegalArgumentException("Maximum segments must be greater than 0");
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("Maximum entries must be greater than 0");
+
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.maxEntries = maxEntries;
+
+        deleteSegmentFiles();
+    }
+
+    private static class Segment
+    {
+        final File file;
+        final MappedByteBuffer buf;
+        final long firstIndex;
+        int[] offsets = new int[1024];
+        int count;
+        int writePos;
+
+        Segment(File file, MappedByteBuffer buf, long firstIndex)
+        {
+            this.file = file;
+            this.buf = buf;
+            this.firstIndex = firstIndex;
+        }
+
+        void addOffset(int offset)
+        {
+            if (count == offsets.length)
+                offsets = Arrays.copyOf(offsets, count * 2);
+            offsets[count++] = offset;
+        }
+    }
+
+    /*
+     * Returns -1 if the entry cannot be written
+     */
+
+    @Override
+    public long append(@NonNull LogEntry entry)
+    {
+        byte[] msg = entry.getMsg().getBytes(UTF_8);
+        int msgLen = Math.min(msg.length, segmentSize - HEADER_SIZE);
+        int recordSize = HEADER_SIZE + msgLen;
+
+        Segment s = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (s == null || s.writePos + recordSize > segmentSize) {
+            try {
+                s = rotate();
+
+            } catch (IOException e) {
+                Log.e(TAG, Log.getStackTraceString(e));
+                return -1;
+            }
+        }
+
+        int offset = s.writePos;
+        ByteBuffer b = s.buf;
+        b.putInt(offset, recordSize - 4);
+        b.putInt(offset + 4, entry.getId());
+        b.putLong(offset + 8, entry.getTimeStamp());
+        b.putShort(offset + 16, (short)entry.getTagId());
+        ByteBuffer dup = b.duplicate();
+        dup.position(offset + HEADER_SIZE);
+        dup.put(msg, 0, msgLen);
+
+        s.writePos += recordSize;
+        s.addOffset(offset);
+        long index = endIndex++;
+        dropEvictedSegments();
+
+        return index;
+    }
+
+    /*
+     * Drops the oldest segments that have only entries beyond `maxEntries`
+     */
+
+    private void dropEvictedSegments()
+    {
+        long first = endIndex - maxEntries;
+        while (segments.size() > 1 && segments.get(1).firstIndex <= first) {
+            Segment old = segments.remove(0);
+            deleteFile(old.file);
+        }
+    }
+
+    private Segment rotate() throws IOException
+    {
+        if (!dir.exists() && !dir.mkdirs())
+            throw new IOException("Unable to create journal dir " + dir);
+
+        File file = new File(dir, SEGMENT_PREFIX + nextSegmentNumber++ + SEGMENT_SUFFIX);
+        MappedByteBuffer buf;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(segmentSize);
+            /* The mapping stays valid after the channel is closed */
+            buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+
+        Segment s = new Segment(file, buf, endIndex);
+        segments.add(s);
+        while (segments.size() > maxSegments) {
+            Segment old = segments.remove(0);
+            deleteFile(old.file);
+        }
+
+        return s;
+    }
+
+    @Override
+    public long getFirstIndex()
+    {
+        if (segments.isEmpty())
+            return endIndex;
+
+        return Math.max(segments.get(0).firstIndex, endIndex - maxEntries);
+    }
+
+    @Override
+    public long getEndIndex()
+    {
+        return endIndex;
+    }
+
+    @Nullable
+    @Override
+    public LogEntry get(long index)
+    {
+        Segment s = findSegment(index);
+        if (s == null)
+            return null;
+
+        int offset = s.offsets[(int)(index - s.firstIndex)];
+        ByteBuffer b = s.buf;
+        int msgLen = b.getInt(offset) + 4 - HEADER_SIZE;
+        int id = b.getInt(offset + 4);
+        long timeStamp = b.getLong(offset + 8);
+        int tagId = b.getShort(offset + 16) & 0xFFFF;
+        byte[] msg = new byte[msgLen];
+        ByteBuffer dup = b.duplicate();
+        dup.position(offset + HEADER_SIZE);
+        dup.get(msg);
+
+        return new LogEntry(id, tagId, new String(msg, UTF_8), timeStamp);
+    }
+
+    private Segment findSegment(long index)
+    {
+        if (index < getFirstIndex() || index >= endIndex)
+            return null;
+
+        /* Usually the reads are close to the end */
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment s = segments.get(i);
+            if (index >= s.firstIndex)
+                return s;
+        }
+
+        return null;
+    }
+
+    @Override
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /*
+     * Entries beyond the new limit are evicted
+     */
+
+    void setMaxEntries(int maxEntries)
+    {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("Maximum entries must be greater than 0");
+
+        this.maxEntries = maxEntries;
+        dropEvictedSegments();
+    }
+
+    int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    @Override
+    public void clear()
+    {
+        segments.clear();
+        deleteSegmentFiles();
+    }
+
+    @Override
+    public void close()
+    {
+        clear();
+    }
+
+    private void deleteSegmentFiles()
+    {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+
+        for (File f : files) {
+            String name = f.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                deleteFile(f);
+        }
+    }
+
+    private void deleteFile(File f)
+    {
+        if (!f.delete())
+            Log.w(TAG, "Unable to delete journal segment " + f);
+    }
+}
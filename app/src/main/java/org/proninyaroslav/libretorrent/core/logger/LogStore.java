@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.logger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+
+/*
+ * Storage of raw (unfiltered) log entries. Every appended entry gets
+ * a monotonically increasing index; the oldest entries are evicted
+ * according to the storage limits, so that valid indexes are always
+ * in the range [getFirstIndex(), getEndIndex()).
+ * Implementations aren't thread-safe.
+ */
+
+interface LogStore extends Closeable
+{
+    long append(@NonNull LogEntry entry);
+
+    long getFirstIndex();
+
+    long getEndIndex();
+
+    /*
+     * Returns null if the entry has been evicted
+     */
+
+    @Nullable
+    LogEntry get(long index);
+
+    /*
+     * Maximum number of entries that can be stored, if known
+     */
+
+    int getMaxEntries();
+
+    void clear();
+
+    @Override
+    void close();
+}
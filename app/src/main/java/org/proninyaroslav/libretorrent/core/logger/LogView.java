@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.logger;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * Maps positions of the visible (filtered) entries to the store indexes.
+ *
+ * The store index space is split into segments of SEGMENT_SIZE entries,
+ * every segment keeps the tag of each entry (as a byte) and the number
+ * of entries per tag. Hiding or showing a tag only changes the tag mask
+ * and invalidates the per-segment prefix sums, a position lookup is
+ * a binary search over the segments plus a scan inside one segment.
+ *
+ * Arbitrary predicate filters can't be indexed this way, if there are any,
+ * the indexes of the matched entries are kept in a separate list
+ * that is rebuilt on every filter change.
+ */
+
+class LogView
+{
+    static final int SEGMENT_SIZE = 1024;
+    /* Tags above this limit share the last id and can't be hidden */
+    static final int MAX_TAGS = 256;
+
+    /* Interned tag id (see LogEntry.internTag()) -> local id + 1, 0 if not seen yet */
+    private int[] tagIds = new int[16];
+    private final boolean[] hiddenTags = new boolean[MAX_TAGS];
+    private int numTags;
+    private final ArrayList<Segment> segments = new ArrayList<>();
+    /* prefix[i] = number of visible entries in the segments before i */
+    private int[] prefix = new int[0];
+    private int prefixCount;
+
+    private boolean predicateMode;
+    private long[] indexes = new long[0];
+    private int head;
+    private int tail;
+
+    private static class Segment
+    {
+        final long start;
+        final byte[] tags = new byte[SEGMENT_SIZE];
+        final int[] tagCounts = new int[MAX_TAGS];
+        int count;
+
+        Segment(long start)
+        {
+            this.start = start;
+        }
+    }
+
+    void clear()
+    {
+        segments.clear();
+        prefixCount = 0;
+        resetPredicateIndex(predicateMode);
+    }
+
+    /*
+     * Returns true if the visibility of the tag has changed
+     */
+
+    boolean setTagHidden(@NonNull String tag, boolean hidden)
+    {
+        int id = getLocalTagId(LogEntry.internTag(tag));
+        /* The last id is shared only if there are more tags than ids */
+        if (id == MAX_TAGS - 1 && numTags > MAX_TAGS)
+            return false;
+        if (hiddenTags[id] == hidden)
+            return false;
+
+        hiddenTags[id] = hidden;
+        prefixCount = 0;
+
+        return true;
+    }
+
+    boolean isTagVisible(int tagId)
+    {
+        if (tagId >= tagIds.length || tagIds[tagId] == 0)
+            return true;
+
+        return !hiddenTags[tagIds[tagId] - 1];
+    }
+
+    boolean isPredicateMode()
+    {
+        return predicateMode;
+    }
+
+    /*
+     * The caller adds the matched entries with addMatched() after that
+     */
+
+    void resetPredicateIndex(boolean predicateMode)
+    {
+        this.predicateMode = predicateMode;
+        indexes = new long[predicateMode ? 64 : 0];
+        head = 0;
+        tail = 0;
+    }
+
+    /*
+     * Must be called for every stored entry, in ascending order of indexes
+     */
+
+    void add(long index, int tagId)
+    {
+        Segment s = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (s == null || s.count == SEGMENT_SIZE || index != s.start + s.count) {
+            s = new Segment(index);
+            segments.add(s);
+        }
+
+        int id = getLocalTagId(tagId);
+        s.tags[s.count++] = (byte)id;
+        s.tagCounts[id]++;
+    }
+
+    void addMatched(long index)
+    {
+        if (!predicateMode)
+            return;
+
+        if (tail == indexes.length) {
+            int size = tail - head;
+            /* Compact instead of growing if more than half is evicted */
+            if (head > indexes.length / 2) {
+                System.arraycopy(indexes, head, indexes, 0, size);
+
+            } else {
+                indexes = Arrays.copyOfRange(indexes, head, Math.max(indexes.length * 2, 64));
+            }
+            head = 0;
+            tail = size;
+        }
+        indexes[tail++] = index;
+    }
+
+    int size(@NonNull LogStore store)
+    {
+        long first = store.getFirstIndex();
+        if (predicateMode) {
+            trimIndexes(first);
+            return tail - head;
+        }
+
+        trimSegments(first);
+        if (segments.isEmpty())
+            return 0;
+
+        int last = segments.size() - 1;
+
+        return getPrefix(last) + visibleCount(segments.get(last)) - visibleBefore(first);
+    }
+
+    long getIndex(@NonNull LogStore store, int pos)
+    {
+        long first = store.getFirstIndex();
+        if (predicateMode) {
+            trimIndexes(first);
+            return indexes[head + pos];
+        }
+
+        trimSegments(first);
+        int target = pos + visibleBefore(first);
+
+        /* Find the last segment with prefix <= target */
+        int lo = 0;
+        int hi = segments.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (getPrefix(mid) <= target)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+
+        Segment s = segments.get(lo);
+        int remaining = target - getPrefix(lo);
+        for (int i = 0; i < s.count; i++) {
+            if (hiddenTags[s.tags[i] & 0xFF])
+                continue;
+            if (remaining-- == 0)
+                return s.start + i;
+        }
+
+        throw new IndexOutOfBoundsException("pos = " + pos);
+    }
+
+    /*
+     * Returns the position of the first visible entry with index >= `index`
+     */
+
+    int positionOf(@NonNull LogStore store, long index)
+    {
+        long first = store.getFirstIndex();
+        if (predicateMode) {
+            trimIndexes(first);
+            int pos = Arrays.binarySearch(indexes, head, tail, index);
+
+            return (pos >= 0 ? pos : -pos - 1) - head;
+        }
+
+        trimSegments(first);
+        if (segments.isEmpty())
+            return 0;
+        index = Math.max(index, first);
+
+        int i = segments.size() - 1;
+        while (i > 0 && segments.get(i).start > index)
+            i--;
+        Segment s = segments.get(i);
+        int pos = getPrefix(i);
+        int end = (int)Math.min(index - s.start, s.count);
+        for (int j = 0; j < end; j++) {
+            if (!hiddenTags[s.tags[j] & 0xFF])
+                pos++;
+        }
+
+        return pos - visibleBefore(first);
+    }
+
+    private int getLocalTagId(int tagId)
+    {
+        if (tagId >= tagIds.length)
+            tagIds = Arrays.copyOf(tagIds, Math.max(tagId + 1, tagIds.length * 2));
+
+        int id = tagIds[tagId] - 1;
+        if (id < 0) {
+            id = Math.min(numTags++, MAX_TAGS - 1);
+            tagIds[tagId] = id + 1;
+        }
+
+        return id;
+    }
+
+    private int visibleCount(Segment s)
+    {
+        int count = s.count;
+        for (int id = 0; id < numTags && id < MAX_TAGS; id++) {
+            if (hiddenTags[id])
+                count -= s.tagCounts[id];
+        }
+
+        return count;
+    }
+
+    /*
+     * Visible entries of the first segment that are already evicted from the store
+     */
+
+    private int visibleBefore(long first)
+    {
+        if (segments.isEmpty())
+            return 0;
+
+        Segment s = segments.get(0);
+        int end = (int)Math.min(Math.max(first - s.start, 0), s.count);
+        int count = 0;
+        for (int i = 0; i < end; i++) {
+            if (!hiddenTags[s.tags[i] & 0xFF])
+                count++;
+        }
+
+        return count;
+    }
+
+    private int getPrefix(int segment)
+    {
+        if (prefix.length < segments.size())
+            prefix = Arrays.copyOf(prefix, Math.max(segments.size(), prefix.length * 2));
+
+        if (prefixCount == 0 && !segments.isEmpty()) {
+            prefix[0] = 0;
+            prefixCount = 1;
+        }
+        /* Full segments don't change, so the prefix sums can be extended */
+        while (prefixCount <= segment) {
+            int i = prefixCount;
+            prefix[i] = prefix[i - 1] + visibleCount(segments.get(i - 1));
+            prefixCount++;
+        }
+
+        return prefix[segment];
+    }
+
+    private void trimSegments(long first)
+    {
+        int remove = 0;
+        while (remove < segments.size()) {
+            Segment s = segments.get(remove);
+            if (s.start + s.count > first || remove == segments.size() - 1)
+                break;
+            remove++;
+        }
+        if (remove > 0) {
+            segments.subList(0, remove).clear();
+            prefixCount = 0;
+        }
+    }
+
+    private void trimIndexes(long first)
+    {
+        while (head < tail && indexes[head] < first)
+            head++;
+    }
+}
@@ -22,8 +22,10 @@ package org.proninyaroslav.libretorrent.core.logger;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import org.proninyaroslav.libretorrent.core.collections.FixedRingBuffer;
+import org.proninyaroslav.libretorrent.core.collections.MpscRingBuffer;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
@@ -31,28 +33,44 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 import io.reactivex.Observable;
 import io.reactivex.subjects.PublishSubject;
 
+/*
+ * Producers publish entries into a lock-free ring buffer and never wait
+ * for readers. The drain thread moves them into the store (heap or
+ * a disk journal) by sequence numbers; the filtered view over the store
+ * is only touched by readers and the drain thread under `viewLock`.
+ */
+
 public class Logger
 {
     protected static final long POLL_TIME_INTERVAL = 250; /* ms */
-
-    protected FixedRingBuffer<LogEntry> inputBuf;
-    protected  FixedRingBuffer<LogEntry> outputBuf;
-    /* `numPendingLogs` <= `maxStoredLogs` */
-    protected int numPendingLogs;
+    protected static final int JOURNAL_SEGMENT_SIZE = 4 * 1024 * 1024;
+    protected static final int JOURNAL_MAX_SEGMENTS = 32;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    protected volatile MpscRingBuffer<LogEntry> ring;
+    /* Next ring sequence that isn't in the store yet */
+    protected volatile long drainSeq;
+    protected LogStore store;
+    protected LogView view = new LogView();
+    /* Predicate filters, can't be indexed */
     protected HashMap<String, LogFilter> filters = new HashMap<>();
-    protected ReentrantLock logLock = new ReentrantLock();
-    protected int maxStoredLogs;
+    /* Filter name -> hidden tag */
+    protected HashMap<String, String> tagFilters = new HashMap<>();
+    protected ReentrantLock viewLock = new ReentrantLock();
+    protected volatile int maxStoredLogs;
     protected PublishSubject<DataSetChange> dataSetChangedPublish = PublishSubject.create();
     protected ExecutorService sender = Executors.newSingleThreadExecutor();
-    protected Thread pendingThread;
-    protected boolean paused;
+    protected volatile Thread pendingThread;
+    protected volatile boolean paused;
     protected boolean recording;
-    protected int recordStartIndex = -1;
+    /* Store index of the first recorded entry */
+    protected long recordStartIndex = -1;
 
     public Logger(int maxStoredLogs)
     {
@@ -62,146 +80,204 @@ public class Logger
         this.maxStoredLogs = maxStoredLogs;
     }
 
-    private FixedRingBuffer<LogEntry> lazyGetInputBuf()
+    private MpscRingBuffer<LogEntry> lazyGetRing()
     {
-        if (inputBuf == null)
-            inputBuf = new FixedRingBuffer<>(calcInitBufCapacity(maxStoredLogs), maxStoredLogs);
-
-        if (pendingThread == null) {
-            pendingThread = new Thread(this::periodicSwapBuffers);
-            pendingThread.start();
+        MpscRingBuffer<LogEntry> ring = this.ring;
+        if (ring != null)
+            return ring;
 
-        } else if (!pendingThread.isAlive()) {
-            try {
+        synchronized (this) {
+            if (this.ring == null) {
+                this.ring = new MpscRingBuffer<>(maxStoredLogs);
+                pendingThread = new Thread(this::periodicDrain);
+                pendingThread.setDaemon(true);
                 pendingThread.start();
-
-            } catch (IllegalThreadStateException e) {
-                /* Already started, ignore */
             }
-        }
 
-        return inputBuf;
+            return this.ring;
+        }
     }
 
-    private FixedRingBuffer<LogEntry> lazyGetOutputBuf()
+    private LogStore lazyGetStore()
     {
-        if (outputBuf == null)
-            outputBuf = new FixedRingBuffer<>(calcInitBufCapacity(maxStoredLogs), maxStoredLogs);
+        if (store == null)
+            store = new MemoryLogStore(maxStoredLogs);
 
-        return outputBuf;
-    }
-
-    private int calcInitBufCapacity(int capacity)
-    {
-        return (int) Math.floor(capacity / 2);
+        return store;
     }
 
     protected void send(@NonNull LogEntry entry)
     {
-        logLock.lock();
+        MpscRingBuffer<LogEntry> ring = lazyGetRing();
+        long seq = ring.offer(entry);
 
-        try {
-            lazyGetInputBuf().add(entry);
-            if (numPendingLogs < maxStoredLogs)
-                numPendingLogs++;
-
-        } finally {
-            logLock.unlock();
+        /* Wake up the drain thread before the ring overflows */
+        if (seq - drainSeq >= ring.capacity() / 2) {
+            Thread t = pendingThread;
+            if (t != null)
+                LockSupport.unpark(t);
         }
     }
 
-    private void periodicSwapBuffers()
+    private void periodicDrain()
     {
         while (!Thread.interrupted()) {
             if (!paused) {
-                if (logLock.tryLock()) {
+                if (viewLock.tryLock()) {
                     try {
                         if (Thread.interrupted())
                             break;
 
-                        swapBuffers();
+                        drain();
 
                     } finally {
-                        logLock.unlock();
+                        viewLock.unlock();
                     }
                 }
             }
 
-            try {
-                Thread.sleep(POLL_TIME_INTERVAL);
-
-            } catch (InterruptedException e) {
-                break;
-            }
+            LockSupport.parkNanos(POLL_TIME_INTERVAL * 1000000L);
         }
     }
 
-    private void swapBuffers()
+    /*
+     * Must be called with `viewLock` held
+     */
+
+    private void drain()
     {
-        if (numPendingLogs == 0)
+        MpscRingBuffer<LogEntry> ring = this.ring;
+        if (ring == null)
             return;
 
-        FixedRingBuffer<LogEntry> inputBuf = lazyGetInputBuf();
-        if (inputBuf.isEmpty())
+        long limit = ring.getPublishedSequence();
+        if (limit <= drainSeq)
             return;
-        FixedRingBuffer<LogEntry> outputBuf = lazyGetOutputBuf();
-
-        ArrayList<LogEntry> newEntries = new ArrayList<>(numPendingLogs);
-        int size = inputBuf.size();
-        for (int i = size - numPendingLogs; i < size; i++) {
-            LogEntry entry = applyFilters(inputBuf.get(i));
-            if (entry != null) {
-                outputBuf.add(entry);
+        /* Entries that have been overwritten in the ring are lost */
+        long seq = Math.max(drainSeq, limit - ring.capacity());
+        drainSeq = limit;
+
+        LogStore store = lazyGetStore();
+        ArrayList<LogEntry> newEntries = new ArrayList<>((int)(limit - seq));
+        for (; seq < limit; seq++) {
+            LogEntry entry = ring.get(seq);
+            if (entry == null)
+                continue;
+
+            long index = store.append(entry);
+            if (index < 0)
+                continue;
+
+            view.add(index, entry.getTagId());
+            if (isVisible(entry)) {
+                view.addMatched(index);
                 newEntries.add(entry);
-
-                /* Move old position back */
-                if (recording && recordStartIndex > 0)
-                    recordStartIndex--;
             }
         }
-        numPendingLogs = 0;
 
         if (!newEntries.isEmpty())
             submitDataSetChanged(new DataSetChange(DataSetChange.Reason.NEW_ENTRIES, newEntries));
     }
 
+    /*
+     * The view is frozen while paused, so that consecutive
+     * reads (e.g. size and then range) see the same snapshot
+     */
+
+    private void syncView()
+    {
+        if (!paused)
+            drain();
+    }
+
     private void submitDataSetChanged(DataSetChange change)
     {
         sender.submit(() -> dataSetChangedPublish.onNext(change));
     }
 
     /*
-     * Set the maximum number of stored log entries in memory
+     * Set the maximum number of stored log entries, both in memory and in the journal
      */
 
     public void setMaxStoredLogs(int max)
     {
-        logLock.lock();
+        viewLock.lock();
 
         try {
             doClean();
             maxStoredLogs = max;
+            if (store instanceof LogJournal)
+                ((LogJournal)store).setMaxEntries(max);
 
         } finally {
-            logLock.unlock();
+            viewLock.unlock();
         }
     }
 
     public int getMaxStoredLogs()
     {
-        logLock.lock();
+        return maxStoredLogs;
+    }
+
+    /*
+     * Keep entries in memory-mapped segment files inside `dir` instead
+     * of the heap. The number of entries is still limited by `maxStoredLogs`,
+     * and also by the journal size (JOURNAL_SEGMENT_SIZE * JOURNAL_MAX_SEGMENTS
+     * bytes) if the messages are long. Current entries are discarded
+     */
+
+    public void openJournal(@NonNull File dir)
+    {
+        viewLock.lock();
 
         try {
-            return maxStoredLogs;
+            if (store instanceof LogJournal)
+                return;
+
+            doClean();
+            store = new LogJournal(dir, JOURNAL_SEGMENT_SIZE, JOURNAL_MAX_SEGMENTS, maxStoredLogs);
 
         } finally {
-            logLock.unlock();
+            viewLock.unlock();
+        }
+    }
+
+    /*
+     * Deletes the journal files and switches back to the heap storage
+     */
+
+    public void closeJournal()
+    {
+        viewLock.lock();
+
+        try {
+            if (!(store instanceof LogJournal))
+                return;
+
+            store.close();
+            store = null;
+            doClean();
+
+        } finally {
+            viewLock.unlock();
+        }
+    }
+
+    public boolean isJournalOpen()
+    {
+        viewLock.lock();
+
+        try {
+            return store instanceof LogJournal;
+
+        } finally {
+            viewLock.unlock();
         }
     }
 
     public void addFilter(@NonNull NewFilter... filters)
     {
-        logLock.lock();
+        viewLock.lock();
 
         try {
             int addedFilters = 0;
@@ -209,20 +285,27 @@ public class Logger
                 if (filter == null)
                     continue;
 
-                this.filters.put(filter.name, filter.filter);
+                removeFilterByName(filter.name);
+                if (filter.tag == null) {
+                    this.filters.put(filter.name, filter.filter);
+
+                } else {
+                    tagFilters.put(filter.name, filter.tag);
+                    view.setTagHidden(filter.tag, true);
+                }
                 addedFilters++;
             }
             if (addedFilters > 0)
-                forceFilterBuf();
+                updateView();
 
         } finally {
-            logLock.unlock();
+            viewLock.unlock();
         }
     }
 
     public void removeFilter(@NonNull String... filterNames)
     {
-        logLock.lock();
+        viewLock.lock();
 
         try {
             int removedFilters = 0;
@@ -230,27 +313,51 @@ public class Logger
                 if (name == null)
                     continue;
 
-                if (filters.remove(name) != null)
+                if (removeFilterByName(name))
                     removedFilters++;
             }
             if (removedFilters > 0)
-                forceFilterBuf();
+                updateView();
 
         } finally {
-            logLock.unlock();
+            viewLock.unlock();
         }
     }
 
-    private void forceFilterBuf()
+    private boolean removeFilterByName(String name)
+    {
+        if (filters.remove(name) != null)
+            return true;
+
+        String tag = tagFilters.remove(name);
+        if (tag == null)
+            return false;
+        /* The same tag can be hidden by another filter */
+        view.setTagHidden(tag, tagFilters.containsValue(tag));
+
+        return true;
+    }
+
+    /*
+     * Tag filters only change the tag mask of the view. With predicate
+     * filters every stored entry has to be checked again
+     */
+
+    private void updateView()
     {
-        FixedRingBuffer<LogEntry> inputBuf = lazyGetInputBuf();
-        FixedRingBuffer<LogEntry> outputBuf = lazyGetOutputBuf();
+        LogStore store = lazyGetStore();
+        drain();
 
-        outputBuf.clear();
-        for (LogEntry entry : inputBuf) {
-            entry = applyFilters(entry);
-            if (entry != null)
-                outputBuf.add(entry);
+        if (!filters.isEmpty() || view.isPredicateMode()) {
+            view.resetPredicateIndex(!filters.isEmpty());
+            if (view.isPredicateMode()) {
+                long end = store.getEndIndex();
+                for (long i = store.getFirstIndex(); i < end; i++) {
+                    LogEntry entry = store.get(i);
+                    if (entry != null && isVisible(entry))
+                        view.addMatched(i);
+                }
+            }
         }
 
         submitDataSetChanged(new DataSetChange(DataSetChange.Reason.FILTER));
@@ -270,87 +377,88 @@ public class Logger
 
     public List<LogEntry> getEntries(int startPos, int maxSize)
     {
-        logLock.lock();
+        viewLock.lock();
 
         try {
-            if (startPos < 0 || startPos >= maxStoredLogs)
+            LogStore store = lazyGetStore();
+            if (startPos < 0 || startPos >= store.getMaxEntries())
                 throw new IllegalArgumentException("Invalid start position = " + startPos);
             if (maxSize < 0)
                 throw new IllegalArgumentException("Size must be greater than 0");
 
-            FixedRingBuffer<LogEntry> outputBuf = lazyGetOutputBuf();
-            swapBuffers();
+            syncView();
 
             ArrayList<LogEntry> res = new ArrayList<>(maxSize);
-            int endPos = startPos + maxSize;
-            for (int i = startPos; i < endPos; i++) {
-                if (i >= outputBuf.size())
-                    continue;
-
-                res.add(outputBuf.get(i));
-            }
+            int endPos = Math.min(startPos + maxSize, view.size(store));
+            for (int i = startPos; i < endPos; i++)
+                res.add(store.get(view.getIndex(store, i)));
 
             return res;
 
         } finally {
-            logLock.unlock();
+            viewLock.unlock();
         }
     }
 
     @Nullable
     public LogEntry getEntry(int pos)
     {
-        logLock.lock();
+        viewLock.lock();
 
         try {
-            FixedRingBuffer<LogEntry> outputBuf = lazyGetOutputBuf();
-            swapBuffers();
+            LogStore store = lazyGetStore();
+            syncView();
 
-            if (pos < 0 || pos >= outputBuf.size())
+            if (pos < 0 || pos >= view.size(store))
                 throw new IllegalArgumentException("Invalid position = " + pos);
 
-            return outputBuf.get(pos);
+            return store.get(view.getIndex(store, pos));
 
         } finally {
-            logLock.unlock();
+            viewLock.unlock();
         }
     }
 
-    private LogEntry applyFilters(LogEntry entry)
+    private boolean isVisible(@NonNull LogEntry entry)
     {
+        if (!view.isTagVisible(entry.getTagId()))
+            return false;
+
         for (LogFilter f : filters.values()) {
             if (!f.apply(entry))
-                return null;
+                return false;
         }
 
-        return entry;
+        return true;
     }
 
     public void startRecording()
     {
-        logLock.lock();
+        viewLock.lock();
 
         try {
-            swapBuffers();
+            LogStore store = lazyGetStore();
+            syncView();
 
             recording = true;
-            int size = lazyGetOutputBuf().size();
-            recordStartIndex = (size > 0 ? size - 1 : 0);
+            /* Start from the last visible entry */
+            int size = view.size(store);
+            recordStartIndex = (size > 0 ? view.getIndex(store, size - 1) : store.getEndIndex());
 
         } finally {
-            logLock.unlock();
+            viewLock.unlock();
         }
     }
 
     public boolean isRecording()
     {
-        logLock.lock();
+        viewLock.lock();
 
         try {
             return recording;
 
         } finally {
-            logLock.unlock();
+            viewLock.unlock();
         }
     }
 
@@ -371,20 +479,21 @@ public class Logger
 
     public int stopRecording(@Nullable OutputStream os, boolean timeStamp)
     {
-        logLock.lock();
+        viewLock.lock();
 
         try {
             int count = 0;
 
             if (os != null) {
-                swapBuffers();
+                syncView();
 
                 if (recordStartIndex < 0)
                     return count;
 
-                FixedRingBuffer<LogEntry> outputBuf = lazyGetOutputBuf();
+                LogStore store = lazyGetStore();
+                int startPos = view.positionOf(store, recordStartIndex);
 
-                return write(outputBuf, os, recordStartIndex, outputBuf.size() - 1, timeStamp);
+                return write(store, os, startPos, view.size(store) - 1, timeStamp);
             }
 
             return count;
@@ -393,7 +502,7 @@ public class Logger
             recording = false;
             recordStartIndex = -1;
 
-            logLock.unlock();
+            viewLock.unlock();
         }
     }
 
@@ -409,20 +518,25 @@ public class Logger
 
     public int write(@NonNull OutputStream os, boolean timeStamp)
     {
-        logLock.lock();
+        viewLock.lock();
 
         try {
-            swapBuffers();
-            FixedRingBuffer<LogEntry> outputBuf = lazyGetOutputBuf();
+            syncView();
+            LogStore store = lazyGetStore();
 
-            return write(outputBuf, os, 0, outputBuf.size() - 1, timeStamp);
+            return write(store, os, 0, view.size(store) - 1, timeStamp);
 
         } finally {
-            logLock.unlock();
+            viewLock.unlock();
         }
     }
 
-    private int write(FixedRingBuffer<LogEntry> buf, OutputStream os,
+    /*
+     * Entries are read from the store one by one, so the whole
+     * log is never materialized on the heap
+     */
+
+    private int write(LogStore store, OutputStream os,
                       int startPos, int endPos, boolean timeStamp)
     {
         if (startPos < 0)
@@ -430,30 +544,35 @@ public class Logger
 
         int count = 0;
 
-        PrintStream printStream = new PrintStream(os, true);
+        PrintStream printStream = new PrintStream(
+                new BufferedOutputStream(os, WRITE_BUFFER_SIZE), false);
 
         for (int i = startPos; i <= endPos; i++) {
-            LogEntry entry = buf.get(i);
+            LogEntry entry = store.get(view.getIndex(store, i));
+            if (entry == null)
+                continue;
+
             printStream.println(timeStamp ? entry.toStringWithTimeStamp() : entry.toString());
             if (!printStream.checkError())
                 count++;
         }
+        printStream.flush();
 
         return count;
     }
 
     public int getNumEntries()
     {
-        logLock.lock();
+        viewLock.lock();
 
         try {
-            FixedRingBuffer<LogEntry> outputBuf = lazyGetOutputBuf();
-            swapBuffers();
+            LogStore store = lazyGetStore();
+            syncView();
 
-            return outputBuf.size();
+            return view.size(store);
 
         } finally {
-            logLock.unlock();
+            viewLock.unlock();
         }
     }
 
@@ -474,26 +593,32 @@ public class Logger
 
     public void clean()
     {
-        logLock.lock();
+        viewLock.lock();
 
         try {
             doClean();
 
         } finally {
-            logLock.unlock();
+            viewLock.unlock();
         }
     }
 
     private void doClean()
     {
-        if (pendingThread != null)
-            pendingThread.interrupt();
-        pendingThread = null;
-        inputBuf = null;
-        outputBuf = null;
-        numPendingLogs = 0;
+        synchronized (this) {
+            if (pendingThread != null)
+                pendingThread.interrupt();
+            pendingThread = null;
+            ring = null;
+        }
+        drainSeq = 0;
+        if (store instanceof LogJournal)
+            store.clear();
+        else
+            store = null;
+        view.clear();
         if (recording)
-            recordStartIndex = 0;
+            recordStartIndex = (store == null ? 0 : store.getEndIndex());
 
         submitDataSetChanged(new DataSetChange(DataSetChange.Reason.NEW_ENTRIES));
     }
@@ -502,12 +627,27 @@ public class Logger
     {
         String name;
         LogFilter filter;
+        /* Not null if the filter hides all entries with this tag */
+        String tag;
 
         public NewFilter(@NonNull String name, @NonNull LogFilter filter)
         {
             this.name = name;
             this.filter = filter;
         }
+
+        /*
+         * Unlike arbitrary filters, tag filters are indexed,
+         * so adding or removing them doesn't recheck all entries
+         */
+
+        public static NewFilter hideTag(@NonNull String name, @NonNull String tag)
+        {
+            NewFilter f = new NewFilter(name, (entry) -> entry == null || !entry.hasTag(tag));
+            f.tag = tag;
+
+            return f;
+        }
     }
 
     public static class DataSetChange
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.logger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.proninyaroslav.libretorrent.core.collections.FixedRingBuffer;
+
+/*
+ * Keeps the last `maxEntries` entries on the heap.
+ */
+
+class MemoryLogStore implements LogStore
+{
+    private final FixedRingBuffer<LogEntry> buf;
+    private long endIndex;
+
+    MemoryLogStore(int maxEntries)
+    {
+        buf = new FixedRingBuffer<>(maxEntries / 2, maxEntries);
+    }
+
+    @Override
+    public long append(@NonNull LogEntry entry)
+    {
+        buf.add(entry);
+
+        return endIndex++;
+    }
+
+    @Override
+    public long getFirstIndex()
+    {
+        return endIndex - buf.size();
+    }
+
+    @Override
+    public long getEndIndex()
+    {
+        return endIndex;
+    }
+
+    @Nullable
+    @Override
+    public LogEntry get(long index)
+    {
+        long first = getFirstIndex();
+        if (index < first || index >= endIndex)
+            return null;
+
+        return buf.get((int)(index - first));
+    }
+
+    @Override
+    public int getMaxEntries()
+    {
+        return buf.capacity();
+    }
+
+    @Override
+    public void clear()
+    {
+        buf.clear();
+    }
+
+    @Override
+    public void close()
+    {
+        buf.clear();
+    }
+}
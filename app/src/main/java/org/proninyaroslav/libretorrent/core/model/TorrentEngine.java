@@ -72,6 +72,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -844,6 +845,42 @@ public class TorrentEngine
         return stateList;
     }
 
+    /*
+     * Do not run in the UI thread
+     */
+
+    public List<TorrentInfo> makeInfoListSync(@NonNull Collection<String> ids)
+    {
+        ArrayList<TorrentInfo> stateList = new ArrayList<>(ids.size());
+
+        for (String id : ids) {
+            Torrent torrent = repo.getTorrentById(id);
+            if (torrent == null)
+                continue;
+            stateList.add(makeInfo(torrent));
+        }
+
+        return stateList;
+    }
+
+    /*
+     * Returns ids of the torrents whose info changes without any events (speed, progress, peers)
+     */
+
+    public List<String> getActiveTorrentIds()
+    {
+        ArrayList<String> ids = new ArrayList<>();
+        if (!isRunning())
+            return ids;
+
+        for (TorrentDownload task : session.getTasks()) {
+            if (task.isValid() && !task.isStopped() && !task.isPaused())
+                ids.add(task.getTorrentId());
+        }
+
+        return ids;
+    }
+
     /*
      * Do not run in the UI thread
      */
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model;
+
+import androidx.annotation.NonNull;
+
+import org.proninyaroslav.libretorrent.core.model.data.TorrentInfo;
+import org.proninyaroslav.libretorrent.core.model.data.TorrentInfoChanges;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * Keeps the last known info of each torrent and turns
+ * the recalculated info into added/updated/removed changes.
+ * The cost of the update is proportional to the number of the recalculated torrents.
+ * Not thread-safe.
+ */
+
+class TorrentInfoDiffer
+{
+    private final HashMap<String, TorrentInfo> infoMap = new HashMap<>();
+
+    /*
+     * Replaces all known info. Returns the initial changes
+     */
+
+    @NonNull
+    TorrentInfoChanges reset(@NonNull List<TorrentInfo> infoList)
+    {
+        infoMap.clear();
+        for (TorrentInfo info : infoList)
+            infoMap.put(info.torrentId, info);
+
+        return new TorrentInfoChanges(true, new ArrayList<>(infoList),
+                new ArrayList<>(), new ArrayList<>());
+    }
+
+    /*
+     * Info of the torrents that weren't recalculated is considered unchanged
+     */
+
+    @NonNull
+    TorrentInfoChanges update(@NonNull Collection<TorrentInfo> recalculatedInfo,
+                              @NonNull Collection<String> removedIds)
+    {
+        ArrayList<TorrentInfo> added = new ArrayList<>();
+        ArrayList<TorrentInfo> updated = new ArrayList<>();
+        ArrayList<String> removed = new ArrayList<>();
+
+        for (String id : removedIds) {
+            if (infoMap.remove(id) != null)
+                removed.add(id);
+        }
+        for (TorrentInfo info : recalculatedInfo) {
+            TorrentInfo oldInfo = infoMap.put(info.torrentId, info);
+            if (oldInfo == null)
+                added.add(info);
+            else if (!info.equals(oldInfo))
+                updated.add(info);
+        }
+
+        return new TorrentInfoChanges(false, added, updated, removed);
+    }
+
+    int size()
+    {
+        return infoMap.size();
+    }
+}
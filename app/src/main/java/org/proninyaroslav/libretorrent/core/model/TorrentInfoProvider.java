@@ -28,12 +28,17 @@ import org.proninyaroslav.libretorrent.core.model.data.AdvancedTorrentInfo;
 import org.proninyaroslav.libretorrent.core.model.data.PeerInfo;
 import org.proninyaroslav.libretorrent.core.model.data.SessionStats;
 import org.proninyaroslav.libretorrent.core.model.data.TorrentInfo;
+import org.proninyaroslav.libretorrent.core.model.data.TorrentInfoChanges;
 import org.proninyaroslav.libretorrent.core.model.data.TorrentStateCode;
 import org.proninyaroslav.libretorrent.core.model.data.TrackerInfo;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import io.reactivex.BackpressureStrategy;
@@ -95,6 +100,15 @@ public class TorrentInfoProvider
         return makeInfoListFlowable();
     }
 
+    /*
+     * Emits all torrents first, and then only added, updated and removed torrents
+     */
+
+    public Flowable<TorrentInfoChanges> observeInfoChanges()
+    {
+        return makeInfoChangesFlowable();
+    }
+
     public Single<List<TorrentInfo>> getInfoListSingle()
     {
         return makeInfoListSingle();
@@ -232,76 +246,195 @@ public class TorrentInfoProvider
     }
 
     private Flowable<List<TorrentInfo>> makeInfoListFlowable()
+    {
+        return Flowable.defer(() -> {
+            LinkedHashMap<String, TorrentInfo> infoMap = new LinkedHashMap<>();
+
+            return makeInfoChangesFlowable()
+                    .map((changes) -> {
+                        if (changes.initial)
+                            infoMap.clear();
+                        for (String id : changes.removed)
+                            infoMap.remove(id);
+                        for (TorrentInfo info : changes.added)
+                            infoMap.put(info.torrentId, info);
+                        for (TorrentInfo info : changes.updated)
+                            infoMap.put(info.torrentId, info);
+
+                        return new ArrayList<>(infoMap.values());
+                    });
+        });
+    }
+
+    /*
+     * Events of the torrents are only collected into the set of changed torrents,
+     * and the changes are emitted once per session stats tick. Only changed
+     * and active (i.e. not paused) torrents are recalculated
+     */
+
+    private Flowable<TorrentInfoChanges> makeInfoChangesFlowable()
     {
         return Flowable.create((emitter) -> {
-            final AtomicReference<List<TorrentInfo>> infoList = new AtomicReference<>();
-
-            Runnable handleInfo = () -> {
-                List<TorrentInfo> newInfoList = engine.makeInfoListSync();
-                List<TorrentInfo> oldInfoList = infoList.get();
-                if (oldInfoList == null || oldInfoList.size() != newInfoList.size() ||
-                    !oldInfoList.containsAll(newInfoList)) {
-                    infoList.set(newInfoList);
-                    if (!emitter.isCancelled())
-                        emitter.onNext(newInfoList);
+            final TorrentInfoDiffer differ = new TorrentInfoDiffer();
+            final HashSet<String> changedIds = new HashSet<>();
+            final HashSet<String> removedIds = new HashSet<>();
+            final AtomicBoolean initialized = new AtomicBoolean();
+
+            Runnable handleTick = () -> {
+                /* Events are kept until the initial list is emitted */
+                if (!initialized.get())
+                    return;
+
+                HashSet<String> ids;
+                ArrayList<String> removed;
+                synchronized (changedIds) {
+                    ids = new HashSet<>(changedIds);
+                    removed = new ArrayList<>(removedIds);
+                    changedIds.clear();
+                    removedIds.clear();
+                }
+                ids.addAll(engine.getActiveTorrentIds());
+                ids.removeAll(removed);
+
+                List<TorrentInfo> recalculated = engine.makeInfoListSync(ids);
+                synchronized (differ) {
+                    TorrentInfoChanges changes = differ.update(recalculated, removed);
+                    if (!changes.isEmpty() && !emitter.isCancelled())
+                        emitter.onNext(changes);
                 }
             };
 
             TorrentEngineListener listener = new TorrentEngineListener() {
+                @Override
+                public void onTorrentAdded(@NonNull String torrentId)
+                {
+                    markAdded(changedIds, removedIds, torrentId);
+                }
+
+                @Override
+                public void onTorrentLoaded(@NonNull String torrentId)
+                {
+                    markAdded(changedIds, removedIds, torrentId);
+                }
+
                 @Override
                 public void onTorrentStateChanged(@NonNull String torrentId,
                                                   @NonNull TorrentStateCode prevState,
                                                   @NonNull TorrentStateCode curState)
                 {
-                    handleInfo.run();
+                    markChanged(changedIds, torrentId);
+                }
+
+                @Override
+                public void onTorrentFinished(@NonNull String torrentId)
+                {
+                    markChanged(changedIds, torrentId);
                 }
 
                 @Override
                 public void onTorrentPaused(@NonNull String torrentId)
                 {
-                    handleInfo.run();
+                    markChanged(changedIds, torrentId);
+                }
+
+                @Override
+                public void onTorrentResumed(@NonNull String torrentId)
+                {
+                    markChanged(changedIds, torrentId);
+                }
+
+                @Override
+                public void onTorrentMoved(@NonNull String torrentId, boolean success)
+                {
+                    markChanged(changedIds, torrentId);
+                }
+
+                @Override
+                public void onTorrentMetadataLoaded(@NonNull String torrentId, Exception err)
+                {
+                    markChanged(changedIds, torrentId);
                 }
 
                 @Override
                 public void onTorrentRemoved(@NonNull String torrentId)
                 {
-                    handleInfo.run();
+                    /* changedIds is also the lock for removedIds */
+                    synchronized (changedIds) {
+                        changedIds.remove(torrentId);
+                        removedIds.add(torrentId);
+                    }
                 }
 
                 @Override
                 public void onRestoreSessionError(@NonNull String torrentId)
                 {
-                    handleInfo.run();
+                    markChanged(changedIds, torrentId);
                 }
 
                 @Override
                 public void onTorrentError(@NonNull String torrentId, Exception e)
                 {
-                    handleInfo.run();
+                    markChanged(changedIds, torrentId);
                 }
 
                 @Override
                 public void onSessionStats(@NonNull SessionStats stats)
                 {
-                    handleInfo.run();
+                    try {
+                        handleTick.run();
+
+                    } catch (Exception e) {
+                        if (!emitter.isCancelled())
+                            emitter.onError(e);
+                    }
                 }
             };
 
             if (!emitter.isCancelled()) {
+                /*
+                 * Listen before taking the initial list, so that the torrents
+                 * changed in the meantime are caught by the next tick
+                 */
+                engine.addListener(listener);
+                emitter.setDisposable(Disposables.fromAction(() ->
+                        engine.removeListener(listener)));
+
                 Thread t = new Thread(() -> {
-                    infoList.set(engine.makeInfoListSync());
-                    if (!emitter.isCancelled()) {
-                        /* Emit once to avoid missing any data and also easy chaining */
-                        emitter.onNext(infoList.get());
-                        engine.addListener(listener);
-                        emitter.setDisposable(Disposables.fromAction(() ->
-                                engine.removeListener(listener)));
+                    synchronized (differ) {
+                        TorrentInfoChanges changes = differ.reset(engine.makeInfoListSync());
+                        if (!emitter.isCancelled()) {
+                            /* Emit once to avoid missing any data and also easy chaining */
+                            emitter.onNext(changes);
+                        }
+                        initialized.set(true);
                     }
                 });
                 t.start();
             }
 
-        }, BackpressureStrategy.LATEST);
+        }, BackpressureStrategy.BUFFER);
+    }
+
+    private static void markChanged(HashSet<String> changedIds, String torrentId)
+    {
+        synchronized (changedIds) {
+            changedIds.add(torrentId);
+        }
+    }
+
+    /*
+     * The torrent can be removed and added again (e.g. the same magnet)
+     * within one tick, in that case it isn't reported as removed
+     */
+
+    private static void markAdded(HashSet<String> changedIds,
+                                  HashSet<String> removedIds,
+                                  String torrentId)
+    {
+        synchronized (changedIds) {
+            removedIds.remove(torrentId);
+            changedIds.add(torrentId);
+        }
     }
 
     private Single<List<TorrentInfo>> makeInfoListSingle()
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.data;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Changes of the torrent list since the previous changes.
+ * The initial changes contain all torrents in the added list.
+ */
+
+public class TorrentInfoChanges
+{
+    public final boolean initial;
+    @NonNull
+    public final List<TorrentInfo> added;
+    @NonNull
+    public final List<TorrentInfo> updated;
+    @NonNull
+    public final List<String> removed;
+
+    public TorrentInfoChanges(boolean initial,
+                              @NonNull List<TorrentInfo> added,
+                              @NonNull List<TorrentInfo> updated,
+                              @NonNull List<String> removed)
+    {
+        this.initial = initial;
+        this.added = Collections.unmodifiableList(added);
+        this.updated = Collections.unmodifiableList(updated);
+        this.removed = Collections.unmodifiableList(removed);
+    }
+
+    public boolean isEmpty()
+    {
+        return !initial && added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TorrentInfoChanges{" +
+                "initial=" + initial +
+                ", added=" + added +
+                ", updated=" + updated +
+                ", removed=" + removed +
+                '}';
+    }
+}
@@ -48,6 +48,9 @@ public class FeedChannel implements Parcelable
     public String filter;
     public boolean isRegexFilter = false;
     public String fetchError;
+    /* HTTP validators of the last fetch, for conditional requests */
+    public String etag;
+    public String lastModified;
 
     public FeedChannel(@NonNull String url, String name,
                        long lastUpdate, boolean autoDownload,
@@ -80,6 +83,8 @@ public class FeedChannel implements Parcelable
         filter = source.readString();
         isRegexFilter = source.readByte() != 0;
         fetchError = source.readString();
+        etag = source.readString();
+        lastModified = source.readString();
     }
 
     @Override
@@ -99,6 +104,8 @@ public class FeedChannel implements Parcelable
         dest.writeString(filter);
         dest.writeByte((byte)(isRegexFilter ? 1 : 0));
         dest.writeString(fetchError);
+        dest.writeString(etag);
+        dest.writeString(lastModified);
     }
 
     public static final Creator<FeedChannel> CREATOR =
@@ -141,6 +148,8 @@ public class FeedChannel implements Parcelable
                 ", filter='" + filter + '\'' +
                 ", isRegexFilter=" + isRegexFilter +
                 ", fetchError='" + fetchError + '\'' +
+                ", etag='" + etag + '\'' +
+                ", lastModified='" + lastModified + '\'' +
                 '}';
     }
 }
@@ -38,7 +38,10 @@ import static androidx.room.ForeignKey.CASCADE;
  * Representation of the feed article.
  */
 
-@Entity(indices = {@Index(value = "feedId")},
+@Entity(indices = {
+            @Index(value = {"feedId", "id"}),
+            @Index(value = "title"),
+            @Index(value = "fetchDate")},
         foreignKeys = @ForeignKey(
                 entity = FeedChannel.class,
                 parentColumns = "id",
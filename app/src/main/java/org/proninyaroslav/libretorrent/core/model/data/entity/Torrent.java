@@ -92,6 +92,17 @@ public class Torrent implements Parcelable
         this.magnet = magnet;
     }
 
+    @Ignore
+    public Torrent(@NonNull Torrent torrent)
+    {
+        this(torrent.id, torrent.magnet, torrent.downloadPath,
+             torrent.name, torrent.manuallyPaused, torrent.dateAdded);
+
+        downloadingMetadata = torrent.downloadingMetadata;
+        error = torrent.error;
+        visibility = torrent.visibility;
+    }
+
     @Ignore
     public Torrent(Parcel source)
     {
@@ -0,0 +1,513 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.filetree;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/*
+ * A compact torrent content tree, stored as a structure of arrays.
+ * Nodes are int indexes (the root is always ROOT_NODE), links between them
+ * are int arrays and names are interned path segments. Sizes, received bytes
+ * and availability of directories are kept as running aggregates,
+ * so a leaf update costs O(depth) and reading a directory is O(1).
+ *
+ * Mutators are synchronized on the tree, getters aren't.
+ */
+
+public class FlatFileTree implements Serializable
+{
+    public static final int ROOT_NODE = 0;
+    public static final int NO_NODE = -1;
+    /* Directories with more children than this get a name index on lookup */
+    private static final int LOOKUP_THRESHOLD = 16;
+
+    private static final FilePriority DEFAULT_PRIORITY = new FilePriority(FilePriority.Type.IGNORE);
+
+    private int nodeCount;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] lastChild;
+    private int[] nextSibling;
+    private int[] childCount;
+    /* File index in the torrent, or -1 for directories */
+    private int[] fileIndex;
+    private String[] names;
+    private FilePriority[] priorities;
+    private int[] numChangedChildren;
+    private long[] size;
+    private long[] receivedBytes;
+    /* Size of the files with priority other than IGNORE */
+    private long[] wantedSize;
+    /* Sum of availability * size of the wanted files with known availability */
+    private double[] availWeight;
+
+    /* File index -> node */
+    private int[] fileNodes;
+    private double[] fileAvailability;
+
+    private transient HashMap<String, String> namePool;
+    private transient int lookupDir = NO_NODE;
+    private transient HashMap<String, Integer> lookupIndex;
+
+    public FlatFileTree(@NonNull String rootName, int fileCount)
+    {
+        int capacity = Math.max(fileCount + fileCount / 4, 1);
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        lastChild = new int[capacity];
+        nextSibling = new int[capacity];
+        childCount = new int[capacity];
+        fileIndex = new int[capacity];
+        names = new String[capacity];
+        priorities = new FilePriority[capacity];
+        numChangedChildren = new int[capacity];
+        size = new long[capacity];
+        receivedBytes = new long[capacity];
+        wantedSize = new long[capacity];
+        availWeight = new double[capacity];
+
+        fileNodes = new int[fileCount];
+        Arrays.fill(fileNodes, NO_NODE);
+        fileAvailability = new double[fileCount];
+        Arrays.fill(fileAvailability, -1);
+
+        namePool = new HashMap<>();
+        newNode(NO_NODE, rootName, -1);
+    }
+
+    /*
+     * Returns the new directory node
+     */
+
+    public synchronized int addDir(int parentNode, @NonNull String name)
+    {
+        return newNode(parentNode, name, -1);
+    }
+
+    /*
+     * Returns the new file node. `index` is the file index in the torrent
+     */
+
+    public synchronized int addFile(int parentNode, @NonNull String name, int index, long fileSize)
+    {
+        if (index < 0 || index >= fileNodes.length)
+            throw new IndexOutOfBoundsException("File index: " + index + ", file count: " + fileNodes.length);
+
+        int node = newNode(parentNode, name, index);
+        fileNodes[index] = node;
+        for (int n = node; n != NO_NODE; n = parent[n])
+            size[n] += fileSize;
+
+        return node;
+    }
+
+    /*
+     * Releases the resources that are only needed while building the tree
+     */
+
+    public synchronized void trimToSize()
+    {
+        namePool = null;
+        if (nodeCount == parent.length)
+            return;
+
+        parent = Arrays.copyOf(parent, nodeCount);
+        firstChild = Arrays.copyOf(firstChild, nodeCount);
+        lastChild = Arrays.copyOf(lastChild, nodeCount);
+        nextSibling = Arrays.copyOf(nextSibling, nodeCount);
+        childCount = Arrays.copyOf(childCount, nodeCount);
+        fileIndex = Arrays.copyOf(fileIndex, nodeCount);
+        names = Arrays.copyOf(names, nodeCount);
+        priorities = Arrays.copyOf(priorities, nodeCount);
+        numChangedChildren = Arrays.copyOf(numChangedChildren, nodeCount);
+        size = Arrays.copyOf(size, nodeCount);
+        receivedBytes = Arrays.copyOf(receivedBytes, nodeCount);
+        wantedSize = Arrays.copyOf(wantedSize, nodeCount);
+        availWeight = Arrays.copyOf(availWeight, nodeCount);
+    }
+
+    private int newNode(int parentNode, String name, int index)
+    {
+        if (nodeCount == parent.length)
+            grow();
+
+        int node = nodeCount++;
+        parent[node] = parentNode;
+        firstChild[node] = NO_NODE;
+        lastChild[node] = NO_NODE;
+        nextSibling[node] = NO_NODE;
+        fileIndex[node] = index;
+        names[node] = intern(name);
+        priorities[node] = DEFAULT_PRIORITY;
+
+        if (parentNode != NO_NODE) {
+            if (lastChild[parentNode] == NO_NODE)
+                firstChild[parentNode] = node;
+            else
+                nextSibling[lastChild[parentNode]] = node;
+            lastChild[parentNode] = node;
+            childCount[parentNode]++;
+            if (parentNode == lookupDir && lookupIndex != null)
+                lookupIndex.put(names[node], node);
+        }
+
+        return node;
+    }
+
+    private String intern(String name)
+    {
+        if (namePool == null)
+            return name;
+
+        String s = namePool.get(name);
+        if (s == null) {
+            namePool.put(name, name);
+            s = name;
+        }
+
+        return s;
+    }
+
+    private void grow()
+    {
+        int capacity = parent.length + (parent.length >> 1) + 1;
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        lastChild = Arrays.copyOf(lastChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        childCount = Arrays.copyOf(childCount, capacity);
+        fileIndex = Arrays.copyOf(fileIndex, capacity);
+        names = Arrays.copyOf(names, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        numChangedChildren = Arrays.copyOf(numChangedChildren, capacity);
+        size = Arrays.copyOf(size, capacity);
+        receivedBytes = Arrays.copyOf(receivedBytes, capacity);
+        wantedSize = Arrays.copyOf(wantedSize, capacity);
+        availWeight = Arrays.copyOf(availWeight, capacity);
+    }
+
+    public int getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    public int getFileCount()
+    {
+        return fileNodes.length;
+    }
+
+    /*
+     * Returns the node of the file with the given index,
+     * or NO_NODE if the file wasn't added to the tree
+     */
+
+    public int getFileNode(int index)
+    {
+        return fileNodes[index];
+    }
+
+    public int getParent(int node)
+    {
+        return parent[node];
+    }
+
+    public int getFirstChild(int node)
+    {
+        return firstChild[node];
+    }
+
+    public int getNextSibling(int node)
+    {
+        return nextSibling[node];
+    }
+
+    public int getChildCount(int node)
+    {
+        return childCount[node];
+    }
+
+    /*
+     * Returns the child node with the given name or NO_NODE
+     */
+
+    public synchronized int findChild(int node, @NonNull String name)
+    {
+        if (childCount[node] <= LOOKUP_THRESHOLD) {
+            for (int child = firstChild[node]; child != NO_NODE; child = nextSibling[child])
+                if (names[child].equals(name))
+                    return child;
+
+            return NO_NODE;
+        }
+
+        /* Large directories are usually looked up many times in a row */
+        if (lookupDir != node || lookupIndex == null) {
+            lookupIndex = new HashMap<>(childCount[node] * 2);
+            for (int child = firstChild[node]; child != NO_NODE; child = nextSibling[child])
+                lookupIndex.put(names[child], child);
+            lookupDir = node;
+        }
+        Integer child = lookupIndex.get(name);
+
+        return (child == null ? NO_NODE : child);
+    }
+
+    public String getName(int node)
+    {
+        return names[node];
+    }
+
+    public synchronized void setName(int node, @NonNull String name)
+    {
+        if (parent[node] == lookupDir && lookupIndex != null) {
+            lookupIndex.remove(names[node]);
+            lookupIndex.put(name, node);
+        }
+        names[node] = name;
+    }
+
+    public boolean isFile(int node)
+    {
+        return fileIndex[node] >= 0;
+    }
+
+    public int getFileIndex(int node)
+    {
+        return fileIndex[node];
+    }
+
+    public long size(int node)
+    {
+        return size[node];
+    }
+
+    public long getReceivedBytes(int node)
+    {
+        return receivedBytes[node];
+    }
+
+    public long getWantedSize(int node)
+    {
+        return wantedSize[node];
+    }
+
+    public double getAvailability(int node)
+    {
+        if (isFile(node))
+            return fileAvailability[fileIndex[node]];
+
+        long wanted = wantedSize[node];
+
+        return (wanted > 0 ? availWeight[node] / wanted : -1);
+    }
+
+    public String getPath(int node)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int n = node; parent[n] != NO_NODE; n = parent[n])
+            sb.insert(0, File.separator).insert(0, names[n]);
+
+        return sb.toString();
+    }
+
+    /*
+     * Sets received bytes of the file and updates its parents
+     */
+
+    public synchronized void setReceivedBytes(int index, long bytes)
+    {
+        int node = fileNodes[index];
+        if (node == NO_NODE)
+            return;
+
+        long delta = bytes - receivedBytes[node];
+        if (delta == 0)
+            return;
+        for (int n = node; n != NO_NODE; n = parent[n])
+            receivedBytes[n] += delta;
+    }
+
+    /*
+     * Sets availability of the file and updates its parents
+     */
+
+    public synchronized void setAvailability(int index, double availability)
+    {
+        int node = fileNodes[index];
+        if (node == NO_NODE)
+            return;
+
+        double prev = fileAvailability[index];
+        if (prev == availability)
+            return;
+        fileAvailability[index] = availability;
+
+        if (priorities[node].getType() != FilePriority.Type.IGNORE)
+            addAvailWeight(node, availWeight(availability, size[node]) - availWeight(prev, size[node]));
+    }
+
+    /*
+     * Bulk version of setReceivedBytes(int, long). Only the files whose value
+     * differs from the stored one are touched. If `changed` isn't null,
+     * the changed files and all their parents are marked in it
+     */
+
+    public synchronized void setReceivedBytes(@NonNull long[] bytes, @Nullable BitSet changed)
+    {
+        int count = Math.min(bytes.length, fileNodes.length);
+        for (int i = 0; i < count; i++) {
+            int node = fileNodes[i];
+            if (node == NO_NODE)
+                continue;
+            long delta = bytes[i] - receivedBytes[node];
+            if (delta == 0)
+                continue;
+
+            for (int n = node; n != NO_NODE; n = parent[n]) {
+                receivedBytes[n] += delta;
+                if (changed != null)
+                    changed.set(n);
+            }
+        }
+    }
+
+    /*
+     * Bulk version of setAvailability(int, double), see setReceivedBytes(long[], BitSet)
+     */
+
+    public synchronized void setAvailability(@NonNull double[] availability, @Nullable BitSet changed)
+    {
+        int count = Math.min(availability.length, fileNodes.length);
+        for (int i = 0; i < count; i++) {
+            int node = fileNodes[i];
+            if (node == NO_NODE || fileAvailability[i] == availability[i])
+                continue;
+
+            setAvailability(i, availability[i]);
+            if (changed == null)
+                continue;
+            changed.set(node);
+            /* Ignored files don't affect their parents */
+            if (priorities[node].getType() != FilePriority.Type.IGNORE)
+                for (int n = parent[node]; n != NO_NODE; n = parent[n])
+                    changed.set(n);
+        }
+    }
+
+    private static double availWeight(double availability, long fileSize)
+    {
+        return (availability >= 0 ? availability * fileSize : 0);
+    }
+
+    private void addAvailWeight(int node, double delta)
+    {
+        for (int n = parent[node]; n != NO_NODE; n = parent[n])
+            availWeight[n] += delta;
+    }
+
+    public FilePriority getPriority(int node)
+    {
+        return priorities[node];
+    }
+
+    /*
+     * By default, a parent is updated only when all
+     * children are updated, for performance reasons.
+     * You can override this with the `forceUpdateParent` option
+     */
+
+    public synchronized void setPriority(int node, @NonNull FilePriority priority,
+                                         boolean forceUpdateParent)
+    {
+        changePriority(node, priority, true, forceUpdateParent);
+    }
+
+    private void changePriority(int node, FilePriority p,
+                                boolean updateParent,
+                                boolean forceUpdateParent)
+    {
+        putPriority(node, p);
+
+        /* Sending change event up the tree */
+        if (updateParent && parent[node] != NO_NODE)
+            onChangePriority(parent[node], p, forceUpdateParent);
+
+        /* Sending change event down the tree */
+        for (int child = firstChild[node]; child != NO_NODE; child = nextSibling[child])
+            if (priorities[child].getType() != p.getType())
+                changePriority(child, p, false, forceUpdateParent);
+    }
+
+    private void onChangePriority(int node, FilePriority p, boolean forceUpdateParent)
+    {
+        ++numChangedChildren[node];
+
+        boolean allChildrenChanged = numChangedChildren[node] == childCount[node];
+        if (allChildrenChanged)
+            numChangedChildren[node] = 0;
+
+        if (childCount[node] != 0 && (forceUpdateParent || allChildrenChanged)) {
+            boolean isMixedPriority = false;
+
+            for (int child = firstChild[node]; child != NO_NODE; child = nextSibling[child]) {
+                if (p == null)
+                    p = priorities[child];
+
+                if (priorities[child].getType() != p.getType()) {
+                    isMixedPriority = true;
+                    break;
+                }
+            }
+
+            if (p != null)
+                putPriority(node, (isMixedPriority ? new FilePriority(FilePriority.Type.MIXED) : p));
+
+            /* Sending change event up the tree */
+            if (parent[node] != NO_NODE)
+                onChangePriority(parent[node], priorities[node], forceUpdateParent);
+        }
+    }
+
+    private void putPriority(int node, FilePriority p)
+    {
+        FilePriority prev = priorities[node];
+        priorities[node] = p;
+        if (!isFile(node))
+            return;
+
+        boolean wasWanted = prev.getType() != FilePriority.Type.IGNORE;
+        boolean wanted = p.getType() != FilePriority.Type.IGNORE;
+        if (wasWanted == wanted)
+            return;
+
+        long sizeDelta = (wanted ? size[node] : -size[node]);
+        for (int n = node; n != NO_NODE; n = parent[n])
+            wantedSize[n] += sizeDelta;
+        double weight = availWeight(fileAvailability[fileIndex[node]], size[node]);
+        addAvailWeight(node, (wanted ? weight : -weight));
+    }
+}
@@ -20,164 +20,233 @@
 package org.proninyaroslav.libretorrent.core.model.filetree;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 
-public class TorrentContentFileTree extends FileTree<TorrentContentFileTree> implements Serializable
+/*
+ * A node of the torrent content tree. The node itself is only a lightweight
+ * pointer into FlatFileTree, which holds all data, so nodes can be
+ * created on demand and compared with equals().
+ */
+
+public class TorrentContentFileTree implements FileNode<TorrentContentFileTree>, Serializable
 {
-    private FilePriority priority = new FilePriority(FilePriority.Type.IGNORE);
-    private long receivedBytes = 0L;
-    private double availability = -1;
-    private long numChangedChildren = 0;
+    public static final String ROOT = FileTree.ROOT;
+    public static final String PARENT_DIR = FileTree.PARENT_DIR;
 
-    public TorrentContentFileTree(String name, long size, int type)
+    private final FlatFileTree tree;
+    private final int node;
+
+    public TorrentContentFileTree(@NonNull FlatFileTree tree, int node)
     {
-        super(name, size, type);
+        this.tree = tree;
+        this.node = node;
     }
 
-    public TorrentContentFileTree(int index, String name,
-                                  long size, int type,
-                                  TorrentContentFileTree parent)
+    /*
+     * Returns a detached directory node used for navigation to the parent directory
+     */
+
+    public static TorrentContentFileTree makeParentDir()
     {
-        super(index, name, size, type, parent);
+        return new TorrentContentFileTree(new FlatFileTree(PARENT_DIR, 0), FlatFileTree.ROOT_NODE);
     }
 
-    public TorrentContentFileTree(String name, long size,
-                                  int type, TorrentContentFileTree parent)
+    public FlatFileTree getTree()
     {
-        super(name, size, type, parent);
+        return tree;
     }
 
-    public FilePriority getFilePriority()
+    public int getNode()
     {
-        return priority;
+        return node;
     }
 
-    public long getReceivedBytes()
+    public boolean contains(String name)
+    {
+        return tree.findChild(node, name) != FlatFileTree.NO_NODE;
+    }
+
+    public TorrentContentFileTree getChild(String name)
     {
-        if (children.size() != 0) {
-            receivedBytes = 0;
-            for (TorrentContentFileTree node : children.values())
-                receivedBytes += node.getReceivedBytes();
-        }
+        int child = tree.findChild(node, name);
 
-        return receivedBytes;
+        return (child == FlatFileTree.NO_NODE ? null : new TorrentContentFileTree(tree, child));
     }
 
-    public synchronized void setReceivedBytes(long bytes)
+    public List<TorrentContentFileTree> getChildren()
     {
-        receivedBytes = bytes;
+        List<TorrentContentFileTree> children = new ArrayList<>(tree.getChildCount(node));
+        for (int child = tree.getFirstChild(node);
+             child != FlatFileTree.NO_NODE;
+             child = tree.getNextSibling(child))
+            children.add(new TorrentContentFileTree(tree, child));
+
+        return children;
     }
 
     /*
-     * By default, a parent is updated only when all
-     * children are updated, for performance reasons.
-     * You can override this with the `forceUpdateParent` option
+     * Returns only the children marked in `nodes`, e.g. the changed ones
      */
 
-    public void setPriority(@NonNull FilePriority priority, boolean forceUpdateParent)
+    public List<TorrentContentFileTree> getChildren(@NonNull BitSet nodes)
     {
-        changePriority(priority, true, forceUpdateParent);
+        List<TorrentContentFileTree> children = new ArrayList<>();
+        for (int child = tree.getFirstChild(node);
+             child != FlatFileTree.NO_NODE;
+             child = tree.getNextSibling(child))
+            if (nodes.get(child))
+                children.add(new TorrentContentFileTree(tree, child));
+
+        return children;
     }
 
-    private void changePriority(FilePriority p,
-                                boolean updateParent,
-                                boolean forceUpdateParent)
+    public int getChildrenCount()
     {
-        priority = p;
+        return tree.getChildCount(node);
+    }
 
-        /* Sending change event up the tree */
-        if (updateParent && parent != null)
-            parent.onChangePriority(p, forceUpdateParent);
+    public boolean isFile()
+    {
+        return tree.isFile(node);
+    }
 
-        /* Sending change event down the tree */
-        if (children.size() != 0)
-            for (TorrentContentFileTree node : children.values())
-                if (node.priority.getType() != p.getType())
-                    node.changePriority(p, false, forceUpdateParent);
+    public TorrentContentFileTree getParent()
+    {
+        int parent = tree.getParent(node);
+
+        return (parent == FlatFileTree.NO_NODE ? null : new TorrentContentFileTree(tree, parent));
     }
 
-    private synchronized void onChangePriority(FilePriority p, boolean forceUpdateParent)
+    @Override
+    public String getName()
     {
-        ++numChangedChildren;
+        return tree.getName(node);
+    }
 
-        boolean allChildrenChanged = numChangedChildren == children.size();
-        if (allChildrenChanged)
-            numChangedChildren = 0;
+    @Override
+    public void setName(String name)
+    {
+        tree.setName(node, name);
+    }
 
-        if (children.size() != 0 && (forceUpdateParent || allChildrenChanged)) {
-            boolean isMixedPriority = false;
+    public int getIndex()
+    {
+        return tree.getFileIndex(node);
+    }
 
-            for (TorrentContentFileTree child : children.values()) {
-                if (p == null)
-                    p = child.getFilePriority();
+    @Override
+    public int getType()
+    {
+        return (isFile() ? FileNode.Type.FILE : FileNode.Type.DIR);
+    }
 
-                if (child.priority.getType() != p.getType()) {
-                    isMixedPriority = true;
-                    break;
-                }
-            }
+    @Override
+    public void setType(int type)
+    {
+        if (type != getType())
+            throw new UnsupportedOperationException("Node type cannot be changed");
+    }
 
-            if (p != null)
-                priority = (isMixedPriority ? new FilePriority(FilePriority.Type.MIXED) : p);
+    public long size()
+    {
+        return tree.size(node);
+    }
 
-            /* Sending change event up the tree */
-            if (parent != null)
-                parent.onChangePriority(priority, forceUpdateParent);
-        }
+    public String getPath()
+    {
+        return tree.getPath(node);
     }
 
-    public long nonIgnoreFileSize()
+    public FilePriority getFilePriority()
     {
-        long size = 0;
+        return tree.getPriority(node);
+    }
 
-        if (children.size() != 0) {
-            for (TorrentContentFileTree child : children.values())
-                if (child.priority.getType() != FilePriority.Type.IGNORE)
-                    size += child.nonIgnoreFileSize();
-        } else if (priority.getType() != FilePriority.Type.IGNORE) {
-            size = this.size();
-        }
+    /*
+     * By default, a parent is updated only when all
+     * children are updated, for performance reasons.
+     * You can override this with the `forceUpdateParent` option
+     */
 
-        return size;
+    public void setPriority(@NonNull FilePriority priority, boolean forceUpdateParent)
+    {
+        tree.setPriority(node, priority, forceUpdateParent);
     }
 
-    public synchronized void setAvailability(double availability)
+    public long getReceivedBytes()
     {
-        this.availability = availability;
+        return tree.getReceivedBytes(node);
+    }
+
+    /*
+     * Only files can be updated, directories are aggregated from them
+     */
+
+    public void setReceivedBytes(long bytes)
+    {
+        if (isFile())
+            tree.setReceivedBytes(getIndex(), bytes);
     }
 
     public double getAvailability()
     {
-        if (children.size() != 0) {
-            double avail = 0;
-            long size = 0;
-            for (TorrentContentFileTree node : children.values()) {
-                if (node.getFilePriority().getType() == FilePriority.Type.IGNORE)
-                    continue;
-                double childAvail = node.getAvailability();
-                long childSize = node.size();
-                if (childAvail >= 0)
-                    avail += childAvail * childSize;
-                size += childSize;
-            }
-            if (size > 0)
-                availability = avail / size;
-            else
-                availability = -1;
-        }
-
-        return availability;
+        return tree.getAvailability(node);
+    }
+
+    public void setAvailability(double availability)
+    {
+        if (isFile())
+            tree.setAvailability(getIndex(), availability);
+    }
+
+    public long nonIgnoreFileSize()
+    {
+        return tree.getWantedSize(node);
+    }
+
+    @Override
+    public int compareTo(@NonNull TorrentContentFileTree another)
+    {
+        return getName().compareTo(another.getName());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * System.identityHashCode(tree) + node;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o)
+    {
+        if (!(o instanceof TorrentContentFileTree))
+            return false;
+
+        if (o == this)
+            return true;
+
+        TorrentContentFileTree other = (TorrentContentFileTree)o;
+
+        return tree == other.tree && node == other.node;
     }
 
     @Override
     public String toString()
     {
         return "TorrentContentFileTree{" +
-                super.toString() +
-                ", priority=" + priority +
-                ", receivedBytes=" + receivedBytes +
-                ", availability=" + availability +
+                "node=" + node +
+                ", index=" + getIndex() +
+                ", name='" + getName() + '\'' +
+                ", size=" + size() +
+                ", isLeaf=" + isFile() +
+                ", priority=" + getFilePriority() +
+                ", receivedBytes=" + getReceivedBytes() +
+                ", availability=" + getAvailability() +
                 '}';
     }
 }
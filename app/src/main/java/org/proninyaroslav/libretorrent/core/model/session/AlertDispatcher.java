@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Runs handlers of torrent alerts off the libtorrent alert thread.
+ * Alert data must be extracted in the alert thread before posting,
+ * because the alert memory is freed after the next alerts pop.
+ *
+ * All handlers are run by one thread in the order they were posted.
+ * There are two policies:
+ *  - post: the handler is queued as is. The queue has bounded capacity,
+ *    if it's full, the caller waits for a free slot (back-pressure on the alert loop),
+ *    so nothing is lost or reordered;
+ *  - merge: for high-rate alerts (e.g. PIECE_FINISHED). Values with the same key
+ *    are accumulated in the pending handler call and delivered at once.
+ *    The next post closes all pending merges, so merged values are never
+ *    delivered before or after the handlers posted around them.
+ */
+
+class AlertDispatcher
+{
+    private static final long KEEP_ALIVE_TIME = 30; /* seconds */
+
+    interface MergeHandler
+    {
+        void onMerged(@NonNull int[] values);
+    }
+
+    private static final class MergeBatch
+    {
+        final String key;
+        final MergeHandler handler;
+        final LinkedHashSet<Integer> values = new LinkedHashSet<>();
+
+        MergeBatch(String key, MergeHandler handler)
+        {
+            this.key = key;
+            this.handler = handler;
+        }
+    }
+
+    private final ThreadPoolExecutor exec;
+    /* Free slots of the queue */
+    private final Semaphore slots;
+    /* Merges that can still accept values, guarded by itself */
+    private final HashMap<String, MergeBatch> openBatches = new HashMap<>();
+    private volatile Thread dispatcherThread;
+    private final AtomicLong postedCount = new AtomicLong();
+    private final AtomicLong blockedCount = new AtomicLong();
+    private final AtomicLong mergedCount = new AtomicLong();
+
+    AlertDispatcher(int queueCapacity)
+    {
+        slots = new Semaphore(queueCapacity);
+        /* Bounded by the slots */
+        exec = new ThreadPoolExecutor(1, 1,
+                KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new DispatcherThreadFactory("AlertDispatcher"));
+        exec.allowCoreThreadTimeOut(true);
+    }
+
+    void post(@NonNull Runnable handler)
+    {
+        postedCount.incrementAndGet();
+        boolean acquired = acquireSlot();
+        synchronized (openBatches) {
+            openBatches.clear();
+            exec.execute(new Task(handler, acquired));
+        }
+    }
+
+    void merge(@NonNull String key, int value, @NonNull MergeHandler handler)
+    {
+        if (mergeValue(key, value))
+            return;
+
+        boolean acquired = acquireSlot();
+        synchronized (openBatches) {
+            /* Opened by another thread while waiting for the slot */
+            MergeBatch batch = openBatches.get(key);
+            if (batch != null) {
+                batch.values.add(value);
+                mergedCount.incrementAndGet();
+                if (acquired)
+                    slots.release();
+
+                return;
+            }
+            MergeBatch newBatch = new MergeBatch(key, handler);
+            newBatch.values.add(value);
+            openBatches.put(key, newBatch);
+            exec.execute(new Task(() -> deliver(newBatch), acquired));
+        }
+    }
+
+    private boolean mergeValue(String key, int value)
+    {
+        synchronized (openBatches) {
+            MergeBatch batch = openBatches.get(key);
+            if (batch == null)
+                return false;
+            batch.values.add(value);
+            mergedCount.incrementAndGet();
+
+            return true;
+        }
+    }
+
+    /*
+     * Waits for a free slot in the queue. The dispatcher thread never waits,
+     * because it's the one that frees the slots
+     */
+
+    private boolean acquireSlot()
+    {
+        if (Thread.currentThread() == dispatcherThread)
+            return false;
+
+        if (!slots.tryAcquire()) {
+            blockedCount.incrementAndGet();
+            slots.acquireUninterruptibly();
+        }
+
+        return true;
+    }
+
+    private void deliver(MergeBatch batch)
+    {
+        int[] values;
+        synchronized (openBatches) {
+            if (openBatches.get(batch.key) == batch)
+                openBatches.remove(batch.key);
+
+            values = new int[batch.values.size()];
+            int i = 0;
+            for (Integer value : batch.values)
+                values[i++] = value;
+        }
+
+        batch.handler.onMerged(values);
+    }
+
+    private final class Task implements Runnable
+    {
+        final Runnable handler;
+        final boolean holdsSlot;
+
+        Task(Runnable handler, boolean holdsSlot)
+        {
+            this.handler = handler;
+            this.holdsSlot = holdsSlot;
+        }
+
+        @Override
+        public void run()
+        {
+            dispatcherThread = Thread.currentThread();
+            try {
+                handler.run();
+
+            } finally {
+                if (holdsSlot)
+                    slots.release();
+            }
+        }
+    }
+
+    /*
+     * Number of handlers posted to the queue
+     */
+
+    long getPostedCount()
+    {
+        return postedCount.get();
+    }
+
+    /*
+     * Number of times the caller waited for a free slot because the queue was full
+     */
+
+    long getBlockedCount()
+    {
+        return blockedCount.get();
+    }
+
+    /*
+     * Number of values that were merged into already pending handler calls
+     */
+
+    long getMergedCount()
+    {
+        return mergedCount.get();
+    }
+
+    int getQueueSize()
+    {
+        return exec.getQueue().size();
+    }
+
+    private static final class DispatcherThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger count = new AtomicInteger();
+        private final String name;
+
+        DispatcherThreadFactory(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable r)
+        {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+
+            return t;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AlertDispatcher{" +
+                "posted=" + postedCount.get() +
+                ", blocked=" + blockedCount.get() +
+                ", merged=" + mergedCount.get() +
+                '}';
+    }
+}
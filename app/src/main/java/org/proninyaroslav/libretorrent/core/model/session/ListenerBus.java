@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.proninyaroslav.libretorrent.core.model.TorrentEngineListener;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Delivers TorrentEngineListener callbacks. Each listener has its own mailbox,
+ * processed sequentially in a small thread pool, so a slow listener
+ * doesn't block the caller (usually the alert thread) and other listeners.
+ * Listeners receive only the events whose callbacks they override.
+ *
+ * Coalesced events (e.g. session stats) replace the same undelivered
+ * event in the mailbox instead of being queued again. Any other event closes
+ * the undelivered coalesced events, so they can't be moved ahead of it.
+ * Synchronous events (e.g. read piece, whose buffer is owned by the alert)
+ * are delivered directly in the calling thread.
+ */
+
+class ListenerBus
+{
+    @SuppressWarnings("unused")
+    private static final String TAG = ListenerBus.class.getSimpleName();
+
+    static final int TORRENT_ADDED = 1;
+    static final int TORRENT_LOADED = 1 << 1;
+    static final int TORRENT_STATE_CHANGED = 1 << 2;
+    static final int TORRENT_FINISHED = 1 << 3;
+    static final int TORRENT_REMOVED = 1 << 4;
+    static final int TORRENT_PAUSED = 1 << 5;
+    static final int TORRENT_RESUMED = 1 << 6;
+    static final int SESSION_STARTED = 1 << 7;
+    static final int SESSION_STOPPED = 1 << 8;
+    static final int TORRENT_MOVING = 1 << 9;
+    static final int TORRENT_MOVED = 1 << 10;
+    static final int IP_FILTER_PARSED = 1 << 11;
+    static final int MAGNET_LOADED = 1 << 12;
+    static final int TORRENT_METADATA_LOADED = 1 << 13;
+    static final int RESTORE_SESSION_ERROR = 1 << 14;
+    static final int TORRENT_ERROR = 1 << 15;
+    static final int SESSION_ERROR = 1 << 16;
+    static final int NAT_ERROR = 1 << 17;
+    static final int READ_PIECE = 1 << 18;
+    static final int PIECE_FINISHED = 1 << 19;
+    static final int SESSION_STATS = 1 << 20;
+    static final int ALL_EVENTS = (1 << 21) - 1;
+
+    /* Callback names in the order of event bits */
+    private static final String[] CALLBACKS = {
+            "onTorrentAdded",
+            "onTorrentLoaded",
+            "onTorrentStateChanged",
+            "onTorrentFinished",
+            "onTorrentRemoved",
+            "onTorrentPaused",
+            "onTorrentResumed",
+            "onSessionStarted",
+            "onSessionStopped",
+            "onTorrentMoving",
+            "onTorrentMoved",
+            "onIpFilterParsed",
+            "onMagnetLoaded",
+            "onTorrentMetadataLoaded",
+            "onRestoreSessionError",
+            "onTorrentError",
+            "onSessionError",
+            "onNatError",
+            "onReadPiece",
+            "onPieceFinished",
+            "onSessionStats",
+    };
+
+    private static final int THREADS = 4;
+    private static final long KEEP_ALIVE_TIME = 30; /* seconds */
+    /* Max events per mailbox run, so that busy listeners don't starve others */
+    private static final int MAX_BATCH = 64;
+
+    interface Call
+    {
+        void apply(TorrentEngineListener listener);
+    }
+
+    /*
+     * Coalesced call that needs the replaced call, e.g. to keep the previous state
+     */
+
+    interface MergeableCall extends Call
+    {
+        Call merge(@NonNull Call pending);
+    }
+
+    private static final ConcurrentHashMap<Class<?>, Integer> interestMasks = new ConcurrentHashMap<>();
+
+    private final CopyOnWriteArrayList<Mailbox> mailboxes = new CopyOnWriteArrayList<>();
+    private final ThreadPoolExecutor exec;
+
+    ListenerBus()
+    {
+        exec = new ThreadPoolExecutor(THREADS, THREADS,
+                KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new BusThreadFactory());
+        exec.allowCoreThreadTimeOut(true);
+    }
+
+    void add(@NonNull TorrentEngineListener listener)
+    {
+        mailboxes.add(new Mailbox(listener, getInterestMask(listener.getClass())));
+    }
+
+    void remove(@NonNull TorrentEngineListener listener)
+    {
+        for (Mailbox mailbox : mailboxes) {
+            if (mailbox.listener == listener) {
+                mailbox.close();
+                mailboxes.remove(mailbox);
+                break;
+            }
+        }
+    }
+
+    void post(int type, @NonNull Call call)
+    {
+        for (Mailbox mailbox : mailboxes) {
+            if ((mailbox.mask & type) != 0)
+                mailbox.put(type, null, call);
+        }
+    }
+
+    /*
+     * Replaces the undelivered event with the same type and key, if any
+     */
+
+    void postCoalesced(int type, @NonNull String key, @NonNull Call call)
+    {
+        for (Mailbox mailbox : mailboxes) {
+            if ((mailbox.mask & type) != 0)
+                mailbox.put(type, key, call);
+        }
+    }
+
+    /*
+     * Calls listeners in the calling thread
+     */
+
+    void postSync(int type, @NonNull Call call)
+    {
+        for (Mailbox mailbox : mailboxes) {
+            if ((mailbox.mask & type) != 0)
+                mailbox.deliverSync(call);
+        }
+    }
+
+    int size()
+    {
+        return mailboxes.size();
+    }
+
+    List<ListenerStats> getStats()
+    {
+        ArrayList<ListenerStats> stats = new ArrayList<>(mailboxes.size());
+        for (Mailbox mailbox : mailboxes)
+            stats.add(mailbox.getStats());
+
+        return stats;
+    }
+
+    /*
+     * Returns event bits of the callbacks that are overridden by the listener class
+     */
+
+    static int getInterestMask(@NonNull Class<?> cls)
+    {
+        Integer mask = interestMasks.get(cls);
+        if (mask != null)
+            return mask;
+
+        int newMask = 0;
+        try {
+            for (Method method : TorrentEngineListener.class.getDeclaredMethods()) {
+                int bit = indexOfCallback(method.getName());
+                if (bit < 0)
+                    continue;
+                Method m = cls.getMethod(method.getName(), method.getParameterTypes());
+                if (m.getDeclaringClass() != TorrentEngineListener.class)
+                    newMask |= 1 << bit;
+            }
+
+        } catch (Exception e) {
+            Log.e(TAG, Log.getStackTraceString(e));
+            newMask = ALL_EVENTS;
+        }
+        interestMasks.put(cls, newMask);
+
+        return newMask;
+    }
+
+    private static int indexOfCallback(String name)
+    {
+        for (int i = 0; i < CALLBACKS.length; i++) {
+            if (CALLBACKS[i].equals(name))
+                return i;
+        }
+
+        return -1;
+    }
+
+    private static final class Slot
+    {
+        final int type;
+        final String key;
+        Call call;
+        final long enqueueTime;
+
+        Slot(int type, String key, Call call, long enqueueTime)
+        {
+            this.type = type;
+            this.key = key;
+            this.call = call;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+
+    private final class Mailbox implements Runnable
+    {
+        final TorrentEngineListener listener;
+        final int mask;
+        private final ArrayDeque<Slot> queue = new ArrayDeque<>();
+        /* Undelivered coalesced events by the type and key */
+        private final HashMap<String, Slot> pendingCoalesced = new HashMap<>();
+        private boolean scheduled;
+        private volatile boolean closed;
+        /* Statistics */
+        private long delivered;
+        private long coalesced;
+        private long totalDelayNanos;
+        private long maxDelayNanos;
+        private long totalHandleNanos;
+        private long maxHandleNanos;
+
+        Mailbox(TorrentEngineListener listener, int mask)
+        {
+            this.listener = listener;
+            this.mask = mask;
+        }
+
+        void put(int type, String key, Call call)
+        {
+            synchronized (this) {
+                if (closed)
+                    return;
+
+                if (key != null) {
+                    String slotKey = type + ":" + key;
+                    Slot slot = pendingCoalesced.get(slotKey);
+                    if (slot != null) {
+                        slot.call = (call instanceof MergeableCall ?
+                                ((MergeableCall)call).merge(slot.call) :
+                                call);
+                        coalesced++;
+                        return;
+                    }
+                    slot = new Slot(type, slotKey, call, System.nanoTime());
+                    pendingCoalesced.put(slotKey, slot);
+                    queue.add(slot);
+                } else {
+                    pendingCoalesced.clear();
+                    queue.add(new Slot(type, null, call, System.nanoTime()));
+                }
+
+                if (scheduled)
+                    return;
+                scheduled = true;
+            }
+            exec.execute(this);
+        }
+
+        void deliverSync(Call call)
+        {
+            if (closed)
+                return;
+
+            long startTime = System.nanoTime();
+            deliver(call);
+            long handleTime = System.nanoTime() - startTime;
+
+            synchronized (this) {
+                addStats(0, handleTime);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            for (int i = 0; i < MAX_BATCH; i++) {
+                Slot slot;
+                synchronized (this) {
+                    slot = queue.poll();
+                    if (slot == null || closed) {
+                        scheduled = false;
+                        return;
+                    }
+                    if (slot.key != null)
+                        pendingCoalesced.remove(slot.key);
+                }
+
+                long startTime = System.nanoTime();
+                deliver(slot.call);
+                long handleTime = System.nanoTime() - startTime;
+
+                synchronized (this) {
+                    addStats(startTime - slot.enqueueTime, handleTime);
+                }
+            }
+
+            /* Let other mailboxes run */
+            exec.execute(this);
+        }
+
+        private void deliver(Call call)
+        {
+            try {
+                call.apply(listener);
+
+            } catch (Exception e) {
+                Log.e(TAG, "Listener " + listener + " failed: " + Log.getStackTraceString(e));
+            }
+        }
+
+        private void addStats(long delay, long handleTime)
+        {
+            delivered++;
+            totalDelayNanos += delay;
+            if (delay > maxDelayNanos)
+                maxDelayNanos = delay;
+            totalHandleNanos += handleTime;
+            if (handleTime > maxHandleNanos)
+                maxHandleNanos = handleTime;
+        }
+
+        void close()
+        {
+            synchronized (this) {
+                closed = true;
+                queue.clear();
+                pendingCoalesced.clear();
+            }
+        }
+
+        synchronized ListenerStats getStats()
+        {
+            return new ListenerStats(listener.getClass().getName(), queue.size(),
+                    delivered, coalesced,
+                    totalDelayNanos, maxDelayNanos,
+                    totalHandleNanos, maxHandleNanos);
+        }
+    }
+
+    static final class ListenerStats
+    {
+        final String listenerClass;
+        final int pending;
+        final long delivered;
+        final long coalesced;
+        private final long totalDelayNanos;
+        private final long maxDelayNanos;
+        private final long totalHandleNanos;
+        private final long maxHandleNanos;
+
+        ListenerStats(String listenerClass, int pending,
+                      long delivered, long coalesced,
+                      long totalDelayNanos, long maxDelayNanos,
+                      long totalHandleNanos, long maxHandleNanos)
+        {
+            this.listenerClass = listenerClass;
+            this.pending = pending;
+            this.delivered = delivered;
+            this.coalesced = coalesced;
+            this.totalDelayNanos = totalDelayNanos;
+            this.maxDelayNanos = maxDelayNanos;
+            this.totalHandleNanos = totalHandleNanos;
+            this.maxHandleNanos = maxHandleNanos;
+        }
+
+        /*
+         * Average time from posting to delivery (in us)
+         */
+
+        long getAvgDelay()
+        {
+            return (delivered == 0 ? 0 : totalDelayNanos / delivered / 1000);
+        }
+
+        long getMaxDelay()
+        {
+            return maxDelayNanos / 1000;
+        }
+
+        /*
+         * Average time spent in the listener callback (in us)
+         */
+
+        long getAvgHandleTime()
+        {
+            return (delivered == 0 ? 0 : totalHandleNanos / delivered / 1000);
+        }
+
+        long getMaxHandleTime()
+        {
+            return maxHandleNanos / 1000;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "ListenerStats{" +
+                    "listener=" + listenerClass +
+                    ", pending=" + pending +
+                    ", delivered=" + delivered +
+                    ", coalesced=" + coalesced +
+                    ", avgDelay=" + getAvgDelay() + "us" +
+                    ", maxDelay=" + getMaxDelay() + "us" +
+                    ", avgHandleTime=" + getAvgHandleTime() + "us" +
+                    ", maxHandleTime=" + getMaxHandleTime() + "us" +
+                    '}';
+        }
+    }
+
+    private static final class BusThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable r)
+        {
+            Thread t = new Thread(r, "ListenerBus-" + count.incrementAndGet());
+            t.setDaemon(true);
+
+            return t;
+        }
+    }
+}
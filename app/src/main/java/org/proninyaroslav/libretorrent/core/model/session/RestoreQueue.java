@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/*
+ * Orders decoded torrents by the restore priority and hands them out
+ * in batches. The next batch is given only after all torrents of
+ * the previous batch are added to the session (or after the timeout),
+ * so that a large number of torrents doesn't flood the alert queue.
+ * While the decoding is in progress, only torrents with the highest
+ * priority are given, the rest wait until all torrents are decoded.
+ */
+
+class RestoreQueue<T>
+{
+    static final int PRIORITY_ACTIVE = 0;
+    static final int PRIORITY_PAUSED = 1;
+    static final int PRIORITY_SEEDING = 2;
+    private static final int PRIORITY_COUNT = 3;
+
+    private static final class Item<T>
+    {
+        final String id;
+        final T value;
+
+        Item(String id, T value)
+        {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    private final int batchSize;
+    private final long batchTimeout;
+    private final ArrayList<ArrayDeque<Item<T>>> queues = new ArrayList<>(PRIORITY_COUNT);
+    private final HashSet<String> inFlight = new HashSet<>();
+    private long batchTime;
+    /* Number of torrents that are still decoding */
+    private int pending;
+    private int timedOut;
+    private boolean finished;
+
+    RestoreQueue(int batchSize, long batchTimeout, int count)
+    {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("Batch size must be positive");
+
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout;
+        this.pending = count;
+        for (int i = 0; i < PRIORITY_COUNT; i++)
+            queues.add(new ArrayDeque<>());
+    }
+
+    synchronized void put(@NonNull String id, @NonNull T value, int priority)
+    {
+        if (priority < 0 || priority >= PRIORITY_COUNT)
+            throw new IllegalArgumentException("Invalid priority: " + priority);
+
+        if (pending > 0)
+            pending--;
+        queues.get(priority).add(new Item<>(id, value));
+    }
+
+    /*
+     * The torrent wasn't decoded and won't be put in the queue
+     */
+
+    synchronized void skip()
+    {
+        if (pending > 0)
+            pending--;
+    }
+
+    /*
+     * Returns the next batch or an empty list if the previous
+     * batch is still in progress or there is nothing to give yet
+     */
+
+    synchronized List<T> pollBatch(long now)
+    {
+        if (!inFlight.isEmpty()) {
+            if (now - batchTime < batchTimeout)
+                return Collections.emptyList();
+            timedOut += inFlight.size();
+            inFlight.clear();
+        }
+
+        ArrayList<T> batch = new ArrayList<>();
+        /* Lower priorities wait for the decoding completion */
+        int lastPriority = (pending > 0 ? PRIORITY_ACTIVE : PRIORITY_COUNT - 1);
+        for (int i = 0; i <= lastPriority && batch.size() < batchSize; i++) {
+            ArrayDeque<Item<T>> queue = queues.get(i);
+            while (!queue.isEmpty() && batch.size() < batchSize) {
+                Item<T> item = queue.poll();
+                inFlight.add(item.id);
+                batch.add(item.value);
+            }
+        }
+        if (!batch.isEmpty())
+            batchTime = now;
+
+        return batch;
+    }
+
+    /*
+     * Returns true if the torrent belongs to the current batch
+     */
+
+    synchronized boolean complete(@NonNull String id)
+    {
+        return inFlight.remove(id);
+    }
+
+    /*
+     * Returns true once, when all torrents are handed out and added
+     */
+
+    synchronized boolean checkFinished()
+    {
+        if (finished || pending > 0 || !inFlight.isEmpty())
+            return false;
+        for (ArrayDeque<Item<T>> queue : queues) {
+            if (!queue.isEmpty())
+                return false;
+        }
+        finished = true;
+
+        return true;
+    }
+
+    synchronized int getTimedOutCount()
+    {
+        return timedOut;
+    }
+
+    synchronized void clear()
+    {
+        for (ArrayDeque<Item<T>> queue : queues)
+            queue.clear();
+        inFlight.clear();
+        pending = 0;
+        finished = true;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.proninyaroslav.libretorrent.core.model.data.entity.FastResume;
+import org.proninyaroslav.libretorrent.core.storage.TorrentRepository;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Collects resume data of torrents and writes them to the database
+ * in one transaction, no more often than once per flush interval.
+ * If the resume data of a torrent is updated before being written,
+ * only the latest version is written. The callback passed with the data
+ * is called after the data is written (or failed to be written),
+ * it's used to complete the SAVE_RESUME critical work of the torrent.
+ */
+
+class ResumeDataWriter
+{
+    @SuppressWarnings("unused")
+    private static final String TAG = ResumeDataWriter.class.getSimpleName();
+
+    private static final long RATE_WINDOW = 60000; /* ms */
+
+    private static final class Entry
+    {
+        byte[] data;
+        ArrayList<Runnable> callbacks = new ArrayList<>(1);
+    }
+
+    private final TorrentRepository repo;
+    private final long flushInterval;
+    /* Created on demand and shut down with the session, see shutdown() */
+    private ScheduledExecutorService exec;
+    /* Serializes flushes */
+    private final Object flushLock = new Object();
+    private LinkedHashMap<String, Entry> dirty = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+    /* Pairs of {flush time, bytes written} for the last RATE_WINDOW */
+    private final ArrayDeque<long[]> writeHistory = new ArrayDeque<>();
+    private long totalBytes;
+    private long flushCount;
+    private long coalescedCount;
+
+    ResumeDataWriter(@NonNull TorrentRepository repo, long flushInterval)
+    {
+        this.repo = repo;
+        this.flushInterval = flushInterval;
+    }
+
+    synchronized void put(@NonNull String torrentId, @NonNull byte[] data, Runnable callback)
+    {
+        put(torrentId, data, callback, false);
+    }
+
+    /*
+     * Marks the torrent as dirty and schedules the flush. If flushNow is true,
+     * the data is written without waiting for the flush interval
+     * (e.g. the torrent doesn't have stored resume data yet)
+     */
+
+    synchronized void put(@NonNull String torrentId, @NonNull byte[] data,
+                          Runnable callback, boolean flushNow)
+    {
+        Entry entry = dirty.get(torrentId);
+        if (entry == null) {
+            entry = new Entry();
+            dirty.put(torrentId, entry);
+        } else {
+            coalescedCount++;
+        }
+        entry.data = data;
+        if (callback != null)
+            entry.callbacks.add(callback);
+
+        if (flushNow)
+            requestFlush();
+        else if (scheduledFlush == null)
+            scheduledFlush = getExecutor().schedule(this::flush, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Discards unwritten data of the torrent (e.g. the torrent is deleted)
+     */
+
+    void remove(@NonNull String torrentId)
+    {
+        Entry entry;
+        synchronized (this) {
+            entry = dirty.remove(torrentId);
+        }
+        if (entry != null)
+            runCallbacks(entry);
+    }
+
+    /*
+     * Writes pending data as soon as possible, without waiting for the flush interval
+     */
+
+    synchronized void requestFlush()
+    {
+        if (dirty.isEmpty())
+            return;
+
+        if (scheduledFlush != null)
+            scheduledFlush.cancel(false);
+        scheduledFlush = getExecutor().schedule(this::flush, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Writes pending data and stops the flush thread. The thread is started again
+     * on the next put, if the writer is used after the session restart
+     */
+
+    void shutdown()
+    {
+        flush();
+
+        ScheduledExecutorService e;
+        synchronized (this) {
+            e = exec;
+            exec = null;
+        }
+        /* Already scheduled flushes still run, so nothing is lost */
+        if (e != null)
+            e.shutdown();
+    }
+
+    private ScheduledExecutorService getExecutor()
+    {
+        if (exec == null)
+            exec = Executors.newSingleThreadScheduledExecutor();
+
+        return exec;
+    }
+
+    /*
+     * Writes pending data in the calling thread
+     */
+
+    void flush()
+    {
+        synchronized (flushLock) {
+            LinkedHashMap<String, Entry> batch;
+            synchronized (this) {
+                batch = dirty;
+                dirty = new LinkedHashMap<>();
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+            }
+            if (batch.isEmpty())
+                return;
+
+            ArrayList<FastResume> list = new ArrayList<>(batch.size());
+            for (Map.Entry<String, Entry> e : batch.entrySet())
+                list.add(new FastResume(e.getKey(), e.getValue().data));
+
+            long bytes = 0;
+            try {
+                repo.addFastResumeList(list);
+                for (FastResume fastResume : list)
+                    bytes += fastResume.data.length;
+
+            } catch (Exception e) {
+                Log.e(TAG, Log.getStackTraceString(e));
+                /* Don't lose all data because of a single row (e.g. the torrent was deleted) */
+                bytes = writeSeparately(list);
+
+            } finally {
+                for (Entry entry : batch.values())
+                    runCallbacks(entry);
+            }
+
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                flushCount++;
+                totalBytes += bytes;
+                writeHistory.add(new long[]{now, bytes});
+                trimHistory(now);
+            }
+        }
+    }
+
+    private long writeSeparately(ArrayList<FastResume> list)
+    {
+        long bytes = 0;
+        for (FastResume fastResume : list) {
+            try {
+                repo.addFastResume(fastResume);
+                bytes += fastResume.data.length;
+
+            } catch (Exception e) {
+                Log.e(TAG, "Unable to save resume data of " + fastResume.torrentId + ": " +
+                        Log.getStackTraceString(e));
+            }
+        }
+
+        return bytes;
+    }
+
+    private void runCallbacks(Entry entry)
+    {
+        for (Runnable callback : entry.callbacks) {
+            try {
+                callback.run();
+
+            } catch (Exception e) {
+                Log.e(TAG, Log.getStackTraceString(e));
+            }
+        }
+    }
+
+    private void trimHistory(long now)
+    {
+        while (!writeHistory.isEmpty() && now - writeHistory.peek()[0] > RATE_WINDOW)
+            writeHistory.poll();
+    }
+
+    synchronized int getPendingCount()
+    {
+        return dirty.size();
+    }
+
+    /*
+     * Bytes written to the database in the last minute
+     */
+
+    synchronized long getBytesPerMinute()
+    {
+        trimHistory(System.currentTimeMillis());
+
+        long bytes = 0;
+        for (long[] write : writeHistory)
+            bytes += write[1];
+
+        return bytes;
+    }
+
+    synchronized long getTotalBytesWritten()
+    {
+        return totalBytes;
+    }
+
+    synchronized long getFlushCount()
+    {
+        return flushCount;
+    }
+
+    /*
+     * Number of updates that replaced unwritten data and didn't cause a separate write
+     */
+
+    synchronized long getCoalescedCount()
+    {
+        return coalescedCount;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "ResumeDataWriter{" +
+                "pending=" + dirty.size() +
+                ", flushCount=" + flushCount +
+                ", coalescedCount=" + coalescedCount +
+                ", totalBytes=" + totalBytes +
+                ", bytesPerMinute=" + getBytesPerMinute() +
+                '}';
+    }
+}
@@ -26,12 +26,13 @@ import org.libtorrent4j.alerts.PeerLogAlert;
 import org.libtorrent4j.alerts.PortmapLogAlert;
 import org.libtorrent4j.alerts.TorrentLogAlert;
 import org.proninyaroslav.libretorrent.core.logger.LogEntry;
-import org.proninyaroslav.libretorrent.core.logger.LogFilter;
 import org.proninyaroslav.libretorrent.core.logger.Logger;
 
 class SessionLogger extends Logger
 {
     private static int nextLogEntryId = 0;
+    /* Bit mask of SessionLogEntryType ordinals that are filtered out */
+    private volatile int filteredTypes;
 
     public enum SessionLogEntryType {
         /*
@@ -58,26 +59,40 @@ class SessionLogger extends Logger
         /*
          * Posts torrent events
          */
-        TORRENT_LOG,
+        TORRENT_LOG;
+
+        final int tagId;
+
+        SessionLogEntryType()
+        {
+            tagId = LogEntry.internTag(name());
+        }
     }
 
     public enum SessionLogFilter
     {
-        SESSION((entry) -> entry == null || !entry.getTag().equals(SessionLogEntryType.SESSION_LOG.name())),
+        SESSION(SessionLogEntryType.SESSION_LOG),
 
-        DHT((entry) -> entry == null || !entry.getTag().equals(SessionLogEntryType.DHT_LOG.name())),
+        DHT(SessionLogEntryType.DHT_LOG),
 
-        PEER((entry) -> entry == null || !entry.getTag().equals(SessionLogEntryType.PEER_LOG.name())),
+        PEER(SessionLogEntryType.PEER_LOG),
 
-        PORTMAP((entry) -> entry == null || !entry.getTag().equals(SessionLogEntryType.PORTMAP_LOG.name())),
+        PORTMAP(SessionLogEntryType.PORTMAP_LOG),
 
-        TORRENT((entry) -> entry == null || !entry.getTag().equals(SessionLogEntryType.TORRENT_LOG.name()));
+        TORRENT(SessionLogEntryType.TORRENT_LOG);
 
+        private final SessionLogEntryType type;
         private final NewFilter filter;
 
-        SessionLogFilter(LogFilter filter)
+        SessionLogFilter(SessionLogEntryType type)
         {
-            this.filter = new NewFilter(name(), filter);
+            this.type = type;
+            this.filter = NewFilter.hideTag(name(), type.name());
+        }
+
+        public SessionLogEntryType type()
+        {
+            return type;
         }
 
         public NewFilter filter()
@@ -116,54 +131,77 @@ class SessionLogger extends Logger
 
     void send(Alert<?> alert)
     {
-        long time = System.currentTimeMillis();
-        String msg;
-        LogEntry entry = null;
+        SessionLogEntryType type;
         switch (alert.type()) {
             case LOG:
-                entry = new LogEntry(nextLogEntryId++,
-                        SessionLogEntryType.SESSION_LOG.name(),
-                        ((LogAlert)alert).logMessage(),
-                        time);
+                type = SessionLogEntryType.SESSION_LOG;
+                break;
+            case DHT_LOG:
+                type = SessionLogEntryType.DHT_LOG;
+                break;
+            case PEER_LOG:
+                type = SessionLogEntryType.PEER_LOG;
+                break;
+            case PORTMAP_LOG:
+                type = SessionLogEntryType.PORTMAP_LOG;
+                break;
+            case TORRENT_LOG:
+                type = SessionLogEntryType.TORRENT_LOG;
                 break;
+            default:
+                return;
+        }
+        /*
+         * Filtered types are dropped before reading the message from the alert,
+         * so they don't appear again when the filter is removed
+         */
+        if (isFiltered(type))
+            return;
+
+        long time = System.currentTimeMillis();
+        int tag = type.tagId;
+        LogEntry entry;
+        switch (type) {
             case DHT_LOG:
                 DhtLogAlert dhtLogAlert = (DhtLogAlert)alert;
-                msg = "[" + dhtLogAlert.module().name() + "] " + dhtLogAlert.logMessage();
-                entry = new LogEntry(nextLogEntryId++,
-                        SessionLogEntryType.DHT_LOG.name(),
-                        msg,
-                        time);
+                entry = new LogEntry(nextLogEntryId++, tag,
+                        dhtLogAlert.logMessage(),
+                        time,
+                        dhtLogAlert.module().name());
                 break;
             case PEER_LOG:
                 PeerLogAlert peerLogAlert = (PeerLogAlert)alert;
-
-                msg = "[" + peerLogAlert.direction() + "] " +
-                        "[" + peerLogAlert.eventType() + "] " +
-                        peerLogAlert.logMessage();
-
-                entry = new LogEntry(nextLogEntryId++,
-                        SessionLogEntryType.PEER_LOG.name(),
-                        msg,
-                        time);
+                entry = new LogEntry(nextLogEntryId++, tag,
+                        peerLogAlert.logMessage(),
+                        time,
+                        String.valueOf(peerLogAlert.direction()),
+                        peerLogAlert.eventType());
                 break;
             case PORTMAP_LOG:
                 PortmapLogAlert portmapLogAlert = (PortmapLogAlert)alert;
-                msg = "[" + portmapLogAlert.mapType().name() + "] " + portmapLogAlert.logMessage();
-                entry = new LogEntry(nextLogEntryId++,
-                        SessionLogEntryType.PORTMAP_LOG.name(),
-                        msg,
-                        time);
+                entry = new LogEntry(nextLogEntryId++, tag,
+                        portmapLogAlert.logMessage(),
+                        time,
+                        portmapLogAlert.mapType().name());
                 break;
             case TORRENT_LOG:
-                entry = new LogEntry(nextLogEntryId++,
-                        SessionLogEntryType.TORRENT_LOG.name(),
+                entry = new LogEntry(nextLogEntryId++, tag,
                         ((TorrentLogAlert)alert).logMessage(),
                         time);
                 break;
+            default:
+                entry = new LogEntry(nextLogEntryId++, tag,
+                        ((LogAlert)alert).logMessage(),
+                        time);
+                break;
         }
 
-        if (entry != null)
-            send(entry);
+        send(entry);
+    }
+
+    boolean isFiltered(SessionLogEntryType type)
+    {
+        return (filteredTypes & (1 << type.ordinal())) != 0;
     }
 
     void applyFilterParams(SessionFilterParams params)
@@ -196,6 +234,13 @@ class SessionLogger extends Logger
         else
             removeFilters[4] = SessionLogger.SessionLogFilter.TORRENT.name();
 
+        int mask = 0;
+        for (SessionLogFilter f : SessionLogFilter.values()) {
+            if (addFilters[f.ordinal()] != null)
+                mask |= 1 << f.type().ordinal();
+        }
+        filteredTypes = mask;
+
         removeFilter(removeFilters);
         addFilter(addFilters);
     }
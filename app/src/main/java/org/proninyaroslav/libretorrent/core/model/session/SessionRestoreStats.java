@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+/*
+ * Timing metrics of the session restore
+ */
+
+public final class SessionRestoreStats
+{
+    private final int total;
+    private final long startTime;
+    private int restored;
+    private int failed;
+    private long dbTimeNanos;
+    private long decodeTimeNanos;
+    private long firstAddedTime = -1;
+    private long finishTime = -1;
+
+    SessionRestoreStats(int total, long startTime)
+    {
+        this.total = total;
+        this.startTime = startTime;
+    }
+
+    synchronized void addDbTime(long nanos)
+    {
+        dbTimeNanos += nanos;
+    }
+
+    synchronized void addDecodeTime(long nanos)
+    {
+        decodeTimeNanos += nanos;
+    }
+
+    synchronized void torrentRestored(long now)
+    {
+        restored++;
+        if (firstAddedTime < 0)
+            firstAddedTime = now;
+    }
+
+    synchronized void torrentFailed()
+    {
+        failed++;
+    }
+
+    synchronized void finish(long now)
+    {
+        finishTime = now;
+    }
+
+    public int getTotal()
+    {
+        return total;
+    }
+
+    public synchronized int getRestored()
+    {
+        return restored;
+    }
+
+    public synchronized int getFailed()
+    {
+        return failed;
+    }
+
+    public synchronized boolean isFinished()
+    {
+        return finishTime >= 0;
+    }
+
+    /*
+     * Total time of reading resume data from the database (in ms, sum for all threads)
+     */
+
+    public synchronized long getDbTime()
+    {
+        return dbTimeNanos / 1000000;
+    }
+
+    /*
+     * Total time of resume data decoding (in ms, sum for all threads)
+     */
+
+    public synchronized long getDecodeTime()
+    {
+        return decodeTimeNanos / 1000000;
+    }
+
+    /*
+     * Time from the beginning of the restore to the first added torrent (in ms),
+     * or -1 if no torrent has been added yet
+     */
+
+    public synchronized long getTimeToFirstTorrent()
+    {
+        return (firstAddedTime < 0 ? -1 : firstAddedTime - startTime);
+    }
+
+    /*
+     * Total restore time (in ms), or -1 if the restore is still in progress
+     */
+
+    public synchronized long getElapsedTime()
+    {
+        return (finishTime < 0 ? -1 : finishTime - startTime);
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "SessionRestoreStats{" +
+                "total=" + total +
+                ", restored=" + restored +
+                ", failed=" + failed +
+                ", dbTime=" + getDbTime() + "ms" +
+                ", decodeTime=" + getDecodeTime() + "ms" +
+                ", timeToFirstTorrent=" + getTimeToFirstTorrent() + "ms" +
+                ", elapsedTime=" + getElapsedTime() + "ms" +
+                '}';
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Calculates the read-ahead window and staggered piece deadlines for a stream.
+ * The consumption rate is estimated from the movement of the read position,
+ * the window grows with the consumption rate and shrinks if the torrent
+ * can't download faster than the stream is read. Pieces that left the window
+ * (e.g. after seek) are returned for resetting deadlines.
+ */
+
+class StreamingScheduler
+{
+    /* Used until the consumption rate is known */
+    static final int DEFAULT_WINDOW = 5;
+    static final int DEFAULT_PIECE_DEADLINE = 1000; /* ms */
+    static final int DEFAULT_DEADLINE_STEP = 250; /* ms */
+
+    static final int MIN_WINDOW = 2;
+    static final int MAX_WINDOW = 50;
+    static final int MIN_PIECE_DEADLINE = 100; /* ms */
+    /* How many milliseconds of playback should be downloaded ahead */
+    static final long READ_AHEAD_TIME = 15000; /* ms */
+    /* Piece should be ready before the read position reaches it */
+    private static final double DEADLINE_FACTOR = 0.75;
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private final int firstPiece, lastPiece;
+    private final int pieceLength;
+    private int playhead = -1;
+    private int windowEnd = -1;
+    private long lastMoveTime;
+    /* Bytes per second, 0 if unknown */
+    private double consumptionRate;
+    private HashSet<Integer> scheduledPieces = new HashSet<>();
+
+    static class Plan
+    {
+        /* Window [playhead, windowEnd] */
+        final int playhead;
+        final int windowEnd;
+        /* Deadline of the (playhead + i) piece */
+        final int[] deadlines;
+        /* Pieces that need to reset the deadline */
+        final List<Integer> resetPieces;
+        /* Pieces that weren't in the previous window */
+        final Set<Integer> newPieces;
+
+        Plan(int playhead, int windowEnd, int[] deadlines,
+             List<Integer> resetPieces, Set<Integer> newPieces)
+        {
+            this.playhead = playhead;
+            this.windowEnd = windowEnd;
+            this.deadlines = deadlines;
+            this.resetPieces = resetPieces;
+            this.newPieces = newPieces;
+        }
+    }
+
+    StreamingScheduler(int firstPiece, int lastPiece, int pieceLength)
+    {
+        this.firstPiece = firstPiece;
+        this.lastPiece = lastPiece;
+        this.pieceLength = pieceLength;
+    }
+
+    /*
+     * Window is rebuilt only when the read position moves to another piece,
+     * or if the read goes beyond the window
+     */
+
+    synchronized boolean needReschedule(int startPiece, int numPieces)
+    {
+        return startPiece != playhead || startPiece + numPieces - 1 > windowEnd;
+    }
+
+    /*
+     * Returns pieces of the current window
+     */
+
+    synchronized List<Integer> getScheduledPieces()
+    {
+        return new ArrayList<>(scheduledPieces);
+    }
+
+    synchronized double getConsumptionRate()
+    {
+        return consumptionRate;
+    }
+
+    /*
+     * downloadRate is the current download rate of the torrent in bytes per second
+     */
+
+    synchronized Plan schedule(long now, int startPiece, int numPieces, long downloadRate)
+    {
+        startPiece = Math.max(firstPiece, Math.min(startPiece, lastPiece));
+        updateConsumptionRate(now, startPiece);
+
+        int windowSize = calcWindowSize(downloadRate);
+        windowSize = Math.max(windowSize, numPieces);
+        int end = Math.min(startPiece + windowSize - 1, lastPiece);
+
+        int[] deadlines = new int[end - startPiece + 1];
+        HashSet<Integer> newPieces = new HashSet<>();
+        for (int i = 0; i < deadlines.length; i++) {
+            deadlines[i] = calcDeadline(i);
+            if (scheduledPieces.add(startPiece + i))
+                newPieces.add(startPiece + i);
+        }
+
+        List<Integer> reset = new ArrayList<>();
+        Iterator<Integer> it = scheduledPieces.iterator();
+        while (it.hasNext()) {
+            int piece = it.next();
+            if (piece < startPiece || piece > end) {
+                reset.add(piece);
+                it.remove();
+            }
+        }
+
+        playhead = startPiece;
+        windowEnd = end;
+
+        return new Plan(startPiece, end, deadlines, reset, newPieces);
+    }
+
+    private void updateConsumptionRate(long now, int newPlayhead)
+    {
+        int distance = newPlayhead - playhead;
+        /* Sequential reading, not seek */
+        boolean sequential = playhead >= 0 && distance > 0 &&
+                newPlayhead <= windowEnd + 1;
+        if (sequential && now > lastMoveTime) {
+            double rate = (double)distance * pieceLength * 1000 / (now - lastMoveTime);
+            consumptionRate = (consumptionRate == 0 ?
+                    rate :
+                    RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * consumptionRate);
+        }
+        lastMoveTime = now;
+    }
+
+    private int calcWindowSize(long downloadRate)
+    {
+        if (consumptionRate <= 0)
+            return DEFAULT_WINDOW;
+
+        double rate = consumptionRate;
+        /* Don't spread bandwidth if the torrent can't keep up with playback */
+        if (downloadRate > 0 && downloadRate < rate)
+            rate = downloadRate;
+        int size = (int)Math.ceil(rate * READ_AHEAD_TIME / 1000 / pieceLength);
+
+        return Math.max(MIN_WINDOW, Math.min(size, MAX_WINDOW));
+    }
+
+    /*
+     * Deadline of the piece located at the specified distance from the read position
+     */
+
+    private int calcDeadline(int distance)
+    {
+        if (consumptionRate <= 0)
+            return DEFAULT_PIECE_DEADLINE + distance * DEFAULT_DEADLINE_STEP;
+
+        double timeToReach = (double)distance * pieceLength * 1000 / consumptionRate;
+
+        return (int)Math.max(MIN_PIECE_DEADLINE,
+                Math.min(timeToReach * DEADLINE_FACTOR, Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Value that is loaded at most once per tick of the session status clock
+ * (session stats alert), so the readers within one tick see the same value.
+ * If the clock stops ticking (e.g. the alert loop is busy), the value
+ * expires after maxAge anyway.
+ */
+
+class TickSnapshot<T>
+{
+    interface Loader<T>
+    {
+        T load();
+    }
+
+    /*
+     * Advanced on every session stats alert
+     */
+
+    static class Clock
+    {
+        private final AtomicLong tick = new AtomicLong();
+
+        long current()
+        {
+            return tick.get();
+        }
+
+        void tick()
+        {
+            tick.incrementAndGet();
+        }
+    }
+
+    private final Clock clock;
+    private final Loader<T> loader;
+    private final long maxAge;
+    private volatile Snapshot<T> snapshot;
+
+    private static final class Snapshot<T>
+    {
+        final T value;
+        final long tick;
+        final long time;
+
+        Snapshot(T value, long tick, long time)
+        {
+            this.value = value;
+            this.tick = tick;
+            this.time = time;
+        }
+    }
+
+    TickSnapshot(@NonNull Clock clock, long maxAge, @NonNull Loader<T> loader)
+    {
+        this.clock = clock;
+        this.maxAge = maxAge;
+        this.loader = loader;
+    }
+
+    T get()
+    {
+        long tick = clock.current();
+        long now = System.currentTimeMillis();
+        Snapshot<T> s = snapshot;
+        if (s == null || s.tick != tick || now - s.time >= maxAge) {
+            s = new Snapshot<>(loader.load(), tick, now);
+            snapshot = s;
+        }
+
+        return s.value;
+    }
+
+    /*
+     * The next get() loads the value again
+     */
+
+    void invalidate()
+    {
+        snapshot = null;
+    }
+}
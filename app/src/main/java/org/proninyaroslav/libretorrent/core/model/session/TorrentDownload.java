@@ -177,7 +177,19 @@ public interface TorrentDownload
 
     void readPiece(int pieceIndex);
 
-    void setInterestedPieces(@NonNull TorrentStream stream, int startPiece, int numPieces);
+    /*
+     * Each reader of the stream has its own read-ahead window,
+     * so concurrent readers of the same file don't reset each other
+     */
+
+    void setInterestedPieces(@NonNull Object reader, @NonNull TorrentStream stream,
+                             int startPiece, int numPieces);
+
+    /*
+     * Resets the deadlines and priorities set for the reader
+     */
+
+    void removeInterestedPieces(@NonNull Object reader);
 
     TorrentStream getStream(int fileIndex);
 
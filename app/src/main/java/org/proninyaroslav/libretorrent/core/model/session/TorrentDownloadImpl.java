@@ -27,7 +27,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 import androidx.core.util.Pair;
 
-import org.libtorrent4j.AlertListener;
 import org.libtorrent4j.AnnounceEntry;
 import org.libtorrent4j.ErrorCode;
 import org.libtorrent4j.FileStorage;
@@ -50,7 +49,6 @@ import org.libtorrent4j.alerts.PieceFinishedAlert;
 import org.libtorrent4j.alerts.ReadPieceAlert;
 import org.libtorrent4j.alerts.SaveResumeDataAlert;
 import org.libtorrent4j.alerts.StateChangedAlert;
-import org.libtorrent4j.alerts.TorrentAlert;
 import org.libtorrent4j.alerts.TorrentErrorAlert;
 import org.libtorrent4j.swig.add_torrent_params;
 import org.libtorrent4j.swig.announce_entry;
@@ -66,7 +64,6 @@ import org.proninyaroslav.libretorrent.core.model.data.Priority;
 import org.proninyaroslav.libretorrent.core.model.data.ReadPieceInfo;
 import org.proninyaroslav.libretorrent.core.model.data.TorrentStateCode;
 import org.proninyaroslav.libretorrent.core.model.data.TrackerInfo;
-import org.proninyaroslav.libretorrent.core.model.data.entity.FastResume;
 import org.proninyaroslav.libretorrent.core.model.data.entity.Torrent;
 import org.proninyaroslav.libretorrent.core.model.data.metainfo.TorrentMetaInfo;
 import org.proninyaroslav.libretorrent.core.model.stream.TorrentStream;
@@ -76,10 +73,10 @@ import org.proninyaroslav.libretorrent.core.system.FileSystemFacade;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -98,14 +95,14 @@ class TorrentDownloadImpl implements TorrentDownload
     private static final String TAG = TorrentDownload.class.getSimpleName();
 
     private static final long SAVE_RESUME_SYNC_TIME = 10000; /* ms */
+    /* In case the session stats ticks stop */
+    private static final long STATUS_SNAPSHOT_MAX_AGE = 5000; /* ms */
     private static final long CRITICAL_WORK_WAIT_TIMEOUT = 30000; /* ms */
     private static final double MAX_RATIO = 9999.;
-    /* For streaming */
-    private final static int PRELOAD_PIECES_COUNT = 5;
-    private static final int DEFAULT_PIECE_DEADLINE = 1000; /* ms */
     private static final int MAX_METADATA_SIZE = 2 * 1024 * 1024;
 
-    private static final int[] INNER_LISTENER_TYPES = new int[] {
+    /* Alert types handled by the torrent, see onAlert() */
+    static final int[] ALERT_TYPES = new int[] {
             AlertType.STATE_CHANGED.swig(),
             AlertType.TORRENT_FINISHED.swig(),
             AlertType.TORRENT_REMOVED.swig(),
@@ -128,9 +125,10 @@ class TorrentDownloadImpl implements TorrentDownload
     private TorrentHandle th;
     private String id;
     private TorrentRepository repo;
+    private ResumeDataWriter resumeWriter;
     private FileSystemFacade fs;
-    private Queue<TorrentEngineListener> listeners;
-    private InnerListener listener;
+    private ListenerBus listenerBus;
+    private AlertDispatcher dispatcher;
     private Set<Uri> incompleteFilesToRemove;
     private Uri partsFile;
     private long lastSaveResumeTime;
@@ -138,30 +136,45 @@ class TorrentDownloadImpl implements TorrentDownload
     private TorrentCriticalWork criticalWork = new TorrentCriticalWork();
     private boolean autoManaged;
     private boolean stopRequested = false;
-    private boolean stopped = false;
+    private volatile boolean stopped = false;
     private Completable stopEvent;
     private boolean resumeDataRejected;
     private boolean hasMissingFiles;
+    /* Write the next resume data without waiting for the flush interval */
+    private volatile boolean flushResumeData;
+    /* Streaming schedulers by the stream reader */
+    private final HashMap<Object, StreamingScheduler> schedulers = new HashMap<>();
+    /* Pieces in the windows of the readers, guarded by schedulers */
+    private final HashMap<Integer, StreamPiece> streamPieces = new HashMap<>();
+    private TickSnapshot<TorrentStatus> statusSnapshot;
 
     public TorrentDownloadImpl(SessionManager sessionManager,
                                TorrentRepository repo,
+                               ResumeDataWriter resumeWriter,
+                               AlertDispatcher dispatcher,
                                FileSystemFacade fs,
-                               final Queue<TorrentEngineListener> listeners,
+                               ListenerBus listenerBus,
+                               TickSnapshot.Clock statusClock,
                                String id,
                                TorrentHandle handle,
-                               boolean autoManaged)
+                               boolean autoManaged,
+                               boolean added)
     {
         this.id = id;
         this.repo = repo;
+        this.resumeWriter = resumeWriter;
+        this.dispatcher = dispatcher;
         this.fs = fs;
         this.sessionManager = sessionManager;
         this.autoManaged = autoManaged;
-        this.listeners = listeners;
+        this.listenerBus = listenerBus;
         this.th = handle;
         this.name = new AtomicReference<>(handle.name());
+        this.statusSnapshot = new TickSnapshot<>(statusClock, STATUS_SNAPSHOT_MAX_AGE,
+                () -> th.status(true));
         partsFile = getPartsFile();
-        listener = new InnerListener();
-        sessionManager.addListener(listener);
+        /* The just added torrent doesn't have stored resume data, it can't be restored without it */
+        flushResumeData = added;
 
         /*
          * Save resume data after first start, if needed
@@ -171,102 +184,152 @@ class TorrentDownloadImpl implements TorrentDownload
             saveResumeData(true);
     }
 
-    private interface CallListener
+    private void notifyListeners(int type, @NonNull ListenerBus.Call call)
     {
-        void apply(TorrentEngineListener listener);
+        listenerBus.post(type, call);
     }
 
-    private void notifyListeners(@NonNull CallListener l)
-    {
-        for (TorrentEngineListener listener : listeners) {
-            if (listener != null)
-                l.apply(listener);
-        }
-    }
+    /*
+     * Keeps the state before the first of coalesced changes
+     */
 
-    private boolean operationNotAllowed()
+    private static final class StateChangedCall implements ListenerBus.MergeableCall
     {
-        return !th.isValid() || stopped;
-    }
+        private final String id;
+        private final TorrentStateCode prevState;
+        private final TorrentStateCode curState;
+
+        StateChangedCall(String id, TorrentStateCode prevState, TorrentStateCode curState)
+        {
+            this.id = id;
+            this.prevState = prevState;
+            this.curState = curState;
+        }
 
-    private final class InnerListener implements AlertListener
-    {
         @Override
-        public int[] types()
+        public void apply(TorrentEngineListener listener)
         {
-            return INNER_LISTENER_TYPES;
+            listener.onTorrentStateChanged(id, prevState, curState);
         }
 
         @Override
-        public void alert(Alert<?> alert)
+        public ListenerBus.Call merge(@NonNull ListenerBus.Call pending)
         {
-            if (!(alert instanceof TorrentAlert<?>))
-                return;
+            if (!(pending instanceof StateChangedCall))
+                return this;
 
-            if (!((TorrentAlert<?>) alert).handle().swig().op_eq(th.swig()))
-                return;
+            return new StateChangedCall(id, ((StateChangedCall)pending).prevState, curState);
+        }
+    }
+
+    private boolean operationNotAllowed()
+    {
+        return !th.isValid() || stopped;
+    }
+
+    /*
+     * Called by the session in the alert thread. The data that belongs
+     * to the alert is extracted here, the handling itself is done
+     * in the dispatcher thread, see AlertDispatcher
+     */
+
+    void onAlert(@NonNull Alert<?> alert)
+    {
+        if (stopped)
+            return;
 
-            AlertType type = alert.type();
-            switch (type) {
-                case STATE_CHANGED:
-                    StateChangedAlert a = ((StateChangedAlert)alert);
-                    notifyListeners((listener) ->
-                            listener.onTorrentStateChanged(id,
-                                    stateToStateCode(a.getPrevState()),
-                                    stateToStateCode(a.getState())));
-                    break;
-                case TORRENT_FINISHED:
-                    handleTorrentFinished();
-                    break;
-                case TORRENT_REMOVED:
-                    torrentRemoved();
-                    break;
-                case TORRENT_PAUSED:
-                    notifyListeners((listener) ->
-                            listener.onTorrentPaused(id));
-                    break;
-                case TORRENT_RESUMED:
+        AlertType type = alert.type();
+        /* Pieces are finished too often, the next snapshot will catch up */
+        if (type != AlertType.PIECE_FINISHED && type != AlertType.READ_PIECE &&
+            type != AlertType.SAVE_RESUME_DATA)
+            invalidateStatus();
+
+        switch (type) {
+            case STATE_CHANGED:
+                StateChangedAlert a = ((StateChangedAlert)alert);
+                TorrentStateCode prevState = stateToStateCode(a.getPrevState());
+                TorrentStateCode state = stateToStateCode(a.getState());
+                dispatcher.post(() -> listenerBus.postCoalesced(ListenerBus.TORRENT_STATE_CHANGED,
+                        id, new StateChangedCall(id, prevState, state)));
+                break;
+            case TORRENT_FINISHED:
+                dispatcher.post(this::handleTorrentFinished);
+                break;
+            case TORRENT_REMOVED:
+                dispatcher.post(this::torrentRemoved);
+                break;
+            case TORRENT_PAUSED:
+                dispatcher.post(() -> notifyListeners(ListenerBus.TORRENT_PAUSED, (listener) ->
+                        listener.onTorrentPaused(id)));
+                break;
+            case TORRENT_RESUMED:
+                dispatcher.post(() -> {
                     resetTorrentError();
 
-                    notifyListeners((listener) ->
+                    notifyListeners(ListenerBus.TORRENT_RESUMED, (listener) ->
                             listener.onTorrentResumed(id));
-                    break;
-                case SAVE_RESUME_DATA:
-                    serializeResumeData((SaveResumeDataAlert)alert);
-                    break;
-                case STORAGE_MOVED:
-                    onStorageMoved(true);
-                    break;
-                case STORAGE_MOVED_FAILED:
-                    onStorageMoved(false);
-                    break;
-                case PIECE_FINISHED:
-                    saveResumeData(false);
-                    int piece = ((PieceFinishedAlert)alert).pieceIndex();
-                    notifyListeners((listener) ->
-                            listener.onPieceFinished(id, piece));
-                    break;
-                case METADATA_RECEIVED:
-                    handleMetadata((MetadataReceivedAlert)alert);
+                });
+                break;
+            case SAVE_RESUME_DATA:
+                /* Only serialization, the data is written asynchronously */
+                serializeResumeData((SaveResumeDataAlert)alert);
+                break;
+            case STORAGE_MOVED:
+                dispatcher.post(() -> onStorageMoved(true));
+                break;
+            case STORAGE_MOVED_FAILED:
+                dispatcher.post(() -> onStorageMoved(false));
+                break;
+            case PIECE_FINISHED:
+                int piece = ((PieceFinishedAlert)alert).pieceIndex();
+                dispatcher.merge(id, piece, this::handlePiecesFinished);
+                break;
+            case METADATA_RECEIVED:
+                MetadataReceivedAlert metadataAlert = (MetadataReceivedAlert)alert;
+                int size = metadataAlert.metadataSize();
+                byte[] torrentData = (size < 0 || size > MAX_METADATA_SIZE ?
+                        null :
+                        metadataAlert.torrentData());
+                dispatcher.post(() -> {
+                    handleMetadata(torrentData);
+                    flushResumeData = true;
                     saveResumeData(true);
-                    break;
-                case READ_PIECE:
-                    handleReadPiece((ReadPieceAlert)alert);
-                    break;
-                case TORRENT_CHECKED:
-                    handleTorrentChecked();
-                    break;
-                default:
-                    checkError(alert);
-                    break;
-            }
+                });
+                break;
+            case READ_PIECE:
+                /* The piece buffer is owned by the alert, so it can't be read later */
+                handleReadPiece((ReadPieceAlert)alert);
+                break;
+            case TORRENT_CHECKED:
+                dispatcher.post(this::handleTorrentChecked);
+                break;
+            default:
+                checkError(alert);
+                break;
         }
     }
 
+    /*
+     * Used to find the torrent by the alert handle, if the info hash is unavailable
+     */
+
+    boolean isHandleOf(@NonNull torrent_handle handle)
+    {
+        return th.swig().op_eq(handle);
+    }
+
+    private void handlePiecesFinished(int[] pieces)
+    {
+        saveResumeData(false);
+        for (int piece : pieces)
+            notifyListeners(ListenerBus.PIECE_FINISHED, (listener) ->
+                    listener.onPieceFinished(id, piece));
+    }
+
     private void onStorageMoved(boolean success)
     {
         criticalWork.setMoving(false);
-        notifyListeners((listener) -> listener.onTorrentMoved(id, success));
+        notifyListeners(ListenerBus.TORRENT_MOVED, (listener) -> listener.onTorrentMoved(id, success));
 
         saveResumeData(true);
     }
@@ -284,15 +347,21 @@ class TorrentDownloadImpl implements TorrentDownload
     private void checkError(Alert<?> alert)
     {
         Pair<String, Boolean> res = getErrorMsg(alert);
-        String errorMsg = res.first;
-        boolean isNonCritical = res.second;
+        boolean resumeRejected = alert.type() == AlertType.FASTRESUME_REJECTED;
+        boolean missingFiles = resumeRejected &&
+                ((FastresumeRejectedAlert)alert).error().value() ==
+                        libtorrent_errors.mismatching_file_size.swigValue();
+
+        dispatcher.post(() -> handleError(res.first, res.second, resumeRejected, missingFiles));
+    }
 
-        if (alert.type() == AlertType.FASTRESUME_REJECTED) {
+    private void handleError(String errorMsg, boolean isNonCritical,
+                             boolean resumeRejected, boolean missingFiles)
+    {
+        if (resumeRejected) {
             resumeDataRejected = true;
-            if (((FastresumeRejectedAlert)alert).error().value() ==
-                    libtorrent_errors.mismatching_file_size.swigValue()) {
+            if (missingFiles)
                 hasMissingFiles = true;
-            }
         }
 
         if (errorMsg != null) {
@@ -313,7 +382,7 @@ class TorrentDownloadImpl implements TorrentDownload
             pause();
         }
 
-        notifyListeners((listener) ->
+        notifyListeners(ListenerBus.TORRENT_ERROR, (listener) ->
                 listener.onTorrentError(id, new Exception(errorMsg)));
     }
 
@@ -370,7 +439,7 @@ class TorrentDownloadImpl implements TorrentDownload
         return Pair.create(errorMsg, isNonCritical);
     }
 
-    private void handleMetadata(MetadataReceivedAlert alert)
+    private void handleMetadata(byte[] torrentData)
     {
         Exception[] err = new Exception[1];
         String newName = null;
@@ -380,11 +449,11 @@ class TorrentDownloadImpl implements TorrentDownload
             if (torrent == null)
                 throw new NullPointerException(id + " doesn't exists");
 
-            int size = alert.metadataSize();
-            if (size < 0 || size > MAX_METADATA_SIZE)
+            /* Invalid metadata size */
+            if (torrentData == null)
                 return;
 
-            TorrentMetaInfo info = new TorrentMetaInfo(alert.torrentData());
+            TorrentMetaInfo info = new TorrentMetaInfo(torrentData);
 
             /* Skip if default name is changed */
             String name = this.name.get();
@@ -400,7 +469,7 @@ class TorrentDownloadImpl implements TorrentDownload
         } catch (Exception e) {
             err[0] = e;
             pause();
-            notifyListeners((listener) ->
+            notifyListeners(ListenerBus.TORRENT_ERROR, (listener) ->
                     listener.onTorrentError(id, e));
 
         } finally {
@@ -416,7 +485,7 @@ class TorrentDownloadImpl implements TorrentDownload
             }
         }
 
-        notifyListeners((listener) ->
+        notifyListeners(ListenerBus.TORRENT_METADATA_LOADED, (listener) ->
                 listener.onTorrentMetadataLoaded(id, err[0]));
     }
 
@@ -430,13 +499,14 @@ class TorrentDownloadImpl implements TorrentDownload
                 alert.bufferPtr(),
                 err);
 
-        notifyListeners((listener) ->
+        /* The piece buffer is valid only until the alert handling is completed */
+        listenerBus.postSync(ListenerBus.READ_PIECE, (listener) ->
                 listener.onReadPiece(id, info));
     }
 
     private void torrentRemoved()
     {
-        notifyListeners((listener) ->
+        notifyListeners(ListenerBus.TORRENT_REMOVED, (listener) ->
                 listener.onTorrentRemoved(id));
 
         forceStop();
@@ -462,7 +532,7 @@ class TorrentDownloadImpl implements TorrentDownload
     {
         hasMissingFiles = false;
 
-        notifyListeners((listener) ->
+        notifyListeners(ListenerBus.TORRENT_FINISHED, (listener) ->
                 listener.onTorrentFinished(id));
         saveResumeData(true);
     }
@@ -498,16 +568,25 @@ class TorrentDownloadImpl implements TorrentDownload
 
     private void serializeResumeData(SaveResumeDataAlert alert)
     {
+        byte[] data;
         try {
-            byte_vector data = add_torrent_params.write_resume_data(alert.params().swig()).bencode();
-            repo.addFastResume(new FastResume(id, Vectors.byte_vector2bytes(data)));
+            byte_vector v = add_torrent_params.write_resume_data(alert.params().swig()).bencode();
+            data = Vectors.byte_vector2bytes(v);
 
         } catch (Throwable e) {
             Log.e(TAG, Log.getStackTraceString(e));
-
-        } finally {
             criticalWork.setSaveResume(false);
+
+            return;
         }
+
+        /*
+         * The data is written together with other torrents,
+         * the critical work is completed after the writing
+         */
+        boolean flushNow = flushResumeData || stopRequested;
+        flushResumeData = false;
+        resumeWriter.put(id, data, () -> criticalWork.setSaveResume(false), flushNow);
     }
 
     @Override
@@ -523,6 +602,8 @@ class TorrentDownloadImpl implements TorrentDownload
             return stopEvent;
 
         stopRequested = true;
+        /* Don't wait for the flush interval */
+        resumeWriter.requestFlush();
 
         /* Wait to complete critical works */
         stopEvent = Completable.create((emitter) -> {
@@ -567,7 +648,6 @@ class TorrentDownloadImpl implements TorrentDownload
         if (!stopRequested || stopped)
             return;
 
-        sessionManager.removeListener(listener);
         stopRequested = false;
         stopped = true;
         stopEvent = null;
@@ -634,6 +714,7 @@ class TorrentDownloadImpl implements TorrentDownload
 
         th.unsetFlags(TorrentFlags.AUTO_MANAGED);
         th.pause();
+        invalidateStatus();
         saveResumeData(true);
     }
 
@@ -652,6 +733,7 @@ class TorrentDownloadImpl implements TorrentDownload
         else
             th.unsetFlags(TorrentFlags.AUTO_MANAGED);
         th.resume();
+        invalidateStatus();
         saveResumeData(true);
     }
 
@@ -667,12 +749,14 @@ class TorrentDownloadImpl implements TorrentDownload
             th.setFlags(TorrentFlags.AUTO_MANAGED);
         else
             th.unsetFlags(TorrentFlags.AUTO_MANAGED);
+
+        invalidateStatus();
     }
 
     @Override
     public boolean isAutoManaged()
     {
-        return !operationNotAllowed() && th.status().flags().op_and(TorrentFlags.AUTO_MANAGED).op_bool();
+        return !operationNotAllowed() && status().flags().op_and(TorrentFlags.AUTO_MANAGED).op_bool();
     }
 
     @Override
@@ -681,7 +765,7 @@ class TorrentDownloadImpl implements TorrentDownload
         if (operationNotAllowed())
             return 0;
 
-        TorrentStatus ts = th.status();
+        TorrentStatus ts = status();
         if (ts == null)
             return 0;
 
@@ -734,7 +818,7 @@ class TorrentDownloadImpl implements TorrentDownload
     {
         return operationNotAllowed() || isFinished() || isPaused() || isSeeding() ?
                 0 :
-                th.status().downloadPayloadRate();
+                status().downloadPayloadRate();
     }
 
     @Override
@@ -742,12 +826,13 @@ class TorrentDownloadImpl implements TorrentDownload
     {
         return operationNotAllowed() || isFinished() && !isSeeding() || isPaused() ?
                 0 :
-                th.status().uploadPayloadRate();
+                status().uploadPayloadRate();
     }
 
     @Override
     public void remove(boolean withFiles)
     {
+        resumeWriter.remove(id);
         Torrent torrent = repo.getTorrentById(id);
         if (torrent != null) {
             repo.deleteTorrent(torrent);
@@ -824,37 +909,37 @@ class TorrentDownloadImpl implements TorrentDownload
     @Override
     public long getActiveTime()
     {
-        return operationNotAllowed() ? 0 : th.status().activeDuration() / 1000L;
+        return operationNotAllowed() ? 0 : status().activeDuration() / 1000L;
     }
 
     @Override
     public long getSeedingTime()
     {
-        return operationNotAllowed() ? 0 : th.status().seedingDuration() / 1000L;
+        return operationNotAllowed() ? 0 : status().seedingDuration() / 1000L;
     }
 
     @Override
     public long getReceivedBytes()
     {
-        return operationNotAllowed() ? 0 : th.status().totalDone();
+        return operationNotAllowed() ? 0 : status().totalDone();
     }
 
     @Override
     public long getTotalSentBytes()
     {
-        return operationNotAllowed() ? 0 : th.status().allTimeUpload();
+        return operationNotAllowed() ? 0 : status().allTimeUpload();
     }
 
     @Override
     public int getConnectedPeers()
     {
-        return operationNotAllowed() ? 0 : th.status().numPeers();
+        return operationNotAllowed() ? 0 : status().numPeers();
     }
 
     @Override
     public int getConnectedSeeds()
     {
-        return operationNotAllowed() ? 0 : th.status().numSeeds();
+        return operationNotAllowed() ? 0 : status().numSeeds();
     }
 
     @Override
@@ -863,7 +948,7 @@ class TorrentDownloadImpl implements TorrentDownload
         if (operationNotAllowed())
             return 0;
 
-        TorrentStatus ts = th.status();
+        TorrentStatus ts = status();
 
         return ts.numPeers() - ts.numSeeds();
     }
@@ -874,7 +959,7 @@ class TorrentDownloadImpl implements TorrentDownload
         if (operationNotAllowed())
             return 0;
 
-        TorrentStatus ts = th.status();
+        TorrentStatus ts = status();
         int peers = ts.numComplete() + ts.numIncomplete();
 
         return (peers > 0 ? peers : ts.listPeers());
@@ -886,7 +971,7 @@ class TorrentDownloadImpl implements TorrentDownload
         if (operationNotAllowed())
             return 0;
 
-        TorrentStatus ts = th.status();
+        TorrentStatus ts = status();
         int numComplete = ts.numComplete();
 
         return (numComplete > 0 ? numComplete : ts.listSeeds());
@@ -898,7 +983,7 @@ class TorrentDownloadImpl implements TorrentDownload
         if (operationNotAllowed())
             return 0;
 
-        TorrentStatus ts = th.status();
+        TorrentStatus ts = status();
         int numIncomplete = ts.numIncomplete();
 
         return (numIncomplete > 0 ? numIncomplete : ts.listPeers() - ts.listSeeds());
@@ -952,7 +1037,7 @@ class TorrentDownloadImpl implements TorrentDownload
         ArrayList<PeerInfo> infoList = new ArrayList<>();
         List<AdvancedPeerInfo> peers = advancedPeerInfo();
 
-        TorrentStatus status = th.status();
+        TorrentStatus status = status();
         if (status == null)
             return infoList;
 
@@ -990,7 +1075,7 @@ class TorrentDownloadImpl implements TorrentDownload
     @Override
     public long getTotalWanted()
     {
-        return operationNotAllowed() ? 0 : th.status().totalWanted();
+        return operationNotAllowed() ? 0 : status().totalWanted();
     }
 
     @Override
@@ -1122,6 +1207,8 @@ class TorrentDownloadImpl implements TorrentDownload
         else
             th.unsetFlags(TorrentFlags.SEQUENTIAL_DOWNLOAD);
 
+        invalidateStatus();
+
         saveResumeData(true);
     }
 
@@ -1144,7 +1231,7 @@ class TorrentDownloadImpl implements TorrentDownload
         if (getStateCode() != TorrentStateCode.DOWNLOADING)
             return 0;
 
-        TorrentStatus status = th.status();
+        TorrentStatus status = status();
         long left = status.totalWanted() - status.totalWantedDone();
         long rate = status.downloadPayloadRate();
         if (left <= 0)
@@ -1196,7 +1283,7 @@ class TorrentDownloadImpl implements TorrentDownload
         torrent.downloadPath = path;
         repo.updateTorrent(torrent);
 
-        notifyListeners((listener) -> listener.onTorrentMoving(id));
+        notifyListeners(ListenerBus.TORRENT_MOVING, (listener) -> listener.onTorrentMoving(id));
 
         String pathStr = fs.makeFileSystemPath(path);
         try {
@@ -1224,12 +1311,13 @@ class TorrentDownloadImpl implements TorrentDownload
             return;
 
         th.forceRecheck();
+        invalidateStatus();
     }
 
     @Override
     public int getNumDownloadedPieces()
     {
-        return operationNotAllowed() ? 0 : th.status().numPieces();
+        return operationNotAllowed() ? 0 : status().numPieces();
     }
 
     @Override
@@ -1238,7 +1326,7 @@ class TorrentDownloadImpl implements TorrentDownload
         if (operationNotAllowed())
             return 0;
 
-        TorrentStatus ts = th.status();
+        TorrentStatus ts = status();
         long allTimeUpload = ts.allTimeUpload();
         long allTimeDownload = ts.allTimeDownload();
         long totalDone = ts.totalDone();
@@ -1321,7 +1409,7 @@ class TorrentDownloadImpl implements TorrentDownload
         if (!th.isValid())
             return TorrentStateCode.ERROR;
 
-        TorrentStatus status = th.status();
+        TorrentStatus status = status();
         boolean isPaused = isPaused(status);
 
         if (isPaused && status.isFinished())
@@ -1360,7 +1448,7 @@ class TorrentDownloadImpl implements TorrentDownload
     @Override
     public boolean isPaused()
     {
-        return !operationNotAllowed() && (isPaused(th.status(true)) ||
+        return !operationNotAllowed() && (isPaused(status()) ||
                 sessionManager.isPaused() || !sessionManager.isRunning());
     }
 
@@ -1369,16 +1457,33 @@ class TorrentDownloadImpl implements TorrentDownload
         return s.flags().op_and(TorrentFlags.PAUSED).op_bool();
     }
 
+    /*
+     * Returns the status snapshot, which is fetched from libtorrent at most once
+     * per session stats tick. Getting the status is a JNI call and a copy of the
+     * native status, so the getters that are called within a tick (e.g. for making
+     * TorrentInfo) share the same snapshot. The snapshot is invalidated by state changes
+     */
+
+    private TorrentStatus status()
+    {
+        return statusSnapshot.get();
+    }
+
+    private void invalidateStatus()
+    {
+        statusSnapshot.invalidate();
+    }
+
     @Override
     public boolean isSeeding()
     {
-        return !operationNotAllowed() && th.status().isSeeding();
+        return !operationNotAllowed() && status().isSeeding();
     }
 
     @Override
     public boolean isFinished()
     {
-        return !operationNotAllowed() && th.status().isFinished();
+        return !operationNotAllowed() && status().isFinished();
     }
 
     @Override
@@ -1390,7 +1495,7 @@ class TorrentDownloadImpl implements TorrentDownload
     @Override
     public boolean isSequentialDownload()
     {
-        return !operationNotAllowed() && th.status().flags().op_and(TorrentFlags.SEQUENTIAL_DOWNLOAD).op_bool();
+        return !operationNotAllowed() && status().flags().op_and(TorrentFlags.SEQUENTIAL_DOWNLOAD).op_bool();
     }
 
     @Override
@@ -1539,38 +1644,93 @@ class TorrentDownloadImpl implements TorrentDownload
      */
 
     @Override
-    public void setInterestedPieces(@NonNull TorrentStream stream, int startPiece, int numPieces)
+    public void setInterestedPieces(@NonNull Object reader, @NonNull TorrentStream stream,
+                                    int startPiece, int numPieces)
     {
-        if (startPiece < 0 || numPieces < 0)
+        if (startPiece < 0 || numPieces < 0 || startPiece > stream.lastFilePiece)
             return;
 
-        for (int i = 0; i < numPieces; i++) {
-            int piece = startPiece + i;
-            if (piece > stream.lastFilePiece)
-                break;
+        long downloadRate = status().downloadPayloadRate();
+        synchronized (schedulers) {
+            StreamingScheduler scheduler = schedulers.get(reader);
+            if (scheduler == null) {
+                scheduler = new StreamingScheduler(stream.firstFilePiece,
+                        stream.lastFilePiece, stream.pieceLength);
+                schedulers.put(reader, scheduler);
+            }
+            /* Don't touch deadlines while the read position stays within the same piece */
+            if (!scheduler.needReschedule(startPiece, numPieces) || operationNotAllowed())
+                return;
 
-            if (i + 1 == numPieces) {
-                int preloadPieces = PRELOAD_PIECES_COUNT;
-                for (int p = piece; p <= stream.lastFilePiece; p++) {
-                    /* Set max priority to first found piece that is not confirmed finished */
-                    if (!operationNotAllowed() && !th.havePiece(p)) {
-                        th.piecePriority(p, org.libtorrent4j.Priority.TOP_PRIORITY);
-                        th.setPieceDeadline(p, DEFAULT_PIECE_DEADLINE);
-                        preloadPieces--;
-                        if (preloadPieces == 0)
-                            break;
-                    }
+            StreamingScheduler.Plan plan = scheduler.schedule(System.currentTimeMillis(),
+                    startPiece, numPieces, downloadRate);
+
+            for (int piece : plan.resetPieces)
+                releaseStreamPiece(piece);
+            for (int i = 0; i < plan.deadlines.length; i++) {
+                int piece = plan.playhead + i;
+                if (!plan.newPieces.contains(piece)) {
+                    /* Already in the window, just update the deadline */
+                    if (!th.havePiece(piece))
+                        th.setPieceDeadline(piece, plan.deadlines[i]);
+                    continue;
                 }
-
-            } else {
-                if (!operationNotAllowed() && !th.havePiece(piece)) {
-                    th.piecePriority(piece, org.libtorrent4j.Priority.TOP_PRIORITY);
-                    th.setPieceDeadline(piece, DEFAULT_PIECE_DEADLINE);
+                StreamPiece streamPiece = streamPieces.get(piece);
+                if (streamPiece == null) {
+                    streamPiece = new StreamPiece(th.piecePriority(piece));
+                    streamPieces.put(piece, streamPiece);
                 }
+                streamPiece.readers++;
+                if (th.havePiece(piece))
+                    continue;
+                th.piecePriority(piece, org.libtorrent4j.Priority.TOP_PRIORITY);
+                th.setPieceDeadline(piece, plan.deadlines[i]);
             }
         }
     }
 
+    @Override
+    public void removeInterestedPieces(@NonNull Object reader)
+    {
+        synchronized (schedulers) {
+            StreamingScheduler scheduler = schedulers.remove(reader);
+            if (scheduler == null)
+                return;
+
+            for (int piece : scheduler.getScheduledPieces())
+                releaseStreamPiece(piece);
+        }
+    }
+
+    /*
+     * Restores the priority that the piece had before streaming,
+     * when no reader needs it anymore. Must be called with schedulers lock held
+     */
+
+    private void releaseStreamPiece(int piece)
+    {
+        StreamPiece streamPiece = streamPieces.get(piece);
+        if (streamPiece == null || --streamPiece.readers > 0)
+            return;
+
+        streamPieces.remove(piece);
+        if (operationNotAllowed() || th.havePiece(piece))
+            return;
+        th.resetPieceDeadline(piece);
+        th.piecePriority(piece, streamPiece.prevPriority);
+    }
+
+    private static class StreamPiece
+    {
+        final org.libtorrent4j.Priority prevPriority;
+        int readers;
+
+        StreamPiece(org.libtorrent4j.Priority prevPriority)
+        {
+            this.prevPriority = prevPriority;
+        }
+    }
+
     @Override
     public TorrentStream getStream(int fileIndex)
     {
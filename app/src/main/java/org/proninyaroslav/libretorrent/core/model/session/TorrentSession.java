@@ -35,6 +35,7 @@ import org.proninyaroslav.libretorrent.core.settings.SessionSettings;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 public interface TorrentSession
 {
@@ -46,6 +47,8 @@ public interface TorrentSession
 
     TorrentDownload getTask(String id);
 
+    List<TorrentDownload> getTasks();
+
     void setSettings(@NonNull SessionSettings settings);
 
     SessionSettings getSettings();
@@ -59,6 +59,7 @@ import org.libtorrent4j.swig.error_code;
 import org.libtorrent4j.swig.int_vector;
 import org.libtorrent4j.swig.ip_filter;
 import org.libtorrent4j.swig.libtorrent;
+import org.libtorrent4j.swig.piece_index_bitfield;
 import org.libtorrent4j.swig.save_state_flags_t;
 import org.libtorrent4j.swig.session_params;
 import org.libtorrent4j.swig.settings_pack;
@@ -93,14 +94,13 @@ import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 import io.reactivex.Completable;
@@ -132,13 +132,24 @@ public class TorrentSessionImpl extends SessionManager
     private static final int[] pieceSize = {0, 16, 32, 64, 128, 256, 512, 1024, 2048, 4096, 8192, 16384, 32768};
     private static final String PEER_FINGERPRINT = "Lr"; /* called peer id */
     private static final String USER_AGENT = "LibreTorrent %s";
+    private static final int RESTORE_THREADS =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int RESTORE_BATCH_SIZE = 50;
+    private static final long RESTORE_BATCH_TIMEOUT = 30000; /* ms */
+    private static final long RESUME_DATA_FLUSH_INTERVAL = 30000; /* ms */
+    private static final int ALERT_QUEUE_CAPACITY = 1024;
 
     private InnerListener innerListener;
-    private ConcurrentLinkedQueue<TorrentEngineListener> listeners = new ConcurrentLinkedQueue<>();
+    private TorrentAlertRouter torrentAlertRouter;
+    private AlertDispatcher alertDispatcher;
+    private ListenerBus listenerBus = new ListenerBus();
+    /* Status snapshots of the torrents are shared within a tick */
+    private final TickSnapshot.Clock statusClock = new TickSnapshot.Clock();
     private SessionSettings settings = new SessionSettings();
     private ReentrantLock settingsLock = new ReentrantLock();
-    private Queue<LoadTorrentTask> restoreTorrentsQueue = new LinkedList<>();
-    private ExecutorService loadTorrentsExec;
+    private volatile RestoreQueue<RestoreItem> restoreQueue;
+    private volatile SessionRestoreStats restoreStats;
+    private ThreadPoolExecutor loadTorrentsExec;
     private ConcurrentHashMap<String, TorrentDownload> torrentTasks = new ConcurrentHashMap<>();
     /* Wait list for non added magnets */
     private HashSet<String> magnets = new HashSet<>();
@@ -147,6 +158,7 @@ public class TorrentSessionImpl extends SessionManager
     private ReentrantLock syncMagnet = new ReentrantLock();
     private CompositeDisposable disposables = new CompositeDisposable();
     private TorrentRepository repo;
+    private ResumeDataWriter resumeWriter;
     private FileSystemFacade fs;
     private SystemFacade system;
     private SessionLogger sessionLogger;
@@ -164,10 +176,15 @@ public class TorrentSessionImpl extends SessionManager
         this.started = false;
         this.sessionLogger = new SessionLogger();
         this.repo = repo;
+        this.resumeWriter = new ResumeDataWriter(repo, RESUME_DATA_FLUSH_INTERVAL);
         this.fs = fs;
         this.system = system;
         innerListener = new InnerListener();
-        loadTorrentsExec = Executors.newCachedThreadPool();
+        torrentAlertRouter = new TorrentAlertRouter();
+        alertDispatcher = new AlertDispatcher(ALERT_QUEUE_CAPACITY);
+        loadTorrentsExec = new ThreadPoolExecutor(RESTORE_THREADS, RESTORE_THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        loadTorrentsExec.allowCoreThreadTimeOut(true);
     }
 
     @Override
@@ -179,13 +196,13 @@ public class TorrentSessionImpl extends SessionManager
     @Override
     public void addListener(TorrentEngineListener listener)
     {
-        listeners.add(listener);
+        listenerBus.add(listener);
     }
 
     @Override
     public void removeListener(TorrentEngineListener listener)
     {
-        listeners.remove(listener);
+        listenerBus.remove(listener);
     }
 
     @Override
@@ -194,6 +211,12 @@ public class TorrentSessionImpl extends SessionManager
         return torrentTasks.get(id);
     }
 
+    @Override
+    public List<TorrentDownload> getTasks()
+    {
+        return new ArrayList<>(torrentTasks.values());
+    }
+
     @Override
     public void setSettings(@NonNull SessionSettings settings)
     {
@@ -352,11 +375,12 @@ public class TorrentSessionImpl extends SessionManager
 
         TorrentDownload task = getTask(id);
         if (task == null) {
+            resumeWriter.remove(id);
             Torrent torrent = repo.getTorrentById(id);
             if (torrent != null)
                 repo.deleteTorrent(torrent);
 
-            notifyListeners((listener) ->
+            notifyListeners(ListenerBus.TORRENT_REMOVED, (listener) ->
                     listener.onTorrentRemoved(id));
         } else {
             task.remove(withFiles);
@@ -369,19 +393,34 @@ public class TorrentSessionImpl extends SessionManager
         if (operationNotAllowed())
             return;
 
+        long startTime = System.currentTimeMillis();
+        ArrayList<Torrent> torrents = new ArrayList<>();
         for (Torrent torrent : repo.getAllTorrents()) {
             if (torrent == null || isTorrentAlreadyRunning(torrent.id))
                 continue;
+            torrents.add(torrent);
+        }
+        /* Decode unpaused torrents first, so they are added as soon as possible */
+        Collections.sort(torrents, (t1, t2) ->
+                (t1.manuallyPaused == t2.manuallyPaused ? 0 : (t1.manuallyPaused ? 1 : -1)));
 
-            String path = fs.makeFileSystemPath(torrent.downloadPath);
-            LoadTorrentTask loadTask = new LoadTorrentTask(torrent.id);
-            if (torrent.isDownloadingMetadata())
-                loadTask.putMagnet(torrent.getMagnet(), new File(path),
-                        torrent.manuallyPaused);
+        RestoreQueue<RestoreItem> queue = new RestoreQueue<>(RESTORE_BATCH_SIZE,
+                RESTORE_BATCH_TIMEOUT, torrents.size());
+        restoreStats = new SessionRestoreStats(torrents.size(), startTime);
+        restoreQueue = queue;
 
-            restoreTorrentsQueue.add(loadTask);
-        }
-        runNextLoadTorrentTask();
+        for (Torrent torrent : torrents)
+            loadTorrentsExec.execute(new LoadTorrentTask(queue, torrent));
+        runNextRestoreBatch();
+    }
+
+    /*
+     * Returns metrics of the last session restore or null if there was no restore
+     */
+
+    public SessionRestoreStats getRestoreStats()
+    {
+        return restoreStats;
     }
 
     @Override
@@ -436,7 +475,7 @@ public class TorrentSessionImpl extends SessionManager
                     byte[] b = createTorrent(p, ti);
                     if (b != null)
                         loadedMagnets.put(hash.to_hex(), b);
-                    notifyListeners((listener) ->
+                    notifyListeners(ListenerBus.MAGNET_LOADED, (listener) ->
                             listener.onMagnetLoaded(strHash, ti != null ? new TorrentInfo(ti).bencode() : null));
                 } else {
                     add = true;
@@ -606,7 +645,7 @@ public class TorrentSessionImpl extends SessionManager
             if (ruleCount != 0 && swig() != null && !operationNotAllowed())
                 swig().set_ip_filter(filter.getFilter());
 
-            notifyListeners((listener) ->
+            notifyListeners(ListenerBus.IP_FILTER_PARSED, (listener) ->
                     listener.onIpFilterParsed(ruleCount));
         });
         parseIpFilterThread.start();
@@ -828,6 +867,12 @@ public class TorrentSessionImpl extends SessionManager
     {
         /* Handles must be destructed before the session is destructed */
         torrentTasks.clear();
+        /* Write what's left, e.g. if some torrent didn't wait for its resume data */
+        resumeWriter.shutdown();
+        Log.i(TAG, "Resume data: " + resumeWriter);
+        Log.i(TAG, "Alerts: " + alertDispatcher);
+        for (ListenerBus.ListenerStats stats : listenerBus.getStats())
+            Log.i(TAG, stats.toString());
         checkStop();
     }
 
@@ -867,8 +912,8 @@ public class TorrentSessionImpl extends SessionManager
     @Override
     protected void onBeforeStart()
     {
-        addListener(torrentTaskListener);
         addListener(innerListener);
+        addListener(torrentAlertRouter);
     }
 
     @Override
@@ -891,7 +936,7 @@ public class TorrentSessionImpl extends SessionManager
         saveSettings();
         started = true;
         disposables.add(Completable.fromRunnable(() ->
-                notifyListeners(TorrentEngineListener::onSessionStarted))
+                notifyListeners(ListenerBus.SESSION_STARTED, TorrentEngineListener::onSessionStarted))
                 .subscribeOn(Schedulers.io())
                 .subscribe());
     }
@@ -899,12 +944,14 @@ public class TorrentSessionImpl extends SessionManager
     private void enableSessionLogger(boolean enable)
     {
         if (enable) {
+            sessionLogger.openJournal(fs.getLogDir());
             sessionLogger.resume();
 
         } else {
             sessionLogger.stopRecording();
             sessionLogger.pause();
             sessionLogger.clean();
+            sessionLogger.closeJournal();
         }
     }
 
@@ -915,16 +962,20 @@ public class TorrentSessionImpl extends SessionManager
         started = false;
         enableSessionLogger(false);
         parseIpFilterThread = null;
+        RestoreQueue<RestoreItem> queue = restoreQueue;
+        if (queue != null)
+            queue.clear();
+        restoreQueue = null;
         magnets.clear();
         loadedMagnets.clear();
-        removeListener(torrentTaskListener);
         removeListener(innerListener);
+        removeListener(torrentAlertRouter);
     }
 
     @Override
     protected void onAfterStop()
     {
-        notifyListeners(TorrentEngineListener::onSessionStopped);
+        notifyListeners(ListenerBus.SESSION_STOPPED, TorrentEngineListener::onSessionStopped);
         stopRequested = false;
     }
 
@@ -934,14 +985,6 @@ public class TorrentSessionImpl extends SessionManager
         saveSettings();
     }
 
-    private final TorrentEngineListener torrentTaskListener = new TorrentEngineListener() {
-        @Override
-        public void onTorrentRemoved(@NonNull String id)
-        {
-            torrentTasks.remove(id);
-        }
-    };
-
     private final class InnerListener implements AlertListener
     {
         @Override
@@ -962,16 +1005,17 @@ public class TorrentSessionImpl extends SessionManager
                     String hash = th.infoHash().getBest().toHex();
                     if (magnets.contains(hash))
                         break;
-                    torrentTasks.put(hash, newTask(th, hash));
-                    if (addTorrentsList.contains(hash))
-                        notifyListeners((listener) ->
+                    boolean added = addTorrentsList.contains(hash);
+                    torrentTasks.put(hash, newTask(th, hash, added));
+                    if (added)
+                        notifyListeners(ListenerBus.TORRENT_ADDED, (listener) ->
                                 listener.onTorrentAdded(hash));
                     else
-                        notifyListeners((listener) ->
+                        notifyListeners(ListenerBus.TORRENT_LOADED, (listener) ->
                                 listener.onTorrentLoaded(hash));
                     addTorrentsList.remove(hash);
                     checkStop();
-                    runNextLoadTorrentTask();
+                    handleTorrentRestored(hash);
                     break;
                 case METADATA_RECEIVED:
                     handleMetadata(((MetadataReceivedAlert)alert));
@@ -988,40 +1032,88 @@ public class TorrentSessionImpl extends SessionManager
         }
     }
 
-    private void checkError(Alert<?> alert)
+    /*
+     * Routes torrent alerts to the torrents by the info hash. Previously each torrent
+     * was a separate listener and compared its handle with the handle of every alert
+     */
+
+    private final class TorrentAlertRouter implements AlertListener
     {
-        notifyListeners((listener) -> {
-            String msg = null;
-            switch (alert.type()) {
-                case SESSION_ERROR: {
-                    SessionErrorAlert sessionErrorAlert = (SessionErrorAlert)alert;
-                    ErrorCode error = sessionErrorAlert.error();
-                    msg = SessionErrors.getErrorMsg(error);
-                    if (!SessionErrors.isNonCritical(error))
-                        listener.onSessionError(msg);
-                    break;
-                }
-                case LISTEN_FAILED: {
-                    ListenFailedAlert listenFailedAlert = (ListenFailedAlert)alert;
-                    msg = SessionErrors.getErrorMsg(listenFailedAlert.error());
-                    ErrorCode error = listenFailedAlert.error();
-                    if (!SessionErrors.isNonCritical(error))
-                        listener.onSessionError(msg);
-                    break;
-                }
-                case PORTMAP_ERROR: {
-                    PortmapErrorAlert portmapErrorAlert = (PortmapErrorAlert)alert;
-                    ErrorCode error = portmapErrorAlert.error();
-                    msg = SessionErrors.getErrorMsg(error);
-                    if (!SessionErrors.isNonCritical(error))
-                        listener.onNatError(msg);
+        @Override
+        public int[] types()
+        {
+            return TorrentDownloadImpl.ALERT_TYPES;
+        }
+
+        @Override
+        public void alert(Alert<?> alert)
+        {
+            if (!(alert instanceof TorrentAlert<?>))
+                return;
+
+            TorrentDownloadImpl task = findTask(((TorrentAlert<?>)alert).handle());
+            if (task == null)
+                return;
+
+            task.onAlert(alert);
+            /*
+             * Removed in the alert thread, in order with ADD_TORRENT.
+             * The torrent with the same info hash can be added again right after,
+             * so only this task is removed
+             */
+            if (alert.type() == AlertType.TORRENT_REMOVED)
+                torrentTasks.remove(task.getTorrentId(), task);
+        }
+    }
+
+    private TorrentDownloadImpl findTask(TorrentHandle th)
+    {
+        TorrentDownload task = null;
+        if (th.isValid()) {
+            task = torrentTasks.get(th.infoHash().getBest().toHex());
+
+        } else {
+            /* E.g. the torrent is removed, so the handle doesn't know its info hash */
+            torrent_handle handle = th.swig();
+            for (TorrentDownload t : torrentTasks.values()) {
+                if (t instanceof TorrentDownloadImpl && ((TorrentDownloadImpl)t).isHandleOf(handle)) {
+                    task = t;
                     break;
                 }
             }
+        }
 
-            if (msg != null)
-                Log.e(TAG, "Session error: " + msg);
-        });
+        return (task instanceof TorrentDownloadImpl ? (TorrentDownloadImpl)task : null);
+    }
+
+    private void checkError(Alert<?> alert)
+    {
+        ErrorCode error = null;
+        switch (alert.type()) {
+            case SESSION_ERROR:
+                error = ((SessionErrorAlert)alert).error();
+                break;
+            case LISTEN_FAILED:
+                error = ((ListenFailedAlert)alert).error();
+                break;
+            case PORTMAP_ERROR:
+                error = ((PortmapErrorAlert)alert).error();
+                break;
+        }
+        if (error == null)
+            return;
+
+        String errorMsg = SessionErrors.getErrorMsg(error);
+        Log.e(TAG, "Session error: " + errorMsg);
+        if (SessionErrors.isNonCritical(error))
+            return;
+
+        if (alert.type() == AlertType.PORTMAP_ERROR)
+            notifyListeners(ListenerBus.NAT_ERROR, (listener) ->
+                    listener.onNatError(errorMsg));
+        else
+            notifyListeners(ListenerBus.SESSION_ERROR, (listener) ->
+                    listener.onSessionError(errorMsg));
     }
 
     private void handleMetadata(MetadataReceivedAlert metadataAlert)
@@ -1040,23 +1132,28 @@ public class TorrentSessionImpl extends SessionManager
             loadedMagnets.put(hash, bencode);
         remove(th, SessionHandle.DELETE_FILES);
 
-        notifyListeners((listener) ->
+        notifyListeners(ListenerBus.MAGNET_LOADED, (listener) ->
                 listener.onMagnetLoaded(hash, loadedMagnets.get(hash)));
     }
 
     private void handleStats()
     {
+        statusClock.tick();
         if (operationNotAllowed())
             return;
 
-        notifyListeners((listener) -> listener.onSessionStats(
-                new SessionStats(dhtNodes(),
-                        getTotalDownload(),
-                        getTotalUpload(),
-                        getDownloadSpeed(),
-                        getUploadSpeed(),
-                        getListenPort()))
-        );
+        /* Check the restore batch timeout */
+        runNextRestoreBatch();
+
+        SessionStats stats = new SessionStats(dhtNodes(),
+                getTotalDownload(),
+                getTotalUpload(),
+                getDownloadSpeed(),
+                getUploadSpeed(),
+                getListenPort());
+        /* Slow listeners get only the latest stats */
+        listenerBus.postCoalesced(ListenerBus.SESSION_STATS, "",
+                (listener) -> listener.onSessionStats(stats));
     }
 
     private static String dhtBootstrapNodes()
@@ -1306,49 +1403,90 @@ public class TorrentSessionImpl extends SessionManager
         return Vectors.byte_vector2bytes(e.bencode());
     }
 
-    private TorrentDownload newTask(TorrentHandle th, String id)
+    private TorrentDownload newTask(TorrentHandle th, String id, boolean added)
     {
-        TorrentDownload task = new TorrentDownloadImpl(this, repo, fs, listeners,
-                id, th, settings.autoManaged);
+        TorrentDownload task = new TorrentDownloadImpl(this, repo, resumeWriter, alertDispatcher, fs, listenerBus,
+                statusClock, id, th, settings.autoManaged, added);
         task.setMaxConnections(settings.connectionsLimitPerTorrent);
         task.setMaxUploads(settings.uploadsLimitPerTorrent);
 
         return task;
     }
 
-    private interface CallListener
+    private void notifyListeners(int type, @NonNull ListenerBus.Call call)
     {
-        void apply(TorrentEngineListener listener);
+        listenerBus.post(type, call);
     }
 
-    private void notifyListeners(@NonNull CallListener l)
+    private void runNextRestoreBatch()
     {
-        for (TorrentEngineListener listener : listeners) {
-            if (listener != null)
-                l.apply(listener);
-        }
-    }
+        RestoreQueue<RestoreItem> queue = restoreQueue;
+        if (queue == null)
+            return;
 
-    private void runNextLoadTorrentTask()
-    {
         if (operationNotAllowed()) {
-            restoreTorrentsQueue.clear();
+            queue.clear();
 
             return;
         }
 
-        LoadTorrentTask task;
-        try {
-            task = restoreTorrentsQueue.poll();
+        List<RestoreItem> batch;
+        while (!(batch = queue.pollBatch(System.currentTimeMillis())).isEmpty()) {
+            for (RestoreItem item : batch) {
+                try {
+                    if (isTorrentAlreadyRunning(item.torrentId)) {
+                        queue.complete(item.torrentId);
+                        continue;
+                    }
 
-        } catch (Exception e) {
-            Log.e(TAG, Log.getStackTraceString(e));
+                    if (item.params == null)
+                        download(item.magnetUri, item.saveDir, item.magnetPaused);
+                    else
+                        swig().async_add_torrent(item.params);
 
+                } catch (Exception e) {
+                    queue.complete(item.torrentId);
+                    handleRestoreError(item.torrentId, e);
+                }
+            }
+        }
+
+        if (queue.checkFinished()) {
+            SessionRestoreStats stats = restoreStats;
+            stats.finish(System.currentTimeMillis());
+            int timedOut = queue.getTimedOutCount();
+            Log.i(TAG, "Session restored: " + stats +
+                    (timedOut > 0 ? ", timed out: " + timedOut : ""));
+            if (restoreQueue == queue)
+                restoreQueue = null;
+        }
+    }
+
+    private void handleTorrentRestored(String torrentId)
+    {
+        RestoreQueue<RestoreItem> queue = restoreQueue;
+        if (queue == null || !queue.complete(torrentId))
             return;
+
+        restoreStats.torrentRestored(System.currentTimeMillis());
+        runNextRestoreBatch();
+    }
+
+    private void handleRestoreError(String torrentId, Exception e)
+    {
+        Log.e(TAG, "Unable to restore torrent from previous session: " + torrentId, e);
+        SessionRestoreStats stats = restoreStats;
+        if (stats != null)
+            stats.torrentFailed();
+
+        Torrent torrent = repo.getTorrentById(torrentId);
+        if (torrent != null) {
+            torrent.error = e.toString();
+            repo.updateTorrent(torrent);
         }
 
-        if (task != null)
-            loadTorrentsExec.execute(task);
+        notifyListeners(ListenerBus.RESTORE_SESSION_ERROR, (listener) ->
+                listener.onRestoreSessionError(torrentId));
     }
 
     private boolean isTorrentAlreadyRunning(String torrentId)
@@ -1356,50 +1494,72 @@ public class TorrentSessionImpl extends SessionManager
         return torrentTasks.containsKey(torrentId) || addTorrentsList.contains(torrentId);
     }
 
-    private final class LoadTorrentTask implements Runnable
+    private static final class RestoreItem
     {
-        private String torrentId;
-        private File saveDir = null;
-        private String magnetUri = null;
-        private boolean isMagnet = false;
-        private boolean magnetPaused = false;
+        final String torrentId;
+        /* Null for magnets */
+        add_torrent_params params;
+        String magnetUri;
+        File saveDir;
+        boolean magnetPaused;
 
-        LoadTorrentTask(String torrentId)
+        RestoreItem(String torrentId)
         {
             this.torrentId = torrentId;
         }
+    }
+
+    /*
+     * Reads and decodes the resume data of the torrent
+     * and puts the result in the restore queue
+     */
+
+    private final class LoadTorrentTask implements Runnable
+    {
+        private RestoreQueue<RestoreItem> queue;
+        private Torrent torrent;
 
-        public void putMagnet(String magnetUri, File saveDir, boolean magnetPaused)
+        LoadTorrentTask(RestoreQueue<RestoreItem> queue, Torrent torrent)
         {
-            this.magnetUri = magnetUri;
-            this.saveDir = saveDir;
-            this.magnetPaused = magnetPaused;
-            isMagnet = true;
+            this.queue = queue;
+            this.torrent = torrent;
         }
 
         @Override
         public void run()
         {
             try {
-                if (isTorrentAlreadyRunning(torrentId))
+                if (operationNotAllowed() || isTorrentAlreadyRunning(torrent.id)) {
+                    queue.skip();
                     return;
+                }
 
-                if (isMagnet)
-                    download(magnetUri, saveDir, magnetPaused);
-                else
-                    restoreDownload(torrentId);
-
-            } catch (Exception e) {
-                Log.e(TAG, "Unable to restore torrent from previous session: " + torrentId, e);
-                Torrent torrent = repo.getTorrentById(torrentId);
-                if (torrent != null) {
-                    torrent.error = e.toString();
-                    repo.updateTorrent(torrent);
+                RestoreItem item = new RestoreItem(torrent.id);
+                int priority;
+                if (torrent.isDownloadingMetadata()) {
+                    item.magnetUri = torrent.getMagnet();
+                    item.saveDir = new File(fs.makeFileSystemPath(torrent.downloadPath));
+                    item.magnetPaused = torrent.manuallyPaused;
+                    priority = (torrent.manuallyPaused ?
+                            RestoreQueue.PRIORITY_PAUSED :
+                            RestoreQueue.PRIORITY_ACTIVE);
+                } else {
+                    item.params = readResumeData(torrent.id);
+                    if (torrent.manuallyPaused)
+                        priority = RestoreQueue.PRIORITY_PAUSED;
+                    else if (isFinished(item.params))
+                        priority = RestoreQueue.PRIORITY_SEEDING;
+                    else
+                        priority = RestoreQueue.PRIORITY_ACTIVE;
                 }
+                queue.put(torrent.id, item, priority);
 
-                notifyListeners((listener) ->
-                        listener.onRestoreSessionError(torrentId));
+            } catch (Exception e) {
+                queue.skip();
+                handleRestoreError(torrent.id, e);
             }
+
+            runNextRestoreBatch();
         }
     }
 
@@ -1522,12 +1682,13 @@ public class TorrentSessionImpl extends SessionManager
         swig().async_add_torrent(p);
     }
 
-    private void restoreDownload(String id) throws IOException
+    private add_torrent_params readResumeData(String id) throws IOException
     {
-        if (operationNotAllowed())
-            return;
+        SessionRestoreStats stats = restoreStats;
 
+        long startTime = System.nanoTime();
         FastResume fastResume = repo.getFastResumeById(id);
+        long dbTime = System.nanoTime();
         if (fastResume == null)
             throw new IOException("Fast resume data not found");
 
@@ -1547,10 +1708,22 @@ public class TorrentSessionImpl extends SessionManager
 
         p.setFlags(flags);
 
-        /* After reading the metadata some time may have passed */
-        if (operationNotAllowed())
-            return;
+        if (stats != null) {
+            stats.addDbTime(dbTime - startTime);
+            stats.addDecodeTime(System.nanoTime() - dbTime);
+        }
 
-        swig().async_add_torrent(p);
+        return p;
+    }
+
+    /*
+     * Returns true if the resume data say that all pieces are downloaded
+     */
+
+    private static boolean isFinished(add_torrent_params p)
+    {
+        piece_index_bitfield pieces = p.getHave_pieces();
+
+        return pieces != null && pieces.size() > 0 && pieces.all_set();
     }
 }
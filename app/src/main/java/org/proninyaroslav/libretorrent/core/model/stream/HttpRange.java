@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Byte range of the Range header (RFC 7233). Start and end positions are inclusive
+ */
+
+class HttpRange
+{
+    private static final String BYTES_UNIT = "bytes=";
+    /* Ignore requests with too many ranges, as allowed by RFC 7233 */
+    static final int MAX_RANGES = 16;
+
+    final long start;
+    final long end;
+
+    HttpRange(long start, long end)
+    {
+        this.start = start;
+        this.end = end;
+    }
+
+    long length()
+    {
+        return end - start + 1;
+    }
+
+    String toContentRange(long size)
+    {
+        return "bytes " + start + "-" + end + "/" + size;
+    }
+
+    /*
+     * Returns ranges sorted by start position with overlapping ranges merged.
+     * Returns an empty list if none of the ranges is satisfiable,
+     * and null if the header is missing or can't be parsed
+     * (in this case the header must be ignored)
+     */
+
+    @Nullable
+    static List<HttpRange> parse(@Nullable String header, long size)
+    {
+        if (header == null)
+            return null;
+        header = header.trim();
+        if (!header.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length()))
+            return null;
+
+        String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+        if (specs.length > MAX_RANGES)
+            return null;
+
+        ArrayList<HttpRange> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            spec = spec.trim();
+            int minus = spec.indexOf('-');
+            if (minus < 0)
+                return null;
+            String first = spec.substring(0, minus).trim();
+            String last = spec.substring(minus + 1).trim();
+
+            long start, end;
+            try {
+                if (first.isEmpty()) {
+                    /* Suffix range: the last N bytes */
+                    if (last.isEmpty())
+                        return null;
+                    long suffixLen = Long.parseLong(last);
+                    if (suffixLen < 0)
+                        return null;
+                    if (suffixLen == 0)
+                        continue;
+                    start = Math.max(0, size - suffixLen);
+                    end = size - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    end = (last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last));
+                    if (start < 0 || end < start)
+                        return null;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            if (start >= size)
+                continue;
+            ranges.add(new HttpRange(start, Math.min(end, size - 1)));
+        }
+
+        return merge(ranges);
+    }
+
+    @NonNull
+    private static List<HttpRange> merge(ArrayList<HttpRange> ranges)
+    {
+        if (ranges.size() < 2)
+            return ranges;
+
+        Collections.sort(ranges, (r1, r2) -> Long.compare(r1.start, r2.start));
+        ArrayList<HttpRange> merged = new ArrayList<>(ranges.size());
+        HttpRange cur = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            HttpRange next = ranges.get(i);
+            if (next.start <= cur.end + 1) {
+                cur = new HttpRange(cur.start, Math.max(cur.end, next.end));
+            } else {
+                merged.add(cur);
+                cur = next;
+            }
+        }
+        merged.add(cur);
+
+        return merged;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import androidx.annotation.NonNull;
+
+import com.sun.jna.Pointer;
+
+/*
+ * Copies bytes from the native piece buffer returned by ReadPieceAlert
+ */
+
+interface PieceBufferReader
+{
+    PieceBufferReader NATIVE = (bufferPtr, offset, dst, dstOffset, length) ->
+            new Pointer(bufferPtr).read(offset, dst, dstOffset, length);
+
+    void read(long bufferPtr, long offset, @NonNull byte[] dst, int dstOffset, int length);
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Bounded LRU cache of pieces with the total size limited by the byte budget.
+ * Buffers of evicted pieces are not released, but reused for next pieces,
+ * so in steady state no new buffers are allocated.
+ * A piece can be pinned while its buffer is used outside the owner lock,
+ * pinned pieces are never evicted and their buffers are never reused.
+ * Not thread-safe, access should be guarded by the owner.
+ */
+
+class PieceCache
+{
+    private final int pieceLength;
+    private final int maxPieces;
+    private int allocatedBuffers;
+    private final ArrayDeque<byte[]> freeBuffers = new ArrayDeque<>();
+    /* Access-ordered, the eldest entry is the least recently used */
+    private final LinkedHashMap<Integer, CachedPiece> pieces =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    static final class CachedPiece
+    {
+        final byte[] buf;
+        int size;
+        int pins;
+        boolean removed;
+
+        CachedPiece(byte[] buf, int size)
+        {
+            this.buf = buf;
+            this.size = size;
+        }
+    }
+
+    PieceCache(int pieceLength, long budgetBytes)
+    {
+        if (pieceLength <= 0)
+            throw new IllegalArgumentException("Piece length must be positive");
+
+        this.pieceLength = pieceLength;
+        /* At least two pieces so that reading across the piece boundary doesn't thrash */
+        this.maxPieces = (int)Math.max(2, budgetBytes / pieceLength);
+    }
+
+    int getMaxPieces()
+    {
+        return maxPieces;
+    }
+
+    int size()
+    {
+        return pieces.size();
+    }
+
+    boolean contains(int pieceIndex)
+    {
+        return pieces.containsKey(pieceIndex);
+    }
+
+    /*
+     * Returns cached piece and marks it as recently used, or null
+     */
+
+    CachedPiece get(int pieceIndex)
+    {
+        return pieces.get(pieceIndex);
+    }
+
+    /*
+     * Returns buffer with the piece length size, which should be filled
+     * and then passed to put(). The least recently used piece is evicted if the budget is exceeded
+     */
+
+    @NonNull
+    byte[] obtainBuffer()
+    {
+        byte[] buf = freeBuffers.poll();
+        if (buf != null)
+            return buf;
+
+        if (allocatedBuffers < maxPieces) {
+            ++allocatedBuffers;
+            return new byte[pieceLength];
+        }
+
+        Iterator<Map.Entry<Integer, CachedPiece>> it = pieces.entrySet().iterator();
+        while (it.hasNext()) {
+            CachedPiece piece = it.next().getValue();
+            if (piece.pins > 0)
+                continue;
+            it.remove();
+            piece.removed = true;
+
+            return piece.buf;
+        }
+
+        /* All pieces are pinned, exceed the budget for a while */
+        ++allocatedBuffers;
+
+        return new byte[pieceLength];
+    }
+
+    /*
+     * Prevents the piece buffer from being evicted and reused until unpin() is called
+     */
+
+    void pin(@NonNull CachedPiece piece)
+    {
+        ++piece.pins;
+    }
+
+    void unpin(@NonNull CachedPiece piece)
+    {
+        if (piece.pins == 0)
+            return;
+
+        --piece.pins;
+        if (piece.pins == 0 && piece.removed)
+            releaseBuffer(piece.buf);
+    }
+
+    /*
+     * Returns the buffer to the pool or drops it, if the budget is exceeded
+     */
+
+    private void releaseBuffer(byte[] buf)
+    {
+        if (allocatedBuffers > maxPieces)
+            --allocatedBuffers;
+        else
+            recycleBuffer(buf);
+    }
+
+    /*
+     * Returns the buffer taken from obtainBuffer() without putting it into the cache
+     */
+
+    void recycleBuffer(@NonNull byte[] buf)
+    {
+        if (buf.length == pieceLength)
+            freeBuffers.push(buf);
+    }
+
+    void put(int pieceIndex, @NonNull byte[] buf, int size)
+    {
+        CachedPiece prev = pieces.put(pieceIndex, new CachedPiece(buf, size));
+        if (prev != null && prev.buf != buf)
+            removePiece(prev);
+    }
+
+    void clear()
+    {
+        for (CachedPiece piece : pieces.values())
+            removePiece(piece);
+        pieces.clear();
+    }
+
+    private void removePiece(CachedPiece piece)
+    {
+        piece.removed = true;
+        if (piece.pins == 0)
+            releaseBuffer(piece.buf);
+    }
+}
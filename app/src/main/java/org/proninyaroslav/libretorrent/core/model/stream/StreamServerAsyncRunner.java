@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.nanohttpd.protocols.http.ClientHandler;
+import org.nanohttpd.protocols.http.NanoHTTPD;
+import org.nanohttpd.protocols.http.response.Response;
+import org.nanohttpd.protocols.http.threading.IAsyncRunner;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.nanohttpd.protocols.http.response.Status.SERVICE_UNAVAILABLE;
+
+/*
+ * Executes client connections on a bounded thread pool instead of
+ * creating a new thread for every connection. A connection occupies
+ * a thread while it is alive, so keep-alive connections are reused
+ * for subsequent requests of the client. Connections that exceed
+ * the per-client limit or don't fit into the queue are rejected
+ * with 503 Service Unavailable.
+ */
+
+class StreamServerAsyncRunner implements IAsyncRunner
+{
+    @SuppressWarnings("unused")
+    private static final String TAG = StreamServerAsyncRunner.class.getSimpleName();
+
+    static final int DEFAULT_MAX_THREADS = 16;
+    static final int DEFAULT_MAX_QUEUED = 32;
+    static final int DEFAULT_MAX_CONNECTIONS_PER_CLIENT = 8;
+    private static final long THREAD_KEEP_ALIVE_TIME = 30; /* sec */
+    private static final int RETRY_AFTER = 1; /* sec */
+
+    private final ThreadPoolExecutor executor;
+    private final int maxConnectionsPerClient;
+    private final HashSet<ClientHandler> running = new HashSet<>();
+    private final HashMap<InetAddress, Integer> clientConnections = new HashMap<>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    StreamServerAsyncRunner()
+    {
+        this(DEFAULT_MAX_THREADS, DEFAULT_MAX_QUEUED, DEFAULT_MAX_CONNECTIONS_PER_CLIENT);
+    }
+
+    StreamServerAsyncRunner(int maxThreads, int maxQueued, int maxConnectionsPerClient)
+    {
+        this.maxConnectionsPerClient = maxConnectionsPerClient;
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxQueued),
+                new RequestThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void exec(ClientHandler clientHandler)
+    {
+        InetAddress addr = clientHandler.getAcceptSocket().getInetAddress();
+        synchronized (running) {
+            Integer count = clientConnections.get(addr);
+            if (count == null)
+                count = 0;
+            if (count >= maxConnectionsPerClient) {
+                reject(clientHandler);
+                return;
+            }
+            clientConnections.put(addr, count + 1);
+            running.add(clientHandler);
+        }
+
+        try {
+            executor.execute(clientHandler);
+
+        } catch (RejectedExecutionException e) {
+            if (release(clientHandler))
+                reject(clientHandler);
+        }
+    }
+
+    @Override
+    public void closed(ClientHandler clientHandler)
+    {
+        release(clientHandler);
+    }
+
+    @Override
+    public void closeAll()
+    {
+        ArrayList<ClientHandler> handlers;
+        synchronized (running) {
+            handlers = new ArrayList<>(running);
+        }
+        for (ClientHandler handler : handlers)
+            handler.close();
+    }
+
+    int getRunningCount()
+    {
+        synchronized (running) {
+            return running.size();
+        }
+    }
+
+    int getActiveThreadCount()
+    {
+        return executor.getActiveCount();
+    }
+
+    int getLargestPoolSize()
+    {
+        return executor.getLargestPoolSize();
+    }
+
+    long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+
+    private boolean release(ClientHandler clientHandler)
+    {
+        synchronized (running) {
+            if (!running.remove(clientHandler))
+                return false;
+
+            InetAddress addr = clientHandler.getAcceptSocket().getInetAddress();
+            Integer count = clientConnections.get(addr);
+            if (count == null || count <= 1)
+                clientConnections.remove(addr);
+            else
+                clientConnections.put(addr, count - 1);
+
+            return true;
+        }
+    }
+
+    /*
+     * Tell the client to retry later instead of silently dropping the connection
+     */
+
+    private void reject(ClientHandler clientHandler)
+    {
+        rejectedCount.incrementAndGet();
+
+        Socket socket = clientHandler.getAcceptSocket();
+        Response res = Response.newFixedLengthResponse(SERVICE_UNAVAILABLE,
+                NanoHTTPD.MIME_PLAINTEXT, "");
+        res.addHeader("Retry-After", Integer.toString(RETRY_AFTER));
+        res.closeConnection(true);
+        try {
+            res.send(socket.getOutputStream());
+
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to reject connection: " + e);
+        } finally {
+            clientHandler.close();
+        }
+    }
+
+    private static class RequestThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(@NonNull Runnable r)
+        {
+            Thread t = new Thread(r, "StreamServer Request Processor #" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+
+            return t;
+        }
+    }
+}
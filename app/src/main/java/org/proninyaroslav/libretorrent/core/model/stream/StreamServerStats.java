@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Throughput and time-to-first-byte (TTFB) of the stream server.
+ * Percentiles are calculated over the last TTFB_SAMPLES_COUNT responses
+ */
+
+public class StreamServerStats
+{
+    private static final int TTFB_SAMPLES_COUNT = 1024;
+
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final long[] ttfbSamples = new long[TTFB_SAMPLES_COUNT];
+    private int ttfbSamplesCount;
+    private int ttfbSamplesPos;
+
+    void requestReceived()
+    {
+        requests.incrementAndGet();
+    }
+
+    void requestRejected()
+    {
+        rejectedRequests.incrementAndGet();
+    }
+
+    void bytesSent(long bytes)
+    {
+        bytesSent.addAndGet(bytes);
+    }
+
+    synchronized void addTtfb(long ms)
+    {
+        ttfbSamples[ttfbSamplesPos] = ms;
+        ttfbSamplesPos = (ttfbSamplesPos + 1) % ttfbSamples.length;
+        if (ttfbSamplesCount < ttfbSamples.length)
+            ttfbSamplesCount++;
+    }
+
+    public long getRequests()
+    {
+        return requests.get();
+    }
+
+    public long getRejectedRequests()
+    {
+        return rejectedRequests.get();
+    }
+
+    public long getBytesSent()
+    {
+        return bytesSent.get();
+    }
+
+    /*
+     * Average throughput in bytes per second since the server start
+     */
+
+    public long getThroughput()
+    {
+        long elapsed = System.currentTimeMillis() - startTime;
+
+        return (elapsed <= 0 ? 0 : bytesSent.get() * 1000 / elapsed);
+    }
+
+    /*
+     * Returns TTFB in milliseconds for the given percentile (0-100), or -1 if there are no samples
+     */
+
+    public long getTtfbPercentile(double percentile)
+    {
+        long[] samples;
+        synchronized (this) {
+            if (ttfbSamplesCount == 0)
+                return -1;
+            samples = Arrays.copyOf(ttfbSamples, ttfbSamplesCount);
+        }
+        Arrays.sort(samples);
+        int index = (int)Math.ceil(percentile / 100 * samples.length) - 1;
+
+        return samples[Math.max(0, Math.min(index, samples.length - 1))];
+    }
+}
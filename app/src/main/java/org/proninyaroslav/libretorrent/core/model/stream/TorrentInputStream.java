@@ -22,8 +22,6 @@ package org.proninyaroslav.libretorrent.core.model.stream;
 
 import androidx.annotation.NonNull;
 
-import com.sun.jna.Pointer;
-
 import org.proninyaroslav.libretorrent.core.model.TorrentEngineListener;
 import org.proninyaroslav.libretorrent.core.model.data.ReadPieceInfo;
 import org.proninyaroslav.libretorrent.core.model.session.TorrentDownload;
@@ -31,6 +29,11 @@ import org.proninyaroslav.libretorrent.core.model.session.TorrentSession;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 /*
@@ -46,26 +49,58 @@ import java.util.concurrent.locks.ReentrantLock;
  * (e.g 3 bytes            *         *                 *
  *  per piece)             |         |                 |
  *                     fileStart  filePos             EOF
+ *
+ * Each stream has its own lock, so independent streams (e.g. two players
+ * or a player and a thumbnailer) never contend with each other.
+ * Piece read callbacks are routed only to the read session that requested them.
+ *
+ * Read pieces are kept in the LRU cache and the next pieces after the current position
+ * are read ahead asynchronously, so sequential reading rarely waits for piece reading.
  */
 
 public class TorrentInputStream extends InputStream
 {
     public static final int EOF = -1;
 
+    /* For read-ahead */
+    private static final long CACHE_SIZE = 16 * 1024 * 1024; /* bytes */
+    private static final int PREFETCH_PIECES_COUNT = 4;
+    private static final byte[] EMPTY_BUF = new byte[0];
+
     private TorrentSession session;
     private TorrentStream stream;
-    private ReadSession readSession;
+    private PieceBufferReader bufReader;
     private long filePos, fileStart, eof;
-    private byte[] cacheBuf;
-    private int cachePieceIndex = -1;
-    private boolean stopped;
-    private static ReentrantLock lock = new ReentrantLock();
+    private PieceCache cache;
+    private int prefetchCount;
+    /* Pieces requested for read-ahead, but not yet received */
+    private HashSet<Integer> prefetchingPieces = new HashSet<>();
+    private int lastPrefetchPiece = -1;
+    /* Read-ahead window, a piece finished inside it is read immediately */
+    private volatile int prefetchStart = -1, prefetchEnd = -1;
+    private final byte[] singleByteBuf = new byte[1];
+    private volatile boolean stopped;
+    /* Piece index that the reader is waiting to be downloaded */
+    private volatile int awaitedPiece = -1;
+    private ReadSession readSession;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pieceReady = lock.newCondition();
+
+    /*
+     * Pending pieces of the current read() call, keyed by piece index
+     */
 
     private class ReadSession
     {
         private int countLatch;
-        private Piece[] piecesForReading;
+        private HashMap<Integer, Piece> piecesForReading = new HashMap<>();
         private byte[] buf;
+        private Exception err;
+
+        ReadSession(byte[] buf)
+        {
+            this.buf = buf;
+        }
     }
 
     private class Piece
@@ -74,7 +109,6 @@ public class TorrentInputStream extends InputStream
         int readLength;
         int readOffset;
         int bufIndex;
-        boolean cache = false;
 
         Piece(int index)
         {
@@ -95,9 +129,20 @@ public class TorrentInputStream extends InputStream
     }
 
     public TorrentInputStream(@NonNull TorrentSession session, @NonNull TorrentStream stream)
+    {
+        this(session, stream, PieceBufferReader.NATIVE);
+    }
+
+    TorrentInputStream(@NonNull TorrentSession session,
+                       @NonNull TorrentStream stream,
+                       @NonNull PieceBufferReader bufReader)
     {
         this.session = session;
         this.stream = stream;
+        this.bufReader = bufReader;
+        this.cache = new PieceCache(stream.pieceLength, CACHE_SIZE);
+        /* Leave room for the pieces of the current read */
+        this.prefetchCount = Math.min(PREFETCH_PIECES_COUNT, cache.getMaxPieces() - 1);
         TorrentDownload task = session.getTask(stream.torrentId);
         if (task == null)
             throw new NullPointerException("task " + stream.torrentId + " is null");
@@ -115,45 +160,76 @@ public class TorrentInputStream extends InputStream
         eof = filePos + stream.fileSize;
 
         session.addListener(listener);
-        task.setInterestedPieces(stream, stream.firstFilePiece, 1);
+        task.setInterestedPieces(this, stream, stream.firstFilePiece, 1);
     }
 
     @Override
     protected void finalize() throws Throwable
     {
-        synchronized (this) {
-            stopped = true;
-            if (session != null)
+        stop();
+
+        super.finalize();
+    }
+
+    private void stop()
+    {
+        stopped = true;
+
+        lock.lock();
+        try {
+            if (session != null) {
                 session.removeListener(listener);
+                TorrentDownload task = session.getTask(stream.torrentId);
+                if (task != null)
+                    task.removeInterestedPieces(this);
+            }
             session = null;
-            notifyAll();
-        }
+            cache.clear();
+            prefetchingPieces.clear();
+            prefetchStart = prefetchEnd = -1;
+            pieceReady.signalAll();
 
-        super.finalize();
+        } finally {
+            lock.unlock();
+        }
     }
 
-    private synchronized boolean waitForPiece(TorrentDownload task, int pieceIndex)
+    /*
+     * Must be called with the lock held
+     */
+
+    private boolean waitForPiece(TorrentDownload task, int pieceIndex)
     {
-        while (!Thread.currentThread().isInterrupted() && !stopped) {
-            try {
-                if (task.havePiece(pieceIndex))
-                    return true;
-                wait();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+        awaitedPiece = pieceIndex;
+        try {
+            while (!Thread.currentThread().isInterrupted() && !stopped) {
+                try {
+                    if (task.havePiece(pieceIndex))
+                        return true;
+                    pieceReady.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
+
+        } finally {
+            awaitedPiece = -1;
         }
 
         return false;
     }
 
-    private synchronized boolean waitForReadPieces()
+    /*
+     * Must be called with the lock held
+     */
+
+    private boolean waitForReadPieces()
     {
         while (!Thread.currentThread().isInterrupted() && !stopped) {
             try {
                 if (readSession != null && readSession.countLatch <= 0)
                     return true;
-                wait();
+                pieceReady.await();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
@@ -177,12 +253,43 @@ public class TorrentInputStream extends InputStream
         return pieceSize - (int)(pieceEnd - pos);
     }
 
-    private void readFromCache(Piece piece, byte[] b)
+    private void readFromCache(Piece piece, byte[] cacheBuf, byte[] b)
     {
         System.arraycopy(cacheBuf, piece.readOffset, b,
                          piece.bufIndex, piece.readLength);
     }
 
+    /*
+     * Asynchronously read the next downloaded pieces after the last read piece.
+     * Must be called with the lock held
+     */
+
+    private void prefetch(TorrentDownload task, int lastReadPiece)
+    {
+        if (lastReadPiece == lastPrefetchPiece)
+            return;
+        lastPrefetchPiece = lastReadPiece;
+
+        int start = lastReadPiece + 1;
+        int end = Math.min(lastReadPiece + prefetchCount, stream.lastFilePiece);
+        prefetchStart = start;
+        prefetchEnd = end;
+
+        for (int p = start; p <= end; p++)
+            prefetchPiece(task, p);
+    }
+
+    private void prefetchPiece(TorrentDownload task, int pieceIndex)
+    {
+        if (cache.contains(pieceIndex) ||
+            prefetchingPieces.contains(pieceIndex) ||
+            !task.havePiece(pieceIndex))
+            return;
+
+        prefetchingPieces.add(pieceIndex);
+        task.readPiece(pieceIndex);
+    }
+
     /*
      * Returns byte as an int in the range 0 to 255
      */
@@ -198,57 +305,11 @@ public class TorrentInputStream extends InputStream
         lock.lock();
 
         try {
-            if (session == null)
-                throw new IOException("Torrent session is null");
-
-            TorrentDownload task = session.getTask(stream.torrentId);
-            if (task == null)
-                throw new IOException("task " + stream.torrentId + " is null");
-
-            /* EOF check */
-            if (filePos == eof) {
-                cacheBuf = null;
-                return EOF;
-            }
+            int ret = read(singleByteBuf, 0, 1);
 
-            /* Pieces definition that need to be read */
-            int p = stream.bytesToPieceIndex(filePos + 1);
-
-            task.setInterestedPieces(stream, p, 1);
-
-            readSession = new ReadSession();
-            readSession.piecesForReading = new Piece[1];
-            readSession.buf = new byte[1];
-            readSession.countLatch = 1;
-
-            Piece piece = new Piece(p);
-            piece.readOffset = filePosToPiecePos(p, filePos);
-            piece.readLength = 1;
-            piece.bufIndex = 0;
-
-            /* Check cache */
-            if (p == cachePieceIndex) {
-                readFromCache(piece, readSession.buf);
-                filePos++;
-
-                return toUnsignedByte(readSession.buf[0]);
-            }
-            piece.cache = true;
-            readSession.piecesForReading[0] = piece;
-
-            if (!waitForPiece(task, p))
-                return EOF;
-            /* Async piece reading */
-            task.readPiece(p);
-
-            if (!waitForReadPieces())
-                return EOF;
-            filePos++;
-
-            return toUnsignedByte(readSession.buf[0]);
+            return (ret == EOF ? EOF : toUnsignedByte(singleByteBuf[0]));
 
         } finally {
-            readSession = null;
             lock.unlock();
         }
     }
@@ -272,28 +333,22 @@ public class TorrentInputStream extends InputStream
                 throw new IOException("Task " + stream.torrentId + " is null");
 
             /* EOF check */
-            if (filePos == eof) {
-                cacheBuf = null;
+            if (filePos == eof)
                 return EOF;
-            }
             if (filePos + len > eof)
                 len = (int)(eof - filePos);
 
-
             /* Pieces definition that need to be read */
-            int firstPiece = stream.bytesToPieceIndex(filePos + 1);
-            int lastPiece = stream.bytesToPieceIndex(filePos + len);
+            int firstPiece = stream.bytesToPieceIndex(filePos);
+            int lastPiece = stream.bytesToPieceIndex(filePos + len - 1);
             int numPieces = lastPiece - firstPiece + 1;
 
-            task.setInterestedPieces(stream, firstPiece, numPieces);
+            task.setInterestedPieces(this, stream, firstPiece, numPieces);
 
-            readSession = new ReadSession();
-            readSession.piecesForReading = new Piece[numPieces];
-            readSession.buf = b;
-            readSession.countLatch = numPieces;
+            readSession = new ReadSession(b);
 
             int bufIndex = off;
-            for (int p = firstPiece, i = 0; p <= lastPiece; p++, i++) {
+            for (int p = firstPiece; p <= lastPiece; p++) {
                 int pieceSize;
                 if (p == stream.lastFilePiece)
                     pieceSize = stream.lastFilePieceSize;
@@ -302,7 +357,6 @@ public class TorrentInputStream extends InputStream
 
                 Piece piece = new Piece(p);
                 piece.bufIndex = bufIndex;
-                piece.cache = p == lastPiece;
 
                 if (p == firstPiece)
                     piece.readOffset = filePosToPiecePos(firstPiece, filePos);
@@ -320,29 +374,37 @@ public class TorrentInputStream extends InputStream
                 bufIndex += piece.readLength;
 
                 /* Check cache */
-                if (p == cachePieceIndex) {
-                    readFromCache(piece, b);
-                    /* Exit if there are no other pieces except cached */
-                    if (numPieces == 1) {
-                        filePos += len;
-
-                        return len;
-                    }
+                PieceCache.CachedPiece cached = cache.get(p);
+                if (cached != null) {
+                    readFromCache(piece, cached.buf, b);
+                    continue;
                 }
 
-                readSession.piecesForReading[i] = piece;
+                readSession.piecesForReading.put(p, piece);
+                readSession.countLatch++;
+            }
 
-                if (!waitForPiece(task, p))
+            /* Callbacks remove pieces from the session, so iterate over a copy */
+            for (Piece piece : new ArrayList<>(readSession.piecesForReading.values())) {
+                /* Already received or will be received from the read-ahead */
+                if (!readSession.piecesForReading.containsKey(piece.index) ||
+                    prefetchingPieces.contains(piece.index))
+                    continue;
+                if (!waitForPiece(task, piece.index))
                     return EOF;
                 /* Async pieces reading */
-                task.readPiece(p);
+                task.readPiece(piece.index);
             }
 
             /* Wait for pieces reading */
             if (!waitForReadPieces())
                 return EOF;
+            if (readSession.err != null)
+                throw new IOException(readSession.err);
             filePos += len;
 
+            prefetch(task, lastPiece);
+
             return len;
 
         } finally {
@@ -357,16 +419,110 @@ public class TorrentInputStream extends InputStream
         return read(b, 0, b.length);
     }
 
+    /*
+     * Writes up to count bytes (or until EOF, if count is -1) to the output stream
+     * directly from the cached pieces, without an intermediate buffer.
+     * The lock isn't held during writing, so a slow client doesn't block piece callbacks.
+     * Returns number of written bytes
+     */
+
+    public long transferTo(@NonNull OutputStream out, long count) throws IOException
+    {
+        long written = 0;
+        while (count < 0 || written < count) {
+            PieceCache.CachedPiece cached;
+            TorrentDownload task;
+            int piece, offset, length;
+
+            lock.lock();
+            try {
+                if (session == null)
+                    throw new IOException("Torrent session is null");
+
+                task = session.getTask(stream.torrentId);
+                if (task == null)
+                    throw new IOException("Task " + stream.torrentId + " is null");
+
+                if (filePos == eof)
+                    break;
+
+                piece = stream.bytesToPieceIndex(filePos);
+                cached = fetchPiece(task, piece);
+                if (cached == null)
+                    break;
+
+                offset = filePosToPiecePos(piece, filePos);
+                length = cached.size - offset;
+                if (count >= 0 && length > count - written)
+                    length = (int)(count - written);
+                if (length > eof - filePos)
+                    length = (int)(eof - filePos);
+
+                cache.pin(cached);
+                filePos += length;
+
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                out.write(cached.buf, offset, length);
+                written += length;
+
+            } finally {
+                lock.lock();
+                try {
+                    cache.unpin(cached);
+                    prefetch(task, piece);
+
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        return written;
+    }
+
+    /*
+     * Returns cached piece or reads it into the cache. Returns null if the stream is stopped.
+     * Must be called with the lock held
+     */
+
+    private PieceCache.CachedPiece fetchPiece(TorrentDownload task, int pieceIndex) throws IOException
+    {
+        PieceCache.CachedPiece cached;
+        while ((cached = cache.get(pieceIndex)) == null) {
+            task.setInterestedPieces(this, stream, pieceIndex, 1);
+
+            /* Nothing to copy, the piece only goes to the cache */
+            Piece piece = new Piece(pieceIndex);
+            readSession = new ReadSession(EMPTY_BUF);
+            readSession.piecesForReading.put(pieceIndex, piece);
+            readSession.countLatch = 1;
+            try {
+                if (!prefetchingPieces.contains(pieceIndex)) {
+                    if (!waitForPiece(task, pieceIndex))
+                        return null;
+                    task.readPiece(pieceIndex);
+                }
+                if (!waitForReadPieces())
+                    return null;
+                if (readSession.err != null)
+                    throw new IOException(readSession.err);
+
+            } finally {
+                readSession = null;
+            }
+        }
+
+        return cached;
+    }
+
     @Override
     public void close() throws IOException
     {
-        synchronized (this) {
-            stopped = true;
-            if (session != null)
-                session.removeListener(listener);
-            session = null;
-            notifyAll();
-        }
+        stop();
 
         super.close();
     }
@@ -384,14 +540,16 @@ public class TorrentInputStream extends InputStream
             if (filePos == eof)
                 return 0;
             if (filePos + n > eof)
-                n = (int)(eof - filePos);
+                n = eof - filePos;
 
             filePos += n;
+            /* Move read-ahead window on the next read */
+            lastPrefetchPiece = -1;
 
             if (session != null) {
                 TorrentDownload task = session.getTask(stream.torrentId);
                 if (task != null)
-                    task.setInterestedPieces(stream, stream.bytesToPieceIndex(filePos + 1), 1);
+                    task.setInterestedPieces(this, stream, stream.bytesToPieceIndex(filePos), 1);
             }
 
             return n;
@@ -401,13 +559,58 @@ public class TorrentInputStream extends InputStream
         }
     }
 
+    /*
+     * Returns the current position relative to the beginning of the file
+     */
+
+    public long position()
+    {
+        lock.lock();
+
+        try {
+            return filePos - (fileStart - 1);
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Moves to the absolute position in the file. Allows to reuse
+     * the stream (and its cached pieces) for another range of the file
+     */
+
+    public void seek(long pos)
+    {
+        lock.lock();
+
+        try {
+            long newPos = (fileStart - 1) + Math.max(0, Math.min(pos, stream.fileSize));
+            if (newPos == filePos)
+                return;
+
+            filePos = newPos;
+            /* Move read-ahead window on the next read */
+            lastPrefetchPiece = -1;
+
+            if (session != null) {
+                TorrentDownload task = session.getTask(stream.torrentId);
+                if (task != null)
+                    task.setInterestedPieces(this, stream, stream.bytesToPieceIndex(filePos), 1);
+            }
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public boolean markSupported()
     {
         return false;
     }
 
-    private TorrentEngineListener listener = new TorrentEngineListener()
+    private final TorrentEngineListener listener = new TorrentEngineListener()
     {
         @Override
         public void onReadPiece(@NonNull String id, ReadPieceInfo info)
@@ -424,49 +627,57 @@ public class TorrentInputStream extends InputStream
             if (!stream.torrentId.equals(id))
                 return;
 
-            pieceFinished();
+            if (awaitedPiece == piece || (piece >= prefetchStart && piece <= prefetchEnd))
+                pieceFinished(piece);
         }
     };
 
-    private synchronized void pieceFinished()
+    private void pieceFinished(int pieceIndex)
     {
-        notifyAll();
+        lock.lock();
+        try {
+            if (pieceIndex >= prefetchStart && pieceIndex <= prefetchEnd && session != null) {
+                TorrentDownload task = session.getTask(stream.torrentId);
+                if (task != null)
+                    prefetchPiece(task, pieceIndex);
+            }
+            pieceReady.signalAll();
+
+        } finally {
+            lock.unlock();
+        }
     }
 
     private void readPiece(ReadPieceInfo info)
     {
         lock.lock();
         try {
-            if (readSession == null)
+            boolean prefetched = prefetchingPieces.remove(info.piece);
+            Piece piece = (readSession == null ? null : readSession.piecesForReading.remove(info.piece));
+            if (piece == null && !prefetched)
                 return;
 
-            Piece piece = null;
-            for (Piece p : readSession.piecesForReading) {
-                if (p.index == info.piece) {
-                    piece = p;
-                    break;
-                }
-            }
-            if (readSession.countLatch > 0 && piece != null && readSession.buf != null) {
-                try {
-                    if (info.err != null) {
-                        TorrentDownload task = session.getTask(stream.torrentId);
-                        if (task != null)
-                            task.resume();
+            try {
+                if (info.err != null) {
+                    if (piece == null)
                         return;
-                    }
-                    Pointer ptr = new Pointer(info.bufferPtr);
-                    if (piece.cache) {
-                        cacheBuf = new byte[info.size];
-                        ptr.read(0, cacheBuf, 0, info.size);
-                        cachePieceIndex = piece.index;
-                        readFromCache(piece, readSession.buf);
-                    } else {
-                        ptr.read(piece.readOffset, readSession.buf, piece.bufIndex, piece.readLength);
-                    }
-                } finally {
+                    readSession.err = info.err;
+                    TorrentDownload task = (session == null ? null : session.getTask(stream.torrentId));
+                    if (task != null)
+                        task.resume();
+                    return;
+                }
+
+                byte[] buf = cache.obtainBuffer();
+                bufReader.read(info.bufferPtr, 0, buf, 0, info.size);
+                cache.put(info.piece, buf, info.size);
+                if (piece != null)
+                    readFromCache(piece, buf, readSession.buf);
+
+            } finally {
+                if (piece != null) {
                     --readSession.countLatch;
-                    notifyAll();
+                    pieceReady.signalAll();
                 }
             }
 
@@ -474,4 +685,4 @@ public class TorrentInputStream extends InputStream
             lock.unlock();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.nanohttpd.protocols.http.request.Method;
+import org.nanohttpd.protocols.http.response.IStatus;
+import org.nanohttpd.protocols.http.response.Response;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+
+import static org.nanohttpd.protocols.http.response.Status.PARTIAL_CONTENT;
+
+/*
+ * Response that writes the body directly from the piece cache of
+ * TorrentInputStream to the socket, bypassing the intermediate buffer of NanoHTTPD.
+ * Sends one or several (multipart/byteranges) ranges of the file.
+ * The stream can be shared between responses of the same connection,
+ * in this case it isn't closed with the response. Responses to HEAD
+ * requests are made without the stream.
+ */
+
+class TorrentStreamResponse extends Response
+{
+    private static final String CRLF = "\r\n";
+
+    private TorrentInputStream stream;
+    private boolean ownStream;
+    private List<HttpRange> ranges;
+    private long fileSize;
+    /* Not null for multipart/byteranges */
+    private String boundary;
+    private String partMimeType;
+    private StreamServerStats stats;
+    private long requestTime;
+    private Semaphore permit;
+
+    /*
+     * Returns response with the single range (or the whole file) of the stream
+     */
+
+    static TorrentStreamResponse newRangeResponse(@NonNull IStatus status,
+                                                  String mimeType,
+                                                  @Nullable TorrentInputStream stream,
+                                                  boolean ownStream,
+                                                  @NonNull HttpRange range,
+                                                  long fileSize)
+    {
+        TorrentStreamResponse res = new TorrentStreamResponse(status, mimeType, stream,
+                ownStream, range.length());
+        res.ranges = Collections.singletonList(range);
+        res.fileSize = fileSize;
+        res.addHeader("Content-Length", Long.toString(range.length()));
+
+        return res;
+    }
+
+    /*
+     * Returns multipart/byteranges response (RFC 7233, Appendix A)
+     */
+
+    static TorrentStreamResponse newMultipartResponse(String partMimeType,
+                                                      @Nullable TorrentInputStream stream,
+                                                      boolean ownStream,
+                                                      @NonNull List<HttpRange> ranges,
+                                                      long fileSize)
+    {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        long contentLength = 0;
+        for (HttpRange range : ranges)
+            contentLength += makePartHeader(boundary, partMimeType, range, fileSize).length() +
+                    range.length() + CRLF.length();
+        contentLength += makeCloseDelimiter(boundary).length();
+
+        TorrentStreamResponse res = new TorrentStreamResponse(PARTIAL_CONTENT,
+                "multipart/byteranges; boundary=" + boundary,
+                stream, ownStream, contentLength);
+        res.ranges = ranges;
+        res.fileSize = fileSize;
+        res.boundary = boundary;
+        res.partMimeType = partMimeType;
+        res.addHeader("Content-Length", Long.toString(contentLength));
+
+        return res;
+    }
+
+    private TorrentStreamResponse(@NonNull IStatus status,
+                                  String mimeType,
+                                  @Nullable TorrentInputStream stream,
+                                  boolean ownStream,
+                                  long totalBytes)
+    {
+        /* The stream is closed by the owner, not by NanoHTTPD */
+        super(status, mimeType, new NonClosingInputStream(stream), totalBytes);
+
+        this.stream = stream;
+        this.ownStream = ownStream;
+    }
+
+    /*
+     * requestTime is used to measure time to first byte
+     */
+
+    void setStats(@NonNull StreamServerStats stats, long requestTime)
+    {
+        this.stats = stats;
+        this.requestTime = requestTime;
+    }
+
+    /*
+     * The permit is released when the response is closed
+     */
+
+    void setPermit(@Nullable Semaphore permit)
+    {
+        this.permit = permit;
+    }
+
+    boolean isMultipart()
+    {
+        return boundary != null;
+    }
+
+    @Override
+    protected void sendBody(OutputStream outputStream, long pending) throws IOException
+    {
+        if (getRequestMethod() == Method.HEAD)
+            return;
+
+        StatsOutputStream out = new StatsOutputStream(outputStream);
+        if (boundary == null) {
+            sendRange(out, ranges.get(0));
+
+        } else {
+            for (HttpRange range : ranges) {
+                out.writeString(makePartHeader(boundary, partMimeType, range, fileSize));
+                sendRange(out, range);
+                out.writeString(CRLF);
+            }
+            out.writeString(makeCloseDelimiter(boundary));
+        }
+    }
+
+    private void sendRange(StatsOutputStream out, HttpRange range) throws IOException
+    {
+        stream.seek(range.start);
+        out.bodyStarted();
+        long written = stream.transferTo(out, range.length());
+        /* Don't leave the client with the incorrect framing */
+        if (written < range.length())
+            throw new IOException("Stream is closed");
+    }
+
+    private static String makePartHeader(String boundary, String mimeType,
+                                         HttpRange range, long fileSize)
+    {
+        return "--" + boundary + CRLF +
+                "Content-Type: " + mimeType + CRLF +
+                "Content-Range: " + range.toContentRange(fileSize) + CRLF +
+                CRLF;
+    }
+
+    private static String makeCloseDelimiter(String boundary)
+    {
+        return "--" + boundary + "--" + CRLF;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try {
+            super.close();
+            if (ownStream)
+                stream.close();
+
+        } finally {
+            if (permit != null) {
+                permit.release();
+                permit = null;
+            }
+        }
+    }
+
+    private static class NonClosingInputStream extends FilterInputStream
+    {
+        NonClosingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public void close()
+        {
+            /* Ignore */
+        }
+    }
+
+    private class StatsOutputStream extends FilterOutputStream
+    {
+        private boolean bodyStarted;
+        private boolean firstByteSent;
+
+        StatsOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        /*
+         * Time to first byte is measured by the bytes of the file,
+         * not by the multipart headers
+         */
+
+        void bodyStarted()
+        {
+            bodyStarted = true;
+        }
+
+        void writeString(String s) throws IOException
+        {
+            write(s.getBytes("US-ASCII"));
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            sent(1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            sent(len);
+        }
+
+        private void sent(int len)
+        {
+            if (stats == null)
+                return;
+
+            if (bodyStarted && !firstByteSent) {
+                firstByteSent = true;
+                stats.addTtfb(System.currentTimeMillis() - requestTime);
+            }
+            stats.bytesSent(len);
+        }
+    }
+}
@@ -24,12 +24,16 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import org.nanohttpd.protocols.http.ClientHandler;
 import org.nanohttpd.protocols.http.IHTTPSession;
 import org.nanohttpd.protocols.http.NanoHTTPD;
+import org.nanohttpd.protocols.http.request.Method;
 import org.nanohttpd.protocols.http.response.Response;
 import org.proninyaroslav.libretorrent.core.model.TorrentEngine;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
@@ -37,6 +41,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import static org.nanohttpd.protocols.http.response.Response.newFixedLengthResponse;
 import static org.nanohttpd.protocols.http.response.Status.BAD_REQUEST;
@@ -46,6 +53,7 @@ import static org.nanohttpd.protocols.http.response.Status.NOT_MODIFIED;
 import static org.nanohttpd.protocols.http.response.Status.OK;
 import static org.nanohttpd.protocols.http.response.Status.PARTIAL_CONTENT;
 import static org.nanohttpd.protocols.http.response.Status.RANGE_NOT_SATISFIABLE;
+import static org.nanohttpd.protocols.http.response.Status.SERVICE_UNAVAILABLE;
 
 /*
  * The server that allows to stream selected file from a torrent and to which a specific address is assigned.
@@ -58,6 +66,10 @@ public class TorrentStreamServer extends NanoHTTPD
     private static final String TAG = TorrentStreamServer.class.getSimpleName();
 
     private static final String MIME_OCTET_STREAM = "application/octet-stream";
+    /* Limit of simultaneous responses for the same file */
+    private static final int MAX_REQUESTS_PER_STREAM = 4;
+    private static final long STREAM_PERMIT_WAIT_TIME = 3000; /* ms */
+    private static final int RETRY_AFTER = 1; /* sec */
 
     private static HashMap<String, DLNAFileType> DLNA_FILE_TYPES;
     static {
@@ -68,10 +80,17 @@ public class TorrentStreamServer extends NanoHTTPD
     }
 
     private TorrentEngine engine;
+    private StreamServerAsyncRunner asyncRunner = new StreamServerAsyncRunner();
+    private StreamServerStats stats = new StreamServerStats();
+    private ConcurrentHashMap<String, Semaphore> streamPermits = new ConcurrentHashMap<>();
+    /* Connection is served by the same thread from the beginning to the end */
+    private ThreadLocal<HashMap<String, TorrentInputStream>> connectionStreams = new ThreadLocal<>();
 
     public TorrentStreamServer(@NonNull String host, int port)
     {
         super(host, port);
+
+        setAsyncRunner(asyncRunner);
     }
 
     public void start(@NonNull Context appContext) throws IOException
@@ -88,7 +107,22 @@ public class TorrentStreamServer extends NanoHTTPD
     {
         super.stop();
 
-        Log.i(TAG, "Stop " + TAG);
+        Log.i(TAG, "Stop " + TAG + ": requests=" + stats.getRequests() +
+                ", rejected=" + (stats.getRejectedRequests() + asyncRunner.getRejectedCount()) +
+                ", throughput=" + stats.getThroughput() + " B/s" +
+                ", TTFB p50=" + stats.getTtfbPercentile(50) + " ms" +
+                ", TTFB p99=" + stats.getTtfbPercentile(99) + " ms");
+    }
+
+    @Override
+    protected ClientHandler createClientHandler(Socket finalAccept, InputStream inputStream)
+    {
+        return new StreamClientHandler(inputStream, finalAccept);
+    }
+
+    public StreamServerStats getStats()
+    {
+        return stats;
     }
 
     /*
@@ -128,6 +162,9 @@ public class TorrentStreamServer extends NanoHTTPD
 
     public Response handleTorrent(IHTTPSession httpSession)
     {
+        long requestTime = System.currentTimeMillis();
+        stats.requestReceived();
+
         if (engine == null)
             return newFixedLengthResponse(NOT_FOUND, "", "");
 
@@ -153,27 +190,13 @@ public class TorrentStreamServer extends NanoHTTPD
         }
 
         Map<String, String> header = httpSession.getHeaders();
+        Semaphore permit = null;
+        TorrentInputStream is = null;
+        boolean ownStream = false;
         try {
             Response res;
             String etag = stream.id;
-            long startFrom = 0;
-            long endAt = -1;
-            String range = header.get("range");
-
-            if (range != null) {
-                if (range.startsWith("bytes=")) {
-                    range = range.substring("bytes=".length());
-                    int minus = range.indexOf('-');
-                    try {
-                        if (minus > 0) {
-                            startFrom = Long.parseLong(range.substring(0, minus));
-                            endAt = Long.parseLong(range.substring(minus + 1));
-                        }
-                    } catch (NumberFormatException ignored) {
-
-                    }
-                }
-            }
+            List<HttpRange> ranges = HttpRange.parse(header.get("range"), stream.fileSize);
 
             /*
              * Get if-range header. If present, it must match etag or else we
@@ -181,87 +204,160 @@ public class TorrentStreamServer extends NanoHTTPD
              */
             String ifRange = header.get("if-range");
             boolean headerIfRangeMissingOrMatching = (ifRange == null || etag.equals(ifRange));
+            if (!headerIfRangeMissingOrMatching)
+                ranges = null;
 
             String ifNoneMatch = header.get("if-none-match");
             boolean headerIfNoneMatchPresentAndMatching = ifNoneMatch != null &&
                     ("*".equals(ifNoneMatch) || ifNoneMatch.equals(etag));
 
-            if (headerIfRangeMissingOrMatching && range != null &&
-                startFrom >= 0 && startFrom < stream.fileSize) {
+            if (ranges != null && ranges.isEmpty()) {
                 /*
-                 * Range request that matches current etag
-                 * and the startFrom of the range is satisfiable
+                 * Return the size of the file
+                 * 4xx responses are not trumped by if-none-match
                  */
-                if (headerIfNoneMatchPresentAndMatching) {
-                    /*
-                     * Range request that matches current etag
-                     * and the startFrom of the range is satisfiable
-                     * would return range from file respond with not-modified
-                     */
-                    res = newFixedLengthResponse(NOT_MODIFIED, MIME_OCTET_STREAM, "");
-                    res.addHeader("ETag", etag);
-
-                } else {
-                    if (endAt < 0)
-                        endAt = stream.fileSize - 1;
-                    long newLen = endAt - startFrom + 1;
-                    if (newLen < 0)
-                        newLen = 0;
-
-                    TorrentInputStream is = engine.getTorrentInputStream(stream);
-                    is.skip(startFrom);
-
-                    res = newFixedLengthResponse(PARTIAL_CONTENT, MIME_OCTET_STREAM, is, newLen);
-                    res.addHeader("Accept-Ranges", "bytes");
-                    res.addHeader("Content-Length", "" + newLen);
-                    res.addHeader("Content-Range", "bytes " + startFrom + "-" + endAt + "/" + stream.fileSize);
-                    res.addHeader("ETag", etag);
-                    res.addHeader("Content-Disposition", "inline; filename=" + stream.id);
-                }
+                res = newFixedLengthResponse(RANGE_NOT_SATISFIABLE, NanoHTTPD.MIME_PLAINTEXT, "");
+                res.addHeader("Content-Range", "bytes */" + stream.fileSize);
+                res.addHeader("ETag", etag);
+
+            } else if (headerIfNoneMatchPresentAndMatching) {
+                /*
+                 * Request would return the entire file or satisfiable range,
+                 * respond with not-modified
+                 */
+                res = newFixedLengthResponse(NOT_MODIFIED, MIME_OCTET_STREAM, "");
+                res.addHeader("ETag", etag);
+
+            } else if (httpSession.getMethod() == Method.HEAD) {
+                /* Answer from the stream metadata, without reading the file */
+                res = makeStreamResponse(stream, null, false, ranges, etag);
+
             } else {
-                if (headerIfRangeMissingOrMatching && range != null && startFrom >= stream.fileSize) {
-                    /*
-                     * Return the size of the file
-                     * 4xx responses are not trumped by if-none-match
-                     */
-                    res = newFixedLengthResponse(RANGE_NOT_SATISFIABLE, NanoHTTPD.MIME_PLAINTEXT, "");
-                    res.addHeader("Content-Range", "bytes */" + stream.fileSize);
-                    res.addHeader("ETag", etag);
-
-                } else if (range == null && headerIfNoneMatchPresentAndMatching) {
-                    /*
-                     * Full-file-fetch request would return entire file
-                     * respond with not-modified
-                     */
-                    res = newFixedLengthResponse(NOT_MODIFIED, MIME_OCTET_STREAM, "");
-                    res.addHeader("ETag", etag);
-
-                } else if (!headerIfRangeMissingOrMatching && headerIfNoneMatchPresentAndMatching) {
-                    /*
-                     * Range request that doesn't match current etag
-                     * would return entire (different) file respond with not-modified
-                     */
-                    res = newFixedLengthResponse(NOT_MODIFIED, MIME_OCTET_STREAM, "");
-                    res.addHeader("ETag", etag);
-
-                } else {
-                    TorrentInputStream is = engine.getTorrentInputStream(stream);
-                    res = newFixedLengthResponse(OK, MIME_OCTET_STREAM, is, stream.fileSize);
-                    res.addHeader("Accept-Ranges", "bytes");
-                    res.addHeader("Content-Length", "" + stream.fileSize);
-                    res.addHeader("ETag", etag);
-                    res.addHeader("Content-Disposition", "inline; filename=" + stream.id);
+                /* Probes like "bytes=0-0" are too small to compete for the stream */
+                if (!isProbe(ranges)) {
+                    permit = acquireStreamPermit(stream);
+                    if (permit == null)
+                        return makeBusyResponse();
+                }
+
+                is = getConnectionStream(stream);
+                if (is == null) {
+                    is = engine.getTorrentInputStream(stream);
+                    ownStream = true;
                 }
+
+                TorrentStreamResponse streamRes = makeStreamResponse(stream, is, ownStream,
+                        ranges, etag);
+                streamRes.setStats(stats, requestTime);
+                streamRes.setPermit(permit);
+                res = streamRes;
             }
 
             return res;
         } catch (Throwable e) {
+            if (permit != null)
+                permit.release();
+            if (ownStream) {
+                try {
+                    is.close();
+                } catch (IOException ignored) {
+                    /* Ignore */
+                }
+            }
             Log.e(TAG, Log.getStackTraceString(e));
 
             return newFixedLengthResponse(FORBIDDEN, NanoHTTPD.MIME_PLAINTEXT, "Forbidden");
         }
     }
 
+    /*
+     * `is` is null for HEAD requests, the response has the same headers
+     * as for GET, but the body isn't sent
+     */
+
+    private TorrentStreamResponse makeStreamResponse(TorrentStream stream,
+                                                     TorrentInputStream is,
+                                                     boolean ownStream,
+                                                     List<HttpRange> ranges,
+                                                     String etag)
+    {
+        TorrentStreamResponse res;
+        if (ranges == null) {
+            res = TorrentStreamResponse.newRangeResponse(OK, MIME_OCTET_STREAM,
+                    is, ownStream, new HttpRange(0, stream.fileSize - 1), stream.fileSize);
+
+        } else if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            res = TorrentStreamResponse.newRangeResponse(PARTIAL_CONTENT, MIME_OCTET_STREAM,
+                    is, ownStream, range, stream.fileSize);
+            res.addHeader("Content-Range", range.toContentRange(stream.fileSize));
+
+        } else {
+            res = TorrentStreamResponse.newMultipartResponse(MIME_OCTET_STREAM,
+                    is, ownStream, ranges, stream.fileSize);
+        }
+        res.addHeader("Accept-Ranges", "bytes");
+        res.addHeader("ETag", etag);
+        res.addHeader("Content-Disposition", "inline; filename=" + stream.id);
+
+        return res;
+    }
+
+    private static boolean isProbe(List<HttpRange> ranges)
+    {
+        return ranges != null && ranges.size() == 1 && ranges.get(0).length() == 1;
+    }
+
+    /*
+     * Returns the stream that lives until the client connection is closed,
+     * so that subsequent requests (e.g. seek to the index and back) reuse
+     * the cached pieces. Returns null if the request isn't served by StreamClientHandler
+     */
+
+    private TorrentInputStream getConnectionStream(TorrentStream stream)
+    {
+        HashMap<String, TorrentInputStream> streams = connectionStreams.get();
+        if (streams == null)
+            return null;
+
+        TorrentInputStream is = streams.get(stream.id);
+        if (is == null) {
+            is = engine.getTorrentInputStream(stream);
+            streams.put(stream.id, is);
+        }
+
+        return is;
+    }
+
+    /*
+     * Wait until one of the current responses for this file is finished.
+     * Players abandon range requests on seek, so the permit usually becomes
+     * available soon. Returns null if the wait time is over
+     */
+
+    private Semaphore acquireStreamPermit(TorrentStream stream) throws InterruptedException
+    {
+        Semaphore permit = streamPermits.get(stream.id);
+        if (permit == null) {
+            permit = new Semaphore(MAX_REQUESTS_PER_STREAM);
+            Semaphore prev = streamPermits.putIfAbsent(stream.id, permit);
+            if (prev != null)
+                permit = prev;
+        }
+
+        return (permit.tryAcquire(STREAM_PERMIT_WAIT_TIME, TimeUnit.MILLISECONDS) ? permit : null);
+    }
+
+    private Response makeBusyResponse()
+    {
+        stats.requestRejected();
+
+        Response res = newFixedLengthResponse(SERVICE_UNAVAILABLE, NanoHTTPD.MIME_PLAINTEXT, "");
+        res.addHeader("Retry-After", Integer.toString(RETRY_AFTER));
+
+        return res;
+    }
+
     static class DLNAFileType
     {
         public final String dlnaContentFeatures;
@@ -283,7 +379,41 @@ public class TorrentStreamServer extends NanoHTTPD
             res.addHeader("TransferMode.DLNA.ORG", this.dlnaTransferMode);
             res.addHeader("DAAP-Server", "iTunes/11.0.5 (OS X)");
             res.addHeader("Last-Modified", "2015-01-01T10:00:00Z");
-            res.setMimeType(this.mimeType);
+            /* Multipart response has its own type */
+            if (!(res instanceof TorrentStreamResponse && ((TorrentStreamResponse)res).isMultipart()))
+                res.setMimeType(this.mimeType);
+        }
+    }
+
+    /*
+     * Closes the streams of the connection when the client disconnects
+     */
+
+    private class StreamClientHandler extends ClientHandler
+    {
+        StreamClientHandler(InputStream inputStream, Socket acceptSocket)
+        {
+            super(TorrentStreamServer.this, inputStream, acceptSocket);
+        }
+
+        @Override
+        public void run()
+        {
+            HashMap<String, TorrentInputStream> streams = new HashMap<>();
+            connectionStreams.set(streams);
+            try {
+                super.run();
+
+            } finally {
+                connectionStreams.remove();
+                for (TorrentInputStream is : streams.values()) {
+                    try {
+                        is.close();
+                    } catch (IOException e) {
+                        /* Ignore */
+                    }
+                }
+            }
         }
     }
 }
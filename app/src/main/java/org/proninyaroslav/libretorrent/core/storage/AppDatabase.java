@@ -40,7 +40,7 @@ import org.proninyaroslav.libretorrent.core.storage.dao.TorrentDao;
         FastResume.class,
         FeedChannel.class,
         FeedItem.class},
-        version = 6)
+        version = 8)
 @TypeConverters({UriConverter.class})
 
 public abstract class AppDatabase extends RoomDatabase
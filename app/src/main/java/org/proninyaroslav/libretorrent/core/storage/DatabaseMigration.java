@@ -49,6 +49,8 @@ class DatabaseMigration
                 MIGRATION_3_4,
                 new RoomDatabaseMigration(appContext),
                 MIGRATION_5_6,
+                MIGRATION_6_7,
+                MIGRATION_7_8,
         };
     }
 
@@ -87,6 +89,27 @@ class DatabaseMigration
         }
     };
 
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database)
+        {
+            database.execSQL("ALTER TABLE `FeedChannel` ADD COLUMN `etag` TEXT");
+            database.execSQL("ALTER TABLE `FeedChannel` ADD COLUMN `lastModified` TEXT");
+        }
+    };
+
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database)
+        {
+            /* (feedId, id) also covers the queries by feedId */
+            database.execSQL("DROP INDEX IF EXISTS `index_FeedItem_feedId`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_FeedItem_feedId_id` ON `FeedItem` (`feedId`, `id`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_FeedItem_title` ON `FeedItem` (`title`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_FeedItem_fetchDate` ON `FeedItem` (`fetchDate`)");
+        }
+    };
+
     /*
      * Migration from old database (ver. 4) to Room (ver. 5).
      */
@@ -23,11 +23,14 @@ import android.net.Uri;
 
 import androidx.annotation.NonNull;
 
+import org.proninyaroslav.libretorrent.core.filter.FeedFilter;
 import org.proninyaroslav.libretorrent.core.model.data.entity.FeedChannel;
 import org.proninyaroslav.libretorrent.core.model.data.entity.FeedItem;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import io.reactivex.Flowable;
 import io.reactivex.Single;
@@ -40,6 +43,13 @@ public interface FeedRepository
 
     String getFilterSeparator();
 
+    /*
+     * Returns the compiled auto-download filter of the channel. It's cached
+     * until the channel filter changes or the channel is deleted
+     */
+
+    FeedFilter getFeedFilter(@NonNull FeedChannel channel);
+
     long addFeed(@NonNull FeedChannel channel);
 
     long[] addFeeds(@NonNull List<FeedChannel> feeds);
@@ -66,6 +76,12 @@ public interface FeedRepository
 
     void addItems(@NonNull List<FeedItem> items);
 
+    /*
+     * Inserts the items and marks the given items as read in one transaction
+     */
+
+    void addItems(@NonNull List<FeedItem> items, @NonNull List<String> readItemsId);
+
     void deleteItemsOlderThan(long keepDateBorderTime);
 
     void markAsRead(@NonNull String itemId);
@@ -78,9 +94,9 @@ public interface FeedRepository
 
     Single<List<FeedItem>> getItemsByFeedIdSingle(long feedId);
 
-    List<String> getItemsIdByFeedId(long feedId);
+    Set<String> getItemsIdByFeedId(long feedId);
 
-    List<String> findItemsExistingTitles(@NonNull List<String> titles);
+    Set<String> findItemsExistingTitles(@NonNull Collection<String> titles);
 
     List<FeedItem> getItemsById(@NonNull String... itemsId);
 }
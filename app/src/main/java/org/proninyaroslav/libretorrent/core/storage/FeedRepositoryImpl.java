@@ -27,6 +27,7 @@ import androidx.annotation.NonNull;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
+import org.proninyaroslav.libretorrent.core.filter.FeedFilter;
 import org.proninyaroslav.libretorrent.core.model.data.entity.FeedChannel;
 import org.proninyaroslav.libretorrent.core.model.data.entity.FeedItem;
 import org.proninyaroslav.libretorrent.core.system.FileDescriptorWrapper;
@@ -38,7 +39,12 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.reactivex.Flowable;
 import io.reactivex.Single;
@@ -51,9 +57,13 @@ public class FeedRepositoryImpl implements FeedRepository
     public static final String SERIALIZE_FILE_FORMAT = "json";
     public static final String SERIALIZE_MIME_TYPE = "application/json";
     public static final String FILTER_SEPARATOR = "\\|";
+    /* SQLITE_MAX_VARIABLE_NUMBER before SQLite 3.32 */
+    private static final int MAX_QUERY_ARGS = 999;
 
     private Context appContext;
     private AppDatabase db;
+    /* Compiled filters by channel id */
+    private final ConcurrentHashMap<Long, FeedFilter> filterCache = new ConcurrentHashMap<>();
 
     public FeedRepositoryImpl(@NonNull Context appContext, @NonNull AppDatabase db)
     {
@@ -79,6 +89,19 @@ public class FeedRepositoryImpl implements FeedRepository
         return FILTER_SEPARATOR;
     }
 
+    @Override
+    public FeedFilter getFeedFilter(@NonNull FeedChannel channel)
+    {
+        FeedFilter filter = filterCache.get(channel.id);
+        if (filter != null && filter.isSame(channel.filter, channel.isRegexFilter, FILTER_SEPARATOR))
+            return filter;
+
+        filter = new FeedFilter(channel.filter, channel.isRegexFilter, FILTER_SEPARATOR);
+        filterCache.put(channel.id, filter);
+
+        return filter;
+    }
+
     @Override
     public long addFeed(@NonNull FeedChannel channel)
     {
@@ -101,12 +124,15 @@ public class FeedRepositoryImpl implements FeedRepository
     public void deleteFeed(@NonNull FeedChannel channel)
     {
         db.feedDao().deleteFeed(channel);
+        filterCache.remove(channel.id);
     }
 
     @Override
     public void deleteFeeds(@NonNull List<FeedChannel> feeds)
     {
         db.feedDao().deleteFeeds(feeds);
+        for (FeedChannel channel : feeds)
+            filterCache.remove(channel.id);
     }
 
     @Override
@@ -169,6 +195,16 @@ public class FeedRepositoryImpl implements FeedRepository
         db.feedDao().addItems(items);
     }
 
+    @Override
+    public void addItems(@NonNull List<FeedItem> items, @NonNull List<String> readItemsId)
+    {
+        db.runInTransaction(() -> {
+            db.feedDao().addItems(items);
+            for (List<String> chunk : chunks(readItemsId))
+                db.feedDao().markAsReadById(chunk);
+        });
+    }
+
     @Override
     public void deleteItemsOlderThan(long keepDateBorderTime)
     {
@@ -206,20 +242,45 @@ public class FeedRepositoryImpl implements FeedRepository
     }
 
     @Override
-    public List<String> getItemsIdByFeedId(long feedId)
+    public Set<String> getItemsIdByFeedId(long feedId)
     {
-        return db.feedDao().getItemsIdByFeedId(feedId);
+        return new HashSet<>(db.feedDao().getItemsIdByFeedId(feedId));
     }
 
     @Override
-    public List<String> findItemsExistingTitles(@NonNull List<String> titles)
+    public Set<String> findItemsExistingTitles(@NonNull Collection<String> titles)
     {
-        return db.feedDao().findItemsExistingTitles(titles);
+        HashSet<String> existingTitles = new HashSet<>();
+        /* Also removes duplicate titles from the query */
+        for (List<String> chunk : chunks(new ArrayList<>(new HashSet<>(titles))))
+            existingTitles.addAll(db.feedDao().findItemsExistingTitles(chunk));
+
+        return existingTitles;
     }
 
     @Override
     public List<FeedItem> getItemsById(@NonNull String... itemsId)
     {
-        return db.feedDao().getItemsById(itemsId);
+        if (itemsId.length <= MAX_QUERY_ARGS)
+            return db.feedDao().getItemsById(itemsId);
+
+        List<FeedItem> items = new ArrayList<>(itemsId.length);
+        for (List<String> chunk : chunks(Arrays.asList(itemsId)))
+            items.addAll(db.feedDao().getItemsById(chunk.toArray(new String[0])));
+
+        return items;
+    }
+
+    /*
+     * Splits the query arguments so that each query fits in the SQLite variable limit
+     */
+
+    private static <T> List<List<T>> chunks(List<T> list)
+    {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += MAX_QUERY_ARGS)
+            chunks.add(list.subList(i, Math.min(list.size(), i + MAX_QUERY_ARGS)));
+
+        return chunks;
     }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.storage;
+
+import androidx.annotation.NonNull;
+
+import org.proninyaroslav.libretorrent.core.model.data.entity.Torrent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/*
+ * Write-through cache of Torrent entities. The cache stores and returns
+ * copies, so modifying a returned entity without calling update
+ * doesn't affect the cached state. Once all torrents are loaded,
+ * the cache is authoritative and a miss means that the torrent doesn't exist.
+ *
+ * Results of reads that raced with a write are discarded
+ * by checking the modification version obtained before the read.
+ */
+
+public final class TorrentCache
+{
+    /* Preserves the database order (insertion order) */
+    private final LinkedHashMap<String, Torrent> torrents = new LinkedHashMap<>();
+    private boolean allLoaded;
+    private long version;
+    private long hits;
+    /* Lookups of missing torrents that were answered without query */
+    private long negativeHits;
+    private long misses;
+
+    TorrentCache() {}
+
+    /*
+     * Returns a copy of the cached torrent or null if the torrent isn't cached.
+     * If the result is null, check isAuthoritative() to know whether
+     * the database query is needed.
+     */
+
+    synchronized Torrent get(@NonNull String id)
+    {
+        Torrent torrent = torrents.get(id);
+        if (torrent != null) {
+            hits++;
+            return new Torrent(torrent);
+        } else if (allLoaded) {
+            negativeHits++;
+            return null;
+        }
+        misses++;
+
+        return null;
+    }
+
+    synchronized boolean isAuthoritative()
+    {
+        return allLoaded;
+    }
+
+    /*
+     * Returns copies of all torrents or null if they haven't been loaded yet
+     */
+
+    synchronized List<Torrent> getAll()
+    {
+        if (!allLoaded) {
+            misses++;
+            return null;
+        }
+        hits++;
+
+        ArrayList<Torrent> list = new ArrayList<>(torrents.size());
+        for (Torrent torrent : torrents.values())
+            list.add(new Torrent(torrent));
+
+        return list;
+    }
+
+    synchronized long getVersion()
+    {
+        return version;
+    }
+
+    /*
+     * Caches the result of the database read, if there
+     * were no writes since the read began (see getVersion())
+     */
+
+    synchronized void putLoaded(@NonNull Torrent torrent, long readVersion)
+    {
+        if (readVersion == version)
+            torrents.put(torrent.id, new Torrent(torrent));
+    }
+
+    synchronized void putAllLoaded(@NonNull List<Torrent> list, long readVersion)
+    {
+        if (readVersion != version)
+            return;
+
+        torrents.clear();
+        for (Torrent torrent : list)
+            torrents.put(torrent.id, new Torrent(torrent));
+        allLoaded = true;
+    }
+
+    synchronized void put(@NonNull Torrent torrent)
+    {
+        version++;
+        torrents.put(torrent.id, new Torrent(torrent));
+    }
+
+    synchronized void remove(@NonNull String id)
+    {
+        version++;
+        torrents.remove(id);
+    }
+
+    public synchronized int size()
+    {
+        return torrents.size();
+    }
+
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    /*
+     * Number of lookups that required the database query
+     */
+
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    /*
+     * Number of database queries that were served from the cache,
+     * including lookups of missing torrents
+     */
+
+    public synchronized long getAvoidedQueryCount()
+    {
+        return hits + negativeHits;
+    }
+
+    public synchronized double getHitRate()
+    {
+        long avoided = hits + negativeHits;
+        long total = avoided + misses;
+
+        return (total == 0 ? 0 : (double)avoided / total);
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "TorrentCache{" +
+                "size=" + torrents.size() +
+                ", allLoaded=" + allLoaded +
+                ", hits=" + hits +
+                ", negativeHits=" + negativeHits +
+                ", misses=" + misses +
+                '}';
+    }
+}
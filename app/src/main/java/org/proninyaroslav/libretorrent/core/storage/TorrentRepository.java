@@ -48,6 +48,8 @@ public interface TorrentRepository
 
     void addFastResume(@NonNull FastResume fastResume);
 
+    void addFastResumeList(@NonNull List<FastResume> fastResumeList);
+
     FastResume getFastResumeById(@NonNull String torrentId);
 
     void saveSession(@NonNull byte[] data) throws IOException;
@@ -39,6 +39,9 @@ public class TorrentRepositoryImpl implements TorrentRepository
     @SuppressWarnings("unused")
     private static final String TAG = TorrentRepositoryImpl.class.getSimpleName();
 
+    /* Write locks are shared by torrents with the same id hash */
+    private static final int WRITE_LOCK_STRIPES = 32;
+
     private static final class FileDataModel
     {
         private static final String TORRENT_SESSION_FILE = "session";
@@ -46,35 +49,77 @@ public class TorrentRepositoryImpl implements TorrentRepository
 
     private Context appContext;
     private AppDatabase db;
+    /*
+     * The torrent table is written only through this repository (by the engine),
+     * so the cache always reflects the database state. Rx queries
+     * aren't cached, since Room tracks table invalidation for them itself
+     */
+    private TorrentCache cache = new TorrentCache();
+    /*
+     * The database write and the cache update of a torrent are done under
+     * the lock of its id. Otherwise concurrent writes of the same torrent can
+     * update the cache in a different order than the database
+     */
+    private final Object[] writeLocks = new Object[WRITE_LOCK_STRIPES];
 
     public TorrentRepositoryImpl(@NonNull Context appContext, @NonNull AppDatabase db)
     {
         this.appContext = appContext;
         this.db = db;
+        for (int i = 0; i < writeLocks.length; i++)
+            writeLocks[i] = new Object();
     }
 
     @Override
     public void addTorrent(@NonNull Torrent torrent)
     {
-        db.torrentDao().add(torrent);
+        synchronized (getWriteLock(torrent.id)) {
+            db.torrentDao().add(torrent);
+            /* Stores a copy */
+            cache.put(torrent);
+        }
     }
 
     @Override
     public void updateTorrent(@NonNull Torrent torrent)
     {
-        db.torrentDao().update(torrent);
+        synchronized (getWriteLock(torrent.id)) {
+            if (db.torrentDao().update(torrent) > 0)
+                cache.put(torrent);
+            else
+                cache.remove(torrent.id);
+        }
     }
 
     @Override
     public void deleteTorrent(@NonNull Torrent torrent)
     {
-        db.torrentDao().delete(torrent);
+        synchronized (getWriteLock(torrent.id)) {
+            db.torrentDao().delete(torrent);
+            cache.remove(torrent.id);
+        }
+    }
+
+    private Object getWriteLock(String id)
+    {
+        return writeLocks[(id.hashCode() & Integer.MAX_VALUE) % writeLocks.length];
     }
 
     @Override
     public Torrent getTorrentById(@NonNull String id)
     {
-        return db.torrentDao().getTorrentById(id);
+        /* Once the cache has become authoritative, it stays so */
+        boolean authoritative = cache.isAuthoritative();
+        Torrent torrent = cache.get(id);
+        if (torrent != null || authoritative)
+            return torrent;
+
+        long version = cache.getVersion();
+        torrent = db.torrentDao().getTorrentById(id);
+        if (torrent != null)
+            cache.putLoaded(torrent, version);
+
+        return torrent;
     }
 
     @Override
@@ -92,7 +137,24 @@ public class TorrentRepositoryImpl implements TorrentRepository
     @Override
     public List<Torrent> getAllTorrents()
     {
-        return db.torrentDao().getAllTorrents();
+        List<Torrent> torrents = cache.getAll();
+        if (torrents != null)
+            return torrents;
+
+        long version = cache.getVersion();
+        torrents = db.torrentDao().getAllTorrents();
+        cache.putAllLoaded(torrents, version);
+
+        return torrents;
+    }
+
+    /*
+     * Returns the cache for the statistics
+     */
+
+    public TorrentCache getCache()
+    {
+        return cache;
     }
 
     @Override
@@ -101,6 +163,13 @@ public class TorrentRepositoryImpl implements TorrentRepository
         db.fastResumeDao().add(fastResume);
     }
 
+    @Override
+    public void addFastResumeList(@NonNull List<FastResume> fastResumeList)
+    {
+        /* Room inserts the whole list in a single transaction */
+        db.fastResumeDao().addAll(fastResumeList);
+    }
+
     @Override
     public FastResume getFastResumeById(@NonNull String torrentId)
     {
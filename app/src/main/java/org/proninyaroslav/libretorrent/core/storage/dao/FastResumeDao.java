@@ -7,12 +7,17 @@ import androidx.room.Query;
 
 import org.proninyaroslav.libretorrent.core.model.data.entity.FastResume;
 
+import java.util.List;
+
 @Dao
 public interface FastResumeDao
 {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void add(FastResume fastResume);
 
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void addAll(List<FastResume> fastResumeList);
+
     @Query("SELECT * FROM FastResume WHERE torrentId = :torrentId")
     FastResume getByTorrentId(String torrentId);
 }
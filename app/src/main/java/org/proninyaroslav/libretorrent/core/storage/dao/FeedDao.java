@@ -41,6 +41,7 @@ public interface FeedDao
     String QUERY_GET_FEED_BY_ID = "SELECT * FROM FeedChannel WHERE id = :id";
     String QUERY_DELETE_ITEMS_OLDER_THAN = "DELETE FROM FeedItem WHERE fetchDate < :keepDateBorderTime";
     String QUERY_MARK_AS_READ = "UPDATE FeedItem SET read = 1 WHERE id = :itemId";
+    String QUERY_MARK_AS_READ_BY_ID = "UPDATE FeedItem SET read = 1 WHERE id IN (:itemsId)";
     String QUERY_MARK_AS_UNREAD = "UPDATE FeedItem SET read = 0 WHERE id = :itemId";
     String QUERY_MARK_AS_READ_BY_FEED_ID = "UPDATE FeedItem SET read = 1 WHERE feedId IN (:feedId)";
     String QUERY_GET_ITEMS_BY_FEED_ID = "SELECT * FROM FeedItem WHERE feedId = :feedId";
@@ -87,6 +88,9 @@ public interface FeedDao
     @Query(QUERY_MARK_AS_READ)
     void markAsRead(String itemId);
 
+    @Query(QUERY_MARK_AS_READ_BY_ID)
+    void markAsReadById(List<String> itemsId);
+
     @Query(QUERY_MARK_AS_UNREAD)
     void markAsUnread(String itemId);
 
@@ -42,10 +42,10 @@ public interface TorrentDao
     void add(Torrent torrent);
 
     @Update
-    void update(Torrent torrent);
+    int update(Torrent torrent);
 
     @Delete
-    void delete(Torrent torrent);
+    int delete(Torrent torrent);
 
     @Query(QUERY_GET_ALL)
     List<Torrent> getAllTorrents();
@@ -81,6 +81,8 @@ public interface FileSystemFacade
 
     File makeTempFile(@NonNull String postfix);
 
+    File getLogDir();
+
     String getExtension(String fileName);
 
     boolean isValidFatFilename(String name);
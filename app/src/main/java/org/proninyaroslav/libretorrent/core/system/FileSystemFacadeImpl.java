@@ -44,6 +44,7 @@ class FileSystemFacadeImpl implements FileSystemFacade
 
     private static final String EXTENSION_SEPARATOR = ".";
     private static final String TEMP_DIR = "temp";
+    private static final String LOG_DIR = "log";
 
     private Context appContext;
     private FsModuleResolver fsResolver;
@@ -308,6 +309,12 @@ class FileSystemFacadeImpl implements FileSystemFacade
         return new File(getTempDir(), UUID.randomUUID().toString() + postfix);
     }
 
+    @Override
+    public File getLogDir()
+    {
+        return new File(appContext.getCacheDir(), LOG_DIR);
+    }
+
     @Override
     public String getExtension(String fileName)
     {
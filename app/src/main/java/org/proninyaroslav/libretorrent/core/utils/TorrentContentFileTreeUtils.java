@@ -22,8 +22,8 @@ package org.proninyaroslav.libretorrent.core.utils;
 import androidx.core.util.Pair;
 
 import org.proninyaroslav.libretorrent.core.model.data.metainfo.BencodeFileItem;
-import org.proninyaroslav.libretorrent.core.model.filetree.FileNode;
 import org.proninyaroslav.libretorrent.core.model.filetree.FileTree;
+import org.proninyaroslav.libretorrent.core.model.filetree.FlatFileTree;
 import org.proninyaroslav.libretorrent.core.model.filetree.TorrentContentFileTree;
 
 import java.io.File;
@@ -45,9 +45,21 @@ public class TorrentContentFileTreeUtils
 
     public static Pair<TorrentContentFileTree, TorrentContentFileTree[]> buildFileTree(List<BencodeFileItem> files)
     {
-        TorrentContentFileTree root = new TorrentContentFileTree(FileTree.ROOT, 0L, FileNode.Type.DIR);
-        TorrentContentFileTree parentTree = root;
+        FlatFileTree tree = buildFlatFileTree(files);
         TorrentContentFileTree[] leaves = new TorrentContentFileTree[files.size()];
+        for (int i = 0; i < leaves.length; i++) {
+            int node = tree.getFileNode(i);
+            if (node != FlatFileTree.NO_NODE)
+                leaves[i] = new TorrentContentFileTree(tree, node);
+        }
+
+        return Pair.create(new TorrentContentFileTree(tree, FlatFileTree.ROOT_NODE), leaves);
+    }
+
+    public static FlatFileTree buildFlatFileTree(List<BencodeFileItem> files)
+    {
+        FlatFileTree tree = new FlatFileTree(FileTree.ROOT, files.size());
+        int parentNode = FlatFileTree.ROOT_NODE;
         /* It allows reduce the number of iterations on the paths with equal beginnings */
         String prevPath = "";
         List<BencodeFileItem> filesCopy = new ArrayList<>(files);
@@ -82,7 +94,7 @@ public class TorrentContentFileTreeUtils
             } else {
                 /* If beginning paths are not equal, return to root */
                 path = file.getPath();
-                parentTree = root;
+                parentNode = FlatFileTree.ROOT_NODE;
             }
 
             String[] nodes = path.split(File.separator);
@@ -97,31 +109,20 @@ public class TorrentContentFileTreeUtils
 
             /* Iterates path nodes */
             for (int i = 0; i < nodes.length; i++) {
-                if (!parentTree.contains(nodes[i])) {
-                    TorrentContentFileTree leaf = makeObject(file.getIndex(), nodes[i],
-                                                            file.getSize(), parentTree,
-                                                            i == (nodes.length - 1));
-                    leaves[file.getIndex()] = leaf;
-                    /* The last leaf item is a file */
-                    parentTree.addChild(leaf);
-                }
+                boolean isFile = i == (nodes.length - 1);
+                int node = tree.findChild(parentNode, nodes[i]);
+                if (node == FlatFileTree.NO_NODE)
+                    node = (isFile ?
+                            tree.addFile(parentNode, nodes[i], file.getIndex(), file.getSize()) :
+                            tree.addDir(parentNode, nodes[i]));
 
-                TorrentContentFileTree nextParent = parentTree.getChild(nodes[i]);
                 /* Skipping leaf nodes */
-                if (!nextParent.isFile())
-                    parentTree = nextParent;
+                if (!tree.isFile(node))
+                    parentNode = node;
             }
         }
+        tree.trimToSize();
 
-        return Pair.create(root, leaves);
-    }
-
-    private static TorrentContentFileTree makeObject(int index, String name,
-                                              long size, TorrentContentFileTree parent,
-                                              boolean isFile)
-    {
-        return (isFile ?
-                new TorrentContentFileTree(index, name, size, FileNode.Type.FILE, parent) :
-                new TorrentContentFileTree(name, 0L, FileNode.Type.DIR, parent));
+        return tree;
     }
 }
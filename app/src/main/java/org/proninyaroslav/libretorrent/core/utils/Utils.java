@@ -607,7 +607,7 @@ public class Utils
                         errorArray.add(e);
                     }
                 } else {
-                    errorArray.add(new FetchLinkException("Failed to fetch link, response code: " + code));
+                    errorArray.add(new FetchLinkException("Failed to fetch link, response code: " + code, code));
                 }
             }
 
@@ -638,8 +638,13 @@ public class Utils
                 if (msg != null)
                     s.append(msg.concat("\n"));
             }
+            /* Keep the first error, so that the caller can decide whether to retry */
+            Throwable cause = errorArray.get(0);
+            int code = (cause instanceof FetchLinkException ?
+                    ((FetchLinkException)cause).getResponseCode() :
+                    FetchLinkException.NO_RESPONSE_CODE);
 
-            throw new FetchLinkException(s.toString());
+            throw new FetchLinkException(s.toString(), cause, code);
         }
 
         return response[0];
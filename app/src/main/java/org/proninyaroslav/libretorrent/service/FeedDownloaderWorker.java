@@ -28,6 +28,8 @@ import androidx.work.Data;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
+import org.proninyaroslav.libretorrent.core.HostLimiter;
+import org.proninyaroslav.libretorrent.core.PoliteFetcher;
 import org.proninyaroslav.libretorrent.core.RepositoryHelper;
 import org.proninyaroslav.libretorrent.core.exception.DecodeException;
 import org.proninyaroslav.libretorrent.core.exception.FetchLinkException;
@@ -46,6 +48,11 @@ import org.proninyaroslav.libretorrent.core.utils.Utils;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /*
  * The worker for downloading torrents from RSS/Atom items.
@@ -61,6 +68,10 @@ public class FeedDownloaderWorker extends Worker
     public static final String TAG_ITEM_ID_LIST = "item_id_list";
 
     private static final long START_ENGINE_RETRY_TIME = 3000; /* ms */
+    private static final int MAX_PARALLEL_DOWNLOADS = 4;
+    private static final int MAX_DOWNLOADS_PER_HOST = 2;
+    private static final int MAX_FETCH_ATTEMPTS = 3;
+    private static final long FETCH_RETRY_TIME = 1000; /* ms, doubled after each attempt */
 
     private TorrentEngine engine;
     private FeedRepository repo;
@@ -97,16 +108,46 @@ public class FeedDownloaderWorker extends Worker
         if (ids == null)
             return paramsList;
 
-        for (FeedItem item : repo.getItemsById(ids)) {
-            AddTorrentParams params = fetchTorrent(item);
-            if (params != null)
-                paramsList.add(params);
+        List<FeedItem> items = repo.getItemsById(ids);
+        if (items.isEmpty())
+            return paramsList;
+
+        PoliteFetcher fetcher = new PoliteFetcher(new HostLimiter(MAX_DOWNLOADS_PER_HOST),
+                MAX_FETCH_ATTEMPTS, FETCH_RETRY_TIME,
+                (url) -> Utils.fetchHttpUrl(getApplicationContext(), url));
+        ExecutorService exec = Executors.newFixedThreadPool(Math.min(items.size(), MAX_PARALLEL_DOWNLOADS));
+        ArrayList<Future<AddTorrentParams>> futures = new ArrayList<>(items.size());
+        try {
+            /*
+             * Each task decodes its torrent right after fetching it,
+             * so decoding overlaps with the other downloads
+             */
+            for (FeedItem item : items)
+                futures.add(exec.submit(() -> fetchTorrent(item, fetcher)));
+
+            for (Future<AddTorrentParams> future : futures) {
+                try {
+                    AddTorrentParams params = future.get();
+                    if (params != null)
+                        paramsList.add(params);
+
+                } catch (ExecutionException e) {
+                    Log.e(TAG, Log.getStackTraceString(e));
+                }
+            }
+
+        } catch (InterruptedException e) {
+            /* Add the torrents that have already been fetched */
+            Thread.currentThread().interrupt();
+
+        } finally {
+            exec.shutdownNow();
         }
 
         return paramsList;
     }
 
-    private AddTorrentParams fetchTorrent(FeedItem item)
+    private AddTorrentParams fetchTorrent(FeedItem item, PoliteFetcher fetcher) throws InterruptedException
     {
         if (item == null)
             return null;
@@ -137,7 +178,7 @@ public class FeedDownloaderWorker extends Worker
             byte[] response;
             TorrentMetaInfo info;
             try {
-                response = Utils.fetchHttpUrl(getApplicationContext(), item.downloadUrl);
+                response = fetcher.fetch(item.downloadUrl);
                 info = new TorrentMetaInfo(response);
 
             } catch (FetchLinkException e) {
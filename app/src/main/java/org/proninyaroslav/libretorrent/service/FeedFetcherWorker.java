@@ -31,18 +31,22 @@ import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
 import org.proninyaroslav.libretorrent.core.FeedParser;
+import org.proninyaroslav.libretorrent.core.HostLimiter;
 import org.proninyaroslav.libretorrent.core.RepositoryHelper;
+import org.proninyaroslav.libretorrent.core.filter.FeedFilter;
 import org.proninyaroslav.libretorrent.core.model.data.entity.FeedChannel;
 import org.proninyaroslav.libretorrent.core.model.data.entity.FeedItem;
 import org.proninyaroslav.libretorrent.core.settings.SettingsRepository;
 import org.proninyaroslav.libretorrent.core.storage.FeedRepository;
-import org.proninyaroslav.libretorrent.core.utils.Utils;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /*
  * The worker for fetching items from RSS/Atom channels.
@@ -60,7 +64,8 @@ public class FeedFetcherWorker extends Worker
     public static final String TAG_NO_AUTO_DOWNLOAD = "no_download";
     public static final String TAG_CHANNEL_ID = "channel_url_id";
     public static final String TAG_CHANNEL_ID_LIST = "channel_id_list";
-
+    private static final int MAX_PARALLEL_FETCHES = 8;
+    private static final int MAX_FETCHES_PER_HOST = 2;
     private Context context;
     private FeedRepository repo;
     private SettingsRepository pref;
@@ -111,15 +116,11 @@ public class FeedFetcherWorker extends Worker
         if (ids == null)
             return Result.failure();
 
-        ArrayList<Result> results = new ArrayList<>();
+        ArrayList<Long> idList = new ArrayList<>(ids.length);
         for (long id : ids)
-            results.add(fetchChannel(id, acceptMinDate, noAutoDownload));
-
-        for (Result result : results)
-            if (result instanceof Result.Failure)
-                return result;
+            idList.add(id);
 
-        return Result.success();
+        return fetchInParallel(idList, acceptMinDate, noAutoDownload);
     }
 
     private Result fetchChannels(List<FeedChannel> channels, long acceptMinDate,
@@ -128,22 +129,69 @@ public class FeedFetcherWorker extends Worker
         if (channels == null)
             return Result.failure();
 
-        ArrayList<Result> results = new ArrayList<>();
+        ArrayList<Long> idList = new ArrayList<>(channels.size());
         for (FeedChannel channel : channels) {
             if (channel == null)
                 continue;
-            results.add(fetchChannel(channel.id, acceptMinDate, noAutoDownload));
+            idList.add(channel.id);
         }
 
-        for (Result result : results)
-            if (result instanceof Result.Failure)
-                return result;
+        return fetchInParallel(idList, acceptMinDate, noAutoDownload);
+    }
 
-        return Result.success();
+    /*
+     * Fetches channels in a bounded thread pool. Since feeds are often hosted
+     * on the same tracker, requests to the same host are limited separately
+     */
+
+    private Result fetchInParallel(List<Long> ids, long acceptMinDate,
+                                   boolean noAutoDownload)
+    {
+        if (ids.size() == 1)
+            return fetchChannel(ids.get(0), acceptMinDate, noAutoDownload);
+
+        HostLimiter hostLimiter = new HostLimiter(MAX_FETCHES_PER_HOST);
+        ExecutorService exec = Executors.newFixedThreadPool(Math.max(1, Math.min(ids.size(), MAX_PARALLEL_FETCHES)));
+        ArrayList<Future<Result>> futures = new ArrayList<>(ids.size());
+        try {
+            for (long id : ids)
+                futures.add(exec.submit(() -> fetchChannel(id, acceptMinDate,
+                        noAutoDownload, hostLimiter)));
+
+            ArrayList<Result> results = new ArrayList<>(futures.size());
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+
+                } catch (ExecutionException e) {
+                    Log.e(TAG, Log.getStackTraceString(e));
+                    results.add(Result.failure());
+                }
+            }
+
+            for (Result result : results)
+                if (result instanceof Result.Failure)
+                    return result;
+
+            return Result.success();
+
+        } catch (InterruptedException e) {
+            return Result.failure();
+
+        } finally {
+            exec.shutdownNow();
+        }
     }
 
     private Result fetchChannel(long id, long acceptMinDate,
                                 boolean noAutoDownload)
+    {
+        return fetchChannel(id, acceptMinDate, noAutoDownload, null);
+    }
+
+    private Result fetchChannel(long id, long acceptMinDate,
+                                boolean noAutoDownload,
+                                HostLimiter hostLimiter)
     {
         if (id == -1)
             return Result.failure();
@@ -152,9 +200,32 @@ public class FeedFetcherWorker extends Worker
         if (channel == null)
             return Result.failure();
 
+        if (hostLimiter == null)
+            return doFetchChannel(channel, acceptMinDate, noAutoDownload);
+
+        try {
+            hostLimiter.acquire(channel.url);
+
+        } catch (InterruptedException e) {
+            return Result.failure();
+        }
+        try {
+            return doFetchChannel(channel, acceptMinDate, noAutoDownload);
+
+        } finally {
+            hostLimiter.release(channel.url);
+        }
+    }
+
+    private Result doFetchChannel(FeedChannel channel, long acceptMinDate,
+                                  boolean noAutoDownload)
+    {
+        /* Also filtering the items that we already have in db */
+        Set<String> existingItemsId = repo.getItemsIdByFeedId(channel.id);
         FeedParser parser;
         try {
-            parser = new FeedParser(getApplicationContext(), channel);
+            parser = new FeedParser(getApplicationContext(), channel,
+                    existingItemsId, acceptMinDate);
 
         } catch (Exception e) {
             channel.fetchError = e.getMessage();
@@ -163,55 +234,57 @@ public class FeedFetcherWorker extends Worker
             return Result.failure();
         }
 
-        List<FeedItem> items = parser.getItems();
+        channel.fetchError = null;
+        channel.lastUpdate = System.currentTimeMillis();
+        /* The channel hasn't changed since the last fetch, nothing to parse */
+        if (parser.isNotModified()) {
+            repo.updateFeed(channel);
+
+            return Result.success();
+        }
 
-        filterItems(id, items, acceptMinDate);
+        /* Known and old items are already skipped by the parser */
+        List<FeedItem> items = parser.getItems();
 
         if (pref.feedRemoveDuplicates())
-            filterItemDuplicates(items);
+            items = filterItemDuplicates(items);
 
-        repo.addItems(items);
+        List<String> downloadItemsId = Collections.emptyList();
+        if (!noAutoDownload && channel.autoDownload)
+            downloadItemsId = selectItemsToDownload(channel, items);
+        /* Items sent for download are marked as read in the same transaction */
+        repo.addItems(items, downloadItemsId);
 
-        channel.fetchError = null;
         if (TextUtils.isEmpty(channel.name)) {
             channel.name = parser.getTitle();
             if (TextUtils.isEmpty(channel.name))
                 channel.name = channel.url;
         }
-        channel.lastUpdate = System.currentTimeMillis();
+        channel.etag = parser.getETag();
+        channel.lastModified = parser.getLastModified();
         repo.updateFeed(channel);
 
-        if (!noAutoDownload && channel.autoDownload)
-            sendFetchedItems(channel, items);
+        if (!downloadItemsId.isEmpty())
+            sendFetchedItems(downloadItemsId);
 
         return Result.success();
     }
 
-    private void filterItems(long id, List<FeedItem> items, long acceptMinDate)
-    {
-        List<String> existingItemsId = repo.getItemsIdByFeedId(id);
-        Iterator<FeedItem> it = items.iterator();
-        while (it.hasNext()) {
-            FeedItem item = it.next();
-            /* Also filtering the items that we already have in db */
-            if (item != null && (item.pubDate > 0 && item.pubDate <= acceptMinDate || existingItemsId.contains(item.id)))
-                it.remove();
-        }
-    }
-
-    private void filterItemDuplicates(List<FeedItem> items)
+    private List<FeedItem> filterItemDuplicates(List<FeedItem> items)
     {
-        List<String> titles = new ArrayList<>();
+        List<String> titles = new ArrayList<>(items.size());
         for (FeedItem item : items)
             titles.add(item.title);
 
-        List<String> existingTitles = repo.findItemsExistingTitles(titles);
-        Iterator<FeedItem> it = items.iterator();
-        while (it.hasNext()) {
-            FeedItem item = it.next();
+        Set<String> existingTitles = repo.findItemsExistingTitles(titles);
+        List<FeedItem> filtered = new ArrayList<>(items.size());
+        for (FeedItem item : items) {
             if (item != null && existingTitles.contains(item.title))
-                it.remove();
+                continue;
+            filtered.add(item);
         }
+
+        return filtered;
     }
 
     private void deleteOldItems(long keepDateBorderTime)
@@ -220,22 +293,23 @@ public class FeedFetcherWorker extends Worker
             repo.deleteItemsOlderThan(keepDateBorderTime);
     }
 
-    private void sendFetchedItems(FeedChannel channel, List<FeedItem> items)
+    private List<String> selectItemsToDownload(FeedChannel channel, List<FeedItem> items)
     {
         ArrayList<String> ids = new ArrayList<>();
+        FeedFilter filter = getFilter(channel);
         for (FeedItem item : items) {
             if (item == null || item.read)
                 continue;
 
-            if (isMatch(item, channel.filter, channel.isRegexFilter)) {
+            if (filter.matches(item.title))
                 ids.add(item.id);
-                repo.markAsRead(item.id);
-            }
         }
 
-        if (ids.isEmpty())
-            return;
+        return ids;
+    }
 
+    private void sendFetchedItems(List<String> ids)
+    {
         Data data = new Data.Builder()
                 .putString(FeedDownloaderWorker.TAG_ACTION, FeedDownloaderWorker.ACTION_DOWNLOAD_TORRENT_LIST)
                 .putStringArray(FeedDownloaderWorker.TAG_ITEM_ID_LIST, ids.toArray(new String[0]))
@@ -247,35 +321,12 @@ public class FeedFetcherWorker extends Worker
         WorkManager.getInstance(context).enqueue(work);
     }
 
-    private boolean isMatch(FeedItem item, String filters, boolean isRegex)
+    private FeedFilter getFilter(FeedChannel channel)
     {
-        if (filters == null || TextUtils.isEmpty(filters))
-            return true;
-
-        for (String filter : filters.split(Utils.NEWLINE_PATTERN)) {
-            if (TextUtils.isEmpty(filter))
-                continue;
-
-            if (isRegex) {
-                Pattern pattern;
-                try {
-                    pattern = Pattern.compile(filter);
-
-                } catch (PatternSyntaxException e) {
-                    /* TODO: maybe there is an option better? */
-                    Log.e(TAG, "Invalid pattern: " + filter);
-                    return true;
-                }
-
-                return pattern.matcher(item.title).matches();
-            } else {
-                String[] words = filter.split(repo.getFilterSeparator());
-                for (String word : words)
-                    if (item.title.toLowerCase().contains(word.toLowerCase().trim()))
-                        return true;
-            }
-        }
+        FeedFilter filter = repo.getFeedFilter(channel);
+        if (filter.getInvalidPattern() != null)
+            Log.e(TAG, "Invalid pattern: " + filter.getInvalidPattern());
 
-        return false;
+        return filter;
     }
 }
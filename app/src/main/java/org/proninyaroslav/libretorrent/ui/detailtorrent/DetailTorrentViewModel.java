@@ -44,8 +44,8 @@ import org.proninyaroslav.libretorrent.core.model.data.TrackerInfo;
 import org.proninyaroslav.libretorrent.core.model.data.entity.Torrent;
 import org.proninyaroslav.libretorrent.core.model.data.metainfo.BencodeFileItem;
 import org.proninyaroslav.libretorrent.core.model.data.metainfo.TorrentMetaInfo;
-import org.proninyaroslav.libretorrent.core.model.filetree.FileNode;
 import org.proninyaroslav.libretorrent.core.model.filetree.FilePriority;
+import org.proninyaroslav.libretorrent.core.model.filetree.FlatFileTree;
 import org.proninyaroslav.libretorrent.core.model.filetree.TorrentContentFileTree;
 import org.proninyaroslav.libretorrent.core.model.stream.TorrentStreamServer;
 import org.proninyaroslav.libretorrent.core.settings.SettingsRepository;
@@ -59,6 +59,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -91,6 +92,8 @@ public class DetailTorrentViewModel extends AndroidViewModel
     public TorrentContentFileTree fileTree;
     private TorrentContentFileTree[] treeLeaves;
     private BehaviorSubject<List<TorrentContentFileTree>> children = BehaviorSubject.create();
+    /* Children of the current directory changed by the last files update */
+    private PublishSubject<List<TorrentContentFileTree>> changedChildren = PublishSubject.create();
     /* Current directory */
     private TorrentContentFileTree curDir;
 
@@ -146,6 +149,11 @@ public class DetailTorrentViewModel extends AndroidViewModel
         return children;
     }
 
+    public io.reactivex.Observable<List<TorrentContentFileTree>> observeChangedDirChildren()
+    {
+        return changedChildren;
+    }
+
     public Flowable<TorrentInfo> observeTorrentInfo()
     {
         return infoProvider.observeInfo(torrentId);
@@ -228,9 +236,8 @@ public class DetailTorrentViewModel extends AndroidViewModel
             return children;
 
         /* Adding parent dir for navigation */
-        if (curDir != fileTree && curDir.getParent() != null)
-            children.add(0, new TorrentContentFileTree(TorrentContentFileTree.PARENT_DIR, 0L,
-                    FileNode.Type.DIR, curDir.getParent()));
+        if (!curDir.equals(fileTree) && curDir.getParent() != null)
+            children.add(0, TorrentContentFileTree.makeParentDir());
 
         children.addAll(curDir.getChildren());
 
@@ -582,28 +589,33 @@ public class DetailTorrentViewModel extends AndroidViewModel
 
     private void updateFiles(long[] receivedBytes, double[] availability)
     {
-        disposable.add(Completable.fromRunnable(() -> {
+        disposable.add(Single.fromCallable(() -> {
+            BitSet changed = new BitSet();
             if (fileTree == null)
-                return;
+                return changed;
 
-            if (receivedBytes != null) {
-                for (int i = 0; i < receivedBytes.length; i++) {
-                    TorrentContentFileTree file = treeLeaves[i];
-                    if (file != null)
-                        file.setReceivedBytes(receivedBytes[i]);
-                }
-            }
-            if (availability != null) {
-                for (int i = 0; i < availability.length; i++) {
-                    TorrentContentFileTree file = treeLeaves[i];
-                    if (file != null)
-                        file.setAvailability(availability[i]);
-                }
-            }
+            /* Unchanged files are skipped, changed ones are propagated up to the root */
+            FlatFileTree tree = fileTree.getTree();
+            if (receivedBytes != null)
+                tree.setReceivedBytes(receivedBytes, changed);
+            if (availability != null)
+                tree.setAvailability(availability, changed);
+
+            return changed;
         })
         .subscribeOn(Schedulers.computation())
         .observeOn(AndroidSchedulers.mainThread())
-        .subscribe(this::updateChildren));
+        .subscribe(this::publishChangedChildren));
+    }
+
+    private void publishChangedChildren(BitSet changed)
+    {
+        if (curDir == null || changed.isEmpty())
+            return;
+
+        List<TorrentContentFileTree> changedChildren = curDir.getChildren(changed);
+        if (!changedChildren.isEmpty())
+            this.changedChildren.onNext(changedChildren);
     }
 
     private void updateCurDir(TorrentContentFileTree node)
@@ -166,6 +166,9 @@ public class DetailTorrentFilesFragment extends Fragment
                     adapter.submitList(children);
                     updateFileSize();
                 }));
+
+        disposables.add(viewModel.observeChangedDirChildren()
+                .subscribe(adapter::updateItems));
     }
 
     private void subscribeAlertDialog()
@@ -34,11 +34,14 @@ public class TorrentContentFileItem extends FileItem
     public FilePriority priority;
     public long receivedBytes;
     public double availability;
+    /* Source node, isn't parcelled */
+    private TorrentContentFileTree node;
 
     public TorrentContentFileItem(@NonNull TorrentContentFileTree tree)
     {
         super(tree.getIndex(), tree.getName(), tree.isFile(), tree.size());
 
+        node = tree;
         priority = tree.getFilePriority();
         receivedBytes = tree.getReceivedBytes();
         availability = tree.getAvailability();
@@ -85,6 +88,36 @@ public class TorrentContentFileItem extends FileItem
                 }
             };
 
+    public TorrentContentFileTree getNode()
+    {
+        return node;
+    }
+
+    /*
+     * Re-reads the state from the source node.
+     * Returns true if something has changed
+     */
+
+    public boolean update()
+    {
+        if (node == null)
+            return false;
+
+        FilePriority newPriority = node.getFilePriority();
+        long newReceivedBytes = node.getReceivedBytes();
+        double newAvailability = node.getAvailability();
+        if (priority.equals(newPriority) &&
+                receivedBytes == newReceivedBytes &&
+                availability == newAvailability)
+            return false;
+
+        priority = newPriority;
+        receivedBytes = newReceivedBytes;
+        availability = newAvailability;
+
+        return true;
+    }
+
     public boolean equalsContent(@Nullable Object o)
     {
         if (!equals(o))
@@ -47,6 +47,7 @@ import org.proninyaroslav.libretorrent.databinding.ItemTorrentContentFileBinding
 import org.proninyaroslav.libretorrent.ui.Selectable;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 
@@ -56,8 +57,12 @@ public class TorrentContentFilesAdapter extends ListAdapter<TorrentContentFileIt
     @SuppressWarnings("unused")
     private static final String TAG = TorrentContentFilesAdapter.class.getSimpleName();
 
+    /* Rebind only the download status of the item */
+    private static final Object PAYLOAD_STATUS = new Object();
+
     private ClickListener listener;
     private SelectionTracker<TorrentContentFileItem> selectionTracker;
+    private HashMap<TorrentContentFileTree, Integer> positions = new HashMap<>();
 
     public TorrentContentFilesAdapter(ClickListener listener)
     {
@@ -94,6 +99,46 @@ public class TorrentContentFilesAdapter extends ListAdapter<TorrentContentFileIt
         holder.bind(item, listener);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position,
+                                 @NonNull List<Object> payloads)
+    {
+        if (payloads.isEmpty() || !payloads.contains(PAYLOAD_STATUS))
+            super.onBindViewHolder(holder, position, payloads);
+        else
+            holder.bindStatus(getItem(position));
+    }
+
+    @Override
+    public void onCurrentListChanged(@NonNull List<TorrentContentFileItem> previousList,
+                                     @NonNull List<TorrentContentFileItem> currentList)
+    {
+        positions.clear();
+        for (int i = 0; i < currentList.size(); i++) {
+            TorrentContentFileItem item = currentList.get(i);
+            if (item.getNode() == null)
+                continue;
+            positions.put(item.getNode(), i);
+            /* The list might have been built before the last update */
+            if (item.update())
+                notifyItemChanged(i, PAYLOAD_STATUS);
+        }
+    }
+
+    /*
+     * Updates the items of the changed nodes in place. RecyclerView rebinds
+     * only the visible ones, other rows pick up the new state when they are bound
+     */
+
+    public void updateItems(@NonNull List<TorrentContentFileTree> changedNodes)
+    {
+        for (TorrentContentFileTree node : changedNodes) {
+            Integer position = positions.get(node);
+            if (position != null && getItem(position).update())
+                notifyItemChanged(position, PAYLOAD_STATUS);
+        }
+    }
+
     @Override
     public TorrentContentFileItem getItemKey(int position)
     {
@@ -205,43 +250,50 @@ public class TorrentContentFilesAdapter extends ListAdapter<TorrentContentFileIt
                 binding.status.setVisibility(View.VISIBLE);
                 binding.progress.setVisibility(View.VISIBLE);
 
-                long totalBytes = item.size;
-                long receivedBytes = item.receivedBytes;
-                int progress = (receivedBytes == totalBytes ? 100 : (int)((receivedBytes * 100.0f) / totalBytes));
-
-                String total = Formatter.formatFileSize(context, item.size);
-                String received = Formatter.formatFileSize(context, receivedBytes);
-
-                String priority = "";
-                switch (item.priority.getType()) {
-                    case NORMAL:
-                        priority = context.getString(R.string.file_priority_normal);
-                        break;
-                    case IGNORE:
-                        priority = context.getString(R.string.file_priority_low);
-                        break;
-                    case MIXED:
-                        priority = context.getString(R.string.file_priority_mixed);
-                        break;
-                    case HIGH:
-                        priority = context.getString(R.string.file_priority_high);
-                        break;
-                }
-                double avail = item.availability;
-                String availability;
-                if (avail < 0)
-                    availability = context.getString(R.string.not_available);
-                else
-                    availability =  String.format(Locale.getDefault(), "%.1f%%", (avail >= 1 ? 100 : avail * 100));
-
-                binding.priority.setChecked(item.priority.getType() != FilePriority.Type.IGNORE);
-                binding.progress.setProgress(progress);
-
-                binding.status.setText(context.getString(R.string.file_downloading_status_template, priority,
-                        received, total, progress, availability));
+                bindStatus(item);
             }
         }
 
+        void bindStatus(TorrentContentFileItem item)
+        {
+            Context context = itemView.getContext();
+
+            long totalBytes = item.size;
+            long receivedBytes = item.receivedBytes;
+            int progress = (receivedBytes == totalBytes ? 100 : (int)((receivedBytes * 100.0f) / totalBytes));
+
+            String total = Formatter.formatFileSize(context, item.size);
+            String received = Formatter.formatFileSize(context, receivedBytes);
+
+            String priority = "";
+            switch (item.priority.getType()) {
+                case NORMAL:
+                    priority = context.getString(R.string.file_priority_normal);
+                    break;
+                case IGNORE:
+                    priority = context.getString(R.string.file_priority_low);
+                    break;
+                case MIXED:
+                    priority = context.getString(R.string.file_priority_mixed);
+                    break;
+                case HIGH:
+                    priority = context.getString(R.string.file_priority_high);
+                    break;
+            }
+            double avail = item.availability;
+            String availability;
+            if (avail < 0)
+                availability = context.getString(R.string.not_available);
+            else
+                availability =  String.format(Locale.getDefault(), "%.1f%%", (avail >= 1 ? 100 : avail * 100));
+
+            binding.priority.setChecked(item.priority.getType() != FilePriority.Type.IGNORE);
+            binding.progress.setProgress(progress);
+
+            binding.status.setText(context.getString(R.string.file_downloading_status_template, priority,
+                    received, total, progress, availability));
+        }
+
         private void setSelected(boolean isSelected)
         {
             this.isSelected = isSelected;
@@ -68,7 +68,6 @@ import org.proninyaroslav.libretorrent.ui.filemanager.FileManagerDialog;
 
 import java.util.Collections;
 
-import io.reactivex.Flowable;
 import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.CompositeDisposable;
@@ -281,15 +280,8 @@ public class MainFragment extends Fragment
 
     private Disposable observeTorrents()
     {
-        return viewModel.observeAllTorrentsInfo()
+        return viewModel.observeTorrentListItems()
                 .subscribeOn(Schedulers.io())
-                .flatMapSingle((infoList) ->
-                        Flowable.fromIterable(infoList)
-                                .filter(viewModel.getFilter())
-                                .map(TorrentListItem::new)
-                                .sorted(viewModel.getSorting())
-                                .toList()
-                )
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(adapter::submitList,
                         (Throwable t) -> {
@@ -331,15 +323,8 @@ public class MainFragment extends Fragment
 
     private Disposable getAllTorrentsSingle()
     {
-        return viewModel.getAllTorrentsInfoSingle()
+        return viewModel.getTorrentListItemsSingle()
                 .subscribeOn(Schedulers.io())
-                .flatMap((infoList) ->
-                        Observable.fromIterable(infoList)
-                                .filter(viewModel.getFilter())
-                                .map(TorrentListItem::new)
-                                .sorted(viewModel.getSorting())
-                                .toList()
-                )
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(adapter::submitList,
                         (Throwable t) -> {
@@ -31,9 +31,14 @@ import org.proninyaroslav.libretorrent.core.filter.TorrentFilterCollection;
 import org.proninyaroslav.libretorrent.core.model.TorrentEngine;
 import org.proninyaroslav.libretorrent.core.model.TorrentInfoProvider;
 import org.proninyaroslav.libretorrent.core.model.data.TorrentInfo;
+import org.proninyaroslav.libretorrent.core.model.data.TorrentInfoChanges;
 import org.proninyaroslav.libretorrent.core.sorting.TorrentSorting;
 import org.proninyaroslav.libretorrent.core.sorting.TorrentSortingComparator;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import io.reactivex.Flowable;
@@ -50,6 +55,11 @@ public class MainViewModel extends AndroidViewModel
     private TorrentFilter statusFilter = TorrentFilterCollection.all();
     private TorrentFilter dateAddedFilter = TorrentFilterCollection.all();
     private PublishSubject<Boolean> forceSortAndFilter = PublishSubject.create();
+    /* All torrents and torrents that match the filter, by torrent id */
+    private LinkedHashMap<String, TorrentListItem> listItems = new LinkedHashMap<>();
+    private LinkedHashMap<String, TorrentListItem> filteredListItems = new LinkedHashMap<>();
+    /* The last sorted list */
+    private List<TorrentListItem> sortedListItems = new ArrayList<>();
 
     private String searchQuery;
     private TorrentFilter searchFilter = (state) -> {
@@ -69,14 +79,95 @@ public class MainViewModel extends AndroidViewModel
         engine = TorrentEngine.getInstance(application);
     }
 
-    public Flowable<List<TorrentInfo>> observeAllTorrentsInfo()
+    /*
+     * Returns filtered and sorted list on every change of the torrents
+     */
+
+    public Flowable<List<TorrentListItem>> observeTorrentListItems()
+    {
+        return stateProvider.observeInfoChanges()
+                .map(this::applyChanges);
+    }
+
+    /*
+     * Returns list, filtered and sorted by the current filter and sorting,
+     * without requesting info of torrents
+     */
+
+    public Single<List<TorrentListItem>> getTorrentListItemsSingle()
+    {
+        return Single.fromCallable(this::refilterListItems);
+    }
+
+    /*
+     * Only changed torrents are wrapped and filtered
+     */
+
+    private synchronized List<TorrentListItem> applyChanges(TorrentInfoChanges changes) throws Exception
+    {
+        if (changes.initial) {
+            listItems.clear();
+            filteredListItems.clear();
+        }
+        for (String id : changes.removed) {
+            listItems.remove(id);
+            filteredListItems.remove(id);
+        }
+        TorrentFilter filter = getFilter();
+        for (TorrentInfo info : changes.added)
+            putListItem(new TorrentListItem(info), filter);
+        for (TorrentInfo info : changes.updated)
+            putListItem(new TorrentListItem(info), filter);
+
+        return makeSortedList();
+    }
+
+    private void putListItem(TorrentListItem item, TorrentFilter filter) throws Exception
     {
-        return stateProvider.observeInfoList();
+        listItems.put(item.torrentId, item);
+        if (filter.test(item))
+            filteredListItems.put(item.torrentId, item);
+        else
+            filteredListItems.remove(item.torrentId);
     }
 
-    public Single<List<TorrentInfo>> getAllTorrentsInfoSingle()
+    private synchronized List<TorrentListItem> refilterListItems() throws Exception
+    {
+        TorrentFilter filter = getFilter();
+        filteredListItems.clear();
+        for (TorrentListItem item : listItems.values()) {
+            if (filter.test(item))
+                filteredListItems.put(item.torrentId, item);
+        }
+
+        return makeSortedList();
+    }
+
+    /*
+     * The new list starts in the order of the previous sorted list, with new items
+     * at the end. So only the changed items are out of place and the sort
+     * (TimSort, which merges already sorted runs) is close to linear
+     */
+
+    private List<TorrentListItem> makeSortedList()
     {
-        return stateProvider.getInfoListSingle();
+        ArrayList<TorrentListItem> list = new ArrayList<>(filteredListItems.size());
+        HashSet<String> inList = new HashSet<>();
+        for (TorrentListItem prevItem : sortedListItems) {
+            TorrentListItem item = filteredListItems.get(prevItem.torrentId);
+            if (item != null) {
+                list.add(item);
+                inList.add(item.torrentId);
+            }
+        }
+        for (TorrentListItem item : filteredListItems.values()) {
+            if (!inList.contains(item.torrentId))
+                list.add(item);
+        }
+        Collections.sort(list, sorting);
+        sortedListItems = list;
+
+        return list;
     }
 
     public Flowable<String> observeTorrentsDeleted()
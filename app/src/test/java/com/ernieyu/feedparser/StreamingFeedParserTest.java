@@ -0,0 +1,113 @@
+package com.ernieyu.feedparser;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for the streaming mode of FeedParser.
+ */
+public class StreamingFeedParserTest {
+
+    private static final String RSS =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<rss version=\"2.0\"><channel>" +
+            "<title>RSS Example</title>" +
+            "<link>https://example.org</link>" +
+            "<item><title>Item 1</title><link>https://example.org/1</link></item>" +
+            "<item><title>Item 2</title><link>https://example.org/2</link></item>" +
+            "<item><title>Item 3</title><link>https://example.org/3</link></item>" +
+            "</channel></rss>";
+
+    private static final String ATOM =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<feed xmlns=\"http://www.w3.org/2005/Atom\">" +
+            "<title>Atom Example</title>" +
+            "<entry><title>Entry 1</title><link href=\"https://example.org/1\"/></entry>" +
+            "<entry><title>Entry 2</title><link href=\"https://example.org/2\"/></entry>" +
+            "</feed>";
+
+    @Test
+    public void testRss() throws FeedException {
+        List<String> titles = new ArrayList<String>();
+
+        Feed feed = FeedParserFactory.newParser().parse(toStream(RSS), item -> {
+            titles.add(item.getTitle());
+            return true;
+        });
+
+        assertEquals(FeedType.RSS_2_0, feed.getType());
+        assertEquals("RSS Example", feed.getTitle());
+        assertEquals("https://example.org", feed.getLink());
+        assertEquals(3, titles.size());
+        assertEquals("Item 1", titles.get(0));
+        assertEquals("Item 3", titles.get(2));
+        // Items aren't kept in the feed.
+        assertTrue(feed.getItemList().isEmpty());
+    }
+
+    @Test
+    public void testAtom() throws FeedException {
+        List<Item> items = new ArrayList<Item>();
+
+        Feed feed = FeedParserFactory.newParser().parse(toStream(ATOM), item -> {
+            items.add(item);
+            return true;
+        });
+
+        assertEquals(FeedType.ATOM_1_0, feed.getType());
+        assertEquals("Atom Example", feed.getTitle());
+        assertEquals(2, items.size());
+        assertEquals("Entry 2", items.get(1).getTitle());
+        assertEquals("https://example.org/2", items.get(1).getLinks().get(0));
+    }
+
+    @Test
+    public void testStop() throws FeedException {
+        List<String> titles = new ArrayList<String>();
+        // The rest of the document is never read, so it doesn't matter if it's broken.
+        String rss = RSS.substring(0, RSS.indexOf("<item><title>Item 3")) + "<item><broken";
+
+        Feed feed = FeedParserFactory.newParser().parse(toStream(rss), item -> {
+            titles.add(item.getTitle());
+            return titles.size() < 2;
+        });
+
+        assertEquals("RSS Example", feed.getTitle());
+        assertEquals(2, titles.size());
+        assertEquals("Item 2", titles.get(1));
+    }
+
+    @Test
+    public void testTitleBeforeFirstItem() throws FeedException {
+        Feed rssFeed = FeedParserFactory.newParser().parse(toStream(RSS), item -> false);
+        assertEquals("RSS Example", rssFeed.getTitle());
+
+        Feed atomFeed = FeedParserFactory.newParser().parse(toStream(ATOM), item -> false);
+        assertEquals("Atom Example", atomFeed.getTitle());
+    }
+
+    @Test
+    public void testNonStreaming() throws FeedException {
+        Feed feed = FeedParserFactory.newParser().parse(toStream(RSS));
+
+        assertEquals("RSS Example", feed.getTitle());
+        assertEquals(3, feed.getItemList().size());
+        assertEquals("Item 2", feed.getItemList().get(1).getTitle());
+    }
+
+    @Test(expected = FeedException.class)
+    public void testInvalidFeed() throws FeedException {
+        FeedParserFactory.newParser().parse(toStream("<html><body/></html>"), item -> true);
+    }
+
+    private static InputStream toStream(String s) {
+        return new ByteArrayInputStream(s.getBytes(Charset.forName("UTF-8")));
+    }
+}
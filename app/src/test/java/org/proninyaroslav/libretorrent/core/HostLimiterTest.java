@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class HostLimiterTest
+{
+    @Test
+    public void testGetHost()
+    {
+        assertEquals("example.org", HostLimiter.getHost("https://Example.org/rss?x=1"));
+        assertEquals("example.org", HostLimiter.getHost("http://example.org:8080/feed"));
+        assertEquals("", HostLimiter.getHost("not a url"));
+    }
+
+    @Test
+    public void testLimitPerHost() throws InterruptedException
+    {
+        HostLimiter limiter = new HostLimiter(2);
+        limiter.acquire("http://foo.com/1");
+        limiter.acquire("http://foo.com/2");
+        /* Other hosts aren't affected */
+        limiter.acquire("http://bar.com/1");
+
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread t = new Thread(() -> {
+            started.countDown();
+            try {
+                limiter.acquire("http://foo.com/3");
+                acquired.set(true);
+
+            } catch (InterruptedException e) {
+                /* Ignore */
+            }
+        });
+        t.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertFalse(acquired.get());
+
+        limiter.release("http://foo.com/1");
+        t.join(5000);
+        assertTrue(acquired.get());
+    }
+}
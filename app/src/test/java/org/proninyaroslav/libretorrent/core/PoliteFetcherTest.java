@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core;
+
+import org.junit.Test;
+import org.proninyaroslav.libretorrent.core.exception.FetchLinkException;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PoliteFetcherTest
+{
+    private static final String URL = "http://example.org/1.torrent";
+    private static final byte[] DATA = new byte[]{1, 2, 3};
+
+    @Test
+    public void testIsTransient()
+    {
+        assertTrue(PoliteFetcher.isTransient(httpError(500)));
+        assertTrue(PoliteFetcher.isTransient(httpError(503)));
+        assertTrue(PoliteFetcher.isTransient(httpError(429)));
+        assertFalse(PoliteFetcher.isTransient(httpError(404)));
+        assertFalse(PoliteFetcher.isTransient(httpError(403)));
+
+        assertTrue(PoliteFetcher.isTransient(new FetchLinkException("",
+                new IOException(), FetchLinkException.NO_RESPONSE_CODE)));
+        assertFalse(PoliteFetcher.isTransient(new FetchLinkException(new MalformedURLException())));
+        assertFalse(PoliteFetcher.isTransient(new FetchLinkException("No network connection")));
+        assertFalse(PoliteFetcher.isTransient(new FetchLinkException("Too many redirects")));
+    }
+
+    @Test
+    public void testRetryWithBackoff() throws Exception
+    {
+        AtomicInteger attempts = new AtomicInteger();
+        ArrayList<Long> delays = new ArrayList<>();
+        PoliteFetcher fetcher = new PoliteFetcher(new HostLimiter(1), 3, 1000,
+                (url) -> {
+                    if (attempts.incrementAndGet() < 3)
+                        throw httpError(503);
+                    return DATA;
+                },
+                delays::add);
+
+        assertArrayEquals(DATA, fetcher.fetch(URL));
+        assertEquals(3, attempts.get());
+        assertEquals(Arrays.asList(1000L, 2000L), delays);
+    }
+
+    @Test
+    public void testGiveUpAfterMaxAttempts()
+    {
+        AtomicInteger attempts = new AtomicInteger();
+        ArrayList<Long> delays = new ArrayList<>();
+        PoliteFetcher fetcher = new PoliteFetcher(new HostLimiter(1), 3, 1000,
+                (url) -> {
+                    attempts.incrementAndGet();
+                    throw httpError(500);
+                },
+                delays::add);
+
+        try {
+            fetcher.fetch(URL);
+            fail("Expected FetchLinkException");
+
+        } catch (FetchLinkException e) {
+            assertEquals(500, e.getResponseCode());
+
+        } catch (InterruptedException e) {
+            fail(e.getMessage());
+        }
+        assertEquals(3, attempts.get());
+        assertEquals(Arrays.asList(1000L, 2000L), delays);
+    }
+
+    @Test
+    public void testNoRetryForPermanentErrors()
+    {
+        AtomicInteger attempts = new AtomicInteger();
+        ArrayList<Long> delays = new ArrayList<>();
+        PoliteFetcher fetcher = new PoliteFetcher(new HostLimiter(1), 3, 1000,
+                (url) -> {
+                    attempts.incrementAndGet();
+                    throw httpError(404);
+                },
+                delays::add);
+
+        try {
+            fetcher.fetch(URL);
+            fail("Expected FetchLinkException");
+
+        } catch (FetchLinkException e) {
+            assertEquals(404, e.getResponseCode());
+
+        } catch (InterruptedException e) {
+            fail(e.getMessage());
+        }
+        assertEquals(1, attempts.get());
+        assertEquals(Collections.emptyList(), delays);
+    }
+
+    @Test(timeout = 5000)
+    public void testHostLimitReleased() throws Exception
+    {
+        HostLimiter limiter = new HostLimiter(1);
+        AtomicInteger attempts = new AtomicInteger();
+        PoliteFetcher fetcher = new PoliteFetcher(limiter, 2, 1000,
+                (url) -> {
+                    if (attempts.incrementAndGet() == 1)
+                        throw httpError(503);
+                    throw httpError(404);
+                },
+                (millis) -> {
+                    /* The host isn't held while waiting, otherwise it blocks */
+                    limiter.acquire(URL);
+                    limiter.release(URL);
+                });
+
+        try {
+            fetcher.fetch(URL);
+            fail("Expected FetchLinkException");
+
+        } catch (FetchLinkException e) {
+            /* Expected */
+        }
+        assertEquals(2, attempts.get());
+
+        /* Released after the failure too */
+        limiter.acquire(URL);
+        limiter.release(URL);
+    }
+
+    private static FetchLinkException httpError(int code)
+    {
+        return new FetchLinkException("Failed to fetch link, response code: " + code, code);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FixedLongRingBufferTest
+{
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityZero()
+    {
+        new FixedLongRingBuffer(0);
+    }
+
+    @Test
+    public void testAdd()
+    {
+        FixedLongRingBuffer buffer = new FixedLongRingBuffer(5);
+        assertTrue(buffer.isEmpty());
+
+        for (long i = 0; i < 100; i++)
+            buffer.add(i);
+        assertEquals(5, buffer.size());
+        assertTrue(buffer.isFull());
+        assertArrayEquals(new long[]{95, 96, 97, 98, 99}, buffer.toArray());
+        assertEquals(99, buffer.getLast());
+        assertEquals(99, buffer.max());
+
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testAddAll()
+    {
+        FixedLongRingBuffer buffer = new FixedLongRingBuffer(5);
+        buffer.add(10);
+        buffer.add(20);
+
+        buffer.addAll(new long[]{1, 2, 3, 4}, 0, 4);
+        assertArrayEquals(new long[]{20, 1, 2, 3, 4}, buffer.toArray());
+
+        buffer.addAll(new long[]{1, 2, 3, 4, 5, 6, 7}, 0, 7);
+        assertArrayEquals(new long[]{3, 4, 5, 6, 7}, buffer.toArray());
+        assertArrayEquals(new long[]{4, 5}, buffer.copyTo(new long[2], 1, 2));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGet_outOfBounds()
+    {
+        FixedLongRingBuffer buffer = new FixedLongRingBuffer(5);
+        buffer.add(1);
+
+        buffer.get(1);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/*
+ * Rough throughput comparison of ring buffer implementations,
+ * LegacyFixedRingBuffer is the implementation before the rework.
+ * Skipped by default, run with `./gradlew testDebugUnitTest -Pbenchmark
+ * --tests '*FixedRingBufferBenchmark'`
+ */
+
+public class FixedRingBufferBenchmark
+{
+    private static final int[] CAPACITIES = new int[]{10_000, 100_000, 1_000_000};
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    /* Prevents the JIT from eliminating the measured code */
+    private long blackhole;
+
+    @Before
+    public void checkEnabled()
+    {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void benchmarkAdd()
+    {
+        for (int capacity : CAPACITIES) {
+            Integer[] values = boxedValues(capacity * 2);
+
+            measure("LegacyFixedRingBuffer.add", capacity, values.length, () -> {
+                LegacyFixedRingBuffer<Integer> buf = new LegacyFixedRingBuffer<>(capacity);
+                for (Integer v : values)
+                    buf.add(v);
+                blackhole += buf.size();
+            });
+            measure("FixedRingBuffer.add", capacity, values.length, () -> {
+                FixedRingBuffer<Integer> buf = new FixedRingBuffer<>(capacity);
+                for (Integer v : values)
+                    buf.add(v);
+                blackhole += buf.size();
+            });
+            measure("FixedRingBuffer.addAll", capacity, values.length, () -> {
+                FixedRingBuffer<Integer> buf = new FixedRingBuffer<>(capacity);
+                buf.addAll(values, 0, capacity);
+                buf.addAll(values, capacity, capacity);
+                blackhole += buf.size();
+            });
+            measure("FixedLongRingBuffer.add", capacity, values.length, () -> {
+                FixedLongRingBuffer buf = new FixedLongRingBuffer(capacity);
+                for (int i = 0; i < values.length; i++)
+                    buf.add(i);
+                blackhole += buf.size();
+            });
+        }
+    }
+
+    @Test
+    public void benchmarkRead()
+    {
+        for (int capacity : CAPACITIES) {
+            FixedRingBuffer<Integer> buf = new FixedRingBuffer<>(capacity);
+            LegacyFixedRingBuffer<Integer> legacyBuf = new LegacyFixedRingBuffer<>(capacity);
+            FixedLongRingBuffer longBuf = new FixedLongRingBuffer(capacity);
+            Integer[] values = boxedValues(capacity + capacity / 2);
+            for (Integer v : values) {
+                buf.add(v);
+                legacyBuf.add(v);
+                longBuf.add(v);
+            }
+            Integer[] dest = new Integer[capacity];
+            long[] longDest = new long[capacity];
+
+            measure("LegacyFixedRingBuffer.iterator", capacity, capacity, () -> {
+                for (Integer v : legacyBuf)
+                    blackhole += v;
+            });
+            measure("LegacyFixedRingBuffer.get", capacity, capacity, () -> {
+                for (int i = 0; i < legacyBuf.size(); i++)
+                    blackhole += legacyBuf.get(i);
+            });
+            measure("LegacyFixedRingBuffer.indexOf", capacity, capacity, () ->
+                    blackhole += legacyBuf.indexOf(values[values.length - 1]));
+            measure("FixedRingBuffer.iterator", capacity, capacity, () -> {
+                for (Integer v : buf)
+                    blackhole += v;
+            });
+            measure("FixedRingBuffer.get", capacity, capacity, () -> {
+                for (int i = 0; i < buf.size(); i++)
+                    blackhole += buf.get(i);
+            });
+            measure("FixedRingBuffer.copyTo", capacity, capacity, () -> {
+                buf.copyTo(dest, 0, capacity);
+                blackhole += dest[capacity - 1];
+            });
+            measure("FixedRingBuffer.indexOf", capacity, capacity, () ->
+                    blackhole += buf.indexOf(values[values.length - 1]));
+            measure("FixedLongRingBuffer.copyTo", capacity, capacity, () -> {
+                longBuf.copyTo(longDest, 0, capacity);
+                blackhole += longDest[capacity - 1];
+            });
+        }
+    }
+
+    @Test
+    public void benchmarkRemoveAt()
+    {
+        for (int capacity : CAPACITIES) {
+            Integer[] values = boxedValues(capacity + capacity / 2);
+            int removals = 100;
+            FixedRingBuffer<Integer> buf = new FixedRingBuffer<>(capacity);
+            LegacyFixedRingBuffer<Integer> legacyBuf = new LegacyFixedRingBuffer<>(capacity);
+
+            measure("LegacyFixedRingBuffer.removeAt", capacity, removals,
+                    () -> {
+                        legacyBuf.clear();
+                        for (Integer v : values)
+                            legacyBuf.add(v);
+                    },
+                    () -> {
+                        for (int i = 0; i < removals; i++)
+                            blackhole += legacyBuf.removeAt(legacyBuf.size() * i / removals);
+                    });
+            measure("FixedRingBuffer.removeAt", capacity, removals,
+                    () -> {
+                        buf.clear();
+                        buf.addAll(values, 0, values.length);
+                    },
+                    () -> {
+                        for (int i = 0; i < removals; i++)
+                            blackhole += buf.removeAt(buf.size() * i / removals);
+                    });
+        }
+
+        assertNotEquals(0, blackhole);
+    }
+
+    private void measure(String name, int capacity, int opsPerRound, Runnable r)
+    {
+        measure(name, capacity, opsPerRound, null, r);
+    }
+
+    /*
+     * `setup` runs before every round and isn't measured
+     */
+
+    private void measure(String name, int capacity, int opsPerRound,
+                         Runnable setup, Runnable r)
+    {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            if (setup != null)
+                setup.run();
+            r.run();
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            if (setup != null)
+                setup.run();
+            long start = System.nanoTime();
+            r.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.println(String.format(Locale.US, "%-32s capacity=%-8d %8.2f ns/op",
+                name, capacity, (double)best / opsPerRound));
+    }
+
+    private static Integer[] boxedValues(int n)
+    {
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; i++)
+            values[i] = i;
+
+        return values;
+    }
+}
@@ -29,6 +29,9 @@ package org.proninyaroslav.libretorrent.core.collections;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -287,4 +290,94 @@ public class FixedRingBufferTest
         assertTrue(buffer.isEmpty());
         assertFalse(buffer.isFull());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAddAll()
+    {
+        FixedRingBuffer<Integer> buffer = new FixedRingBuffer<>(2, 10);
+        buffer.add(-1);
+
+        Integer[] src = new Integer[]{0, 1, 2, 3, 4, 5, 6};
+        buffer.addAll(src, 1, 5);
+        assertEquals(6, buffer.size());
+        assertEquals(8, buffer.getAllocatedSize());
+        Integer[] expected = new Integer[]{-1, 1, 2, 3, 4, 5};
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], buffer.get(i));
+
+        /* Wrap around */
+        buffer.addAll(Arrays.asList(src));
+        assertEquals(10, buffer.size());
+        expected = new Integer[]{3, 4, 5, 0, 1, 2, 3, 4, 5, 6};
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], buffer.get(i));
+
+        /* More than capacity */
+        Integer[] big = new Integer[25];
+        for (int i = 0; i < big.length; i++)
+            big[i] = i;
+        buffer.addAll(big, 0, big.length);
+        assertTrue(buffer.isFull());
+        for (int i = 0; i < 10; i++)
+            assertEquals(Integer.valueOf(15 + i), buffer.get(i));
+    }
+
+    @Test
+    public void testCopyTo()
+    {
+        FixedRingBuffer<Integer> buffer = new FixedRingBuffer<>(5);
+        for (int i = 0; i < 8; i++)
+            buffer.add(i);
+
+        Integer[] dest = buffer.copyTo(new Integer[5], 0, 5);
+        assertArrayEquals(new Integer[]{3, 4, 5, 6, 7}, dest);
+
+        dest = buffer.copyTo(new Integer[3], 1, 3);
+        assertArrayEquals(new Integer[]{4, 5, 6}, dest);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testCopyTo_outOfBounds()
+    {
+        FixedRingBuffer<Integer> buffer = new FixedRingBuffer<>(5);
+        buffer.add(1);
+
+        buffer.copyTo(new Integer[5], 0, 2);
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testIterator_failFast()
+    {
+        FixedRingBuffer<Integer> buffer = new FixedRingBuffer<>(10);
+        for (int i = 0; i < 5; i++)
+            buffer.add(i);
+
+        for (Integer i : buffer)
+            buffer.add(i);
+    }
+
+    @Test
+    public void testRemoveAt_wrapped()
+    {
+        Random random = new Random(42);
+        FixedRingBuffer<Integer> buffer = new FixedRingBuffer<>(1, 16);
+        ArrayList<Integer> expected = new ArrayList<>();
+
+        for (int i = 0; i < 2000; i++) {
+            if (expected.isEmpty() || random.nextInt(3) != 0) {
+                buffer.add(i);
+                expected.add(i);
+                if (expected.size() > 16)
+                    expected.remove(0);
+
+            } else {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.remove(index), buffer.removeAt(index));
+            }
+
+            assertEquals(expected.size(), buffer.size());
+            for (int j = 0; j < expected.size(); j++)
+                assertEquals(expected.get(j), buffer.get(j));
+        }
+    }
+}
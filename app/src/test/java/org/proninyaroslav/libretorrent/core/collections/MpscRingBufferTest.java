@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.collections;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MpscRingBufferTest
+{
+    @Test
+    public void testOfferAndGet()
+    {
+        MpscRingBuffer<Integer> buf = new MpscRingBuffer<>(3);
+        assertEquals(4, buf.capacity());
+        assertEquals(0, buf.getPublishedSequence());
+        assertNull(buf.get(0));
+
+        for (int i = 0; i < 3; i++)
+            assertEquals(i, buf.offer(i));
+
+        assertEquals(3, buf.getPublishedSequence());
+        assertEquals(Integer.valueOf(0), buf.get(0));
+        assertEquals(Integer.valueOf(2), buf.get(2));
+        assertNull(buf.get(3));
+    }
+
+    @Test
+    public void testOverwrite()
+    {
+        MpscRingBuffer<Integer> buf = new MpscRingBuffer<>(4);
+
+        for (int i = 0; i < 10; i++)
+            buf.offer(i);
+
+        assertEquals(10, buf.getPublishedSequence());
+        for (int i = 0; i < 6; i++)
+            assertNull(buf.get(i));
+        for (int i = 6; i < 10; i++)
+            assertEquals(Integer.valueOf(i), buf.get(i));
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException
+    {
+        int numThreads = 4;
+        int perThread = 10_000;
+        MpscRingBuffer<Integer> buf = new MpscRingBuffer<>(numThreads * perThread);
+        CountDownLatch latch = new CountDownLatch(numThreads);
+
+        for (int t = 0; t < numThreads; t++) {
+            int base = t * perThread;
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++)
+                    buf.offer(base + i);
+                latch.countDown();
+            }).start();
+        }
+
+        /* Reader sees only published elements while producers are running */
+        long seq = 0;
+        while (latch.getCount() > 0) {
+            long limit = buf.getPublishedSequence();
+            for (; seq < limit; seq++)
+                assertNotNull(buf.get(seq));
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        assertEquals(numThreads * perThread, buf.getPublishedSequence());
+        HashSet<Integer> values = new HashSet<>();
+        for (long i = 0; i < numThreads * perThread; i++)
+            values.add(buf.get(i));
+        assertEquals(numThreads * perThread, values.size());
+    }
+}
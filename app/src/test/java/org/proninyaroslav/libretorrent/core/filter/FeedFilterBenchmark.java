@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.filter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/*
+ * Compares the compiled feed filter with parsing the filter text for every item.
+ * Skipped by default, run with `./gradlew testDebugUnitTest -Pbenchmark
+ * --tests '*FeedFilterBenchmark'`
+ */
+
+public class FeedFilterBenchmark
+{
+    private static final String SEPARATOR = "\\|";
+    private static final String NEWLINE_PATTERN = "\\r\\n|\\r|\\n";
+    private static final int[] RULES = new int[]{1, 10, 50};
+    private static final int NUM_TITLES = 5_000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    /* Prevents the JIT from eliminating the measured code */
+    private long blackhole;
+
+    @Before
+    public void checkEnabled()
+    {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void benchmarkKeywords()
+    {
+        Random random = new Random(1);
+        String[] titles = makeTitles(random);
+
+        for (int rules : RULES) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < rules; i++) {
+                /* Three words per line */
+                sb.append(randomWord(random)).append(" | ")
+                        .append(randomWord(random)).append(" | ")
+                        .append(randomWord(random)).append('\n');
+            }
+            String source = sb.toString();
+
+            measure("uncompiled keywords", rules, () -> {
+                for (String title : titles)
+                    blackhole += (uncompiledMatch(title, source, false) ? 1 : 0);
+            });
+            measure("FeedFilter keywords", rules, () -> {
+                FeedFilter filter = new FeedFilter(source, false, SEPARATOR);
+                for (String title : titles)
+                    blackhole += (filter.matches(title) ? 1 : 0);
+            });
+        }
+    }
+
+    @Test
+    public void benchmarkRegex()
+    {
+        Random random = new Random(1);
+        String[] titles = makeTitles(random);
+        String source = ".*" + randomWord(random) + ".*S\\d+E\\d+.*";
+
+        measure("uncompiled regex", 1, () -> {
+            for (String title : titles)
+                blackhole += (uncompiledMatch(title, source, true) ? 1 : 0);
+        });
+        measure("FeedFilter regex", 1, () -> {
+            FeedFilter filter = new FeedFilter(source, true, SEPARATOR);
+            for (String title : titles)
+                blackhole += (filter.matches(title) ? 1 : 0);
+        });
+
+        assertNotEquals(-1, blackhole);
+    }
+
+    /*
+     * Matching as it was done before the filter was compiled
+     */
+
+    private static boolean uncompiledMatch(String title, String filters, boolean isRegex)
+    {
+        for (String filter : filters.split(NEWLINE_PATTERN)) {
+            if (filter.isEmpty())
+                continue;
+
+            if (isRegex) {
+                return Pattern.compile(filter).matcher(title).matches();
+            } else {
+                String[] words = filter.split(SEPARATOR);
+                for (String word : words)
+                    if (title.toLowerCase().contains(word.toLowerCase().trim()))
+                        return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void measure(String name, int rules, Runnable r)
+    {
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            r.run();
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            r.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.println(String.format(Locale.US, "%-20s rules=%-4d %10.2f ns/title",
+                name, rules, (double)best / NUM_TITLES));
+    }
+
+    private static String[] makeTitles(Random random)
+    {
+        String[] titles = new String[NUM_TITLES];
+        for (int i = 0; i < NUM_TITLES; i++) {
+            titles[i] = String.format(Locale.US, "%s %s S%02dE%02d 1080p WEB-DL %s",
+                    randomWord(random), randomWord(random),
+                    random.nextInt(20), random.nextInt(30), randomWord(random));
+        }
+
+        return titles;
+    }
+
+    private static String randomWord(Random random)
+    {
+        int length = 4 + random.nextInt(6);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            sb.append((char)('a' + random.nextInt(26)));
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.filter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FeedFilterTest
+{
+    private static final String SEPARATOR = "\\|";
+
+    @Test
+    public void keywordTest()
+    {
+        FeedFilter filter = new FeedFilter("Ubuntu | debian\nArch", false, SEPARATOR);
+
+        assertTrue(filter.matches("ubuntu-20.04-desktop-amd64.iso"));
+        assertTrue(filter.matches("Debian 10"));
+        assertTrue(filter.matches("ARCHLINUX"));
+        assertFalse(filter.matches("Fedora 33"));
+
+        assertTrue(new FeedFilter(null, false, SEPARATOR).matches("foo"));
+        assertTrue(new FeedFilter("", true, SEPARATOR).matches("foo"));
+        /* An empty word matches everything */
+        assertTrue(new FeedFilter("foo| ", false, SEPARATOR).matches("bar"));
+        assertFalse(new FeedFilter("\n\n", false, SEPARATOR).matches("bar"));
+    }
+
+    @Test
+    public void regexTest()
+    {
+        FeedFilter filter = new FeedFilter("\n.*S01E\\d+.*\nfoo", true, SEPARATOR);
+
+        assertTrue(filter.matches("Show S01E02 720p"));
+        assertFalse(filter.matches("Show S02E02 720p"));
+        /* Only the first line is used */
+        assertFalse(filter.matches("foo"));
+
+        FeedFilter invalid = new FeedFilter("[a-", true, SEPARATOR);
+        assertEquals("[a-", invalid.getInvalidPattern());
+        assertTrue(invalid.matches("foo"));
+    }
+
+    @Test
+    public void isSameTest()
+    {
+        FeedFilter filter = new FeedFilter("foo", false, SEPARATOR);
+
+        assertTrue(filter.isSame("foo", false, SEPARATOR));
+        assertFalse(filter.isSame("foo", true, SEPARATOR));
+        assertFalse(filter.isSame("bar", false, SEPARATOR));
+        assertFalse(filter.isSame(null, false, SEPARATOR));
+        assertTrue(new FeedFilter(null, false, SEPARATOR).isSame(null, false, SEPARATOR));
+    }
+
+    @Test
+    public void keywordMatcherTest()
+    {
+        KeywordMatcher matcher = new KeywordMatcher(Arrays.asList("he", "she", "his", "hers"));
+
+        assertTrue(matcher.containsAny("ushers"));
+        assertTrue(matcher.containsAny("ahishe"));
+        assertTrue(matcher.containsAny("sh his"));
+        assertFalse(matcher.containsAny("shi"));
+        assertFalse(matcher.containsAny(""));
+        assertFalse(new KeywordMatcher(Collections.emptyList()).containsAny("foo"));
+        assertTrue(new KeywordMatcher(Collections.singletonList("")).containsAny("foo"));
+    }
+
+    @Test
+    public void keywordMatcherRandomTest()
+    {
+        Random random = new Random(1);
+
+        for (int round = 0; round < 500; round++) {
+            ArrayList<String> keywords = new ArrayList<>();
+            int n = 1 + random.nextInt(10);
+            for (int i = 0; i < n; i++)
+                keywords.add(randomString(random, 1 + random.nextInt(4)));
+            KeywordMatcher matcher = new KeywordMatcher(keywords);
+
+            for (int i = 0; i < 20; i++) {
+                String text = randomString(random, random.nextInt(30));
+                boolean expected = false;
+                for (String keyword : keywords)
+                    expected |= text.contains(keyword);
+                assertEquals(keywords + " in " + text, expected, matcher.containsAny(text));
+            }
+        }
+    }
+
+    private static String randomString(Random random, int length)
+    {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            sb.append((char)('a' + random.nextInt(3)));
+
+        return sb.toString();
+    }
+}
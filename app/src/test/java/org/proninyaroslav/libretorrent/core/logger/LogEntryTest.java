@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.logger;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LogEntryTest
+{
+    @Test
+    public void testLazyMsg()
+    {
+        LogEntry entry = new LogEntry(0, "TEST", "message", 1, "A", "B");
+
+        assertEquals("[A] [B] message", entry.getMsg());
+        assertSame(entry.getMsg(), entry.getMsg());
+        assertEquals("[TEST] [A] [B] message", entry.toString());
+        assertEquals(new LogEntry(0, "TEST", "[A] [B] message", 1), entry);
+        assertEquals(new LogEntry(0, "TEST", "[A] [B] message", 1).hashCode(), entry.hashCode());
+    }
+
+    @Test
+    public void testHasTag()
+    {
+        LogEntry entry = new LogEntry(0, "TEST", "message", 1);
+
+        assertTrue(entry.hasTag("TEST"));
+        assertTrue(entry.hasTag(new String("TEST")));
+        assertFalse(entry.hasTag("TEST2"));
+    }
+
+    @Test
+    public void testInternTag()
+    {
+        int id = LogEntry.internTag("TEST");
+
+        assertEquals(id, LogEntry.internTag(new String("TEST")));
+        assertNotEquals(id, LogEntry.internTag("TEST2"));
+        assertEquals("TEST", LogEntry.getTagName(id));
+
+        LogEntry entry = new LogEntry(0, id, "message", 1);
+        assertEquals(id, entry.getTagId());
+        assertEquals("TEST", entry.getTag());
+        assertEquals(new LogEntry(0, "TEST", "message", 1), entry);
+    }
+
+    @Test
+    public void testTimeStampConcurrent() throws InterruptedException
+    {
+        LogEntry entry = new LogEntry(0, "TEST", "message", 0);
+        String expected = entry.getTimeStampAsString();
+        AtomicInteger mismatches = new AtomicInteger();
+        int numThreads = 4;
+        CountDownLatch latch = new CountDownLatch(numThreads);
+
+        for (int i = 0; i < numThreads; i++) {
+            new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    if (!expected.equals(entry.getTimeStampAsString()))
+                        mismatches.incrementAndGet();
+                }
+                latch.countDown();
+            }).start();
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(0, mismatches.get());
+        assertTrue(entry.toStringWithTimeStamp().startsWith(expected + " [TEST] "));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class LogJournalTest
+{
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        dir = Files.createTempDirectory("journal").toFile();
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files)
+                f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testAppendAndGet()
+    {
+        LogJournal journal = new LogJournal(dir, 1024, 4, Integer.MAX_VALUE);
+
+        assertEquals(0, journal.append(new LogEntry(1, "TAG1", "first", 10)));
+        assertEquals(1, journal.append(new LogEntry(2, "TAG2", "second é", 20, "A")));
+        assertEquals(0, journal.getFirstIndex());
+        assertEquals(2, journal.getEndIndex());
+
+        assertEquals(new LogEntry(1, "TAG1", "first", 10), journal.get(0));
+        assertEquals(new LogEntry(2, "TAG2", "[A] second é", 20), journal.get(1));
+        assertNull(journal.get(2));
+
+        journal.close();
+    }
+
+    @Test
+    public void testRotation()
+    {
+        /* 18 bytes header + 2 bytes message = 20 bytes per record, 5 records per segment */
+        LogJournal journal = new LogJournal(dir, 100, 3, Integer.MAX_VALUE);
+
+        for (int i = 0; i < 40; i++)
+            journal.append(new LogEntry(i, "TEST", String.format("%02d", i), i));
+
+        assertEquals(3, journal.getSegmentCount());
+        assertEquals(3, dir.listFiles().length);
+        assertEquals(25, journal.getFirstIndex());
+        assertEquals(40, journal.getEndIndex());
+        assertNull(journal.get(24));
+        for (int i = 25; i < 40; i++)
+            assertEquals(i, journal.get(i).getId());
+
+        journal.close();
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void testMaxEntries()
+    {
+        /* 5 records per segment */
+        LogJournal journal = new LogJournal(dir, 100, 10, 7);
+
+        for (int i = 0; i < 40; i++)
+            journal.append(new LogEntry(i, "TEST", String.format("%02d", i), i));
+
+        assertEquals(33, journal.getFirstIndex());
+        assertEquals(40, journal.getEndIndex());
+        assertNull(journal.get(32));
+        for (int i = 33; i < 40; i++)
+            assertEquals(i, journal.get(i).getId());
+        /* Segments with only evicted entries are deleted */
+        assertEquals(2, journal.getSegmentCount());
+        assertEquals(2, dir.listFiles().length);
+
+        journal.setMaxEntries(3);
+        assertEquals(37, journal.getFirstIndex());
+        assertEquals(1, journal.getSegmentCount());
+
+        journal.close();
+    }
+
+    @Test
+    public void testTruncateLongMessage()
+    {
+        LogJournal journal = new LogJournal(dir, 30, 2, Integer.MAX_VALUE);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            sb.append('x');
+
+        long index = journal.append(new LogEntry(1, "TEST", sb.toString(), 1));
+
+        assertEquals(12, journal.get(index).getMsg().length());
+        journal.close();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.logger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LogViewTest
+{
+    private static final String[] TAGS = new String[]{"A", "B", "C", "D"};
+
+    @Test
+    public void testTagMask()
+    {
+        MemoryLogStore store = new MemoryLogStore(10_000);
+        LogView view = new LogView();
+
+        for (int i = 0; i < 3000; i++) {
+            String tag = TAGS[i % TAGS.length];
+            view.add(store.append(new LogEntry(i, tag, "", i)), LogEntry.internTag(tag));
+        }
+        assertEquals(3000, view.size(store));
+
+        assertTrue(view.setTagHidden("B", true));
+        assertFalse(view.setTagHidden("B", true));
+        assertTrue(view.setTagHidden("D", true));
+        assertEquals(1500, view.size(store));
+        assertEquals(0, view.getIndex(store, 0));
+        assertEquals(2, view.getIndex(store, 1));
+        assertEquals(2996, view.getIndex(store, 1498));
+        assertEquals(1, view.positionOf(store, 1));
+        assertEquals(1, view.positionOf(store, 2));
+        assertEquals(2, view.positionOf(store, 3));
+
+        assertTrue(view.setTagHidden("B", false));
+        assertEquals(2250, view.size(store));
+        assertEquals(1, view.getIndex(store, 1));
+    }
+
+    @Test
+    public void testMaxTags()
+    {
+        MemoryLogStore store = new MemoryLogStore(10_000);
+        LogView view = new LogView();
+
+        for (int i = 0; i < LogView.MAX_TAGS; i++) {
+            String tag = "tag" + i;
+            view.add(store.append(new LogEntry(i, tag, "", i)), LogEntry.internTag(tag));
+        }
+        /* The last tag still has its own id */
+        assertTrue(view.setTagHidden("tag" + (LogView.MAX_TAGS - 1), true));
+        assertEquals(LogView.MAX_TAGS - 1, view.size(store));
+        assertTrue(view.setTagHidden("tag" + (LogView.MAX_TAGS - 1), false));
+
+        String extraTag = "tag" + LogView.MAX_TAGS;
+        view.add(store.append(new LogEntry(LogView.MAX_TAGS, extraTag, "", 0)),
+                LogEntry.internTag(extraTag));
+        /* Shares the id with the previous tag */
+        assertFalse(view.setTagHidden(extraTag, true));
+        assertFalse(view.setTagHidden("tag" + (LogView.MAX_TAGS - 1), true));
+        assertTrue(view.setTagHidden("tag0", true));
+        assertEquals(LogView.MAX_TAGS, view.size(store));
+    }
+
+    @Test
+    public void testRandomWithEviction()
+    {
+        Random random = new Random(1);
+        MemoryLogStore store = new MemoryLogStore(5000);
+        LogView view = new LogView();
+        HashSet<String> hidden = new HashSet<>();
+
+        for (int round = 0; round < 20; round++) {
+            int n = random.nextInt(2000);
+            for (int i = 0; i < n; i++) {
+                String tag = TAGS[random.nextInt(TAGS.length)];
+                view.add(store.append(new LogEntry(i, tag, "", i)), LogEntry.internTag(tag));
+            }
+
+            String tag = TAGS[random.nextInt(TAGS.length)];
+            boolean hide = random.nextBoolean();
+            view.setTagHidden(tag, hide);
+            if (hide)
+                hidden.add(tag);
+            else
+                hidden.remove(tag);
+
+            ArrayList<Long> expected = new ArrayList<>();
+            for (long i = store.getFirstIndex(); i < store.getEndIndex(); i++) {
+                if (!hidden.contains(store.get(i).getTag()))
+                    expected.add(i);
+            }
+
+            assertEquals(expected.size(), view.size(store));
+            for (int pos = 0; pos < expected.size(); pos += 1 + random.nextInt(50)) {
+                long index = expected.get(pos);
+                assertEquals(index, view.getIndex(store, pos));
+                assertEquals(pos, view.positionOf(store, index));
+            }
+        }
+    }
+
+    @Test
+    public void testPredicateIndex()
+    {
+        MemoryLogStore store = new MemoryLogStore(10);
+        LogView view = new LogView();
+        view.resetPredicateIndex(true);
+
+        for (int i = 0; i < 20; i++) {
+            long index = store.append(new LogEntry(i, "A", "", i));
+            view.add(index, LogEntry.internTag("A"));
+            if (i % 2 == 0)
+                view.addMatched(index);
+        }
+
+        assertEquals(5, view.size(store));
+        assertEquals(10, view.getIndex(store, 0));
+        assertEquals(1, view.positionOf(store, 11));
+    }
+}
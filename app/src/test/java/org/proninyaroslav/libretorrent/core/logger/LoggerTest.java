@@ -22,6 +22,8 @@ package org.proninyaroslav.libretorrent.core.logger;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -319,4 +321,115 @@ public class LoggerTest
         assertEquals(5, logger.write(os));
         assertEquals(expected, os.toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPausedSnapshot()
+    {
+        Logger logger = new Logger(10);
+
+        for (int i = 0; i < 5; i++)
+            logger.send(new LogEntry(i, "TEST", "" + i, i));
+        assertEquals(5, logger.getNumEntries());
+
+        logger.pause();
+        for (int i = 5; i < 8; i++)
+            logger.send(new LogEntry(i, "TEST", "" + i, i));
+        assertEquals(5, logger.getNumEntries());
+        assertEquals(5, logger.getEntries(0, 10).size());
+
+        logger.resume();
+        assertEquals(8, logger.getNumEntries());
+        assertEquals(7, logger.getEntry(7).getId());
+    }
+
+    @Test
+    public void testConcurrentSend() throws InterruptedException
+    {
+        Logger logger = new Logger(1000);
+        int numThreads = 4;
+        CountDownLatch c = new CountDownLatch(numThreads);
+
+        for (int t = 0; t < numThreads; t++) {
+            int base = t * 250;
+            new Thread(() -> {
+                for (int i = 0; i < 250; i++)
+                    logger.send(new LogEntry(base + i, "TEST", "" + i, i));
+                c.countDown();
+            }).start();
+        }
+
+        assertTrue(c.await(10, TimeUnit.SECONDS));
+        assertEquals(1000, logger.getNumEntries());
+        for (LogEntry entry : logger.getEntries(0, 1000))
+            assertNotNull(entry);
+    }
+
+    @Test
+    public void testJournal() throws Exception
+    {
+        File dir = Files.createTempDirectory("journal").toFile();
+        Logger logger = new Logger(50);
+        logger.openJournal(dir);
+        assertTrue(logger.isJournalOpen());
+
+        /* Only the last `maxStoredLogs` entries are kept */
+        for (int i = 0; i < 100; i++) {
+            logger.send(new LogEntry(i, "TEST", "" + i, i));
+            if (i % 5 == 0)
+                logger.getNumEntries();
+        }
+        assertEquals(50, logger.getNumEntries());
+        assertEquals(55, logger.getEntry(5).getId());
+
+        List<LogEntry> entries = logger.getEntries(40, 20);
+        assertEquals(10, entries.size());
+        assertEquals(99, entries.get(9).getId());
+
+        logger.addFilter(new Logger.NewFilter("filter", (entry) -> entry.getId() % 10 == 0));
+        assertEquals(5, logger.getNumEntries());
+        assertEquals(90, logger.getEntry(4).getId());
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertEquals(5, logger.write(os));
+        assertTrue(os.toString().endsWith("[TEST] 90\n"));
+
+        logger.removeFilter("filter");
+        logger.setMaxStoredLogs(20);
+        assertTrue(logger.isJournalOpen());
+        for (int i = 0; i < 30; i++)
+            logger.send(new LogEntry(i, "TEST", "" + i, i));
+        assertEquals(20, logger.getNumEntries());
+        assertEquals(10, logger.getEntry(0).getId());
+
+        logger.closeJournal();
+        assertFalse(logger.isJournalOpen());
+        assertEquals(0, logger.getNumEntries());
+        assertEquals(0, dir.listFiles().length);
+        dir.delete();
+    }
+
+    @Test
+    public void testTagFilter()
+    {
+        Logger logger = new Logger(100);
+
+        for (int i = 0; i < 20; i++)
+            logger.send(new LogEntry(i, (i % 2 == 0 ? "EVEN" : "ODD"), "" + i, i));
+
+        logger.addFilter(Logger.NewFilter.hideTag("hideOdd", "ODD"));
+        assertEquals(10, logger.getNumEntries());
+        assertEquals(18, logger.getEntry(9).getId());
+
+        /* Combined with a predicate filter */
+        logger.addFilter(new Logger.NewFilter("filter", (entry) -> entry.getId() >= 10));
+        assertEquals(5, logger.getNumEntries());
+        assertEquals(10, logger.getEntry(0).getId());
+
+        logger.removeFilter("hideOdd");
+        assertEquals(10, logger.getNumEntries());
+        assertEquals(11, logger.getEntry(1).getId());
+
+        logger.removeFilter("filter");
+        assertEquals(20, logger.getNumEntries());
+    }
+}
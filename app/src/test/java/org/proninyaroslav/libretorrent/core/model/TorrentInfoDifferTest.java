@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model;
+
+import org.junit.Test;
+import org.proninyaroslav.libretorrent.core.model.data.Priority;
+import org.proninyaroslav.libretorrent.core.model.data.TorrentInfo;
+import org.proninyaroslav.libretorrent.core.model.data.TorrentInfoChanges;
+import org.proninyaroslav.libretorrent.core.model.data.TorrentStateCode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TorrentInfoDifferTest
+{
+    private static TorrentInfo makeInfo(String id, int progress)
+    {
+        return new TorrentInfo(id, "torrent " + id, TorrentStateCode.DOWNLOADING,
+                progress, 0, 0, 100, 0, 0, -1, 0, 0, 0, null, false, new Priority[0]);
+    }
+
+    @Test
+    public void testReset()
+    {
+        TorrentInfoDiffer differ = new TorrentInfoDiffer();
+        List<TorrentInfo> infoList = Arrays.asList(makeInfo("1", 0), makeInfo("2", 0));
+
+        TorrentInfoChanges changes = differ.reset(infoList);
+        assertTrue(changes.initial);
+        assertFalse(changes.isEmpty());
+        assertEquals(infoList, changes.added);
+        assertTrue(changes.updated.isEmpty());
+        assertTrue(changes.removed.isEmpty());
+        assertEquals(2, differ.size());
+    }
+
+    @Test
+    public void testUpdate()
+    {
+        TorrentInfoDiffer differ = new TorrentInfoDiffer();
+        differ.reset(Arrays.asList(makeInfo("1", 0), makeInfo("2", 0), makeInfo("3", 0)));
+
+        TorrentInfo updated = makeInfo("2", 50);
+        TorrentInfo added = makeInfo("4", 0);
+        TorrentInfoChanges changes = differ.update(
+                Arrays.asList(makeInfo("1", 0), updated, added),
+                Collections.singletonList("3"));
+
+        assertFalse(changes.initial);
+        assertEquals(Collections.singletonList(added), changes.added);
+        assertEquals(Collections.singletonList(updated), changes.updated);
+        assertEquals(Collections.singletonList("3"), changes.removed);
+        assertEquals(3, differ.size());
+    }
+
+    @Test
+    public void testNoChanges()
+    {
+        TorrentInfoDiffer differ = new TorrentInfoDiffer();
+        differ.reset(Arrays.asList(makeInfo("1", 10), makeInfo("2", 20)));
+
+        TorrentInfoChanges changes = differ.update(
+                Collections.singletonList(makeInfo("1", 10)),
+                Collections.singletonList("unknown"));
+        assertTrue(changes.isEmpty());
+        assertEquals(2, differ.size());
+    }
+
+    @Test
+    public void testErrorChange()
+    {
+        TorrentInfoDiffer differ = new TorrentInfoDiffer();
+        differ.reset(Collections.singletonList(makeInfo("1", 0)));
+
+        TorrentInfo info = new TorrentInfo("1", "torrent 1", 0, "error");
+        TorrentInfoChanges changes = differ.update(Collections.singletonList(info),
+                new ArrayList<>());
+        assertEquals(Collections.singletonList(info), changes.updated);
+    }
+}
@@ -28,6 +28,8 @@ import org.proninyaroslav.libretorrent.core.model.data.metainfo.BencodeFileItem;
 import org.proninyaroslav.libretorrent.core.utils.TorrentContentFileTreeUtils;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -371,4 +373,94 @@ public class TorrentContentFileTreeTest
         assertEquals(0.4, child[2].getParent().getAvailability(), 0.001);
         assertEquals(0.3, tree.getAvailability(), 0.001);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void updateAggregatesTest()
+    {
+        Pair<TorrentContentFileTree, TorrentContentFileTree[]> res = TorrentContentFileTreeUtils.buildFileTree(files);
+        TorrentContentFileTree tree = res.first;
+        TorrentContentFileTree[] child = res.second;
+
+        tree.setPriority(new FilePriority(FilePriority.Type.NORMAL), true);
+        child[3].setReceivedBytes(3);
+        child[3].setAvailability(1);
+        child[4].setReceivedBytes(2);
+        assertEquals(3, child[3].getParent().getReceivedBytes());
+        assertEquals(5, tree.getReceivedBytes());
+        assertEquals(0.3, tree.getAvailability(), 0.001);
+
+        /* Updates replace the previous value */
+        child[3].setReceivedBytes(1);
+        child[3].setAvailability(0.5);
+        assertEquals(1, child[3].getParent().getReceivedBytes());
+        assertEquals(3, tree.getReceivedBytes());
+        assertEquals(0.15, tree.getAvailability(), 0.001);
+
+        /* Ignored files don't affect availability */
+        child[3].setPriority(new FilePriority(FilePriority.Type.IGNORE), true);
+        assertEquals(7, tree.nonIgnoreFileSize());
+        assertEquals(0, tree.getAvailability(), 0.001);
+        assertEquals(3, tree.getReceivedBytes());
+        child[3].setPriority(new FilePriority(FilePriority.Type.HIGH), true);
+        assertEquals(10, tree.nonIgnoreFileSize());
+        assertEquals(0.15, tree.getAvailability(), 0.001);
+    }
+
+    @Test
+    public void largeDirTest()
+    {
+        ArrayList<BencodeFileItem> files = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            files.add(new BencodeFileItem("foo/file" + i + ".txt", i, i));
+
+        Pair<TorrentContentFileTree, TorrentContentFileTree[]> res = TorrentContentFileTreeUtils.buildFileTree(files);
+        TorrentContentFileTree tree = res.first;
+        TorrentContentFileTree[] child = res.second;
+        TorrentContentFileTree foo = tree.getChild("foo");
+        assertNotNull(foo);
+        assertEquals(1000, foo.getChildrenCount());
+        assertEquals(999 * 1000 / 2, foo.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(child[i], foo.getChild("file" + i + ".txt"));
+            assertEquals(foo, child[i].getParent());
+        }
+        assertNull(foo.getChild("file1000.txt"));
+    }
+
+    @Test
+    public void bulkUpdateTest()
+    {
+        Pair<TorrentContentFileTree, TorrentContentFileTree[]> res = TorrentContentFileTreeUtils.buildFileTree(files);
+        TorrentContentFileTree tree = res.first;
+        TorrentContentFileTree[] child = res.second;
+        FlatFileTree flatTree = tree.getTree();
+        TorrentContentFileTree foo = tree.getChild("foo");
+        tree.setPriority(new FilePriority(FilePriority.Type.NORMAL), true);
+
+        BitSet changed = new BitSet();
+        flatTree.setReceivedBytes(new long[]{0, 1, 2, 0, 0}, changed);
+        assertEquals(3, tree.getReceivedBytes());
+        /* dir1, dir2 */
+        assertEquals(2, foo.getChildren(changed).size());
+
+        changed = new BitSet();
+        flatTree.setReceivedBytes(new long[]{0, 1, 2, 0, 3}, changed);
+        assertEquals(6, tree.getReceivedBytes());
+        List<TorrentContentFileTree> changedChildren = foo.getChildren(changed);
+        assertEquals(1, changedChildren.size());
+        assertEquals(child[4], changedChildren.get(0));
+        assertTrue(child[0].getParent().getChildren(changed).isEmpty());
+
+        changed = new BitSet();
+        flatTree.setAvailability(new double[]{-1, -1, -1, 1, -1}, changed);
+        assertEquals(0.3, tree.getAvailability(), 0.001);
+        changedChildren = foo.getChildren(changed);
+        assertEquals(1, changedChildren.size());
+        assertEquals(child[3].getParent(), changedChildren.get(0));
+
+        changed = new BitSet();
+        flatTree.setAvailability(new double[]{-1, -1, -1, 1, -1}, changed);
+        flatTree.setReceivedBytes(new long[]{0, 1, 2, 0, 3}, changed);
+        assertTrue(changed.isEmpty());
+    }
+}
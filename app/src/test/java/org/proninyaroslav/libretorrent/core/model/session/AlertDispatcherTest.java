@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AlertDispatcherTest
+{
+    @Test
+    public void testOrder() throws InterruptedException
+    {
+        AlertDispatcher dispatcher = new AlertDispatcher(1024);
+        List<Integer> result = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+
+        for (int i = 0; i < 100; i++) {
+            int n = i;
+            dispatcher.post(() -> result.add(n));
+        }
+        dispatcher.post(done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++)
+            assertEquals(i, (int)result.get(i));
+        assertEquals(101, dispatcher.getPostedCount());
+        assertEquals(0, dispatcher.getBlockedCount());
+    }
+
+    @Test
+    public void testBackPressure() throws InterruptedException
+    {
+        AlertDispatcher dispatcher = new AlertDispatcher(1);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        List<Integer> result = Collections.synchronizedList(new ArrayList<>());
+        Thread caller = Thread.currentThread();
+        Thread[] runThread = new Thread[1];
+
+        dispatcher.post(() -> {
+            try {
+                block.await();
+            } catch (InterruptedException e) {
+                /* Ignore */
+            }
+            result.add(0);
+        });
+        /* The queue is full, waits until the first handler is completed */
+        Thread poster = new Thread(() -> {
+            dispatcher.post(() -> result.add(1));
+            dispatcher.post(() -> {
+                runThread[0] = Thread.currentThread();
+                result.add(2);
+                done.countDown();
+            });
+        });
+        poster.start();
+        while (dispatcher.getBlockedCount() == 0)
+            Thread.sleep(10);
+        assertTrue(poster.isAlive());
+        block.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        poster.join();
+        assertEquals(Arrays.asList(0, 1, 2), result);
+        assertNotSame(caller, runThread[0]);
+        assertNotSame(poster, runThread[0]);
+    }
+
+    @Test
+    public void testPostFromHandler() throws InterruptedException
+    {
+        AlertDispatcher dispatcher = new AlertDispatcher(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        /* The dispatcher thread doesn't wait for itself */
+        dispatcher.post(() -> dispatcher.post(() ->
+                dispatcher.post(done::countDown)));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMergeOrder() throws InterruptedException
+    {
+        AlertDispatcher dispatcher = new AlertDispatcher(1024);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        List<String> result = Collections.synchronizedList(new ArrayList<>());
+
+        dispatcher.post(() -> {
+            try {
+                block.await();
+            } catch (InterruptedException e) {
+                /* Ignore */
+            }
+        });
+        dispatcher.merge("1", 1, (values) -> result.add("pieces " + Arrays.toString(values)));
+        dispatcher.merge("1", 2, (values) -> fail());
+        dispatcher.post(() -> result.add("finished"));
+        /* Must not be merged into the batch before the post */
+        dispatcher.merge("1", 3, (values) -> {
+            result.add("pieces " + Arrays.toString(values));
+            done.countDown();
+        });
+        block.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("pieces [1, 2]", "finished", "pieces [3]"), result);
+        assertEquals(1, dispatcher.getMergedCount());
+    }
+
+    @Test
+    public void testMerge() throws InterruptedException
+    {
+        AlertDispatcher dispatcher = new AlertDispatcher(1024);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        List<int[]> calls = Collections.synchronizedList(new ArrayList<>());
+
+        /* Holds the merge thread, so the next values are merged */
+        dispatcher.merge("blocker", 0, (values) -> {
+            started.countDown();
+            try {
+                block.await();
+            } catch (InterruptedException e) {
+                /* Ignore */
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 10; i++)
+            dispatcher.merge("1", i, (values) -> {
+                calls.add(values);
+                done.countDown();
+            });
+        /* Duplicate */
+        dispatcher.merge("1", 5, (values) -> fail());
+        dispatcher.merge("2", 42, (values) -> {
+            calls.add(values);
+            done.countDown();
+        });
+        block.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, calls.size());
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, calls.get(0));
+        assertArrayEquals(new int[]{42}, calls.get(1));
+        assertEquals(10, dispatcher.getMergedCount());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import androidx.annotation.NonNull;
+
+import org.proninyaroslav.libretorrent.core.model.data.entity.FastResume;
+import org.proninyaroslav.libretorrent.core.model.data.entity.Torrent;
+import org.proninyaroslav.libretorrent.core.storage.TorrentRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+
+class FakeTorrentRepository implements TorrentRepository
+{
+    private HashMap<String, Torrent> torrents = new HashMap<>();
+    private HashMap<String, FastResume> fastResumes = new HashMap<>();
+    /* Number of calls (transactions) that wrote fast resume data */
+    int fastResumeWrites;
+    /* Torrent id that fails the transaction */
+    String failedId;
+
+    @Override
+    public synchronized void addTorrent(@NonNull Torrent torrent)
+    {
+        torrents.put(torrent.id, torrent);
+    }
+
+    @Override
+    public synchronized void updateTorrent(@NonNull Torrent torrent)
+    {
+        torrents.put(torrent.id, torrent);
+    }
+
+    @Override
+    public synchronized void deleteTorrent(@NonNull Torrent torrent)
+    {
+        torrents.remove(torrent.id);
+        fastResumes.remove(torrent.id);
+    }
+
+    @Override
+    public synchronized Torrent getTorrentById(@NonNull String id)
+    {
+        return torrents.get(id);
+    }
+
+    @Override
+    public Single<Torrent> getTorrentByIdSingle(@NonNull String id)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Flowable<Torrent> observeTorrentById(@NonNull String id)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized List<Torrent> getAllTorrents()
+    {
+        return new ArrayList<>(torrents.values());
+    }
+
+    @Override
+    public synchronized void addFastResume(@NonNull FastResume fastResume)
+    {
+        fastResumeWrites++;
+        if (fastResume.torrentId.equals(failedId))
+            throw new IllegalStateException("FOREIGN KEY constraint failed");
+        fastResumes.put(fastResume.torrentId, fastResume);
+    }
+
+    @Override
+    public synchronized void addFastResumeList(@NonNull List<FastResume> fastResumeList)
+    {
+        fastResumeWrites++;
+        for (FastResume fastResume : fastResumeList) {
+            if (fastResume.torrentId.equals(failedId))
+                throw new IllegalStateException("FOREIGN KEY constraint failed");
+        }
+        for (FastResume fastResume : fastResumeList)
+            fastResumes.put(fastResume.torrentId, fastResume);
+    }
+
+    @Override
+    public synchronized FastResume getFastResumeById(@NonNull String torrentId)
+    {
+        return fastResumes.get(torrentId);
+    }
+
+    @Override
+    public void saveSession(@NonNull byte[] data)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getSessionFile()
+    {
+        return null;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+import org.proninyaroslav.libretorrent.core.model.TorrentEngineListener;
+import org.proninyaroslav.libretorrent.core.model.data.TorrentStateCode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ListenerBusTest
+{
+    @Test
+    public void testInterestMask()
+    {
+        TorrentEngineListener listener = new TorrentEngineListener() {
+            @Override
+            public void onTorrentAdded(@NonNull String id) {}
+
+            @Override
+            public void onPieceFinished(@NonNull String id, int piece) {}
+        };
+
+        int mask = ListenerBus.getInterestMask(listener.getClass());
+        assertEquals(ListenerBus.TORRENT_ADDED | ListenerBus.PIECE_FINISHED, mask);
+        assertEquals(0, ListenerBus.getInterestMask(new TorrentEngineListener() {}.getClass()));
+    }
+
+    @Test
+    public void testDeliveryOrder() throws InterruptedException
+    {
+        ListenerBus bus = new ListenerBus();
+        List<Integer> pieces = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(100);
+        bus.add(new TorrentEngineListener() {
+            @Override
+            public void onPieceFinished(@NonNull String id, int piece)
+            {
+                pieces.add(piece);
+                done.countDown();
+            }
+        });
+
+        for (int i = 0; i < 100; i++) {
+            int piece = i;
+            bus.post(ListenerBus.PIECE_FINISHED, (listener) -> listener.onPieceFinished("1", piece));
+            /* Not interested */
+            bus.post(ListenerBus.TORRENT_ADDED, (listener) -> fail());
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++)
+            assertEquals(i, (int)pieces.get(i));
+    }
+
+    @Test
+    public void testSlowListener() throws InterruptedException
+    {
+        ListenerBus bus = new ListenerBus();
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch fastDone = new CountDownLatch(1);
+        List<String> states = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch slowDone = new CountDownLatch(1);
+
+        bus.add(new TorrentEngineListener() {
+            @Override
+            public void onTorrentAdded(@NonNull String id)
+            {
+                try {
+                    block.await();
+                } catch (InterruptedException e) {
+                    /* Ignore */
+                }
+            }
+
+            @Override
+            public void onTorrentStateChanged(@NonNull String id,
+                                              @NonNull TorrentStateCode prevState,
+                                              @NonNull TorrentStateCode curState)
+            {
+                states.add(prevState + "->" + curState);
+                slowDone.countDown();
+            }
+        });
+        bus.add(new TorrentEngineListener() {
+            @Override
+            public void onTorrentAdded(@NonNull String id)
+            {
+                fastDone.countDown();
+            }
+        });
+
+        long startTime = System.currentTimeMillis();
+        bus.post(ListenerBus.TORRENT_ADDED, (listener) -> listener.onTorrentAdded("1"));
+        /* The caller isn't blocked, the slow listener doesn't block the fast one */
+        assertTrue(System.currentTimeMillis() - startTime < 1000);
+        assertTrue(fastDone.await(5, TimeUnit.SECONDS));
+
+        /* Coalesced while the slow listener is busy */
+        bus.postCoalesced(ListenerBus.TORRENT_STATE_CHANGED, "1",
+                new StateCall(TorrentStateCode.CHECKING, TorrentStateCode.DOWNLOADING));
+        bus.postCoalesced(ListenerBus.TORRENT_STATE_CHANGED, "1",
+                new StateCall(TorrentStateCode.DOWNLOADING, TorrentStateCode.SEEDING));
+        block.countDown();
+
+        assertTrue(slowDone.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(1, states.size());
+        assertEquals("CHECKING->SEEDING", states.get(0));
+    }
+
+    @Test
+    public void testCoalescedOrder() throws InterruptedException
+    {
+        ListenerBus bus = new ListenerBus();
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+        bus.add(new TorrentEngineListener() {
+            @Override
+            public void onTorrentAdded(@NonNull String id)
+            {
+                try {
+                    block.await();
+                } catch (InterruptedException e) {
+                    /* Ignore */
+                }
+            }
+
+            @Override
+            public void onTorrentStateChanged(@NonNull String id,
+                                              @NonNull TorrentStateCode prevState,
+                                              @NonNull TorrentStateCode curState)
+            {
+                events.add(prevState + "->" + curState);
+                if (curState == TorrentStateCode.DOWNLOADING)
+                    done.countDown();
+            }
+
+            @Override
+            public void onTorrentPaused(@NonNull String id)
+            {
+                events.add("paused");
+            }
+        });
+
+        bus.post(ListenerBus.TORRENT_ADDED, (listener) -> listener.onTorrentAdded("1"));
+        bus.postCoalesced(ListenerBus.TORRENT_STATE_CHANGED, "1",
+                new StateCall(TorrentStateCode.CHECKING, TorrentStateCode.DOWNLOADING));
+        bus.postCoalesced(ListenerBus.TORRENT_STATE_CHANGED, "1",
+                new StateCall(TorrentStateCode.DOWNLOADING, TorrentStateCode.PAUSED));
+        bus.post(ListenerBus.TORRENT_PAUSED, (listener) -> listener.onTorrentPaused("1"));
+        /* Must not be merged into the state change before the pause */
+        bus.postCoalesced(ListenerBus.TORRENT_STATE_CHANGED, "1",
+                new StateCall(TorrentStateCode.PAUSED, TorrentStateCode.DOWNLOADING));
+        block.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("CHECKING->PAUSED", "paused", "PAUSED->DOWNLOADING"), events);
+    }
+
+    @Test
+    public void testSyncAndRemove() throws InterruptedException
+    {
+        ListenerBus bus = new ListenerBus();
+        Thread[] thread = new Thread[1];
+        TorrentEngineListener listener = new TorrentEngineListener() {
+            @Override
+            public void onTorrentRemoved(@NonNull String id)
+            {
+                thread[0] = Thread.currentThread();
+            }
+        };
+        bus.add(listener);
+
+        bus.postSync(ListenerBus.TORRENT_REMOVED, (l) -> l.onTorrentRemoved("1"));
+        assertSame(Thread.currentThread(), thread[0]);
+        assertEquals(1, bus.getStats().get(0).delivered);
+
+        bus.remove(listener);
+        assertEquals(0, bus.size());
+        thread[0] = null;
+        bus.post(ListenerBus.TORRENT_REMOVED, (l) -> l.onTorrentRemoved("1"));
+        Thread.sleep(100);
+        assertNull(thread[0]);
+    }
+
+    private static final class StateCall implements ListenerBus.MergeableCall
+    {
+        final TorrentStateCode prev;
+        final TorrentStateCode cur;
+
+        StateCall(TorrentStateCode prev, TorrentStateCode cur)
+        {
+            this.prev = prev;
+            this.cur = cur;
+        }
+
+        @Override
+        public void apply(TorrentEngineListener listener)
+        {
+            listener.onTorrentStateChanged("1", prev, cur);
+        }
+
+        @Override
+        public ListenerBus.Call merge(@NonNull ListenerBus.Call pending)
+        {
+            return new StateCall(((StateCall)pending).prev, cur);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RestoreQueueTest
+{
+    @Test
+    public void testBatches()
+    {
+        RestoreQueue<String> queue = new RestoreQueue<>(2, 1000, 3);
+
+        queue.put("1", "1", RestoreQueue.PRIORITY_ACTIVE);
+        queue.put("2", "2", RestoreQueue.PRIORITY_ACTIVE);
+        queue.put("3", "3", RestoreQueue.PRIORITY_ACTIVE);
+
+        assertEquals(Arrays.asList("1", "2"), queue.pollBatch(0));
+        /* Wait for the previous batch */
+        assertTrue(queue.pollBatch(0).isEmpty());
+        assertTrue(queue.complete("1"));
+        assertFalse(queue.complete("1"));
+        assertTrue(queue.pollBatch(0).isEmpty());
+        assertTrue(queue.complete("2"));
+
+        assertEquals(Arrays.asList("3"), queue.pollBatch(0));
+        assertFalse(queue.checkFinished());
+        queue.complete("3");
+        assertTrue(queue.checkFinished());
+        assertFalse(queue.checkFinished());
+    }
+
+    @Test
+    public void testPriority()
+    {
+        RestoreQueue<String> queue = new RestoreQueue<>(10, 1000, 4);
+
+        queue.put("seed", "seed", RestoreQueue.PRIORITY_SEEDING);
+        queue.put("paused", "paused", RestoreQueue.PRIORITY_PAUSED);
+        queue.put("active", "active", RestoreQueue.PRIORITY_ACTIVE);
+
+        /* Lower priorities wait until all torrents are decoded */
+        assertEquals(Arrays.asList("active"), queue.pollBatch(0));
+        queue.complete("active");
+        assertTrue(queue.pollBatch(0).isEmpty());
+
+        queue.skip();
+        List<String> batch = queue.pollBatch(0);
+        assertEquals(Arrays.asList("paused", "seed"), batch);
+        queue.complete("paused");
+        queue.complete("seed");
+        assertTrue(queue.checkFinished());
+    }
+
+    @Test
+    public void testTimeout()
+    {
+        RestoreQueue<String> queue = new RestoreQueue<>(1, 1000, 2);
+
+        queue.put("1", "1", RestoreQueue.PRIORITY_ACTIVE);
+        queue.put("2", "2", RestoreQueue.PRIORITY_ACTIVE);
+
+        assertEquals(Arrays.asList("1"), queue.pollBatch(0));
+        assertTrue(queue.pollBatch(999).isEmpty());
+        assertEquals(Arrays.asList("2"), queue.pollBatch(1000));
+        assertEquals(1, queue.getTimedOutCount());
+    }
+
+    @Test
+    public void testClear()
+    {
+        RestoreQueue<String> queue = new RestoreQueue<>(1, 1000, 2);
+
+        queue.put("1", "1", RestoreQueue.PRIORITY_ACTIVE);
+        queue.clear();
+        assertTrue(queue.pollBatch(0).isEmpty());
+        assertFalse(queue.checkFinished());
+    }
+}
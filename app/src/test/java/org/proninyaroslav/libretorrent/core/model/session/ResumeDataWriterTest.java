@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ResumeDataWriterTest
+{
+    @Test
+    public void testCoalescing()
+    {
+        FakeTorrentRepository repo = new FakeTorrentRepository();
+        ResumeDataWriter writer = new ResumeDataWriter(repo, 60000);
+        AtomicInteger callbacks = new AtomicInteger();
+
+        for (int i = 0; i < 100; i++) {
+            writer.put("1", new byte[]{(byte)i}, callbacks::incrementAndGet);
+            writer.put("2", new byte[]{(byte)i, (byte)i}, callbacks::incrementAndGet);
+        }
+        assertEquals(2, writer.getPendingCount());
+        assertEquals(198, writer.getCoalescedCount());
+        assertEquals(0, callbacks.get());
+
+        writer.flush();
+        assertEquals(1, repo.fastResumeWrites);
+        assertEquals(200, callbacks.get());
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(99, repo.getFastResumeById("1").data[0]);
+        assertEquals(2, repo.getFastResumeById("2").data.length);
+        assertEquals(3, writer.getTotalBytesWritten());
+        assertEquals(3, writer.getBytesPerMinute());
+        assertEquals(1, writer.getFlushCount());
+
+        /* Nothing to write */
+        writer.flush();
+        assertEquals(1, repo.fastResumeWrites);
+    }
+
+    @Test
+    public void testScheduledFlush() throws InterruptedException
+    {
+        FakeTorrentRepository repo = new FakeTorrentRepository();
+        ResumeDataWriter writer = new ResumeDataWriter(repo, 100);
+        CountDownLatch written = new CountDownLatch(2);
+
+        writer.put("1", new byte[1], written::countDown);
+        writer.put("2", new byte[1], written::countDown);
+
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        assertEquals(1, repo.fastResumeWrites);
+    }
+
+    @Test
+    public void testRequestFlush() throws InterruptedException
+    {
+        FakeTorrentRepository repo = new FakeTorrentRepository();
+        ResumeDataWriter writer = new ResumeDataWriter(repo, 60000);
+        CountDownLatch written = new CountDownLatch(1);
+
+        writer.put("1", new byte[1], written::countDown);
+        writer.requestFlush();
+
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        assertNotNull(repo.getFastResumeById("1"));
+    }
+
+    @Test
+    public void testFlushNow() throws InterruptedException
+    {
+        FakeTorrentRepository repo = new FakeTorrentRepository();
+        ResumeDataWriter writer = new ResumeDataWriter(repo, 60000);
+        CountDownLatch written = new CountDownLatch(1);
+
+        writer.put("1", new byte[1], written::countDown, true);
+
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        assertNotNull(repo.getFastResumeById("1"));
+    }
+
+    @Test
+    public void testShutdown() throws InterruptedException
+    {
+        FakeTorrentRepository repo = new FakeTorrentRepository();
+        ResumeDataWriter writer = new ResumeDataWriter(repo, 60000);
+        AtomicInteger callbacks = new AtomicInteger();
+
+        writer.put("1", new byte[1], callbacks::incrementAndGet);
+        writer.shutdown();
+        assertEquals(1, callbacks.get());
+        assertNotNull(repo.getFastResumeById("1"));
+
+        /* Session restart */
+        CountDownLatch written = new CountDownLatch(1);
+        writer.put("2", new byte[1], written::countDown);
+        writer.requestFlush();
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        assertNotNull(repo.getFastResumeById("2"));
+        writer.shutdown();
+    }
+
+    @Test
+    public void testFailedRow()
+    {
+        FakeTorrentRepository repo = new FakeTorrentRepository();
+        ResumeDataWriter writer = new ResumeDataWriter(repo, 60000);
+        AtomicInteger callbacks = new AtomicInteger();
+        repo.failedId = "2";
+
+        writer.put("1", new byte[1], callbacks::incrementAndGet);
+        writer.put("2", new byte[1], callbacks::incrementAndGet);
+        writer.put("3", new byte[1], callbacks::incrementAndGet);
+        writer.flush();
+
+        assertEquals(3, callbacks.get());
+        assertNotNull(repo.getFastResumeById("1"));
+        assertNull(repo.getFastResumeById("2"));
+        assertNotNull(repo.getFastResumeById("3"));
+        assertEquals(2, writer.getTotalBytesWritten());
+    }
+
+    @Test
+    public void testRemove()
+    {
+        FakeTorrentRepository repo = new FakeTorrentRepository();
+        ResumeDataWriter writer = new ResumeDataWriter(repo, 60000);
+        AtomicInteger callbacks = new AtomicInteger();
+
+        writer.put("1", new byte[1], callbacks::incrementAndGet);
+        writer.remove("1");
+        assertEquals(1, callbacks.get());
+
+        writer.flush();
+        assertEquals(0, repo.fastResumeWrites);
+        assertNull(repo.getFastResumeById("1"));
+    }
+}
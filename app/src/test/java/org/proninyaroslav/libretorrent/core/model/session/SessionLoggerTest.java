@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import org.junit.Test;
+import org.proninyaroslav.libretorrent.core.logger.LogEntry;
+
+import static org.junit.Assert.*;
+
+public class SessionLoggerTest
+{
+    @Test
+    public void testFilteredTypes()
+    {
+        SessionLogger logger = new SessionLogger();
+        logger.applyFilterParams(new SessionLogger.SessionFilterParams(
+                false, true, true, false, false));
+
+        assertFalse(logger.isFiltered(SessionLogger.SessionLogEntryType.SESSION_LOG));
+        assertTrue(logger.isFiltered(SessionLogger.SessionLogEntryType.DHT_LOG));
+        assertTrue(logger.isFiltered(SessionLogger.SessionLogEntryType.PEER_LOG));
+        assertFalse(logger.isFiltered(SessionLogger.SessionLogEntryType.PORTMAP_LOG));
+        assertFalse(logger.isFiltered(SessionLogger.SessionLogEntryType.TORRENT_LOG));
+
+        logger.applyFilterParams(new SessionLogger.SessionFilterParams(
+                false, false, true, false, false));
+
+        assertFalse(logger.isFiltered(SessionLogger.SessionLogEntryType.DHT_LOG));
+        assertTrue(logger.isFiltered(SessionLogger.SessionLogEntryType.PEER_LOG));
+    }
+
+    @Test
+    public void testTagIds()
+    {
+        for (SessionLogger.SessionLogEntryType type : SessionLogger.SessionLogEntryType.values())
+            assertEquals(type.name(), LogEntry.getTagName(type.tagId));
+    }
+}
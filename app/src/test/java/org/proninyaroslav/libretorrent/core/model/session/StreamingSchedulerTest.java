@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StreamingSchedulerTest
+{
+    private static final int PIECE_LENGTH = 256 * 1024;
+
+    @Test
+    public void testDefaultWindow()
+    {
+        StreamingScheduler scheduler = new StreamingScheduler(0, 99, PIECE_LENGTH);
+
+        StreamingScheduler.Plan plan = scheduler.schedule(0, 10, 1, 0);
+        assertEquals(10, plan.playhead);
+        assertEquals(StreamingScheduler.DEFAULT_WINDOW, plan.deadlines.length);
+        assertEquals(StreamingScheduler.DEFAULT_PIECE_DEADLINE, plan.deadlines[0]);
+        for (int i = 1; i < plan.deadlines.length; i++)
+            assertTrue(plan.deadlines[i] > plan.deadlines[i - 1]);
+        assertTrue(plan.resetPieces.isEmpty());
+    }
+
+    @Test
+    public void testNeedReschedule()
+    {
+        StreamingScheduler scheduler = new StreamingScheduler(0, 99, PIECE_LENGTH);
+
+        assertTrue(scheduler.needReschedule(0, 1));
+        scheduler.schedule(0, 0, 1, 0);
+        assertFalse(scheduler.needReschedule(0, 1));
+        assertTrue(scheduler.needReschedule(1, 1));
+        assertTrue(scheduler.needReschedule(0, StreamingScheduler.DEFAULT_WINDOW + 1));
+    }
+
+    @Test
+    public void testWindowGrowsWithConsumptionRate()
+    {
+        StreamingScheduler scheduler = new StreamingScheduler(0, 999, PIECE_LENGTH);
+
+        /* 4 pieces per second, 1 MiB/s */
+        long time = 0;
+        StreamingScheduler.Plan plan = null;
+        for (int piece = 0; piece < 20; piece++, time += 250)
+            plan = scheduler.schedule(time, piece, 1, 0);
+
+        assertEquals(1024 * 1024, scheduler.getConsumptionRate(), 1);
+        assertEquals(StreamingScheduler.MAX_WINDOW, plan.deadlines.length);
+        assertEquals(StreamingScheduler.MIN_PIECE_DEADLINE, plan.deadlines[0]);
+        /* 10 pieces ahead are read in 2.5 seconds */
+        assertEquals(1875, plan.deadlines[10]);
+    }
+
+    @Test
+    public void testWindowShrinksOnSlowDownload()
+    {
+        StreamingScheduler scheduler = new StreamingScheduler(0, 999, PIECE_LENGTH);
+
+        long time = 0;
+        StreamingScheduler.Plan plan = null;
+        for (int piece = 0; piece < 20; piece++, time += 250)
+            plan = scheduler.schedule(time, piece, 1, 64 * 1024);
+
+        /* 64 KiB/s * 15 s = 3.75 pieces */
+        assertEquals(4, plan.deadlines.length);
+    }
+
+    @Test
+    public void testSeekResetsPieces()
+    {
+        StreamingScheduler scheduler = new StreamingScheduler(0, 99, PIECE_LENGTH);
+
+        scheduler.schedule(0, 0, 1, 0);
+        StreamingScheduler.Plan plan = scheduler.schedule(1000, 50, 1, 0);
+
+        assertEquals(50, plan.playhead);
+        assertEquals(StreamingScheduler.DEFAULT_WINDOW, plan.resetPieces.size());
+        for (int piece : plan.resetPieces)
+            assertTrue(piece < StreamingScheduler.DEFAULT_WINDOW);
+        /* Seek isn't a playback */
+        assertEquals(0, scheduler.getConsumptionRate(), 0);
+    }
+
+    @Test
+    public void testSequentialMoveResetsPassedPieces()
+    {
+        StreamingScheduler scheduler = new StreamingScheduler(0, 99, PIECE_LENGTH);
+
+        scheduler.schedule(0, 0, 1, 0);
+        StreamingScheduler.Plan plan = scheduler.schedule(1000, 2, 1, 0);
+
+        assertEquals(2, plan.resetPieces.size());
+        assertTrue(plan.resetPieces.contains(0));
+        assertTrue(plan.resetPieces.contains(1));
+    }
+
+    @Test
+    public void testNewPieces()
+    {
+        StreamingScheduler scheduler = new StreamingScheduler(0, 99, PIECE_LENGTH);
+
+        StreamingScheduler.Plan plan = scheduler.schedule(0, 0, 1, 0);
+        assertEquals(StreamingScheduler.DEFAULT_WINDOW, plan.newPieces.size());
+
+        plan = scheduler.schedule(1000, 1, 1, 0);
+        /* Only the pieces that entered the window are new */
+        int end = plan.playhead + plan.deadlines.length - 1;
+        assertEquals(end - StreamingScheduler.DEFAULT_WINDOW + 1, plan.newPieces.size());
+        for (int piece : plan.newPieces)
+            assertTrue(piece >= StreamingScheduler.DEFAULT_WINDOW && piece <= end);
+        assertEquals(plan.deadlines.length, scheduler.getScheduledPieces().size());
+    }
+
+    @Test
+    public void testWindowLimitedByLastPiece()
+    {
+        StreamingScheduler scheduler = new StreamingScheduler(0, 9, PIECE_LENGTH);
+
+        StreamingScheduler.Plan plan = scheduler.schedule(0, 8, 1, 0);
+        assertEquals(9, plan.windowEnd);
+        assertEquals(2, plan.deadlines.length);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TickSnapshotTest
+{
+    @Test
+    public void testSharedWithinTick()
+    {
+        TickSnapshot.Clock clock = new TickSnapshot.Clock();
+        AtomicInteger loads = new AtomicInteger();
+        TickSnapshot<Integer> snapshot = new TickSnapshot<>(clock, Long.MAX_VALUE,
+                loads::incrementAndGet);
+
+        /* Getters of one tick share one status call */
+        for (int i = 0; i < 10; i++)
+            assertEquals(1, (int)snapshot.get());
+        assertEquals(1, loads.get());
+
+        clock.tick();
+        assertEquals(2, (int)snapshot.get());
+        assertEquals(2, (int)snapshot.get());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        TickSnapshot.Clock clock = new TickSnapshot.Clock();
+        AtomicInteger loads = new AtomicInteger();
+        TickSnapshot<Integer> snapshot = new TickSnapshot<>(clock, Long.MAX_VALUE,
+                loads::incrementAndGet);
+
+        assertEquals(1, (int)snapshot.get());
+        snapshot.invalidate();
+        assertEquals(2, (int)snapshot.get());
+        assertEquals(2, (int)snapshot.get());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testExpiresWithoutTicks() throws InterruptedException
+    {
+        TickSnapshot.Clock clock = new TickSnapshot.Clock();
+        AtomicInteger loads = new AtomicInteger();
+        TickSnapshot<Integer> snapshot = new TickSnapshot<>(clock, 10,
+                loads::incrementAndGet);
+
+        assertEquals(1, (int)snapshot.get());
+        Thread.sleep(20);
+        assertEquals(2, (int)snapshot.get());
+    }
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+
+import org.proninyaroslav.libretorrent.core.exception.DecodeException;
+import org.proninyaroslav.libretorrent.core.model.TorrentEngineListener;
+import org.proninyaroslav.libretorrent.core.model.data.PeerInfo;
+import org.proninyaroslav.libretorrent.core.model.data.Priority;
+import org.proninyaroslav.libretorrent.core.model.data.ReadPieceInfo;
+import org.proninyaroslav.libretorrent.core.model.data.TorrentStateCode;
+import org.proninyaroslav.libretorrent.core.model.data.TrackerInfo;
+import org.proninyaroslav.libretorrent.core.model.data.metainfo.TorrentMetaInfo;
+import org.proninyaroslav.libretorrent.core.model.session.TorrentDownload;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Completable;
+
+/*
+ * Torrent that has all pieces and returns them with the specified latency.
+ * The buffer pointer of each returned piece is equal to the piece index
+ */
+
+class FakeTorrentDownload implements TorrentDownload
+{
+    private String id;
+    private Queue<TorrentEngineListener> listeners;
+    private ScheduledExecutorService disk;
+    private long readLatency;
+    private int numPieces;
+    private int pieceLength;
+    private int lastPieceSize;
+    AtomicInteger readPieceCount = new AtomicInteger();
+    /* Readers that have interested pieces */
+    final Set<Object> readers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    FakeTorrentDownload(String id,
+                        Queue<TorrentEngineListener> listeners,
+                        ScheduledExecutorService disk,
+                        long readLatency,
+                        int numPieces,
+                        int pieceLength,
+                        int lastPieceSize)
+    {
+        this.id = id;
+        this.listeners = listeners;
+        this.disk = disk;
+        this.readLatency = readLatency;
+        this.numPieces = numPieces;
+        this.pieceLength = pieceLength;
+        this.lastPieceSize = lastPieceSize;
+    }
+
+    TorrentStream makeStream()
+    {
+        return new TorrentStream(id, 0, 0, numPieces - 1, pieceLength, 0,
+                (long)(numPieces - 1) * pieceLength + lastPieceSize, lastPieceSize);
+    }
+
+    @Override
+    public String getTorrentId()
+    {
+        return id;
+    }
+
+    @Override
+    public Completable requestStop()
+    {
+        return null;
+    }
+
+    @Override
+    public void pause()
+    {
+    }
+
+    @Override
+    public void resume()
+    {
+    }
+
+    @Override
+    public void pauseManually()
+    {
+    }
+
+    @Override
+    public void resumeManually()
+    {
+    }
+
+    @Override
+    public void setAutoManaged(boolean autoManaged)
+    {
+    }
+
+    @Override
+    public boolean isAutoManaged()
+    {
+        return false;
+    }
+
+    @Override
+    public int getProgress()
+    {
+        return 0;
+    }
+
+    @Override
+    public void prioritizeFiles(@NonNull Priority[] priorities)
+    {
+    }
+
+    @Override
+    public long getSize()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getDownloadSpeed()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getUploadSpeed()
+    {
+        return 0;
+    }
+
+    @Override
+    public void remove(boolean withFiles)
+    {
+    }
+
+    @Override
+    public long getActiveTime()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getSeedingTime()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getReceivedBytes()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getTotalSentBytes()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getConnectedPeers()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getConnectedSeeds()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getConnectedLeechers()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getTotalPeers()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getTotalSeeds()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getTotalLeechers()
+    {
+        return 0;
+    }
+
+    @Override
+    public void requestTrackerAnnounce()
+    {
+    }
+
+    @Override
+    public Set<String> getTrackersUrl()
+    {
+        return null;
+    }
+
+    @Override
+    public List<TrackerInfo> getTrackerInfoList()
+    {
+        return null;
+    }
+
+    @Override
+    public List<PeerInfo> getPeerInfoList()
+    {
+        return null;
+    }
+
+    @Override
+    public long getTotalWanted()
+    {
+        return 0;
+    }
+
+    @Override
+    public void replaceTrackers(@NonNull Set<String> trackers)
+    {
+    }
+
+    @Override
+    public void addTrackers(@NonNull Set<String> trackers)
+    {
+    }
+
+    @Override
+    public void addWebSeeds(@NonNull List<String> urls)
+    {
+    }
+
+    @Override
+    public boolean[] pieces()
+    {
+        return null;
+    }
+
+    @Override
+    public String makeMagnet(boolean includePriorities)
+    {
+        return null;
+    }
+
+    @Override
+    public void setSequentialDownload(boolean sequential)
+    {
+    }
+
+    @Override
+    public void setTorrentName(@NonNull String name)
+    {
+    }
+
+    @Override
+    public long getETA()
+    {
+        return 0;
+    }
+
+    @Override
+    public TorrentMetaInfo getTorrentMetaInfo() throws DecodeException
+    {
+        return null;
+    }
+
+    @Override
+    public String getTorrentName()
+    {
+        return null;
+    }
+
+    @Override
+    public void setDownloadPath(@NonNull Uri path)
+    {
+    }
+
+    @Override
+    public long[] getFilesReceivedBytes()
+    {
+        return null;
+    }
+
+    @Override
+    public void forceRecheck()
+    {
+    }
+
+    @Override
+    public int getNumDownloadedPieces()
+    {
+        return 0;
+    }
+
+    @Override
+    public double getShareRatio()
+    {
+        return 0;
+    }
+
+    @Override
+    public Uri getPartsFile()
+    {
+        return null;
+    }
+
+    @Override
+    public void setDownloadSpeedLimit(int limit)
+    {
+    }
+
+    @Override
+    public int getDownloadSpeedLimit()
+    {
+        return 0;
+    }
+
+    @Override
+    public void setUploadSpeedLimit(int limit)
+    {
+    }
+
+    @Override
+    public int getUploadSpeedLimit()
+    {
+        return 0;
+    }
+
+    @Override
+    public String getInfoHash()
+    {
+        return null;
+    }
+
+    @Override
+    public TorrentStateCode getStateCode()
+    {
+        return null;
+    }
+
+    @Override
+    public boolean isPaused()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isSeeding()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isFinished()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isDownloading()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isSequentialDownload()
+    {
+        return false;
+    }
+
+    @Override
+    public void setMaxConnections(int connections)
+    {
+    }
+
+    @Override
+    public int getMaxConnections()
+    {
+        return 0;
+    }
+
+    @Override
+    public void setMaxUploads(int uploads)
+    {
+    }
+
+    @Override
+    public int getMaxUploads()
+    {
+        return 0;
+    }
+
+    @Override
+    public double getAvailability(int[] piecesAvailability)
+    {
+        return 0;
+    }
+
+    @Override
+    public double[] getFilesAvailability(int[] piecesAvailability)
+    {
+        return null;
+    }
+
+    @Override
+    public int[] getPiecesAvailability()
+    {
+        return null;
+    }
+
+    @Override
+    public boolean havePiece(int pieceIndex)
+    {
+        return pieceIndex >= 0 && pieceIndex < numPieces;
+    }
+
+    @Override
+    public void readPiece(int pieceIndex)
+    {
+        readPieceCount.incrementAndGet();
+        int size = (pieceIndex == numPieces - 1 ? lastPieceSize : pieceLength);
+        /* Emulate disk I/O and alert delivery */
+        disk.schedule(() -> {
+            ReadPieceInfo info = new ReadPieceInfo(pieceIndex, size, pieceIndex, null);
+            for (TorrentEngineListener listener : listeners)
+                listener.onReadPiece(id, info);
+        }, readLatency, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void setInterestedPieces(@NonNull Object reader, @NonNull TorrentStream stream,
+                                    int startPiece, int numPieces)
+    {
+        readers.add(reader);
+    }
+
+    @Override
+    public void removeInterestedPieces(@NonNull Object reader)
+    {
+        readers.remove(reader);
+    }
+
+    @Override
+    public TorrentStream getStream(int fileIndex)
+    {
+        return null;
+    }
+
+    @Override
+    public boolean isValid()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isStopped()
+    {
+        return false;
+    }
+
+    @Override
+    public Priority[] getFilePriorities()
+    {
+        return null;
+    }
+
+    @Override
+    public byte[] getBencode()
+    {
+        return null;
+    }
+
+    @Override
+    public void saveResumeData(boolean force)
+    {
+    }
+
+    @Override
+    public boolean hasMissingFiles()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.proninyaroslav.libretorrent.core.exception.DecodeException;
+import org.proninyaroslav.libretorrent.core.exception.TorrentAlreadyExistsException;
+import org.proninyaroslav.libretorrent.core.logger.Logger;
+import org.proninyaroslav.libretorrent.core.model.AddTorrentParams;
+import org.proninyaroslav.libretorrent.core.model.TorrentEngineListener;
+import org.proninyaroslav.libretorrent.core.model.data.MagnetInfo;
+import org.proninyaroslav.libretorrent.core.model.data.entity.Torrent;
+import org.proninyaroslav.libretorrent.core.model.session.SessionInitParams;
+import org.proninyaroslav.libretorrent.core.model.session.TorrentDownload;
+import org.proninyaroslav.libretorrent.core.model.session.TorrentSession;
+import org.proninyaroslav.libretorrent.core.settings.SessionSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+class FakeTorrentSession implements TorrentSession
+{
+    ConcurrentLinkedQueue<TorrentEngineListener> listeners = new ConcurrentLinkedQueue<>();
+    ConcurrentHashMap<String, TorrentDownload> tasks = new ConcurrentHashMap<>();
+
+    @Override
+    public Logger getLogger()
+    {
+        return null;
+    }
+
+    @Override
+    public void addListener(TorrentEngineListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(TorrentEngineListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public TorrentDownload getTask(String id)
+    {
+        return tasks.get(id);
+    }
+
+    @Override
+    public List<TorrentDownload> getTasks()
+    {
+        return new ArrayList<>(tasks.values());
+    }
+
+    @Override
+    public void setSettings(@NonNull SessionSettings settings)
+    {
+    }
+
+    @Override
+    public SessionSettings getSettings()
+    {
+        return null;
+    }
+
+    @Override
+    public byte[] getLoadedMagnet(String hash)
+    {
+        return null;
+    }
+
+    @Override
+    public void removeLoadedMagnet(String hash)
+    {
+    }
+
+    @Override
+    public Torrent addTorrent(@NonNull AddTorrentParams params, boolean removeFile) throws IOException, TorrentAlreadyExistsException, DecodeException
+    {
+        return null;
+    }
+
+    @Override
+    public void deleteTorrent(@NonNull String id, boolean withFiles)
+    {
+    }
+
+    @Override
+    public void restoreTorrents()
+    {
+    }
+
+    @Override
+    public MagnetInfo fetchMagnet(@NonNull String uri) throws Exception
+    {
+        return null;
+    }
+
+    @Override
+    public MagnetInfo parseMagnet(@NonNull String uri)
+    {
+        return null;
+    }
+
+    @Override
+    public void cancelFetchMagnet(@NonNull String infoHash)
+    {
+    }
+
+    @Override
+    public long getDownloadSpeed()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getUploadSpeed()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getTotalDownload()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getTotalUpload()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getDownloadSpeedLimit()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getUploadSpeedLimit()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getListenPort()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getDhtNodes()
+    {
+        return 0;
+    }
+
+    @Override
+    public void enableIpFilter(@NonNull Uri path)
+    {
+    }
+
+    @Override
+    public void disableIpFilter()
+    {
+    }
+
+    @Override
+    public void pauseAll()
+    {
+    }
+
+    @Override
+    public void resumeAll()
+    {
+    }
+
+    @Override
+    public void pauseAllManually()
+    {
+    }
+
+    @Override
+    public void resumeAllManually()
+    {
+    }
+
+    @Override
+    public void setMaxConnectionsPerTorrent(int connections)
+    {
+    }
+
+    @Override
+    public void setMaxUploadsPerTorrent(int uploads)
+    {
+    }
+
+    @Override
+    public void setAutoManaged(boolean autoManaged)
+    {
+    }
+
+    @Override
+    public boolean isDHTEnabled()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isPeXEnabled()
+    {
+        return false;
+    }
+
+    @Override
+    public void start()
+    {
+    }
+
+    @Override
+    public void startWithParams(@Nullable SessionInitParams startParams)
+    {
+    }
+
+    @Override
+    public void requestStop()
+    {
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return false;
+    }
+
+    @Override
+    public long dhtNodes()
+    {
+        return 0;
+    }
+
+    @Override
+    public int[] getPieceSizeList()
+    {
+        return null;
+    }
+
+    @Override
+    public void download(@NonNull String magnetUri, File saveDir, boolean paused)
+    {
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HttpRangeTest
+{
+    private static final long SIZE = 1000;
+
+    private static void assertRange(long start, long end, HttpRange range)
+    {
+        assertEquals(start, range.start);
+        assertEquals(end, range.end);
+    }
+
+    @Test
+    public void testSingleRange()
+    {
+        List<HttpRange> ranges = HttpRange.parse("bytes=100-199", SIZE);
+        assertNotNull(ranges);
+        assertEquals(1, ranges.size());
+        assertRange(100, 199, ranges.get(0));
+        assertEquals(100, ranges.get(0).length());
+        assertEquals("bytes 100-199/1000", ranges.get(0).toContentRange(SIZE));
+
+        ranges = HttpRange.parse("bytes=0-0", SIZE);
+        assertRange(0, 0, ranges.get(0));
+    }
+
+    @Test
+    public void testOpenRange()
+    {
+        List<HttpRange> ranges = HttpRange.parse("bytes=900-", SIZE);
+        assertRange(900, 999, ranges.get(0));
+
+        /* The last position is greater than the size */
+        ranges = HttpRange.parse("bytes=900-5000", SIZE);
+        assertRange(900, 999, ranges.get(0));
+    }
+
+    @Test
+    public void testSuffixRange()
+    {
+        List<HttpRange> ranges = HttpRange.parse("bytes=-100", SIZE);
+        assertRange(900, 999, ranges.get(0));
+
+        ranges = HttpRange.parse("bytes=-5000", SIZE);
+        assertRange(0, 999, ranges.get(0));
+    }
+
+    @Test
+    public void testMultipleRanges()
+    {
+        List<HttpRange> ranges = HttpRange.parse("bytes=500-599, 0-99,-10", SIZE);
+        assertEquals(3, ranges.size());
+        assertRange(0, 99, ranges.get(0));
+        assertRange(500, 599, ranges.get(1));
+        assertRange(990, 999, ranges.get(2));
+    }
+
+    @Test
+    public void testMergeOverlapping()
+    {
+        List<HttpRange> ranges = HttpRange.parse("bytes=0-99,50-149,150-199,300-399", SIZE);
+        assertEquals(2, ranges.size());
+        assertRange(0, 199, ranges.get(0));
+        assertRange(300, 399, ranges.get(1));
+    }
+
+    @Test
+    public void testUnsatisfiable()
+    {
+        assertTrue(HttpRange.parse("bytes=1000-", SIZE).isEmpty());
+        assertTrue(HttpRange.parse("bytes=-0", SIZE).isEmpty());
+        /* Unsatisfiable ranges are skipped */
+        assertEquals(1, HttpRange.parse("bytes=2000-3000,0-1", SIZE).size());
+    }
+
+    @Test
+    public void testInvalid()
+    {
+        assertNull(HttpRange.parse(null, SIZE));
+        assertNull(HttpRange.parse("items=0-1", SIZE));
+        assertNull(HttpRange.parse("bytes=abc", SIZE));
+        assertNull(HttpRange.parse("bytes=10-5", SIZE));
+        assertNull(HttpRange.parse("bytes=-", SIZE));
+
+        StringBuilder sb = new StringBuilder("bytes=");
+        for (int i = 0; i <= HttpRange.MAX_RANGES; i++)
+            sb.append(i * 10).append('-').append(i * 10 + 1).append(',');
+        assertNull(HttpRange.parse(sb.toString(), SIZE));
+    }
+}
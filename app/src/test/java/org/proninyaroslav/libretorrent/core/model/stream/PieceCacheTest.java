@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PieceCacheTest
+{
+    @Test
+    public void testBudget()
+    {
+        PieceCache cache = new PieceCache(10, 35);
+        assertEquals(3, cache.getMaxPieces());
+
+        /* Huge pieces */
+        cache = new PieceCache(100, 10);
+        assertEquals(2, cache.getMaxPieces());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed()
+    {
+        PieceCache cache = new PieceCache(10, 30);
+        for (int i = 0; i < 3; i++) {
+            byte[] buf = cache.obtainBuffer();
+            buf[0] = (byte)i;
+            cache.put(i, buf, 10);
+        }
+        assertEquals(3, cache.size());
+
+        /* Piece 0 becomes the most recently used */
+        assertEquals(0, cache.get(0).buf[0]);
+
+        byte[] buf = cache.obtainBuffer();
+        cache.put(3, buf, 5);
+        assertEquals(3, cache.size());
+        assertFalse(cache.contains(1));
+        assertTrue(cache.contains(0));
+        assertTrue(cache.contains(2));
+        assertEquals(5, cache.get(3).size);
+    }
+
+    @Test
+    public void testReuseBuffers()
+    {
+        PieceCache cache = new PieceCache(10, 20);
+        byte[] first = cache.obtainBuffer();
+        cache.put(0, first, 10);
+        byte[] second = cache.obtainBuffer();
+        cache.put(1, second, 10);
+
+        /* Budget is exceeded, the eldest buffer is reused */
+        assertSame(first, cache.obtainBuffer());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        byte[] buf = cache.obtainBuffer();
+        assertTrue(buf == first || buf == second);
+    }
+
+    @Test
+    public void testPinnedNotEvicted()
+    {
+        PieceCache cache = new PieceCache(10, 20);
+        byte[] first = cache.obtainBuffer();
+        cache.put(0, first, 10);
+        byte[] second = cache.obtainBuffer();
+        cache.put(1, second, 10);
+
+        PieceCache.CachedPiece pinned = cache.get(0);
+        cache.get(1);
+        cache.pin(pinned);
+
+        /* The eldest piece is pinned, so the next one is evicted */
+        assertSame(second, cache.obtainBuffer());
+        /* All pieces are pinned or in use, allocate a new buffer */
+        byte[] buf = cache.obtainBuffer();
+        assertNotSame(first, buf);
+        assertNotSame(second, buf);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        /* The buffer is still in use */
+        assertNotSame(first, cache.obtainBuffer());
+        cache.unpin(pinned);
+    }
+}
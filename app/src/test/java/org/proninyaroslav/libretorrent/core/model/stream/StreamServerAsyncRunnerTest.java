@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import org.junit.After;
+import org.junit.Test;
+import org.nanohttpd.protocols.http.ClientHandler;
+import org.nanohttpd.protocols.http.IHTTPSession;
+import org.nanohttpd.protocols.http.NanoHTTPD;
+import org.nanohttpd.protocols.http.response.Response;
+import org.nanohttpd.protocols.http.response.Status;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class StreamServerAsyncRunnerTest
+{
+    private static final int BODY_SIZE = 64 * 1024;
+    private static final byte[] BODY = new byte[BODY_SIZE];
+    private static final String MIME_OCTET_STREAM = "application/octet-stream";
+
+    private TestServer server;
+
+    @After
+    public void tearDown()
+    {
+        if (server != null)
+            server.stop();
+    }
+
+    @Test
+    public void testKeepAliveReuse() throws Exception
+    {
+        StreamServerAsyncRunner runner = new StreamServerAsyncRunner(2, 2, 2);
+        server = startServer(runner);
+
+        try (Socket socket = connect()) {
+            for (int i = 0; i < 10; i++)
+                assertEquals(200, request(socket, true).status);
+        }
+        assertEquals(1, server.connections.get());
+        assertEquals(10, server.requests.get());
+    }
+
+    @Test
+    public void testBoundedThreads() throws Exception
+    {
+        final int maxThreads = 4;
+        final int clients = 8;
+        final int requestsPerClient = 20;
+        /* Connection is released a bit later than the client sees it closed */
+        StreamServerAsyncRunner runner = new StreamServerAsyncRunner(maxThreads, clients, clients * 2);
+        server = startServer(runner);
+
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(clients);
+        for (int c = 0; c < clients; c++) {
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < requestsPerClient; i++) {
+                        /* Short connections, like a player probing the file */
+                        try (Socket socket = connect()) {
+                            if (request(socket, false).status != 200)
+                                failed.incrementAndGet();
+                        }
+                    }
+                } catch (IOException e) {
+                    failed.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+
+        assertEquals(0, failed.get());
+        assertEquals(clients * requestsPerClient, server.requests.get());
+        assertTrue(runner.getLargestPoolSize() <= maxThreads);
+    }
+
+    @Test
+    public void testPerClientCap() throws Exception
+    {
+        StreamServerAsyncRunner runner = new StreamServerAsyncRunner(4, 4, 2);
+        server = startServer(runner);
+
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                Socket socket = connect();
+                sockets.add(socket);
+                assertEquals(200, request(socket, true).status);
+            }
+            Socket socket = connect();
+            sockets.add(socket);
+            /* Rejected right after accept, without reading the request */
+            assertEquals(503, readResponse(socket.getInputStream(), System.currentTimeMillis()).status);
+            assertEquals(1, runner.getRejectedCount());
+
+        } finally {
+            for (Socket socket : sockets)
+                socket.close();
+        }
+    }
+
+    /*
+     * Local load generator: measures throughput and TTFB percentiles
+     * for keep-alive clients that make many short requests
+     */
+
+    @Test
+    public void testLoad() throws Exception
+    {
+        final int clients = 8;
+        final int requestsPerClient = 200;
+        StreamServerAsyncRunner runner = new StreamServerAsyncRunner();
+        server = startServer(runner);
+
+        final StreamServerStats stats = new StreamServerStats();
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(clients);
+        long startTime = System.currentTimeMillis();
+        for (int c = 0; c < clients; c++) {
+            new Thread(() -> {
+                try (Socket socket = connect()) {
+                    for (int i = 0; i < requestsPerClient; i++) {
+                        Result res = request(socket, true);
+                        if (res.status != 200)
+                            failed.incrementAndGet();
+                        stats.requestReceived();
+                        stats.addTtfb(res.ttfb);
+                        stats.bytesSent(res.bodySize);
+                    }
+                } catch (IOException e) {
+                    failed.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+
+        assertEquals(0, failed.get());
+        assertEquals((long)clients * requestsPerClient * BODY_SIZE, stats.getBytesSent());
+        assertTrue(runner.getLargestPoolSize() <= StreamServerAsyncRunner.DEFAULT_MAX_THREADS);
+        System.out.println(String.format("Requests: %d, throughput: %d KiB/s, TTFB p50: %d ms, p99: %d ms",
+                stats.getRequests(),
+                stats.getBytesSent() * 1000 / elapsed / 1024,
+                stats.getTtfbPercentile(50),
+                stats.getTtfbPercentile(99)));
+    }
+
+    @Test
+    public void testTtfbPercentile()
+    {
+        StreamServerStats stats = new StreamServerStats();
+        assertEquals(-1, stats.getTtfbPercentile(99));
+
+        for (int i = 1; i <= 100; i++)
+            stats.addTtfb(i);
+        assertEquals(50, stats.getTtfbPercentile(50));
+        assertEquals(99, stats.getTtfbPercentile(99));
+        assertEquals(100, stats.getTtfbPercentile(100));
+    }
+
+    private TestServer startServer(StreamServerAsyncRunner runner) throws IOException
+    {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        TestServer server = new TestServer(port);
+        server.setAsyncRunner(runner);
+        server.start();
+
+        return server;
+    }
+
+    private Socket connect() throws IOException
+    {
+        return new Socket(InetAddress.getLoopbackAddress(), server.getListeningPort());
+    }
+
+    private static class Result
+    {
+        int status;
+        long ttfb;
+        long bodySize;
+    }
+
+    private static Result request(Socket socket, boolean keepAlive) throws IOException
+    {
+        OutputStream out = socket.getOutputStream();
+
+        long startTime = System.currentTimeMillis();
+        String req = "GET /stream HTTP/1.1\r\nHost: localhost\r\n" +
+                (keepAlive ? "" : "Connection: close\r\n") + "\r\n";
+        out.write(req.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        return readResponse(socket.getInputStream(), startTime);
+    }
+
+    private static Result readResponse(InputStream in, long startTime) throws IOException
+    {
+        Result res = new Result();
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int b;
+        boolean first = true;
+        while ((b = in.read()) != -1) {
+            if (first) {
+                res.ttfb = System.currentTimeMillis() - startTime;
+                first = false;
+            }
+            header.write(b);
+            String s = header.toString("US-ASCII");
+            if (s.endsWith("\r\n\r\n"))
+                break;
+        }
+        String[] lines = header.toString("US-ASCII").split("\r\n");
+        if (lines.length == 0 || lines[0].isEmpty())
+            throw new IOException("Empty response");
+        res.status = Integer.parseInt(lines[0].split(" ")[1]);
+
+        long length = 0;
+        for (String line : lines) {
+            if (line.toLowerCase().startsWith("content-length:"))
+                length = Long.parseLong(line.substring("content-length:".length()).trim());
+        }
+        byte[] buf = new byte[8192];
+        while (res.bodySize < length) {
+            int n = in.read(buf, 0, (int)Math.min(buf.length, length - res.bodySize));
+            if (n == -1)
+                break;
+            res.bodySize += n;
+        }
+
+        return res;
+    }
+
+    private static class TestServer extends NanoHTTPD
+    {
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger connections = new AtomicInteger();
+
+        TestServer(int port)
+        {
+            super("127.0.0.1", port);
+        }
+
+        @Override
+        protected ClientHandler createClientHandler(Socket finalAccept, InputStream inputStream)
+        {
+            connections.incrementAndGet();
+
+            return super.createClientHandler(finalAccept, inputStream);
+        }
+
+        @Override
+        public Response handle(IHTTPSession session)
+        {
+            requests.incrementAndGet();
+
+            return Response.newFixedLengthResponse(Status.OK, MIME_OCTET_STREAM, BODY);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class TorrentInputStreamTest
+{
+    private static final int PIECE_LENGTH = 16 * 1024;
+    private static final int NUM_PIECES = 40;
+    private static final long READ_LATENCY = 5; /* ms */
+
+    /* Byte at the torrent offset x is equal to (byte)x */
+    private static final PieceBufferReader FAKE_READER = (bufferPtr, offset, dst, dstOffset, length) -> {
+        long base = bufferPtr * PIECE_LENGTH + offset;
+        for (int i = 0; i < length; i++)
+            dst[dstOffset + i] = (byte)(base + i);
+    };
+
+    private FakeTorrentSession session;
+    private ScheduledExecutorService disk;
+
+    @Before
+    public void init()
+    {
+        session = new FakeTorrentSession();
+        disk = Executors.newScheduledThreadPool(1);
+    }
+
+    @After
+    public void finish()
+    {
+        disk.shutdownNow();
+    }
+
+    private FakeTorrentDownload addTask(String id, int lastPieceSize)
+    {
+        FakeTorrentDownload task = new FakeTorrentDownload(id, session.listeners, disk,
+                READ_LATENCY, NUM_PIECES, PIECE_LENGTH, lastPieceSize);
+        session.tasks.put(id, task);
+
+        return task;
+    }
+
+    private void assertContent(byte[] b, int off, long filePos, int len)
+    {
+        for (int i = 0; i < len; i++)
+            assertEquals("pos " + (filePos + i), (byte)(filePos + i), b[off + i]);
+    }
+
+    @Test
+    public void testReadAll() throws IOException
+    {
+        FakeTorrentDownload task = addTask("1", 100);
+        TorrentStream stream = task.makeStream();
+
+        try (TorrentInputStream is = new TorrentInputStream(session, stream, FAKE_READER)) {
+            byte[] b = new byte[PIECE_LENGTH / 4 + 7];
+            long pos = 0;
+            int read;
+            while ((read = is.read(b, 0, b.length)) != TorrentInputStream.EOF) {
+                assertContent(b, 0, pos, read);
+                pos += read;
+            }
+            assertEquals(stream.fileSize, pos);
+        }
+    }
+
+    @Test
+    public void testReadAcrossPieceBoundary() throws IOException
+    {
+        FakeTorrentDownload task = addTask("1", PIECE_LENGTH);
+        TorrentStream stream = task.makeStream();
+
+        try (TorrentInputStream is = new TorrentInputStream(session, stream, FAKE_READER)) {
+            long pos = PIECE_LENGTH - 1;
+            assertEquals(pos, is.skip(pos));
+            assertEquals((byte)pos, (byte)is.read());
+
+            byte[] b = new byte[PIECE_LENGTH * 2 + 10];
+            assertEquals(b.length - 5, is.read(b, 5, b.length - 5));
+            assertContent(b, 5, pos + 1, b.length - 5);
+        }
+    }
+
+    @Test
+    public void testReadPieceAligned() throws IOException
+    {
+        FakeTorrentDownload task = addTask("1", PIECE_LENGTH);
+        TorrentStream stream = task.makeStream();
+
+        try (TorrentInputStream is = new TorrentInputStream(session, stream, FAKE_READER)) {
+            byte[] b = new byte[PIECE_LENGTH];
+            assertEquals(PIECE_LENGTH, is.read(b));
+            assertContent(b, 0, 0, PIECE_LENGTH);
+            assertEquals(PIECE_LENGTH, is.read(b));
+            assertContent(b, 0, PIECE_LENGTH, PIECE_LENGTH);
+        }
+    }
+
+    /*
+     * Concurrent streams of the same file must have separate read positions
+     */
+
+    @Test
+    public void testSeparateReaders() throws IOException
+    {
+        FakeTorrentDownload task = addTask("1", PIECE_LENGTH);
+        TorrentStream stream = task.makeStream();
+
+        TorrentInputStream first = new TorrentInputStream(session, stream, FAKE_READER);
+        TorrentInputStream second = new TorrentInputStream(session, task.makeStream(), FAKE_READER);
+        assertEquals(2, task.readers.size());
+        assertTrue(task.readers.contains(first));
+        assertTrue(task.readers.contains(second));
+
+        first.close();
+        assertEquals(1, task.readers.size());
+        assertTrue(task.readers.contains(second));
+        second.close();
+        assertTrue(task.readers.isEmpty());
+    }
+
+    /*
+     * Small sequential reads must be served from the cache and read-ahead,
+     * so each piece is read only once
+     */
+
+    @Test
+    public void testSequentialReadEachPieceOnce() throws IOException
+    {
+        FakeTorrentDownload task = addTask("1", 100);
+        TorrentStream stream = task.makeStream();
+
+        try (TorrentInputStream is = new TorrentInputStream(session, stream, FAKE_READER)) {
+            byte[] b = new byte[4096];
+            long pos = 0;
+            int read;
+            while ((read = is.read(b, 0, b.length)) != TorrentInputStream.EOF) {
+                assertContent(b, 0, pos, read);
+                pos += read;
+            }
+            assertEquals(stream.fileSize, pos);
+            assertEquals(NUM_PIECES, task.readPieceCount.get());
+        }
+    }
+
+    @Test
+    public void testTransferTo() throws IOException
+    {
+        FakeTorrentDownload task = addTask("1", 100);
+        TorrentStream stream = task.makeStream();
+
+        try (TorrentInputStream is = new TorrentInputStream(session, stream, FAKE_READER)) {
+            long pos = PIECE_LENGTH / 2;
+            assertEquals(pos, is.skip(pos));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int len = PIECE_LENGTH * 3;
+            assertEquals(len, is.transferTo(out, len));
+            assertContent(out.toByteArray(), 0, pos, len);
+            pos += len;
+
+            out.reset();
+            assertEquals(stream.fileSize - pos, is.transferTo(out, -1));
+            assertContent(out.toByteArray(), 0, pos, (int)(stream.fileSize - pos));
+            assertEquals(TorrentInputStream.EOF, is.read());
+        }
+    }
+
+    @Test
+    public void testSeek() throws IOException
+    {
+        FakeTorrentDownload task = addTask("1", 100);
+        TorrentStream stream = task.makeStream();
+
+        try (TorrentInputStream is = new TorrentInputStream(session, stream, FAKE_READER)) {
+            long pos = stream.fileSize - PIECE_LENGTH;
+            is.seek(pos);
+            assertEquals(pos, is.position());
+            assertEquals((byte)pos, (byte)is.read());
+
+            /* Back to the beginning, the first piece is still cached */
+            is.seek(10);
+            assertEquals(10, is.position());
+            byte[] b = new byte[PIECE_LENGTH];
+            assertEquals(b.length, is.read(b, 0, b.length));
+            assertContent(b, 0, 10, b.length);
+
+            is.seek(stream.fileSize + 1);
+            assertEquals(stream.fileSize, is.position());
+            assertEquals(TorrentInputStream.EOF, is.read());
+        }
+    }
+
+    /*
+     * Independent streams must not block each other,
+     * so the total time must grow much slower than the number of readers
+     */
+
+    @Test
+    public void testConcurrentReadersScaling() throws Exception
+    {
+        long single = readConcurrently(1);
+        int numReaders = 4;
+        long multiple = readConcurrently(numReaders);
+
+        assertTrue("1 reader: " + single + " ms, " + numReaders + " readers: " + multiple + " ms",
+                multiple < single * 2);
+    }
+
+    private long readConcurrently(int numReaders) throws Exception
+    {
+        ExecutorService exec = Executors.newFixedThreadPool(numReaders);
+        List<Callable<Long>> readers = new ArrayList<>();
+        for (int i = 0; i < numReaders; i++) {
+            FakeTorrentDownload task = addTask(numReaders + "_" + i, PIECE_LENGTH);
+            TorrentStream stream = task.makeStream();
+            readers.add(() -> {
+                long pos = 0;
+                try (TorrentInputStream is = new TorrentInputStream(session, stream, FAKE_READER)) {
+                    byte[] b = new byte[PIECE_LENGTH];
+                    int read;
+                    while ((read = is.read(b, 0, b.length)) != TorrentInputStream.EOF) {
+                        assertContent(b, 0, pos, read);
+                        pos += read;
+                    }
+                }
+                return pos;
+            });
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            for (Future<Long> f : exec.invokeAll(readers))
+                assertEquals((long)NUM_PIECES * PIECE_LENGTH, (long)f.get());
+
+            return System.currentTimeMillis() - start;
+
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+}
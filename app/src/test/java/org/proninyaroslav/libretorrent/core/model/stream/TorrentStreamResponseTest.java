@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nanohttpd.protocols.http.request.Method;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+import static org.nanohttpd.protocols.http.response.Status.PARTIAL_CONTENT;
+
+public class TorrentStreamResponseTest
+{
+    private static final int PIECE_LENGTH = 16 * 1024;
+    private static final int NUM_PIECES = 10;
+
+    /* Byte at the torrent offset x is equal to (byte)x */
+    private static final PieceBufferReader FAKE_READER = (bufferPtr, offset, dst, dstOffset, length) -> {
+        long base = bufferPtr * PIECE_LENGTH + offset;
+        for (int i = 0; i < length; i++)
+            dst[dstOffset + i] = (byte)(base + i);
+    };
+
+    private FakeTorrentSession session;
+    private ScheduledExecutorService disk;
+    private TorrentStream stream;
+
+    @Before
+    public void init()
+    {
+        session = new FakeTorrentSession();
+        disk = Executors.newScheduledThreadPool(1);
+        FakeTorrentDownload task = new FakeTorrentDownload("1", session.listeners, disk,
+                1, NUM_PIECES, PIECE_LENGTH, PIECE_LENGTH);
+        session.tasks.put("1", task);
+        stream = task.makeStream();
+    }
+
+    @After
+    public void finish()
+    {
+        disk.shutdownNow();
+    }
+
+    /* Returns the body of the response */
+    private static byte[] send(TorrentStreamResponse res) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        res.send(out);
+        res.close();
+
+        byte[] b = out.toByteArray();
+        String s = new String(b, "ISO-8859-1");
+        int bodyStart = s.indexOf("\r\n\r\n") + 4;
+
+        return Arrays.copyOfRange(b, bodyStart, b.length);
+    }
+
+    private static void assertContent(byte[] b, int off, long filePos, long len)
+    {
+        for (int i = 0; i < len; i++)
+            assertEquals("pos " + (filePos + i), (byte)(filePos + i), b[off + i]);
+    }
+
+    @Test
+    public void testRangeResponse() throws IOException
+    {
+        TorrentInputStream is = new TorrentInputStream(session, stream, FAKE_READER);
+        HttpRange range = new HttpRange(PIECE_LENGTH - 10, PIECE_LENGTH * 2);
+        TorrentStreamResponse res = TorrentStreamResponse.newRangeResponse(PARTIAL_CONTENT,
+                "video/mp4", is, false, range, stream.fileSize);
+
+        byte[] body = send(res);
+        assertEquals(range.length(), body.length);
+        assertContent(body, 0, range.start, range.length());
+
+        /* The shared stream is still alive and can be reused */
+        range = new HttpRange(0, 99);
+        res = TorrentStreamResponse.newRangeResponse(PARTIAL_CONTENT,
+                "video/mp4", is, false, range, stream.fileSize);
+        body = send(res);
+        assertEquals(100, body.length);
+        assertContent(body, 0, 0, 100);
+        is.close();
+    }
+
+    @Test
+    public void testMultipartResponse() throws IOException
+    {
+        TorrentInputStream is = new TorrentInputStream(session, stream, FAKE_READER);
+        List<HttpRange> ranges = Arrays.asList(new HttpRange(0, 99),
+                new HttpRange(stream.fileSize - 50, stream.fileSize - 1));
+        TorrentStreamResponse res = TorrentStreamResponse.newMultipartResponse("video/mp4",
+                is, true, ranges, stream.fileSize);
+        assertTrue(res.isMultipart());
+        String contentType = res.getMimeType();
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        long contentLength = Long.parseLong(res.getHeader("content-length"));
+
+        byte[] body = send(res);
+        assertEquals(contentLength, body.length);
+
+        String s = new String(body, "ISO-8859-1");
+        int pos = 0;
+        for (HttpRange range : ranges) {
+            String header = "--" + boundary + "\r\n" +
+                    "Content-Type: video/mp4\r\n" +
+                    "Content-Range: " + range.toContentRange(stream.fileSize) + "\r\n\r\n";
+            assertEquals(header, s.substring(pos, pos + header.length()));
+            pos += header.length();
+            assertContent(body, pos, range.start, range.length());
+            pos += range.length();
+            assertEquals("\r\n", s.substring(pos, pos + 2));
+            pos += 2;
+        }
+        assertEquals("--" + boundary + "--\r\n", s.substring(pos));
+    }
+
+    @Test
+    public void testHeadRequest() throws IOException
+    {
+        TorrentInputStream is = new TorrentInputStream(session, stream, FAKE_READER);
+        HttpRange range = new HttpRange(0, stream.fileSize - 1);
+        TorrentStreamResponse res = TorrentStreamResponse.newRangeResponse(PARTIAL_CONTENT,
+                "video/mp4", is, true, range, stream.fileSize);
+        res.setRequestMethod(Method.HEAD);
+
+        assertEquals(0, send(res).length);
+    }
+
+    @Test
+    public void testHeadMultipart() throws IOException
+    {
+        List<HttpRange> ranges = Arrays.asList(new HttpRange(0, 99),
+                new HttpRange(stream.fileSize - 50, stream.fileSize - 1));
+        TorrentStreamResponse head = TorrentStreamResponse.newMultipartResponse("video/mp4",
+                null, false, ranges, stream.fileSize);
+        head.setRequestMethod(Method.HEAD);
+
+        TorrentInputStream is = new TorrentInputStream(session, stream, FAKE_READER);
+        TorrentStreamResponse get = TorrentStreamResponse.newMultipartResponse("video/mp4",
+                is, true, ranges, stream.fileSize);
+
+        assertTrue(head.isMultipart());
+        assertTrue(head.getMimeType().startsWith("multipart/byteranges; boundary="));
+        /* The boundary is random, but always has the same length */
+        assertEquals(get.getHeader("content-length"), head.getHeader("content-length"));
+        assertEquals(Long.parseLong(head.getHeader("content-length")), send(get).length);
+        assertEquals(0, send(head).length);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.storage;
+
+import org.junit.Test;
+import org.proninyaroslav.libretorrent.core.model.data.entity.Torrent;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TorrentCacheTest
+{
+    private Torrent makeTorrent(String id)
+    {
+        return new Torrent(id, null, null, id, false, System.currentTimeMillis());
+    }
+
+    @Test
+    public void testWriteThrough()
+    {
+        TorrentCache cache = new TorrentCache();
+        Torrent torrent = makeTorrent("1");
+
+        assertNull(cache.get("1"));
+        assertEquals(1, cache.getMissCount());
+
+        cache.put(torrent);
+        Torrent cached = cache.get("1");
+        assertNotNull(cached);
+        assertNotSame(torrent, cached);
+        assertEquals(1, cache.getAvoidedQueryCount());
+
+        /* Neither do changes of the stored instance */
+        torrent.name = "changed";
+        assertEquals("1", cache.get("1").name);
+
+        /* Changes of the returned copy don't leak into the cache */
+        cached.manuallyPaused = true;
+        assertFalse(cache.get("1").manuallyPaused);
+        cache.put(cached);
+        assertTrue(cache.get("1").manuallyPaused);
+
+        cache.remove("1");
+        assertNull(cache.get("1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testAuthoritative()
+    {
+        TorrentCache cache = new TorrentCache();
+
+        assertNull(cache.getAll());
+        assertFalse(cache.isAuthoritative());
+
+        cache.putAllLoaded(Arrays.asList(makeTorrent("1"), makeTorrent("2")), cache.getVersion());
+        assertTrue(cache.isAuthoritative());
+
+        long misses = cache.getMissCount();
+        assertNull(cache.get("3"));
+        assertEquals(misses, cache.getMissCount());
+
+        cache.put(makeTorrent("3"));
+        List<Torrent> all = cache.getAll();
+        assertNotNull(all);
+        assertEquals(3, all.size());
+        /* Insertion order */
+        assertEquals("1", all.get(0).id);
+        assertEquals("3", all.get(2).id);
+    }
+
+    @Test
+    public void testStaleRead()
+    {
+        TorrentCache cache = new TorrentCache();
+        Torrent torrent = makeTorrent("1");
+
+        /* Torrent deleted while the database read was in progress */
+        long version = cache.getVersion();
+        cache.remove("1");
+        cache.putLoaded(torrent, version);
+        assertNull(cache.get("1"));
+
+        version = cache.getVersion();
+        cache.putAllLoaded(Arrays.asList(torrent), version - 1);
+        assertFalse(cache.isAuthoritative());
+
+        cache.putLoaded(torrent, version);
+        assertNotNull(cache.get("1"));
+    }
+
+    @Test
+    public void testHitRate()
+    {
+        TorrentCache cache = new TorrentCache();
+
+        assertEquals(0, cache.getHitRate(), 0);
+        cache.get("1");
+        cache.put(makeTorrent("1"));
+        cache.get("1");
+        cache.get("1");
+        cache.get("1");
+        assertEquals(3, cache.getHitCount());
+        assertEquals(0.75, cache.getHitRate(), 0.0001);
+    }
+}